@@ -0,0 +1,51 @@
+package com.ts.bindid.example.java;
+
+import android.os.SystemClock;
+import android.util.Log;
+import android.widget.Button;
+
+import androidx.test.core.app.ActivityScenario;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.*;
+
+/**
+ * Reports the time from process start until the login button is enabled.
+ *
+ * Run it on a cold process, for example with
+ * ./gradlew connectedAndroidTest -Pandroid.testInstrumentationRunnerArguments.class=com.ts.bindid.example.java.StartupBenchmarkTest
+ * and read the result from logcat under the StartupBenchmark tag.
+ */
+@RunWith(AndroidJUnit4.class)
+public class StartupBenchmarkTest {
+
+    private static final long TIMEOUT_MILLIS = TimeUnit.SECONDS.toMillis(30);
+
+    @Test
+    public void timeToLoginEnabled() {
+        try (ActivityScenario<MainActivity> scenario = ActivityScenario.launch(MainActivity.class)) {
+            long deadline = SystemClock.elapsedRealtime() + TIMEOUT_MILLIS;
+            AtomicBoolean enabled = new AtomicBoolean();
+            while (!enabled.get() && SystemClock.elapsedRealtime() < deadline) {
+                scenario.onActivity(activity -> {
+                    Button loginBtn = activity.findViewById(R.id.main_login_btn);
+                    enabled.set(loginBtn != null && loginBtn.isEnabled());
+                });
+                SystemClock.sleep(10);
+            }
+            assertTrue("Login was not enabled within " + TIMEOUT_MILLIS + "ms", enabled.get());
+
+            scenario.onActivity(activity -> {
+                long millis = BindIdApplication.get(activity).getTimeToLoginEnabledMillis();
+                Log.i("StartupBenchmark", "time-to-login-enabled: " + millis + "ms");
+                assertTrue(millis > 0);
+            });
+        }
+    }
+}
@@ -0,0 +1,360 @@
+package com.ts.bindid.example.java;
+
+import android.app.Application;
+import android.content.Context;
+import android.os.Process;
+import android.os.SystemClock;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.core.content.ContextCompat;
+import androidx.lifecycle.LiveData;
+import androidx.lifecycle.MutableLiveData;
+
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.crypto.RSASSAVerifier;
+import com.nimbusds.jose.jwk.JWKSet;
+import com.nimbusds.jwt.SignedJWT;
+import com.ts.bindid.XmBindIdConfig;
+import com.ts.bindid.XmBindIdError;
+import com.ts.bindid.XmBindIdSdk;
+import com.ts.bindid.XmBindIdServerEnvironmentMode;
+import com.ts.bindid.example.java.history.PassportHistory;
+import com.ts.bindid.example.java.jwks.JwksKeyStore;
+import com.ts.bindid.example.java.log.AsyncLogTree;
+import com.ts.bindid.example.java.login.AesGcmSessionCipher;
+import com.ts.bindid.example.java.login.KeystoreKeys;
+import com.ts.bindid.example.java.login.LoginPipeline;
+import com.ts.bindid.example.java.login.Session;
+import com.ts.bindid.example.java.login.SessionCipher;
+import com.ts.bindid.example.java.login.SessionStore;
+import com.ts.bindid.example.java.metrics.LoginMetrics;
+import com.ts.bindid.example.java.metrics.LoginStage;
+import com.ts.bindid.example.java.metrics.TimberReporter;
+import com.ts.bindid.example.java.net.SharedHttpClient;
+import com.ts.bindid.example.java.startup.StartupOrchestrator;
+import com.ts.bindid.example.java.tenant.Tenant;
+import com.ts.bindid.example.java.tenant.TenantProfile;
+import com.ts.bindid.example.java.tenant.TenantRegistry;
+import com.ts.bindid.example.java.upload.DeliveryStatus;
+import com.ts.bindid.example.java.upload.TokenUploadQueue;
+import com.ts.bindid.util.ObservableFuture;
+import com.ts.bindid.util.PromiseFuture;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.File;
+import java.security.KeyFactory;
+import java.security.NoSuchAlgorithmException;
+import java.security.Signature;
+import java.text.ParseException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import timber.log.Timber;
+
+/**
+ * BindIdApplication owns the app wide login components and warms them up as soon as the process
+ * starts: the SDK initialization, a connection to the BindID host of every tenant, their jwks
+ * prefetch and the crypto classes all start in parallel, before the login screen is shown.
+ */
+public class BindIdApplication extends Application {
+
+    public enum StartupState {
+        STARTING,
+        READY,
+        FAILED
+    }
+
+    private static final String TASK_SDK = "sdk";
+    private static final String TASK_CRYPTO = "crypto";
+    private static final String TASK_SESSION = "session";
+    private static final String TASK_HISTORY = "history";
+
+    private static final String DEFAULT_TENANT = "default";
+
+    private static final String SESSION_KEY_ALIAS = "bindid_session";
+
+    private final MutableLiveData<StartupState> startupState = new MutableLiveData<>(StartupState.STARTING);
+    private final MutableLiveData<DeliveryStatus> uploadStatus = new MutableLiveData<>();
+    private final MutableLiveData<Session> restoredSession = new MutableLiveData<>();
+    private volatile long timeToLoginEnabledMillis = -1;
+
+    private TenantRegistry tenants;
+    private SessionStore sessionStore;
+    private PassportHistory passportHistory;
+    @Nullable private TokenUploadQueue uploadQueue;
+
+    public static BindIdApplication get(@NonNull Context context) {
+        return (BindIdApplication) context.getApplicationContext();
+    }
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        if (BuildConfig.DEBUG) {
+            // Formatted, redacted and written off the login path
+            Timber.plant(new AsyncLogTree.Builder()
+                    // One in ten lines of the request logging
+                    .sample("OkHttp", 10)
+                    .build());
+        }
+
+        tenants = createTenants();
+        if (BuildConfig.DEBUG) {
+            for (Tenant tenant : tenants.getTenants()) {
+                tenant.getMetrics().addReporter(new TimberReporter());
+            }
+        }
+        // Encrypts the session and the tokens waiting to be uploaded
+        SessionCipher cipher = new AesGcmSessionCipher(() -> KeystoreKeys.getOrCreateAesKey(SESSION_KEY_ALIAS));
+        sessionStore = new SessionStore.Builder()
+                .file(new File(getFilesDir(), "bindid_session"))
+                .cipher(cipher)
+                // Keystore operations are slow, keep them off the main thread
+                .writeExecutor(Executors.newSingleThreadExecutor(
+                        runnable -> new Thread(runnable, "session-writer")))
+                .build();
+        passportHistory = new PassportHistory.Builder()
+                .file(new File(getFilesDir(), "bindid_passport_history"))
+                .writeExecutor(Executors.newSingleThreadExecutor(
+                        runnable -> new Thread(runnable, "history-writer")))
+                .build();
+
+        String backendTokenUrl = getString(R.string.backend_token_url);
+        if (!backendTokenUrl.isEmpty()) {
+            uploadQueue = new TokenUploadQueue.Builder(backendTokenUrl)
+                    .client(SharedHttpClient.getInstance(this))
+                    .queueFile(new File(getFilesDir(), "bindid_token_uploads"))
+                    .cipher(cipher)
+                    .metrics(getMetrics())
+                    .build();
+            uploadQueue.addStatusListener(uploadStatus::postValue);
+        }
+
+        warmUp();
+    }
+
+    /**
+     * The tenants of the app, each with its own BindID client and key set. This example has the
+     * one configured in strings.xml, a white-label app adds a profile per tenant here.
+     */
+    private TenantRegistry createTenants() {
+        return new TenantRegistry.Builder(SharedHttpClient.getInstance(this), ContextCompat.getMainExecutor(this))
+                .add(new TenantProfile.Builder(DEFAULT_TENANT, getString(R.string.bindid_host),
+                        getString(R.string.bindid_client_id), getString(R.string.bindid_redirect_uri))
+                        .environment(XmBindIdServerEnvironmentMode.Sandbox)
+                        .build())
+                .snapshotDirectory(getFilesDir())
+                .sdkInitializer(this::initBindId)
+                .build();
+    }
+
+    /**
+     * @return whether the SDK is ready for the user to log in
+     */
+    @NonNull
+    public LiveData<StartupState> getStartupState() {
+        return startupState;
+    }
+
+    /**
+     * @return the time from process start until the SDK was ready, or -1 while starting
+     */
+    public long getTimeToLoginEnabledMillis() {
+        return timeToLoginEnabledMillis;
+    }
+
+    /**
+     * @return the tenants, and which one the user logs in to
+     */
+    @NonNull
+    public TenantRegistry getTenants() {
+        return tenants;
+    }
+
+    /**
+     * Log in to another tenant from now on, see {@link TenantRegistry#switchTo(String)}
+     */
+    @NonNull
+    public ObservableFuture<Boolean, XmBindIdError> switchTenant(@NonNull String id) {
+        return tenants.switchTo(id);
+    }
+
+    /**
+     * @return the metrics of the active tenant
+     */
+    @NonNull
+    public LoginMetrics getMetrics() {
+        return tenants.getActive().getMetrics();
+    }
+
+    /**
+     * @return the key store of the active tenant
+     */
+    @NonNull
+    public JwksKeyStore getKeyStore() {
+        return tenants.getActive().getKeyStore();
+    }
+
+    /**
+     * @return the login pipeline of the active tenant
+     */
+    @NonNull
+    public LoginPipeline getLoginPipeline() {
+        return tenants.getActive().getLoginPipeline();
+    }
+
+    /**
+     * @return the last verified session, shown to a returning user and while BindID cannot be reached
+     */
+    @NonNull
+    public SessionStore getSessionStore() {
+        return sessionStore;
+    }
+
+    /**
+     * @return the passport claims of the logins on this device, compared with the last login
+     */
+    @NonNull
+    public PassportHistory getPassportHistory() {
+        return passportHistory;
+    }
+
+    /**
+     * @return the session restored from disk when the process started, null when there is none,
+     * and no value until it has been read
+     */
+    @NonNull
+    public LiveData<Session> getRestoredSession() {
+        return restoredSession;
+    }
+
+    /**
+     * @return the queue that delivers tokens to your backend, or null when backend_token_url is not set
+     */
+    @Nullable
+    public TokenUploadQueue getUploadQueue() {
+        return uploadQueue;
+    }
+
+    /**
+     * @return the delivery status of the token uploads, which has no value while backend_token_url is not set
+     */
+    @NonNull
+    public LiveData<DeliveryStatus> getUploadStatus() {
+        return uploadStatus;
+    }
+
+    private void warmUp() {
+        AtomicInteger count = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(3,
+                runnable -> new Thread(runnable, "startup-" + count.incrementAndGet()));
+
+        StartupOrchestrator orchestrator = new StartupOrchestrator(executor, System::nanoTime)
+                .add(TASK_SDK, this::initActiveTenant)
+                // A returning user is shown their session without waiting for the network
+                .add(TASK_SESSION, completion -> {
+                    restoredSession.postValue(sessionStore.get());
+                    completion.onComplete();
+                })
+                // Read before the first login compares with it
+                .add(TASK_HISTORY, completion -> {
+                    passportHistory.load();
+                    completion.onComplete();
+                })
+                .add(TASK_CRYPTO, completion -> {
+                    warmUpCrypto();
+                    completion.onComplete();
+                });
+        // A connection to the host of every tenant, and its key set fetched over that connection
+        tenants.addWarmUpTasks(orchestrator);
+        orchestrator.start(new StartupOrchestrator.Listener() {
+            @Override
+            public void onTaskFinished(@NonNull String name, String error, long nanos) {
+                if (error == null) {
+                    Timber.i("Startup task %s done in %dms", name, nanos / 1_000_000);
+                } else {
+                    Timber.w("Startup task %s failed in %dms: %s", name, nanos / 1_000_000, error);
+                }
+            }
+
+            @Override
+            public void onAllFinished() {
+                executor.shutdown();
+            }
+        });
+    }
+
+    /**
+     * Initialize the SDK with the active tenant, after which the user can log in
+     */
+    private void initActiveTenant(StartupOrchestrator.Completion completion) {
+        tenants.switchTo(tenants.getActive().getId())
+                .addListener(new ObservableFuture.Listener<Boolean, XmBindIdError>() {
+
+                    @Override
+                    public void onComplete(@NotNull Boolean aBoolean) {
+                        timeToLoginEnabledMillis = SystemClock.elapsedRealtime() - Process.getStartElapsedRealtime();
+                        Timber.i("SDK initialized %dms after process start", timeToLoginEnabledMillis);
+                        startupState.postValue(StartupState.READY);
+                        completion.onComplete();
+                    }
+
+                    @Override
+                    public void onReject(@NotNull XmBindIdError xmBindIdError) {
+                        startupState.postValue(StartupState.FAILED);
+                        completion.onFailure(xmBindIdError.getMessage());
+                    }
+                });
+    }
+
+    /**
+     * Configure the BindID SDK with the client ID and environment of a tenant
+     */
+    private ObservableFuture<Boolean, XmBindIdError> initBindId(TenantProfile profile) {
+        LoginMetrics metrics = tenants.get(profile.getId()).getMetrics();
+        long start = metrics.start();
+        PromiseFuture<Boolean, XmBindIdError> result = new PromiseFuture<>();
+        // The SDK is initialized from the main thread, as it was from the login screen
+        ContextCompat.getMainExecutor(this).execute(() -> XmBindIdSdk.getInstance().initialize(
+                XmBindIdConfig.create(
+                        this,
+                        profile.createServerEnvironment(),
+                        profile.getClientId()
+                ))
+                .addListener(new ObservableFuture.Listener<Boolean, XmBindIdError>() {
+
+                    @Override
+                    public void onComplete(@NotNull Boolean aBoolean) {
+                        metrics.stop(LoginStage.SDK_INITIALIZE, start);
+                        result.complete(aBoolean);
+                    }
+
+                    @Override
+                    public void onReject(@NotNull XmBindIdError xmBindIdError) {
+                        metrics.stopWithError(LoginStage.SDK_INITIALIZE, start, xmBindIdError.getCode());
+                        metrics.flush();
+                        Timber.e("SDK failed to initialize: %s\n%s", xmBindIdError.getCode(), xmBindIdError.getMessage());
+                        result.reject(xmBindIdError);
+                    }
+                }));
+        return result;
+    }
+
+    /**
+     * Load the JOSE and RSA classes used to verify the ID token ahead of the first login
+     */
+    private static void warmUpCrypto() {
+        try {
+            KeyFactory.getInstance("RSA");
+            Signature.getInstance("SHA256withRSA");
+            JWKSet.parse("{\"keys\":[]}");
+            SignedJWT.class.getName();
+            RSASSAVerifier.SUPPORTED_ALGORITHMS.contains(JWSAlgorithm.RS256);
+        } catch (NoSuchAlgorithmException | ParseException e) {
+            Timber.w(e, "Crypto warm-up failed");
+        }
+    }
+}
@@ -1,21 +1,55 @@
 package com.ts.bindid.example.java;
 
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import androidx.appcompat.app.AppCompatActivity;
 
 import android.os.Bundle;
 
+import com.ts.bindid.example.java.history.PassportChange;
+import com.ts.bindid.example.java.metrics.LoginMetrics;
+import com.ts.bindid.example.java.metrics.LoginStage;
 import com.ts.bindid.example.java.ui.main.MainFragment;
+import com.ts.bindid.example.java.ui.main.token.PassportHost;
+import com.ts.bindid.example.java.ui.main.token.PassportPreloader;
 
-public class MainActivity extends AppCompatActivity {
+import java.util.List;
+
+public class MainActivity extends AppCompatActivity implements PassportHost {
+
+    private PassportPreloader passportPreloader;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.main_activity);
+        passportPreloader = new PassportPreloader(this);
         if (savedInstanceState == null) {
             getSupportFragmentManager().beginTransaction()
                     .replace(R.id.container, MainFragment.newInstance())
                     .commitNow();
         }
     }
-}
\ No newline at end of file
+
+    @NonNull
+    @Override
+    public PassportPreloader getPassportPreloader() {
+        return passportPreloader;
+    }
+
+    /**
+     * Time from the verified token to the first frame of the passport
+     */
+    @Override
+    public void onPassportDrawn(long verifiedAtNanos) {
+        LoginMetrics metrics = BindIdApplication.get(this).getMetrics();
+        metrics.stop(LoginStage.TOKEN_SCREEN, verifiedAtNanos);
+        metrics.flush();
+    }
+
+    @Nullable
+    @Override
+    public List<PassportChange> getChangesSinceLastLogin(@NonNull String subject) {
+        return BindIdApplication.get(this).getPassportHistory().getChangesSinceLastLogin(subject);
+    }
+}
@@ -0,0 +1,152 @@
+package com.ts.bindid.example.java.format;
+
+import androidx.annotation.NonNull;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * TimestampFormatter renders epoch timestamps, such as the BindID login times, for display.
+ *
+ * Formatters are immutable and thread safe, and are memoized per locale and zone, so rendering a
+ * timestamp does not build a new date format. Relative rendering ("3 days ago") appends to a
+ * caller provided StringBuilder and allocates nothing when the builder has room. Relative times
+ * are in English, like the other passport values.
+ *
+ * java.time is available on every supported API level through core library desugaring.
+ */
+public final class TimestampFormatter {
+
+    public static final String PATTERN = "MMM d, yyyy HH:mm a";
+
+    private static final long MINUTE = 60;
+    private static final long HOUR = 60 * MINUTE;
+    private static final long DAY = 24 * HOUR;
+    private static final long MONTH = 30 * DAY;
+    private static final long YEAR = 365 * DAY;
+
+    private static final ConcurrentMap<Locale, ConcurrentMap<ZoneId, TimestampFormatter>> FORMATTERS =
+            new ConcurrentHashMap<>();
+    private static volatile TimestampFormatter last;
+
+    private final Locale locale;
+    private final ZoneId zone;
+    private final DateTimeFormatter formatter;
+
+    private TimestampFormatter(Locale locale, ZoneId zone) {
+        this.locale = locale;
+        this.zone = zone;
+        this.formatter = DateTimeFormatter.ofPattern(PATTERN, locale).withZone(zone);
+    }
+
+    /**
+     * @return the formatter for the given locale and zone, built on first use
+     */
+    @NonNull
+    public static TimestampFormatter of(@NonNull Locale locale, @NonNull ZoneId zone) {
+        // Nearly every call asks for the formatter of the device locale and zone
+        TimestampFormatter cached = last;
+        if (cached != null && cached.locale.equals(locale) && cached.zone.equals(zone)) {
+            return cached;
+        }
+        ConcurrentMap<ZoneId, TimestampFormatter> byZone = FORMATTERS.get(locale);
+        if (byZone == null) {
+            byZone = FORMATTERS.computeIfAbsent(locale, key -> new ConcurrentHashMap<>());
+        }
+        cached = byZone.get(zone);
+        if (cached == null) {
+            cached = byZone.computeIfAbsent(zone, key -> new TimestampFormatter(locale, zone));
+        }
+        last = cached;
+        return cached;
+    }
+
+    /**
+     * @return the formatter for the device locale and zone
+     */
+    @NonNull
+    public static TimestampFormatter getDefault() {
+        return of(Locale.getDefault(), ZoneId.systemDefault());
+    }
+
+    /**
+     * @param epochSeconds a timestamp in seconds, as in the ID token claims
+     * @return the timestamp formatted as "Jun 20, 2021 08:00 AM"
+     */
+    @NonNull
+    public String format(long epochSeconds) {
+        return formatter.format(Instant.ofEpochSecond(epochSeconds));
+    }
+
+    /**
+     * Append the formatted timestamp, for callers that build a longer text
+     * @param epochSeconds a timestamp in seconds
+     * @param out where the text is appended
+     * @return out
+     */
+    @NonNull
+    public StringBuilder formatTo(long epochSeconds, @NonNull StringBuilder out) {
+        formatter.formatTo(Instant.ofEpochSecond(epochSeconds), out);
+        return out;
+    }
+
+    /**
+     * Append the timestamp relative to now, such as "3 days ago" or "in 2 hours"
+     * @param epochSeconds a timestamp in seconds
+     * @param nowMillis the current time in milliseconds
+     * @param out where the text is appended
+     * @return out
+     */
+    @NonNull
+    public static StringBuilder appendRelative(long epochSeconds, long nowMillis, @NonNull StringBuilder out) {
+        long delta = nowMillis / 1000 - epochSeconds;
+        boolean future = delta < 0;
+        long seconds = Math.abs(delta);
+        if (seconds < MINUTE) {
+            return out.append("just now");
+        }
+
+        long count;
+        String unit;
+        if (seconds < HOUR) {
+            count = seconds / MINUTE;
+            unit = "minute";
+        } else if (seconds < DAY) {
+            count = seconds / HOUR;
+            unit = "hour";
+        } else if (seconds < MONTH) {
+            count = seconds / DAY;
+            unit = "day";
+        } else if (seconds < YEAR) {
+            count = seconds / MONTH;
+            unit = "month";
+        } else {
+            count = seconds / YEAR;
+            unit = "year";
+        }
+
+        if (future) {
+            out.append("in ");
+        }
+        out.append(count).append(' ').append(unit);
+        if (count != 1) {
+            out.append('s');
+        }
+        if (!future) {
+            out.append(" ago");
+        }
+        return out;
+    }
+
+    /**
+     * @return the timestamp relative to now, such as "3 days ago"
+     */
+    @NonNull
+    public static String formatRelative(long epochSeconds, long nowMillis) {
+        return appendRelative(epochSeconds, nowMillis, new StringBuilder(16)).toString();
+    }
+}
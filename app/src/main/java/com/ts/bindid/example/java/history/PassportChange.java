@@ -0,0 +1,69 @@
+package com.ts.bindid.example.java.history;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.Objects;
+
+/**
+ * PassportChange is a passport claim that changed from one login to the next
+ */
+public final class PassportChange {
+    private final String path;
+    @Nullable private final String previous;
+    @Nullable private final String current;
+
+    PassportChange(@NonNull String path, @Nullable String previous, @Nullable String current) {
+        this.path = path;
+        this.previous = previous;
+        this.current = current;
+    }
+
+    /**
+     * @return the claim path, such as bindid_network_info.device_count
+     */
+    @NonNull
+    public String getPath() {
+        return path;
+    }
+
+    /**
+     * @return the value at the previous login, or null when the token did not have the claim
+     */
+    @Nullable
+    public String getPrevious() {
+        return previous;
+    }
+
+    /**
+     * @return the value at the last login, or null when the token does not have the claim
+     */
+    @Nullable
+    public String getCurrent() {
+        return current;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof PassportChange)) {
+            return false;
+        }
+        PassportChange other = (PassportChange) o;
+        return path.equals(other.path) && Objects.equals(previous, other.previous)
+                && Objects.equals(current, other.current);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(path, previous, current);
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return path + ": " + previous + " -> " + current;
+    }
+}
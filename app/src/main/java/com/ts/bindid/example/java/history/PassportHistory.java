@@ -0,0 +1,420 @@
+package com.ts.bindid.example.java.history;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
+
+import com.ts.bindid.example.java.ui.main.token.TokenClaims;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.function.LongSupplier;
+
+import okio.Buffer;
+import okio.BufferedSink;
+import okio.BufferedSource;
+import okio.ByteString;
+import okio.Okio;
+import timber.log.Timber;
+
+/**
+ * PassportHistory keeps the passport claims of every login on this device, such as the device
+ * count and the last seen times, so the passport can show what changed since the last login.
+ *
+ * The history is an append-only file of {@link SnapshotCodec} records, each login written as the
+ * difference from the one before, which for a typical login is a few bytes. Only the last login and
+ * the values it replaced are kept in memory, so recording a login and reading its changes take
+ * time in the number of changed claims, not in the length of the history. Once the file holds
+ * {@code compactEvery} records more than {@code maxEntries}, it is rewritten with the last
+ * {@code maxEntries} records, starting from a full snapshot.
+ *
+ * A record cut short by a crash, and whatever follows it, is dropped when the file is read.
+ */
+public class PassportHistory {
+
+    /**
+     * The claims kept besides sub, the ones that change from one login to the next
+     */
+    public static final String[] DEFAULT_FIELDS = {
+            "bindid_network_info.device_count",
+            "bindid_network_info.confirmed_capp_count",
+            "bindid_network_info.user_last_seen",
+            "bindid_network_info.authenticating_device_last_seen",
+            "bindid_info.capp_last_login",
+            "bindid_info.capp_last_login_from_authenticating_device",
+    };
+
+    private static final String SUBJECT = "sub";
+    private static final int DEFAULT_MAX_ENTRIES = 1000;
+    private static final int DEFAULT_COMPACT_EVERY = 100;
+
+    // "BPH1", followed by the claim paths of the records
+    private static final int MAGIC = 0x42504831;
+
+    @Nullable private final File file;
+    private final String[] fields;
+    private final int maxEntries;
+    private final int compactEvery;
+    private final LongSupplier clock;
+    private final Executor writeExecutor;
+    private final SnapshotCodec.State state;
+
+    private boolean loaded;
+    // Records in the file, as of the last record written to it
+    private int entries;
+    // Set when the file is missing or cannot be appended to, the next record starts it over
+    private boolean rewrite = true;
+
+    private PassportHistory(Builder builder) {
+        if (builder.fields.length + 1 > 64) {
+            throw new IllegalArgumentException("At most 63 claims can be kept");
+        }
+        if (builder.maxEntries < 1 || builder.compactEvery < 1) {
+            throw new IllegalArgumentException("maxEntries and compactEvery must be positive");
+        }
+        this.file = builder.file;
+        this.fields = new String[builder.fields.length + 1];
+        this.fields[0] = SUBJECT;
+        System.arraycopy(builder.fields, 0, this.fields, 1, builder.fields.length);
+        this.maxEntries = builder.maxEntries;
+        this.compactEvery = builder.compactEvery;
+        this.clock = builder.clock;
+        this.writeExecutor = builder.writeExecutor;
+        this.state = new SnapshotCodec.State(fields.length);
+    }
+
+    /**
+     * Read the history, if it was not read yet. The other methods read it on their first call.
+     */
+    @WorkerThread
+    public synchronized void load() {
+        loadOnce();
+    }
+
+    /**
+     * Add a verified login to the history
+     * @param claims the claims of the verified ID token, its iat claim is the login time
+     * @return false when the login is the one recorded last, which is not recorded again
+     */
+    public synchronized boolean record(@NonNull TokenClaims claims) {
+        loadOnce();
+        String[] values = new String[fields.length];
+        for (int i = 0; i < fields.length; i++) {
+            values[i] = claims.get(fields[i]);
+        }
+        long loginMillis = loginMillis(claims);
+        if (state.records > 0 && loginMillis == state.loginMillis && SnapshotCodec.changes(state, values) == 0) {
+            return false;
+        }
+
+        Buffer record = new Buffer();
+        boolean restart = rewrite;
+        SnapshotCodec.write(state, restart ? SnapshotCodec.SNAPSHOT : SnapshotCodec.DELTA, values, loginMillis, record);
+        rewrite = false;
+        if (file == null) {
+            return true;
+        }
+        ByteString bytes = record.readByteString();
+        entries = restart ? 1 : entries + 1;
+        writeExecutor.execute(() -> append(bytes, restart));
+        if (entries >= maxEntries + compactEvery) {
+            entries = maxEntries;
+            writeExecutor.execute(this::compact);
+        }
+        return true;
+    }
+
+    /**
+     * @param subject the user shown the passport
+     * @return the claims that changed between the last two logins of the user, or null when the
+     * last login is not the user's or is their first one on this device
+     */
+    @Nullable
+    public synchronized List<PassportChange> getChangesSinceLastLogin(@NonNull String subject) {
+        loadOnce();
+        if (state.records < 2 || state.type == SnapshotCodec.SNAPSHOT
+                || (state.changed & 1) != 0 || !subject.equals(state.value(0))) {
+            return null;
+        }
+        // Only the fields of the last record, in the order they are kept
+        List<PassportChange> changes = new ArrayList<>(Long.bitCount(state.changed));
+        for (long changed = state.changed; changed != 0; changed &= changed - 1) {
+            int field = Long.numberOfTrailingZeros(changed);
+            changes.add(new PassportChange(fields[field], state.previousValue(field), state.value(field)));
+        }
+        return changes;
+    }
+
+    /**
+     * @return the last login, or null when there is none
+     */
+    @Nullable
+    public synchronized PassportSnapshot getLast() {
+        loadOnce();
+        return state.records > 0 ? new PassportSnapshot(state.loginMillis, fields, state.values()) : null;
+    }
+
+    /**
+     * @return every login in the file, oldest first, or the last login alone without a file
+     */
+    @NonNull
+    @WorkerThread
+    public List<PassportSnapshot> readAll() {
+        if (file == null) {
+            PassportSnapshot last = getLast();
+            return last != null ? Collections.singletonList(last) : Collections.emptyList();
+        }
+        List<PassportSnapshot> snapshots = new ArrayList<>();
+        replay((loginMillis, values) -> snapshots.add(new PassportSnapshot(loginMillis, fields, values)));
+        return snapshots;
+    }
+
+    /**
+     * Forget every login, for example when the user deletes their data
+     */
+    public synchronized void clear() {
+        loaded = true;
+        state.records = 0;
+        rewrite = true;
+        entries = 0;
+        if (file != null) {
+            writeExecutor.execute(() -> {
+                synchronized (this) {
+                    if (rewrite && file.exists() && !file.delete()) {
+                        Timber.w("Failed to delete %s", file);
+                    }
+                }
+            });
+        }
+    }
+
+    private long loginMillis(TokenClaims claims) {
+        String issuedAt = claims.get("iat");
+        if (issuedAt != null) {
+            try {
+                return Long.parseLong(issuedAt) * 1000;
+            } catch (NumberFormatException e) {
+                Timber.w("Ignoring iat claim %s", issuedAt);
+            }
+        }
+        return clock.getAsLong();
+    }
+
+    private void loadOnce() {
+        if (loaded) {
+            return;
+        }
+        loaded = true;
+        if (file == null || !file.exists()) {
+            return;
+        }
+        try (BufferedSource source = Okio.buffer(Okio.source(file))) {
+            if (!readHeader(source)) {
+                Timber.w("Starting a new passport history, the claims it keeps changed");
+                return;
+            }
+            boolean torn = false;
+            try {
+                while (SnapshotCodec.read(source, state)) {
+                    // Only the last record is kept
+                }
+            } catch (IOException e) {
+                Timber.w(e, "Dropping the passport history after record %d", state.records);
+                torn = true;
+            }
+            entries = Math.min(state.records, torn ? maxEntries : Integer.MAX_VALUE);
+            rewrite = state.records == 0;
+            if (torn && !rewrite) {
+                // Rewritten without the unreadable tail before anything is appended to it
+                writeExecutor.execute(this::compact);
+            }
+        } catch (IOException | RuntimeException e) {
+            Timber.w(e, "Ignoring unreadable passport history");
+        }
+    }
+
+    private boolean readHeader(BufferedSource source) throws IOException {
+        if (source.readInt() != MAGIC) {
+            throw new IOException("Not a passport history file");
+        }
+        long count = SnapshotCodec.readUnsigned(source);
+        if (count != fields.length) {
+            return false;
+        }
+        for (String field : fields) {
+            long length = SnapshotCodec.readUnsigned(source);
+            if (length > 1024 || !source.readUtf8(length).equals(field)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void writeHeader(BufferedSink sink) throws IOException {
+        Buffer header = new Buffer();
+        header.writeInt(MAGIC);
+        SnapshotCodec.writeUnsigned(header, fields.length);
+        for (String field : fields) {
+            ByteString bytes = ByteString.encodeUtf8(field);
+            SnapshotCodec.writeUnsigned(header, bytes.size());
+            header.write(bytes);
+        }
+        sink.writeAll(header);
+    }
+
+    private synchronized void append(ByteString record, boolean restart) {
+        // A failed write left the file behind the records in memory, it is started over
+        if (file == null || (rewrite && !restart)) {
+            return;
+        }
+        try (BufferedSink sink = Okio.buffer(restart ? Okio.sink(file) : Okio.appendingSink(file))) {
+            if (restart) {
+                writeHeader(sink);
+            }
+            sink.write(record);
+        } catch (IOException e) {
+            Timber.w(e, "Failed to append to the passport history");
+            rewrite = true;
+        }
+    }
+
+    /**
+     * Rewrite the file with its last {@code maxEntries} records, the first one as a snapshot
+     */
+    @WorkerThread
+    private void compact() {
+        if (file == null) {
+            return;
+        }
+        synchronized (this) {
+            if (rewrite) {
+                return;
+            }
+        }
+        // The last records, in a ring
+        long[] logins = new long[maxEntries];
+        String[][] values = new String[maxEntries][];
+        int[] count = new int[1];
+        replay((loginMillis, recorded) -> {
+            int slot = count[0]++ % maxEntries;
+            logins[slot] = loginMillis;
+            values[slot] = recorded;
+        });
+
+        // Appends run on this executor, none is made while the file is rewritten
+        File tmp = new File(file.getPath() + ".tmp");
+        try {
+            int kept = Math.min(count[0], maxEntries);
+            SnapshotCodec.State compacted = new SnapshotCodec.State(fields.length);
+            Buffer records = new Buffer();
+            try (BufferedSink sink = Okio.buffer(Okio.sink(tmp))) {
+                writeHeader(sink);
+                for (int i = 0; i < kept; i++) {
+                    int slot = (count[0] - kept + i) % maxEntries;
+                    SnapshotCodec.write(compacted, i == 0 ? SnapshotCodec.SNAPSHOT : SnapshotCodec.DELTA,
+                            values[slot], logins[slot], records);
+                    sink.write(records, records.size());
+                }
+            }
+            if (!tmp.renameTo(file)) {
+                throw new IOException("Failed to rename " + tmp);
+            }
+        } catch (IOException e) {
+            Timber.w(e, "Failed to compact the passport history");
+            synchronized (this) {
+                rewrite = true;
+            }
+        }
+    }
+
+    private interface Replay {
+        void onRecord(long loginMillis, String[] values);
+    }
+
+    /**
+     * Read the file from the start, up to the first unreadable record
+     */
+    private void replay(Replay replay) {
+        SnapshotCodec.State replayed = new SnapshotCodec.State(fields.length);
+        if (!file.exists()) {
+            return;
+        }
+        try (BufferedSource source = Okio.buffer(Okio.source(file))) {
+            if (!readHeader(source)) {
+                return;
+            }
+            while (SnapshotCodec.read(source, replayed)) {
+                replay.onRecord(replayed.loginMillis, replayed.values());
+            }
+        } catch (IOException e) {
+            Timber.w(e, "Read the passport history up to record %d", replayed.records);
+        }
+    }
+
+    public static class Builder {
+        private File file;
+        private String[] fields = DEFAULT_FIELDS;
+        private int maxEntries = DEFAULT_MAX_ENTRIES;
+        private int compactEvery = DEFAULT_COMPACT_EVERY;
+        private LongSupplier clock = System::currentTimeMillis;
+        private Executor writeExecutor = Runnable::run;
+
+        /**
+         * @param file where the history is kept, or null to keep the last login in memory only
+         */
+        public Builder file(@Nullable File file) {
+            this.file = file;
+            return this;
+        }
+
+        /**
+         * @param paths the claims kept besides sub, {@link #DEFAULT_FIELDS} by default. A file
+         *              written with other claims is started over.
+         */
+        public Builder fields(@NonNull String... paths) {
+            this.fields = paths.clone();
+            return this;
+        }
+
+        /**
+         * @param maxEntries logins kept by a compaction, 1000 by default
+         */
+        public Builder maxEntries(int maxEntries) {
+            this.maxEntries = maxEntries;
+            return this;
+        }
+
+        /**
+         * @param compactEvery logins added past maxEntries before the file is compacted, 100 by default
+         */
+        public Builder compactEvery(int compactEvery) {
+            this.compactEvery = compactEvery;
+            return this;
+        }
+
+        /**
+         * @param clock wall clock in milliseconds, the login time of tokens without an iat claim
+         */
+        public Builder clock(LongSupplier clock) {
+            this.clock = clock;
+            return this;
+        }
+
+        /**
+         * @param writeExecutor where the records are written and the file compacted, one at a
+         *                      time and in order, the calling thread by default
+         */
+        public Builder writeExecutor(Executor writeExecutor) {
+            this.writeExecutor = writeExecutor;
+            return this;
+        }
+
+        public PassportHistory build() {
+            return new PassportHistory(this);
+        }
+    }
+}
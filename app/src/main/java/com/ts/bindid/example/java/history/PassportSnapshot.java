@@ -0,0 +1,47 @@
+package com.ts.bindid.example.java.history;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * PassportSnapshot is the tracked passport claims of one login, as kept by {@link PassportHistory}
+ */
+public final class PassportSnapshot {
+    private final long loginMillis;
+    private final Map<String, String> claims;
+
+    PassportSnapshot(long loginMillis, @NonNull String[] fields, @NonNull String[] values) {
+        this.loginMillis = loginMillis;
+        Map<String, String> claims = new LinkedHashMap<>(fields.length * 2);
+        for (int i = 0; i < fields.length; i++) {
+            if (values[i] != null) {
+                claims.put(fields[i], values[i]);
+            }
+        }
+        this.claims = Collections.unmodifiableMap(claims);
+    }
+
+    /**
+     * @return when the user logged in, from the iat claim of the ID token
+     */
+    public long getLoginMillis() {
+        return loginMillis;
+    }
+
+    @Nullable
+    public String get(@NonNull String path) {
+        return claims.get(path);
+    }
+
+    /**
+     * @return the tracked claims the token had, by path
+     */
+    @NonNull
+    public Map<String, String> asMap() {
+        return claims;
+    }
+}
@@ -0,0 +1,370 @@
+package com.ts.bindid.example.java.history;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+import okio.Buffer;
+import okio.BufferedSource;
+import okio.ByteString;
+
+/**
+ * SnapshotCodec writes and reads the records of a {@link PassportHistory} file. A record holds
+ * the login time and only the fields that changed since the previous record:
+ *
+ * <pre>
+ *     varint length, body, int CRC32 of the body
+ *     body: byte type, zigzag varint login time, varint mask of the changed fields, their values
+ *     value: byte kind, then a zigzag varint for a number or an instant, or a length prefixed
+ *            UTF-8 string for text
+ * </pre>
+ *
+ * Numbers, such as device_count, and instants, such as user_last_seen, are written as the
+ * difference from the previous value of the field, so a count that grows by one takes a byte.
+ * A snapshot record starts over from empty fields with absolute values, a delta record applies
+ * to the fields of the record before it.
+ */
+final class SnapshotCodec {
+
+    static final byte SNAPSHOT = 0;
+    static final byte DELTA = 1;
+
+    private static final byte ABSENT = 0;
+    private static final byte NUMBER = 1;
+    private static final byte INSTANT = 2;
+    private static final byte TEXT = 3;
+
+    // The timestamps of bindid_network_info, kept as epoch milliseconds when they read back the same
+    private static final DateTimeFormatter INSTANT_FORMAT =
+            DateTimeFormatter.ofPattern("uuuu-MM-dd'T'HH:mm:ss.SSS'Z'").withZone(ZoneOffset.UTC);
+
+    private SnapshotCodec() {
+    }
+
+    /**
+     * The fields after the last record, and before it for the fields it changed, so the changes of
+     * the last login are read without going through the history
+     */
+    static final class State {
+        final int fields;
+        final byte[] kinds;
+        final long[] numbers;
+        final String[] texts;
+        final byte[] previousKinds;
+        final long[] previousNumbers;
+        final String[] previousTexts;
+        long loginMillis;
+        long previousLoginMillis;
+        // The type of the last record and the fields it changed
+        byte type;
+        long changed;
+        int records;
+
+        State(int fields) {
+            this.fields = fields;
+            this.kinds = new byte[fields];
+            this.numbers = new long[fields];
+            this.texts = new String[fields];
+            this.previousKinds = new byte[fields];
+            this.previousNumbers = new long[fields];
+            this.previousTexts = new String[fields];
+        }
+
+        @Nullable
+        String value(int field) {
+            return decode(kinds[field], numbers[field], texts[field]);
+        }
+
+        @Nullable
+        String previousValue(int field) {
+            return decode(previousKinds[field], previousNumbers[field], previousTexts[field]);
+        }
+
+        /**
+         * @return the field values, as they were recorded
+         */
+        @NonNull
+        String[] values() {
+            String[] values = new String[fields];
+            for (int i = 0; i < fields; i++) {
+                values[i] = value(i);
+            }
+            return values;
+        }
+
+        private void set(int field, byte kind, long number, @Nullable String text) {
+            previousKinds[field] = kinds[field];
+            previousNumbers[field] = numbers[field];
+            previousTexts[field] = texts[field];
+            kinds[field] = kind;
+            numbers[field] = number;
+            texts[field] = text;
+        }
+    }
+
+    /**
+     * @return the fields of the values that differ from the state, one bit per field
+     */
+    static long changes(@NonNull State state, @NonNull String[] values) {
+        long mask = 0;
+        for (int i = 0; i < state.fields; i++) {
+            String value = values[i];
+            if (value == null ? state.kinds[i] != ABSENT : !value.equals(state.value(i))) {
+                mask |= 1L << i;
+            }
+        }
+        return mask;
+    }
+
+    /**
+     * Write a record of the values and apply it to the state
+     * @param type {@link #SNAPSHOT} to write every field, {@link #DELTA} for the changed ones only
+     */
+    static void write(@NonNull State state, byte type, @NonNull String[] values, long loginMillis,
+                      @NonNull Buffer out) {
+        long mask;
+        if (type == SNAPSHOT) {
+            clear(state);
+            mask = 0;
+            for (int i = 0; i < state.fields; i++) {
+                if (values[i] != null) {
+                    mask |= 1L << i;
+                }
+            }
+        } else {
+            mask = changes(state, values);
+        }
+
+        Buffer body = new Buffer();
+        body.writeByte(type);
+        writeSigned(body, type == SNAPSHOT ? loginMillis : loginMillis - state.loginMillis);
+        writeUnsigned(body, mask);
+        for (int i = 0; i < state.fields; i++) {
+            if ((mask & (1L << i)) == 0) {
+                continue;
+            }
+            String value = values[i];
+            long number = 0;
+            byte kind;
+            if (value == null) {
+                kind = ABSENT;
+            } else if ((number = parseNumber(value)) != Long.MIN_VALUE) {
+                kind = NUMBER;
+            } else if ((number = parseInstant(value)) != Long.MIN_VALUE) {
+                kind = INSTANT;
+            } else {
+                kind = TEXT;
+            }
+            body.writeByte(kind);
+            if (kind == NUMBER || kind == INSTANT) {
+                // The difference from the previous value of the same kind
+                writeSigned(body, state.kinds[i] == kind ? number - state.numbers[i] : number);
+            } else if (kind == TEXT) {
+                ByteString bytes = ByteString.encodeUtf8(value);
+                writeUnsigned(body, bytes.size());
+                body.write(bytes);
+            }
+            state.set(i, kind, number, kind == TEXT ? value : null);
+        }
+        finish(state, type, mask, loginMillis);
+
+        CRC32 crc = new CRC32();
+        byte[] bytes = body.readByteArray();
+        crc.update(bytes);
+        writeUnsigned(out, bytes.length);
+        out.write(bytes);
+        out.writeInt((int) crc.getValue());
+    }
+
+    /**
+     * Read the next record and apply it to the state
+     * @return false at the end of the records
+     * @throws IOException when the record was cut short or does not match its checksum, as after a
+     * crash during a write
+     */
+    static boolean read(@NonNull BufferedSource source, @NonNull State state) throws IOException {
+        if (source.exhausted()) {
+            return false;
+        }
+        long length = readUnsigned(source);
+        if (length > Integer.MAX_VALUE || !source.request(length + 4)) {
+            throw new IOException("Truncated record");
+        }
+        byte[] bytes = source.readByteArray(length);
+        CRC32 crc = new CRC32();
+        crc.update(bytes);
+        if ((int) crc.getValue() != source.readInt()) {
+            throw new IOException("Record does not match its checksum");
+        }
+
+        ByteBuffer body = ByteBuffer.wrap(bytes);
+        try {
+            byte type = body.get();
+            if (type == SNAPSHOT) {
+                clear(state);
+            } else if (type != DELTA) {
+                throw new IOException("Unknown record type " + type);
+            }
+            long time = readSigned(body);
+            long loginMillis = type == SNAPSHOT ? time : state.loginMillis + time;
+            long mask = readUnsigned(body);
+            if (state.fields < 64 && (mask >>> state.fields) != 0) {
+                throw new IOException("Unknown fields in " + Long.toBinaryString(mask));
+            }
+            for (int i = 0; i < state.fields; i++) {
+                if ((mask & (1L << i)) == 0) {
+                    continue;
+                }
+                byte kind = body.get();
+                switch (kind) {
+                    case ABSENT:
+                        state.set(i, ABSENT, 0, null);
+                        break;
+                    case NUMBER:
+                    case INSTANT:
+                        long difference = readSigned(body);
+                        state.set(i, kind, state.kinds[i] == kind ? state.numbers[i] + difference : difference, null);
+                        break;
+                    case TEXT:
+                        int textLength = (int) readUnsigned(body);
+                        if (textLength < 0 || textLength > body.remaining()) {
+                            throw new IOException("Invalid text length " + textLength);
+                        }
+                        String text = new String(bytes, body.position(), textLength, StandardCharsets.UTF_8);
+                        body.position(body.position() + textLength);
+                        state.set(i, TEXT, 0, text);
+                        break;
+                    default:
+                        throw new IOException("Unknown value kind " + kind);
+                }
+            }
+            finish(state, type, mask, loginMillis);
+        } catch (BufferUnderflowException e) {
+            throw new IOException("Record shorter than its fields", e);
+        }
+        return true;
+    }
+
+    private static void clear(State state) {
+        Arrays.fill(state.kinds, ABSENT);
+        Arrays.fill(state.numbers, 0);
+        Arrays.fill(state.texts, null);
+        state.loginMillis = 0;
+    }
+
+    private static void finish(State state, byte type, long mask, long loginMillis) {
+        state.type = type;
+        state.previousLoginMillis = state.loginMillis;
+        state.loginMillis = loginMillis;
+        state.changed = mask;
+        state.records++;
+    }
+
+    @Nullable
+    private static String decode(byte kind, long number, @Nullable String text) {
+        switch (kind) {
+            case NUMBER:
+                return Long.toString(number);
+            case INSTANT:
+                return INSTANT_FORMAT.format(Instant.ofEpochMilli(number));
+            case TEXT:
+                return text;
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * @return the value as a number, or Long.MIN_VALUE when it does not read back the same
+     */
+    private static long parseNumber(String value) {
+        int length = value.length();
+        if (length == 0 || length > 18) {
+            return Long.MIN_VALUE;
+        }
+        int start = value.charAt(0) == '-' ? 1 : 0;
+        if (start == length || (value.charAt(start) == '0' && length > start + 1)) {
+            return Long.MIN_VALUE;
+        }
+        long number = 0;
+        for (int i = start; i < length; i++) {
+            char c = value.charAt(i);
+            if (c < '0' || c > '9') {
+                return Long.MIN_VALUE;
+            }
+            number = number * 10 + (c - '0');
+        }
+        if (start == 1 && number == 0) {
+            // "-0" would read back as "0"
+            return Long.MIN_VALUE;
+        }
+        return start == 1 ? -number : number;
+    }
+
+    /**
+     * @return the value as epoch milliseconds, or Long.MIN_VALUE when it does not read back the same
+     */
+    private static long parseInstant(String value) {
+        // Shaped like 2021-06-20T08:00:00.000Z
+        if (value.length() != 24 || value.charAt(10) != 'T' || value.charAt(23) != 'Z') {
+            return Long.MIN_VALUE;
+        }
+        try {
+            long millis = Instant.from(INSTANT_FORMAT.parse(value)).toEpochMilli();
+            return INSTANT_FORMAT.format(Instant.ofEpochMilli(millis)).equals(value) ? millis : Long.MIN_VALUE;
+        } catch (DateTimeParseException e) {
+            return Long.MIN_VALUE;
+        }
+    }
+
+    static void writeUnsigned(Buffer out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    private static void writeSigned(Buffer out, long value) {
+        writeUnsigned(out, (value << 1) ^ (value >> 63));
+    }
+
+    static long readUnsigned(BufferedSource source) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = source.readByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Varint too long");
+    }
+
+    private static long readUnsigned(ByteBuffer body) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = body.get();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Varint too long");
+    }
+
+    private static long readSigned(ByteBuffer body) throws IOException {
+        long value = readUnsigned(body);
+        return (value >>> 1) ^ -(value & 1);
+    }
+}
@@ -0,0 +1,575 @@
+package com.ts.bindid.example.java.jwks;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.nimbusds.jose.JOSEException;
+import com.nimbusds.jose.JWSVerifier;
+import com.nimbusds.jose.jwk.JWK;
+import com.nimbusds.jose.jwk.JWKSet;
+import com.nimbusds.jose.jwk.RSAKey;
+import com.ts.bindid.example.java.metrics.LoginMetrics;
+import com.ts.bindid.example.java.metrics.LoginStage;
+
+import java.io.File;
+import java.io.IOException;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okio.Buffer;
+import okio.BufferedSink;
+import okio.BufferedSource;
+import okio.Okio;
+import timber.log.Timber;
+
+/**
+ * JwksKeyStore keeps the BindID signing keys in memory, indexed by their key ID.
+ *
+ * The key set is fetched from the BindID jwks endpoint once and then served from memory until
+ * it expires, using the response max-age when present and the configured TTL otherwise.
+ * Shortly before expiry the key set is refreshed in the background, and a token signed with an
+ * unknown key ID triggers a refetch at most once per minimum refetch interval.
+ * The last key set is stored on disk, with a digest that is checked when it is read back, so it
+ * survives process restarts.
+ * When the jwks endpoint cannot be reached the last known good key set is still used for a grace
+ * period after it expired, and every fetch is bounded by a hard call timeout.
+ * Key sets are read as a stream, from the response and from the snapshot, see {@link JwksParser}.
+ * Verifiers for the keys are built once and reused until their key leaves the key set.
+ */
+public class JwksKeyStore {
+
+    public interface Listener {
+        void onKey(RSAKey key);
+        void onFailure(String error);
+    }
+
+    public interface VerifierListener {
+        void onVerifier(JWSVerifier verifier);
+        void onFailure(String error);
+    }
+
+    private static final long DEFAULT_TTL_MILLIS = TimeUnit.HOURS.toMillis(1);
+    private static final long DEFAULT_REFRESH_AHEAD_MILLIS = TimeUnit.MINUTES.toMillis(5);
+    private static final long DEFAULT_MIN_REFETCH_INTERVAL_MILLIS = TimeUnit.SECONDS.toMillis(30);
+    private static final long DEFAULT_STALE_GRACE_MILLIS = TimeUnit.HOURS.toMillis(24);
+    private static final long DEFAULT_CALL_TIMEOUT_MILLIS = TimeUnit.SECONDS.toMillis(10);
+
+    private final OkHttpClient client;
+    private final String jwksUrl;
+    @Nullable private final File snapshotFile;
+    private final long ttlMillis;
+    private final long refreshAheadMillis;
+    private final long minRefetchIntervalMillis;
+    private final long staleGraceMillis;
+    private final LongSupplier clock;
+    @Nullable private final LoginMetrics metrics;
+    private final VerifierCache verifierCache = new VerifierCache();
+
+    private volatile Snapshot snapshot;
+    private volatile boolean offline;
+    private boolean snapshotLoaded;
+    private boolean fetchInFlight;
+    private long lastFetchMillis = Long.MIN_VALUE;
+    private int fetchCount;
+    private final List<Waiter> waiters = new ArrayList<>();
+
+    private JwksKeyStore(Builder builder) {
+        OkHttpClient client = builder.client != null ? builder.client : new OkHttpClient();
+        // Derived clients share the connection pool and dispatcher of the one they come from. The
+        // key set is cached here, an HTTP cache would answer the refetch of a rotated key with the
+        // key set it replaces.
+        this.client = client.newBuilder()
+                .cache(null)
+                .callTimeout(builder.callTimeoutMillis, TimeUnit.MILLISECONDS)
+                .build();
+        this.jwksUrl = Objects.requireNonNull(builder.jwksUrl, "jwksUrl");
+        this.snapshotFile = builder.snapshotFile;
+        this.ttlMillis = builder.ttlMillis;
+        this.refreshAheadMillis = builder.refreshAheadMillis;
+        this.minRefetchIntervalMillis = builder.minRefetchIntervalMillis;
+        this.staleGraceMillis = builder.staleGraceMillis;
+        this.clock = builder.clock;
+        this.metrics = builder.metrics;
+    }
+
+    /**
+     * Get the signing key for the given key ID, fetching the key set only when needed
+     * @param kid the key ID from the JWT header, or null to use the first signature key
+     * @param listener called with the key, possibly on a network thread
+     */
+    public void getSigningKey(@Nullable String kid, @NonNull Listener listener) {
+        resolve(kid, new Resolver() {
+            @Override
+            public void onResolved(SigningKey key) {
+                listener.onKey(key.key);
+            }
+
+            @Override
+            public void onFailure(String error) {
+                listener.onFailure(error);
+            }
+        });
+    }
+
+    /**
+     * Get a ready to use verifier for the given key ID. Verifiers are cached by key ID and key
+     * thumbprint, and dropped when their key leaves the key set
+     * @param kid the key ID from the JWT header, or null to use the first signature key
+     * @param listener called with the verifier, possibly on a network thread
+     */
+    public void getVerifier(@Nullable String kid, @NonNull VerifierListener listener) {
+        resolve(kid, new Resolver() {
+            @Override
+            public void onResolved(SigningKey key) {
+                JWSVerifier verifier;
+                try {
+                    verifier = verifierCache.get(key.cacheKey, key.key);
+                } catch (JOSEException e) {
+                    listener.onFailure(e.getMessage());
+                    return;
+                }
+                listener.onVerifier(verifier);
+            }
+
+            @Override
+            public void onFailure(String error) {
+                listener.onFailure(error);
+            }
+        });
+    }
+
+    private void resolve(@Nullable String kid, Resolver resolver) {
+        loadSnapshotOnce();
+
+        long now = clock.getAsLong();
+        Snapshot current = snapshot;
+        if (current != null && now < current.expiresAtMillis) {
+            SigningKey key = current.find(kid);
+            if (key != null) {
+                if (now >= current.expiresAtMillis - refreshAheadMillis) {
+                    // Refresh ahead of expiry, the caller is served from memory
+                    fetch(null);
+                }
+                resolver.onResolved(key);
+                return;
+            }
+            // Unknown key ID, the keys may have been rotated
+            if (!fetch(new Waiter(kid, resolver))) {
+                resolver.onFailure("Unknown key ID " + kid);
+            }
+            return;
+        }
+
+        if (!fetch(new Waiter(kid, resolver))) {
+            // The endpoint could not be reached moments ago, do not make the user wait for it again
+            SigningKey stale = findStale(kid);
+            if (stale != null) {
+                resolver.onResolved(stale);
+            } else {
+                resolver.onFailure("Key set expired and refetch is rate limited");
+            }
+        }
+    }
+
+    /**
+     * @return whether the last fetch could not reach the jwks endpoint, in which case the last
+     * known good key set is used until its grace period ends
+     */
+    public boolean isOffline() {
+        return offline;
+    }
+
+    /**
+     * @return the number of key set fetches started so far
+     */
+    public synchronized int getFetchCount() {
+        return fetchCount;
+    }
+
+    /**
+     * Start a fetch of the key set, joining the one in flight if there is one
+     * @return false if the fetch was rate limited and the waiter was not queued
+     */
+    private boolean fetch(@Nullable Waiter waiter) {
+        synchronized (this) {
+            if (fetchInFlight) {
+                if (waiter != null) {
+                    waiters.add(waiter);
+                }
+                return true;
+            }
+            long now = clock.getAsLong();
+            boolean expired = snapshot == null || now >= snapshot.expiresAtMillis;
+            if ((!expired || offline) && lastFetchMillis != Long.MIN_VALUE
+                    && now - lastFetchMillis < minRefetchIntervalMillis) {
+                return false;
+            }
+            if (waiter != null) {
+                waiters.add(waiter);
+            }
+            fetchInFlight = true;
+            lastFetchMillis = now;
+            fetchCount++;
+        }
+
+        Request request = new Request.Builder()
+                .url(jwksUrl)
+                .build();
+
+        long start = metrics != null ? metrics.start() : 0;
+        client.newCall(request).enqueue(new Callback() {
+            @Override
+            public void onFailure(@NonNull Call call, @NonNull IOException e) {
+                offline = true;
+                recordFetch(start, e.getClass().getSimpleName());
+                Timber.e(e, "Failed to fetch the BindID key set");
+                fail("Failed to fetch the BindID key set: " + e.getMessage());
+            }
+
+            @Override
+            public void onResponse(@NonNull Call call, @NonNull Response response) {
+                try {
+                    if (!response.isSuccessful()) {
+                        offline = response.code() >= 500;
+                        recordFetch(start, "HTTP_" + response.code());
+                        fail("Unexpected code " + response);
+                        return;
+                    }
+                    long ttl = freshnessMillis(response);
+                    List<RSAKey> keys = JwksParser.readSigningKeys(
+                            Objects.requireNonNull(response.body()).source());
+                    Snapshot fetched = Snapshot.of(keys, clock.getAsLong() + ttl);
+                    offline = false;
+                    recordFetch(start, null);
+                    install(fetched);
+                    saveSnapshot(fetched);
+                    complete(fetched);
+                } catch (IOException | ParseException e) {
+                    recordFetch(start, e.getClass().getSimpleName());
+                    Timber.e(e, "Failed to read the BindID key set");
+                    fail("Failed to read the BindID key set: " + e.getMessage());
+                } finally {
+                    response.close();
+                }
+            }
+        });
+        return true;
+    }
+
+    /**
+     * @return how long the key set stays fresh: its max-age less the time it spent in caches on
+     * the way, or the configured TTL without a max-age
+     */
+    private long freshnessMillis(Response response) {
+        int maxAge = response.cacheControl().maxAgeSeconds();
+        if (maxAge < 0) {
+            return ttlMillis;
+        }
+        long age = 0;
+        String ageHeader = response.header("Age");
+        if (ageHeader != null) {
+            try {
+                age = Math.max(0, Long.parseLong(ageHeader.trim()));
+            } catch (NumberFormatException e) {
+                Timber.w("Ignoring Age header %s", ageHeader);
+            }
+        }
+        return TimeUnit.SECONDS.toMillis(Math.max(0, maxAge - age));
+    }
+
+    private void recordFetch(long startNanos, @Nullable String errorCode) {
+        if (metrics == null) {
+            return;
+        }
+        if (errorCode == null) {
+            metrics.stop(LoginStage.JWKS_FETCH, startNanos);
+        } else {
+            metrics.stopWithError(LoginStage.JWKS_FETCH, startNanos, errorCode);
+        }
+    }
+
+    private synchronized void install(Snapshot installed) {
+        snapshot = installed;
+        verifierCache.retain(installed.cacheKeys);
+    }
+
+    private void complete(Snapshot fetched) {
+        for (Waiter waiter : drainWaiters()) {
+            SigningKey key = fetched.find(waiter.kid);
+            if (key != null) {
+                waiter.resolver.onResolved(key);
+            } else {
+                waiter.resolver.onFailure(waiter.kid == null ?
+                        "No signature key in publicKey" : "Unknown key ID " + waiter.kid);
+            }
+        }
+    }
+
+    /**
+     * Answer the waiters of a failed fetch from the last known good key set when it is still
+     * within its grace period
+     */
+    private void fail(String error) {
+        for (Waiter waiter : drainWaiters()) {
+            SigningKey stale = findStale(waiter.kid);
+            if (stale != null) {
+                Timber.w("Using the last known key set: %s", error);
+                waiter.resolver.onResolved(stale);
+            } else {
+                waiter.resolver.onFailure(error);
+            }
+        }
+    }
+
+    @Nullable
+    private SigningKey findStale(@Nullable String kid) {
+        Snapshot stale = snapshot;
+        if (stale == null || clock.getAsLong() >= stale.expiresAtMillis + staleGraceMillis) {
+            return null;
+        }
+        return stale.find(kid);
+    }
+
+    private synchronized List<Waiter> drainWaiters() {
+        fetchInFlight = false;
+        List<Waiter> drained = new ArrayList<>(waiters);
+        waiters.clear();
+        return drained;
+    }
+
+    private synchronized void loadSnapshotOnce() {
+        if (snapshotLoaded) {
+            return;
+        }
+        snapshotLoaded = true;
+        if (snapshotFile == null || !snapshotFile.exists()) {
+            return;
+        }
+        try {
+            long expiresAt;
+            List<RSAKey> keys;
+            try (BufferedSource source = Okio.buffer(Okio.source(snapshotFile))) {
+                String digest = source.readUtf8LineStrict();
+                Buffer content = new Buffer();
+                source.readAll(content);
+                if (!content.sha256().hex().equals(digest)) {
+                    throw new IOException("Key set snapshot does not match its digest");
+                }
+                expiresAt = Long.parseLong(content.readUtf8LineStrict());
+                keys = JwksParser.readSigningKeys(content);
+            }
+            if (snapshot == null) {
+                install(Snapshot.of(keys, expiresAt));
+            }
+        } catch (IOException | ParseException | RuntimeException e) {
+            Timber.w(e, "Ignoring unreadable key set snapshot");
+            if (!snapshotFile.delete()) {
+                Timber.w("Failed to delete %s", snapshotFile);
+            }
+        }
+    }
+
+    private void saveSnapshot(Snapshot fetched) {
+        if (snapshotFile == null) {
+            return;
+        }
+        // Write to a temporary file first so a crash never leaves a truncated snapshot behind
+        File tmp = new File(snapshotFile.getPath() + ".tmp");
+        try {
+            // Only the signing keys are kept, the other keys of the response are never read again
+            Buffer content = new Buffer()
+                    .writeDecimalLong(fetched.expiresAtMillis)
+                    .writeByte('\n')
+                    .writeUtf8(new JWKSet(new ArrayList<JWK>(fetched.keys)).toString());
+            // The digest catches a snapshot that was corrupted or only partly written
+            String digest = content.sha256().hex();
+            try (BufferedSink sink = Okio.buffer(Okio.sink(tmp))) {
+                sink.writeUtf8(digest).writeByte('\n').writeAll(content);
+            }
+            if (!tmp.renameTo(snapshotFile)) {
+                throw new IOException("Failed to rename " + tmp);
+            }
+        } catch (IOException e) {
+            Timber.w(e, "Failed to store key set snapshot");
+        }
+    }
+
+    private interface Resolver {
+        void onResolved(SigningKey key);
+        void onFailure(String error);
+    }
+
+    private static class Waiter {
+        @Nullable final String kid;
+        final Resolver resolver;
+
+        Waiter(@Nullable String kid, Resolver resolver) {
+            this.kid = kid;
+            this.resolver = resolver;
+        }
+    }
+
+    /**
+     * A signing key with its verifier cache key, computed once per key set
+     */
+    private static class SigningKey {
+        final RSAKey key;
+        final String cacheKey;
+
+        SigningKey(RSAKey key, String cacheKey) {
+            this.key = key;
+            this.cacheKey = cacheKey;
+        }
+    }
+
+    /**
+     * An immutable, parsed copy of the key set
+     */
+    private static class Snapshot {
+        final List<RSAKey> keys;
+        final Map<String, SigningKey> keysById;
+        @Nullable final SigningKey firstSigningKey;
+        final Set<String> cacheKeys;
+        final long expiresAtMillis;
+
+        private Snapshot(List<RSAKey> keys, Map<String, SigningKey> keysById,
+                         @Nullable SigningKey firstSigningKey, Set<String> cacheKeys,
+                         long expiresAtMillis) {
+            this.keys = keys;
+            this.keysById = keysById;
+            this.firstSigningKey = firstSigningKey;
+            this.cacheKeys = cacheKeys;
+            this.expiresAtMillis = expiresAtMillis;
+        }
+
+        /**
+         * @param keys the RSA signature keys of the key set, as read by {@link JwksParser}
+         */
+        static Snapshot of(List<RSAKey> keys, long expiresAtMillis) throws ParseException {
+            Map<String, SigningKey> keysById = new HashMap<>();
+            Set<String> cacheKeys = new HashSet<>();
+            SigningKey firstSigningKey = null;
+            for (RSAKey rsaKey : keys) {
+                SigningKey key;
+                try {
+                    key = new SigningKey(rsaKey, VerifierCache.cacheKey(rsaKey));
+                } catch (JOSEException e) {
+                    throw new ParseException(e.getMessage(), 0);
+                }
+                cacheKeys.add(key.cacheKey);
+                if (firstSigningKey == null) {
+                    firstSigningKey = key;
+                }
+                if (rsaKey.getKeyID() != null) {
+                    keysById.put(rsaKey.getKeyID(), key);
+                }
+            }
+            return new Snapshot(Collections.unmodifiableList(keys), Collections.unmodifiableMap(keysById),
+                    firstSigningKey, Collections.unmodifiableSet(cacheKeys), expiresAtMillis);
+        }
+
+        @Nullable
+        SigningKey find(@Nullable String kid) {
+            return kid == null ? firstSigningKey : keysById.get(kid);
+        }
+    }
+
+    public static class Builder {
+        private OkHttpClient client;
+        private String jwksUrl;
+        private File snapshotFile;
+        private long ttlMillis = DEFAULT_TTL_MILLIS;
+        private long refreshAheadMillis = DEFAULT_REFRESH_AHEAD_MILLIS;
+        private long minRefetchIntervalMillis = DEFAULT_MIN_REFETCH_INTERVAL_MILLIS;
+        private long staleGraceMillis = DEFAULT_STALE_GRACE_MILLIS;
+        private long callTimeoutMillis = DEFAULT_CALL_TIMEOUT_MILLIS;
+        private LongSupplier clock = System::currentTimeMillis;
+        private LoginMetrics metrics;
+
+        public Builder(@NonNull String jwksUrl) {
+            this.jwksUrl = jwksUrl;
+        }
+
+        public Builder client(OkHttpClient client) {
+            this.client = client;
+            return this;
+        }
+
+        /**
+         * @param snapshotFile where the last fetched key set is kept across process restarts
+         */
+        public Builder snapshotFile(File snapshotFile) {
+            this.snapshotFile = snapshotFile;
+            return this;
+        }
+
+        /**
+         * @param ttl how long a key set is used when the response has no max-age
+         */
+        public Builder ttl(long ttl, TimeUnit unit) {
+            this.ttlMillis = unit.toMillis(ttl);
+            return this;
+        }
+
+        public Builder refreshAhead(long refreshAhead, TimeUnit unit) {
+            this.refreshAheadMillis = unit.toMillis(refreshAhead);
+            return this;
+        }
+
+        public Builder minRefetchInterval(long interval, TimeUnit unit) {
+            this.minRefetchIntervalMillis = unit.toMillis(interval);
+            return this;
+        }
+
+        /**
+         * @param grace how long after it expired the last key set is still used while the jwks
+         *              endpoint cannot be reached
+         */
+        public Builder staleGrace(long grace, TimeUnit unit) {
+            this.staleGraceMillis = unit.toMillis(grace);
+            return this;
+        }
+
+        /**
+         * @param timeout hard limit on a key set fetch, including connecting and reading the body
+         */
+        public Builder callTimeout(long timeout, TimeUnit unit) {
+            this.callTimeoutMillis = unit.toMillis(timeout);
+            return this;
+        }
+
+        /**
+         * @param clock wall clock in milliseconds, the snapshot expiry is persisted with it
+         */
+        public Builder clock(LongSupplier clock) {
+            this.clock = clock;
+            return this;
+        }
+
+        /**
+         * @param metrics where key set fetches are timed
+         */
+        public Builder metrics(LoginMetrics metrics) {
+            this.metrics = metrics;
+            return this;
+        }
+
+        public JwksKeyStore build() {
+            return new JwksKeyStore(this);
+        }
+    }
+}
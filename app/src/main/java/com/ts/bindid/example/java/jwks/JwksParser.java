@@ -0,0 +1,151 @@
+package com.ts.bindid.example.java.jwks;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.nimbusds.jose.Algorithm;
+import com.nimbusds.jose.jwk.KeyUse;
+import com.nimbusds.jose.jwk.RSAKey;
+import com.nimbusds.jose.util.Base64URL;
+import com.squareup.moshi.JsonDataException;
+import com.squareup.moshi.JsonReader;
+
+import java.io.IOException;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.List;
+
+import okio.BufferedSource;
+
+/**
+ * JwksParser reads the RSA signature keys of a JWKS document as a stream, straight from the
+ * response or snapshot source.
+ *
+ * Only the members of an RSA key are read, every other member and every other key is skipped
+ * without being materialized, and the keys are built from their members instead of going
+ * through a JSON tree and its text form.
+ */
+final class JwksParser {
+
+    private static final JsonReader.Options KEY_SET_NAMES = JsonReader.Options.of("keys");
+    private static final JsonReader.Options KEY_NAMES = JsonReader.Options.of("kty", "use", "kid", "alg", "n", "e");
+
+    private JwksParser() {
+    }
+
+    /**
+     * @return every RSA signature key of the key set, in document order
+     */
+    @NonNull
+    static List<RSAKey> readSigningKeys(@NonNull BufferedSource source) throws IOException, ParseException {
+        List<RSAKey> keys = new ArrayList<>();
+        read(source, null, false, keys);
+        return keys;
+    }
+
+    /**
+     * Read the key set up to the first RSA signature key with the given key ID
+     * @param kid the key ID, or null for the first RSA signature key
+     * @return the key, or null when the key set does not have it
+     */
+    @Nullable
+    static RSAKey findSigningKey(@NonNull BufferedSource source, @Nullable String kid)
+            throws IOException, ParseException {
+        List<RSAKey> keys = new ArrayList<>(1);
+        read(source, kid, true, keys);
+        return keys.isEmpty() ? null : keys.get(0);
+    }
+
+    private static void read(BufferedSource source, @Nullable String kid, boolean firstMatch,
+                             List<RSAKey> keys) throws IOException, ParseException {
+        JsonReader reader = JsonReader.of(source);
+        try {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                if (reader.selectName(KEY_SET_NAMES) != 0) {
+                    reader.skipName();
+                    reader.skipValue();
+                    continue;
+                }
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    RSAKey key = readKey(reader);
+                    if (key == null || (firstMatch && kid != null && !kid.equals(key.getKeyID()))) {
+                        continue;
+                    }
+                    keys.add(key);
+                    if (firstMatch) {
+                        // Stop reading, the rest of the document is never parsed
+                        return;
+                    }
+                }
+                reader.endArray();
+            }
+            reader.endObject();
+        } catch (JsonDataException e) {
+            throw new ParseException("Invalid key set: " + e.getMessage(), 0);
+        }
+    }
+
+    /**
+     * @return the key at the reader position, or null when it is not an RSA signature key
+     */
+    @Nullable
+    private static RSAKey readKey(JsonReader reader) throws IOException {
+        String kty = null;
+        String use = null;
+        String kid = null;
+        String alg = null;
+        String n = null;
+        String e = null;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.selectName(KEY_NAMES)) {
+                case 0:
+                    kty = nextString(reader);
+                    break;
+                case 1:
+                    use = nextString(reader);
+                    break;
+                case 2:
+                    kid = nextString(reader);
+                    break;
+                case 3:
+                    alg = nextString(reader);
+                    break;
+                case 4:
+                    n = nextString(reader);
+                    break;
+                case 5:
+                    e = nextString(reader);
+                    break;
+                default:
+                    reader.skipName();
+                    reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        // Only RSA keys that are meant for signatures can verify BindID tokens
+        if (!"RSA".equals(kty) || !KeyUse.SIGNATURE.getValue().equals(use) || n == null || e == null) {
+            return null;
+        }
+        RSAKey.Builder builder = new RSAKey.Builder(new Base64URL(n), new Base64URL(e))
+                .keyUse(KeyUse.SIGNATURE)
+                .keyID(kid);
+        if (alg != null) {
+            builder.algorithm(Algorithm.parse(alg));
+        }
+        return builder.build();
+    }
+
+    @Nullable
+    private static String nextString(JsonReader reader) throws IOException {
+        if (reader.peek() != JsonReader.Token.STRING) {
+            reader.skipValue();
+            return null;
+        }
+        return reader.nextString();
+    }
+}
@@ -0,0 +1,61 @@
+package com.ts.bindid.example.java.jwks;
+
+import androidx.annotation.NonNull;
+
+import com.nimbusds.jose.JOSEException;
+import com.nimbusds.jose.JWSVerifier;
+import com.nimbusds.jose.crypto.RSASSAVerifier;
+import com.nimbusds.jose.jwk.RSAKey;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * VerifierCache holds ready to use JWS verifiers, with the RSA public key already decoded.
+ *
+ * Entries are keyed by key ID and key thumbprint, so a rotated key that reuses a key ID never
+ * gets the verifier of the key it replaced.
+ */
+public class VerifierCache {
+
+    private final ConcurrentHashMap<String, JWSVerifier> verifiers = new ConcurrentHashMap<>();
+
+    /**
+     * @return the cache key of the given key, its key ID and its SHA-256 thumbprint
+     */
+    @NonNull
+    public static String cacheKey(@NonNull RSAKey key) throws JOSEException {
+        String kid = key.getKeyID() != null ? key.getKeyID() : "";
+        return kid + ":" + key.computeThumbprint();
+    }
+
+    /**
+     * Get the verifier of the given key, building it on first use
+     * @param cacheKey the key's cache key, see {@link #cacheKey(RSAKey)}
+     * @param key
+     */
+    @NonNull
+    public JWSVerifier get(@NonNull String cacheKey, @NonNull RSAKey key) throws JOSEException {
+        JWSVerifier verifier = verifiers.get(cacheKey);
+        if (verifier == null) {
+            verifier = new RSASSAVerifier(key.toRSAPublicKey());
+            JWSVerifier existing = verifiers.putIfAbsent(cacheKey, verifier);
+            if (existing != null) {
+                verifier = existing;
+            }
+        }
+        return verifier;
+    }
+
+    /**
+     * Drop the verifiers of keys that are no longer in the key set
+     * @param cacheKeys the cache keys of the current key set
+     */
+    public void retain(@NonNull Set<String> cacheKeys) {
+        verifiers.keySet().retainAll(cacheKeys);
+    }
+
+    public int size() {
+        return verifiers.size();
+    }
+}
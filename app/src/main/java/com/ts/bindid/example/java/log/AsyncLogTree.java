@@ -0,0 +1,305 @@
+package com.ts.bindid.example.java.log;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.Closeable;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import timber.log.Timber;
+
+/**
+ * AsyncLogTree is a Timber tree that keeps logging off the login path. A log call only checks the
+ * priority and sampling, then queues the message template and its arguments in a bounded ring
+ * buffer. A background thread formats the message, redacts tokens with {@link LogRedactor} and
+ * writes it to the {@link Sink}, logcat by default.
+ *
+ * When the buffer is full messages are dropped rather than blocking the caller, counted by
+ * {@link #getDroppedCount()} and reported in the log. As messages are formatted later, their
+ * arguments must not be changed after the log call.
+ */
+public class AsyncLogTree extends Timber.Tree implements Closeable {
+
+    /**
+     * Where the formatted messages are written, on the drain thread
+     */
+    public interface Sink {
+        void write(int priority, @NonNull String tag, @NonNull String message);
+    }
+
+    private static final int DEFAULT_CAPACITY = 1024;
+    // The longest message logcat shows in one entry
+    private static final int DEFAULT_MAX_MESSAGE_LENGTH = 4000;
+    private static final long DEFAULT_DRAIN_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+    private static final String DEFAULT_TAG = "BindID";
+
+    private final LogRingBuffer buffer;
+    private final Sink sink;
+    private final int minPriority;
+    private final Map<String, Sampler> samplers;
+    private final String defaultTag;
+    private final int maxMessageLength;
+    private final long drainIntervalNanos;
+    private final Thread drainer;
+    private final LogRingBuffer.Consumer writer = this::write;
+    private final LogRingBuffer.Entry scratch = new LogRingBuffer.Entry();
+
+    // The template and arguments of the message being logged, from formatMessage to log on the
+    // calling thread
+    private final ThreadLocal<Pending> pending = new ThreadLocal<Pending>() {
+        @Override
+        protected Pending initialValue() {
+            return new Pending();
+        }
+    };
+
+    private volatile boolean running = true;
+    // Drops already reported, drain thread only
+    private long reportedDrops;
+
+    private AsyncLogTree(Builder builder) {
+        this.buffer = new LogRingBuffer(builder.capacity);
+        this.sink = builder.sink;
+        this.minPriority = builder.minPriority;
+        this.samplers = Collections.unmodifiableMap(new HashMap<>(builder.samplers));
+        this.defaultTag = builder.defaultTag;
+        this.maxMessageLength = builder.maxMessageLength;
+        this.drainIntervalNanos = builder.drainIntervalNanos;
+        this.drainer = new Thread(this::drain, "log-drain");
+        drainer.setDaemon(true);
+        drainer.setPriority(Thread.MIN_PRIORITY);
+        drainer.start();
+    }
+
+    @Override
+    protected boolean isLoggable(@Nullable String tag, int priority) {
+        if (priority < minPriority) {
+            return false;
+        }
+        if (priority >= Log.WARN || tag == null) {
+            return true;
+        }
+        Sampler sampler = samplers.get(tag);
+        return sampler == null || sampler.next();
+    }
+
+    /**
+     * Defers the formatting to the drain thread, the template and arguments are picked up by
+     * {@link #log(int, String, String, Throwable)}
+     */
+    @Override
+    protected String formatMessage(@NonNull String message, @NonNull Object[] args) {
+        Pending current = pending.get();
+        current.template = message;
+        current.args = args;
+        return message;
+    }
+
+    @Override
+    protected void log(int priority, @Nullable String tag, @NonNull String message, @Nullable Throwable t) {
+        Pending current = pending.get();
+        String template = current.template;
+        Object[] args = current.args;
+        current.template = null;
+        current.args = null;
+
+        String suffix = null;
+        if (template == null || !message.startsWith(template)) {
+            // Logged without arguments
+            args = null;
+        } else if (message.length() > template.length()) {
+            // The stack trace of the exception, already appended by Timber
+            suffix = message.substring(template.length());
+            message = template;
+        }
+
+        buffer.offer(priority, tag != null ? tag : defaultTag, message, args, suffix);
+        // Warnings are written at once, the rest on the next drain unless the buffer fills up
+        if (priority >= Log.WARN || buffer.size() >= buffer.capacity() / 2) {
+            LockSupport.unpark(drainer);
+        }
+    }
+
+    /**
+     * @return messages dropped since the tree was created because the buffer was full
+     */
+    public long getDroppedCount() {
+        return buffer.getDroppedCount();
+    }
+
+    /**
+     * Wait until the messages logged so far are written, before the process is killed
+     * @return false if they were not written in time
+     */
+    public boolean flush(long timeout, @NonNull TimeUnit unit) {
+        long target = buffer.tail();
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (buffer.head() < target) {
+            if (System.nanoTime() - deadline >= 0 || !drainer.isAlive()) {
+                return false;
+            }
+            LockSupport.unpark(drainer);
+            LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(100));
+        }
+        return true;
+    }
+
+    /**
+     * Write what is left in the buffer and stop the drain thread
+     */
+    @Override
+    public void close() {
+        running = false;
+        LockSupport.unpark(drainer);
+        try {
+            drainer.join(TimeUnit.SECONDS.toMillis(1));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void drain() {
+        while (running) {
+            drainBuffer();
+            LockSupport.parkNanos(this, drainIntervalNanos);
+        }
+        drainBuffer();
+    }
+
+    private void drainBuffer() {
+        while (buffer.poll(scratch, writer)) {
+            // Written by the consumer
+        }
+        long dropped = buffer.getDroppedCount();
+        if (dropped > reportedDrops) {
+            write(Log.WARN, defaultTag, (dropped - reportedDrops) + " log messages dropped, the buffer was full");
+            reportedDrops = dropped;
+        }
+    }
+
+    private void write(LogRingBuffer.Entry entry) {
+        String message = entry.message;
+        if (entry.args != null) {
+            try {
+                message = String.format(message, entry.args);
+            } catch (RuntimeException e) {
+                // A bad format or a failing toString, the message is still worth writing
+                message = message + " " + Arrays.toString(entry.args);
+            }
+        }
+        if (entry.suffix != null) {
+            message += entry.suffix;
+        }
+        // Redacted before it is cut, a token cut in half would no longer be recognized
+        message = LogRedactor.redact(message);
+        if (message.length() > maxMessageLength) {
+            message = message.substring(0, maxMessageLength) + "…";
+        }
+        write(entry.priority, entry.tag, message);
+    }
+
+    private void write(int priority, String tag, String message) {
+        try {
+            sink.write(priority, tag, message);
+        } catch (RuntimeException e) {
+            // The drain thread must survive a failing sink
+        }
+    }
+
+    private static final class Pending {
+        String template;
+        Object[] args;
+    }
+
+    /**
+     * Keeps one in every few messages of a tag
+     */
+    private static final class Sampler {
+        private final int oneIn;
+        private final AtomicLong count = new AtomicLong();
+
+        Sampler(int oneIn) {
+            this.oneIn = oneIn;
+        }
+
+        boolean next() {
+            return count.getAndIncrement() % oneIn == 0;
+        }
+    }
+
+    public static class Builder {
+        private Sink sink = Log::println;
+        private int capacity = DEFAULT_CAPACITY;
+        private int minPriority = Log.VERBOSE;
+        private final Map<String, Sampler> samplers = new HashMap<>();
+        private String defaultTag = DEFAULT_TAG;
+        private int maxMessageLength = DEFAULT_MAX_MESSAGE_LENGTH;
+        private long drainIntervalNanos = DEFAULT_DRAIN_INTERVAL_NANOS;
+
+        /**
+         * @param sink writes the messages, logcat by default
+         */
+        public Builder sink(@NonNull Sink sink) {
+            this.sink = sink;
+            return this;
+        }
+
+        /**
+         * @param capacity messages buffered before new ones are dropped, rounded up to a power of two
+         */
+        public Builder capacity(int capacity) {
+            this.capacity = capacity;
+            return this;
+        }
+
+        /**
+         * @param priority the lowest priority logged, such as {@link Log#INFO}
+         */
+        public Builder minPriority(int priority) {
+            this.minPriority = priority;
+            return this;
+        }
+
+        /**
+         * Keep only one in every few messages of a noisy tag below {@link Log#WARN}
+         */
+        public Builder sample(@NonNull String tag, int oneIn) {
+            samplers.put(tag, new Sampler(oneIn));
+            return this;
+        }
+
+        /**
+         * @param tag of the messages logged without an explicit tag, as the caller's class name
+         *            is not looked up
+         */
+        public Builder defaultTag(@NonNull String tag) {
+            this.defaultTag = tag;
+            return this;
+        }
+
+        public Builder maxMessageLength(int length) {
+            this.maxMessageLength = length;
+            return this;
+        }
+
+        /**
+         * @param interval between writes of the buffered messages below {@link Log#WARN}
+         */
+        public Builder drainInterval(long interval, @NonNull TimeUnit unit) {
+            this.drainIntervalNanos = unit.toNanos(interval);
+            return this;
+        }
+
+        public AsyncLogTree build() {
+            return new AsyncLogTree(this);
+        }
+    }
+}
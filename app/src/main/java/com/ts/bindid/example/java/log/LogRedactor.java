@@ -0,0 +1,37 @@
+package com.ts.bindid.example.java.log;
+
+import androidx.annotation.NonNull;
+
+import java.util.regex.Pattern;
+
+/**
+ * LogRedactor masks the values in a log message that would let someone replay a login: JWTs
+ * (ID and access tokens), bearer tokens, OAuth parameters such as the authorization code and
+ * the PKCE verifier, and any bare string shaped like a PKCE verifier. Dotted names, such as the
+ * class and method names of a stack trace, are left alone.
+ */
+public final class LogRedactor {
+
+    static final String REDACTED = "[redacted]";
+
+    // Compact JWS (3 parts) and JWE (5 parts), the header always starts with {" in base64url
+    private static final Pattern JWT = Pattern.compile("eyJ[\\w-]+\\.[\\w-]+\\.[\\w-]*(?:\\.[\\w-]*){0,2}");
+    private static final Pattern BEARER = Pattern.compile("(?i)(bearer\\s+)[\\w.~+/-]+=*");
+    private static final Pattern PARAMETER = Pattern.compile(
+            "(?i)\\b(code|code_verifier|code_challenge|state|nonce|access_token|id_token|refresh_token)"
+                    + "(\"?\\s*[=:]\\s*\"?)[\\w.~+/-]+=*");
+    // RFC 7636: a verifier is 43 to 128 unreserved characters, as is its S256 challenge. Bare ones
+    // are matched without dots, base64url as the SDK makes them, so qualified names do not match.
+    private static final Pattern PKCE = Pattern.compile("(?<![\\w.~$-])[\\w~-]{43,128}(?![\\w.~$-])");
+
+    private LogRedactor() {
+    }
+
+    @NonNull
+    public static String redact(@NonNull String message) {
+        String redacted = JWT.matcher(message).replaceAll(REDACTED);
+        redacted = BEARER.matcher(redacted).replaceAll("$1" + REDACTED);
+        redacted = PARAMETER.matcher(redacted).replaceAll("$1$2" + REDACTED);
+        return PKCE.matcher(redacted).replaceAll(REDACTED);
+    }
+}
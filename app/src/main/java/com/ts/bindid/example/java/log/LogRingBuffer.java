@@ -0,0 +1,148 @@
+package com.ts.bindid.example.java.log;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A bounded lock-free queue of log entries for many producer threads and a single consumer. The
+ * entries are allocated once and reused, so logging allocates nothing but its arguments array.
+ *
+ * Each slot carries a sequence number telling whether it is free for the producer of a given
+ * position or published for the consumer, as in Dmitry Vyukov's bounded MPMC queue. A producer
+ * finding the queue full drops its entry instead of waiting.
+ */
+final class LogRingBuffer {
+
+    /**
+     * A log call, formatted by the consumer
+     */
+    static final class Entry {
+        int priority;
+        String tag;
+        String message;
+        Object[] args;
+        // Appended to the formatted message, the stack trace of an exception
+        String suffix;
+
+        void clear() {
+            tag = null;
+            message = null;
+            args = null;
+            suffix = null;
+        }
+    }
+
+    interface Consumer {
+        void accept(Entry entry);
+    }
+
+    private final Entry[] entries;
+    private final AtomicLongArray sequences;
+    private final int mask;
+    private final AtomicLong tail = new AtomicLong();
+    private final AtomicLong head = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+
+    /**
+     * @param capacity rounded up to a power of two
+     */
+    LogRingBuffer(int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+        entries = new Entry[size];
+        sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            entries[i] = new Entry();
+            sequences.set(i, i);
+        }
+        mask = size - 1;
+    }
+
+    /**
+     * @return whether the entry was queued, false when the queue was full and it was dropped
+     */
+    boolean offer(int priority, String tag, String message, Object[] args, String suffix) {
+        long position;
+        while (true) {
+            position = tail.get();
+            long difference = sequences.get((int) position & mask) - position;
+            if (difference == 0) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    break;
+                }
+            } else if (difference < 0) {
+                dropped.incrementAndGet();
+                return false;
+            }
+            // Otherwise another producer took the slot, try the next one
+        }
+        int index = (int) position & mask;
+        Entry entry = entries[index];
+        entry.priority = priority;
+        entry.tag = tag;
+        entry.message = message;
+        entry.args = args;
+        entry.suffix = suffix;
+        // Publishes the entry to the consumer
+        sequences.lazySet(index, position + 1);
+        return true;
+    }
+
+    /**
+     * Hand the oldest entry to the consumer, from the consumer thread only. Its slot is freed
+     * first, so producers are not held up while the consumer writes it.
+     * @param scratch receives the entry, owned by the consumer thread
+     * @return false when the queue is empty
+     */
+    boolean poll(Entry scratch, Consumer consumer) {
+        long position = head.get();
+        int index = (int) position & mask;
+        if (sequences.get(index) != position + 1) {
+            return false;
+        }
+        Entry entry = entries[index];
+        scratch.priority = entry.priority;
+        scratch.tag = entry.tag;
+        scratch.message = entry.message;
+        scratch.args = entry.args;
+        scratch.suffix = entry.suffix;
+        entry.clear();
+        // Frees the slot for the producer one lap ahead
+        sequences.lazySet(index, position + entries.length);
+        try {
+            consumer.accept(scratch);
+        } finally {
+            scratch.clear();
+            head.lazySet(position + 1);
+        }
+        return true;
+    }
+
+    int capacity() {
+        return entries.length;
+    }
+
+    /**
+     * @return entries queued and not consumed yet, approximately while producers are running
+     */
+    int size() {
+        return (int) Math.max(0, tail.get() - head.get());
+    }
+
+    /**
+     * @return the position after the last entry queued so far
+     */
+    long tail() {
+        return tail.get();
+    }
+
+    /**
+     * @return the position after the last entry consumed so far
+     */
+    long head() {
+        return head.get();
+    }
+
+    long getDroppedCount() {
+        return dropped.get();
+    }
+}
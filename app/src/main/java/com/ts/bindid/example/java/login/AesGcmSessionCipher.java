@@ -0,0 +1,87 @@
+package com.ts.bindid.example.java.login;
+
+import androidx.annotation.NonNull;
+
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.util.concurrent.Callable;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+
+/**
+ * AesGcmSessionCipher encrypts the session with AES-GCM. The IV is stored in front of the
+ * ciphertext, and the GCM tag makes any change to the stored session fail to decrypt.
+ *
+ * The key is looked up on first use, so a keystore key is not loaded on the main thread while the
+ * app starts.
+ */
+public final class AesGcmSessionCipher implements SessionCipher {
+
+    private static final String TRANSFORMATION = "AES/GCM/NoPadding";
+    private static final int IV_BYTES = 12;
+    private static final int TAG_BITS = 128;
+
+    private final Callable<SecretKey> keySupplier;
+    private volatile SecretKey key;
+
+    public AesGcmSessionCipher(@NonNull SecretKey key) {
+        this(() -> key);
+    }
+
+    /**
+     * @param keySupplier gets the key on first use, for example {@link KeystoreKeys#getOrCreateAesKey}
+     */
+    public AesGcmSessionCipher(@NonNull Callable<SecretKey> keySupplier) {
+        this.keySupplier = keySupplier;
+    }
+
+    @NonNull
+    @Override
+    public byte[] encrypt(@NonNull byte[] plaintext) throws GeneralSecurityException {
+        Cipher cipher = Cipher.getInstance(TRANSFORMATION);
+        // The provider picks a fresh IV, keystore keys refuse one chosen by the caller
+        cipher.init(Cipher.ENCRYPT_MODE, key());
+        byte[] iv = cipher.getIV();
+        if (iv.length != IV_BYTES) {
+            throw new GeneralSecurityException("Unexpected IV length " + iv.length);
+        }
+        byte[] ciphertext = cipher.doFinal(plaintext);
+        byte[] encrypted = new byte[IV_BYTES + ciphertext.length];
+        System.arraycopy(iv, 0, encrypted, 0, IV_BYTES);
+        System.arraycopy(ciphertext, 0, encrypted, IV_BYTES, ciphertext.length);
+        return encrypted;
+    }
+
+    @NonNull
+    @Override
+    public ByteBuffer decrypt(@NonNull ByteBuffer ciphertext) throws GeneralSecurityException {
+        if (ciphertext.remaining() < IV_BYTES) {
+            throw new GeneralSecurityException("Ciphertext too short");
+        }
+        byte[] iv = new byte[IV_BYTES];
+        ciphertext.get(iv);
+        Cipher cipher = Cipher.getInstance(TRANSFORMATION);
+        cipher.init(Cipher.DECRYPT_MODE, key(), new GCMParameterSpec(TAG_BITS, iv));
+        ByteBuffer plaintext = ByteBuffer.allocate(cipher.getOutputSize(ciphertext.remaining()));
+        cipher.doFinal(ciphertext, plaintext);
+        plaintext.flip();
+        return plaintext;
+    }
+
+    private SecretKey key() throws GeneralSecurityException {
+        SecretKey current = key;
+        if (current == null) {
+            try {
+                current = keySupplier.call();
+            } catch (GeneralSecurityException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new GeneralSecurityException("Failed to load the session key", e);
+            }
+            key = current;
+        }
+        return current;
+    }
+}
@@ -0,0 +1,51 @@
+package com.ts.bindid.example.java.login;
+
+import android.security.keystore.KeyGenParameterSpec;
+import android.security.keystore.KeyProperties;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.WorkerThread;
+
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.security.Key;
+import java.security.KeyStore;
+
+import javax.crypto.KeyGenerator;
+import javax.crypto.SecretKey;
+
+/**
+ * KeystoreKeys holds the keys of the app in the Android keystore, where their material never
+ * reaches the app process.
+ */
+public final class KeystoreKeys {
+
+    private static final String ANDROID_KEY_STORE = "AndroidKeyStore";
+
+    private KeystoreKeys() {
+    }
+
+    /**
+     * Get the AES-GCM key with the given alias, creating it the first time
+     * @param alias the key name in the keystore
+     */
+    @NonNull
+    @WorkerThread
+    public static synchronized SecretKey getOrCreateAesKey(@NonNull String alias)
+            throws GeneralSecurityException, IOException {
+        KeyStore keyStore = KeyStore.getInstance(ANDROID_KEY_STORE);
+        keyStore.load(null);
+        Key key = keyStore.getKey(alias, null);
+        if (key instanceof SecretKey) {
+            return (SecretKey) key;
+        }
+        KeyGenerator generator = KeyGenerator.getInstance(KeyProperties.KEY_ALGORITHM_AES, ANDROID_KEY_STORE);
+        generator.init(new KeyGenParameterSpec.Builder(alias,
+                KeyProperties.PURPOSE_ENCRYPT | KeyProperties.PURPOSE_DECRYPT)
+                .setBlockModes(KeyProperties.BLOCK_MODE_GCM)
+                .setEncryptionPaddings(KeyProperties.ENCRYPTION_PADDING_NONE)
+                .setKeySize(256)
+                .build());
+        return generator.generateKey();
+    }
+}
@@ -0,0 +1,214 @@
+package com.ts.bindid.example.java.login;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.nimbusds.jose.JWSVerifier;
+import com.nimbusds.jwt.JWTClaimsSet;
+import com.nimbusds.jwt.SignedJWT;
+import com.ts.bindid.example.java.jwks.JwksKeyStore;
+import com.ts.bindid.example.java.ui.main.token.TokenClaims;
+import com.ts.bindid.validation.IdTokenValidator;
+import com.ts.bindid.validation.TokenValidationException;
+
+import java.text.ParseException;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongSupplier;
+
+/**
+ * LoginPipeline verifies the ID token of a token exchange and maps its claims for the token screen.
+ * The checks themselves are those of the shared {@link IdTokenValidator}.
+ *
+ * Parsing and signature verification run on a bounded compute pool, the key lookup runs on the
+ * OkHttp dispatcher when the key set has to be fetched, and the result is delivered on the main
+ * executor. When the compute pool is saturated new verifications fail fast instead of queueing
+ * without bound.
+ */
+public class LoginPipeline {
+
+    public enum Stage {
+        PARSE,
+        KEY_LOOKUP,
+        VERIFY
+    }
+
+    public interface Callback {
+        void onVerified(TokenClaims claims, Map<Stage, Long> stageNanos);
+        void onFailure(String error);
+    }
+
+    /**
+     * A verification in flight. Cancelling it stops the remaining stages and drops the result.
+     */
+    public interface Task {
+        void cancel();
+        boolean isCancelled();
+    }
+
+    private static final int COMPUTE_QUEUE_CAPACITY = 16;
+
+    private final Executor computeExecutor;
+    private final Executor mainExecutor;
+    private final LongSupplier nanoClock;
+    private final IdTokenValidator validator;
+
+    public LoginPipeline(@NonNull Executor computeExecutor, @NonNull Executor mainExecutor,
+                         @NonNull LongSupplier nanoClock, @NonNull IdTokenValidator validator) {
+        this.computeExecutor = computeExecutor;
+        this.mainExecutor = mainExecutor;
+        this.nanoClock = nanoClock;
+        this.validator = validator;
+    }
+
+    /**
+     * Create a pipeline with a compute pool sized to the device cores
+     * @param mainExecutor where callbacks are delivered, usually the main thread
+     * @param validator checks the ID token once its key is found
+     */
+    public static LoginPipeline create(@NonNull Executor mainExecutor, @NonNull IdTokenValidator validator) {
+        int threads = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+        AtomicInteger count = new AtomicInteger();
+        ThreadPoolExecutor computeExecutor = new ThreadPoolExecutor(
+                threads, threads, 30, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(COMPUTE_QUEUE_CAPACITY),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "login-compute-" + count.incrementAndGet());
+                    thread.setPriority(Thread.NORM_PRIORITY - 1);
+                    return thread;
+                });
+        computeExecutor.allowCoreThreadTimeOut(true);
+        return new LoginPipeline(computeExecutor, mainExecutor, System::nanoTime, validator);
+    }
+
+    /**
+     * Verify the ID token and map its claims
+     * @param idToken the ID token of the token exchange
+     * @param keyStore where the signing key is looked up
+     * @param callback called on the main executor, unless the task was cancelled
+     */
+    @NonNull
+    public Task verify(@NonNull String idToken, @NonNull JwksKeyStore keyStore, @NonNull Callback callback) {
+        return verify(idToken, null, keyStore, callback);
+    }
+
+    /**
+     * Verify the ID token of an authentication request that was sent a nonce
+     * @param nonce the nonce of the request, or null for a request sent without one
+     */
+    @NonNull
+    public Task verify(@NonNull String idToken, @Nullable String nonce, @NonNull JwksKeyStore keyStore,
+                       @NonNull Callback callback) {
+        Verification verification = new Verification(keyStore, nonce, callback);
+        verification.compute(() -> verification.parse(idToken));
+        return verification;
+    }
+
+    private class Verification implements Task {
+        private final JwksKeyStore keyStore;
+        @Nullable private final String nonce;
+        private final Callback callback;
+        private final AtomicBoolean cancelled = new AtomicBoolean();
+        private final Map<Stage, Long> stageNanos = new EnumMap<>(Stage.class);
+
+        Verification(JwksKeyStore keyStore, @Nullable String nonce, Callback callback) {
+            this.keyStore = keyStore;
+            this.nonce = nonce;
+            this.callback = callback;
+        }
+
+        @Override
+        public void cancel() {
+            cancelled.set(true);
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return cancelled.get();
+        }
+
+        void compute(Runnable stage) {
+            try {
+                computeExecutor.execute(stage);
+            } catch (RejectedExecutionException e) {
+                fail("Too many logins in progress, try again");
+            }
+        }
+
+        void parse(String idToken) {
+            if (isCancelled()) {
+                return;
+            }
+            long start = nanoClock.getAsLong();
+            SignedJWT jwt;
+            try {
+                jwt = SignedJWT.parse(idToken);
+            } catch (ParseException e) {
+                fail(e.getMessage());
+                return;
+            }
+            record(Stage.PARSE, start);
+
+            long lookupStart = nanoClock.getAsLong();
+            keyStore.getVerifier(jwt.getHeader().getKeyID(), new JwksKeyStore.VerifierListener() {
+                @Override
+                public void onVerifier(JWSVerifier verifier) {
+                    record(Stage.KEY_LOOKUP, lookupStart);
+                    // The key store may answer on a network thread, verify on the compute pool
+                    compute(() -> verify(jwt, verifier));
+                }
+
+                @Override
+                public void onFailure(String error) {
+                    fail(error);
+                }
+            });
+        }
+
+        void verify(SignedJWT jwt, JWSVerifier verifier) {
+            if (isCancelled()) {
+                return;
+            }
+            long start = nanoClock.getAsLong();
+            JWTClaimsSet validated;
+            try {
+                validated = validator.validate(jwt, verifier, nonce);
+            } catch (TokenValidationException e) {
+                fail(e.getMessage());
+                return;
+            }
+            TokenClaims claims = TokenClaims.from(validated);
+            record(Stage.VERIFY, start);
+
+            Map<Stage, Long> timings = snapshotTimings();
+            mainExecutor.execute(() -> {
+                if (!isCancelled()) {
+                    callback.onVerified(claims, timings);
+                }
+            });
+        }
+
+        private void fail(String error) {
+            mainExecutor.execute(() -> {
+                if (!isCancelled()) {
+                    callback.onFailure(error);
+                }
+            });
+        }
+
+        private synchronized void record(Stage stage, long startNanos) {
+            stageNanos.put(stage, nanoClock.getAsLong() - startNanos);
+        }
+
+        private synchronized Map<Stage, Long> snapshotTimings() {
+            return new EnumMap<>(stageNanos);
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package com.ts.bindid.example.java.login;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.ts.bindid.XmBindIdError;
+
+/**
+ * LoginState is the step the login is at, with the session once it is verified and the error
+ * once it failed.
+ */
+public final class LoginState {
+
+    public enum Step {
+        // The SDK is initializing
+        STARTING,
+        READY,
+        AUTHENTICATING,
+        EXCHANGING,
+        VERIFYING,
+        VERIFIED,
+        FAILED
+    }
+
+    static final LoginState STARTING = new LoginState(Step.STARTING, null, false, null);
+    static final LoginState READY = new LoginState(Step.READY, null, false, null);
+    static final LoginState AUTHENTICATING = new LoginState(Step.AUTHENTICATING, null, false, null);
+    static final LoginState EXCHANGING = new LoginState(Step.EXCHANGING, null, false, null);
+    static final LoginState VERIFYING = new LoginState(Step.VERIFYING, null, false, null);
+
+    private final Step step;
+    @Nullable private final Session session;
+    private final boolean offline;
+    @Nullable private final XmBindIdError error;
+
+    private LoginState(Step step, @Nullable Session session, boolean offline, @Nullable XmBindIdError error) {
+        this.step = step;
+        this.session = session;
+        this.offline = offline;
+        this.error = error;
+    }
+
+    static LoginState verified(@NonNull Session session, boolean offline) {
+        return new LoginState(Step.VERIFIED, session, offline, null);
+    }
+
+    static LoginState failed(@NonNull XmBindIdError error) {
+        return new LoginState(Step.FAILED, null, false, error);
+    }
+
+    @NonNull
+    public Step getStep() {
+        return step;
+    }
+
+    /**
+     * @return whether a login is between authenticating and verifying its ID token
+     */
+    public boolean isInProgress() {
+        return step == Step.AUTHENTICATING || step == Step.EXCHANGING || step == Step.VERIFYING;
+    }
+
+    /**
+     * @return the verified session, or null unless VERIFIED
+     */
+    @Nullable
+    public Session getSession() {
+        return session;
+    }
+
+    /**
+     * @return whether the session is the last verified one, shown because BindID could not be reached
+     */
+    public boolean isOffline() {
+        return offline;
+    }
+
+    /**
+     * @return why the login failed, or null unless FAILED
+     */
+    @Nullable
+    public XmBindIdError getError() {
+        return error;
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return offline ? step + " (offline)" : step.toString();
+    }
+}
@@ -0,0 +1,308 @@
+package com.ts.bindid.example.java.login;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.ts.bindid.XmBindIdError;
+import com.ts.bindid.XmBindIdErrorCode;
+import com.ts.bindid.XmBindIdExchangeTokenResponse;
+import com.ts.bindid.XmBindIdResponse;
+import com.ts.bindid.example.java.metrics.LoginMetrics;
+import com.ts.bindid.example.java.metrics.LoginStage;
+import com.ts.bindid.example.java.ui.main.token.TokenClaims;
+import com.ts.bindid.impl.XmBindIdErrorImpl;
+import com.ts.bindid.util.ObservableFuture;
+
+import java.util.Map;
+
+import timber.log.Timber;
+
+/**
+ * LoginStateMachine runs the login, authenticate, exchange and verify, as explicit
+ * {@link LoginState} steps. It outlives the screen that started it, so a login in flight is
+ * neither restarted nor lost when the screen is recreated: a new login is only started from
+ * READY or FAILED, and the screen renders whatever state it finds.
+ *
+ * Every result is checked against the login it belongs to, so the late result of a login that
+ * already failed, or of a machine that was cleared, is dropped instead of reaching a screen.
+ *
+ * The steps bound their own calls: the token exchange goes through a {@link
+ * com.ts.bindid.example.java.net.ResilientEndpoint} with an adaptive timeout, which fails it as an
+ * {@link XmBindIdErrorCode#InternetConnection}.
+ */
+public class LoginStateMachine {
+
+    /**
+     * The network steps of the login, the BindID SDK and the {@link LoginPipeline} in the app
+     */
+    public interface Steps {
+        @NonNull
+        ObservableFuture<XmBindIdResponse, XmBindIdError> authenticate();
+
+        @NonNull
+        ObservableFuture<XmBindIdExchangeTokenResponse, XmBindIdError> exchangeToken(@NonNull XmBindIdResponse response);
+
+        @NonNull
+        LoginPipeline.Task verify(@NonNull String idToken, @NonNull LoginPipeline.Callback callback);
+
+        /**
+         * @return whether the key set could not be fetched, which makes a failed verification a
+         * connection error
+         */
+        boolean isOffline();
+    }
+
+    public interface Listener {
+        /**
+         * Called on the thread of the step that changed the state, usually the main thread
+         */
+        void onStateChanged(@NonNull LoginState state);
+    }
+
+    private final Steps steps;
+    @Nullable private final SessionStore sessionStore;
+    private final LoginMetrics metrics;
+    private final Listener listener;
+
+    private LoginState state = LoginState.STARTING;
+    // Identifies the login in flight, results of any other login are dropped
+    private int attempt;
+    private boolean cleared;
+    @Nullable private LoginPipeline.Task verification;
+
+    private LoginStateMachine(Builder builder) {
+        this.steps = builder.steps;
+        this.sessionStore = builder.sessionStore;
+        this.metrics = builder.metrics != null ? builder.metrics : new LoginMetrics();
+        this.listener = builder.listener;
+    }
+
+    @NonNull
+    public synchronized LoginState getState() {
+        return state;
+    }
+
+    /**
+     * The SDK finished initializing, the user can log in
+     */
+    public synchronized void onSdkReady() {
+        if (state.getStep() == LoginState.Step.STARTING) {
+            setState(LoginState.READY);
+        }
+    }
+
+    /**
+     * Start a login, unless one is in flight or the SDK is not ready
+     * @return whether a login was started
+     */
+    public boolean login() {
+        int current;
+        synchronized (this) {
+            LoginState.Step step = state.getStep();
+            if (cleared || (step != LoginState.Step.READY && step != LoginState.Step.FAILED)) {
+                Timber.d("Not starting a login while %s", state);
+                return false;
+            }
+            current = ++attempt;
+            setState(LoginState.AUTHENTICATING);
+        }
+
+        // Outside the lock, the SDK may complete on this thread
+        long start = metrics.start();
+        steps.authenticate().addListener(new ObservableFuture.Listener<XmBindIdResponse, XmBindIdError>() {
+            @Override
+            public void onComplete(XmBindIdResponse response) {
+                if (isCurrent(current)) {
+                    metrics.stop(LoginStage.AUTHENTICATE, start);
+                    exchange(current, response);
+                }
+            }
+
+            @Override
+            public void onReject(XmBindIdError error) {
+                if (isCurrent(current)) {
+                    metrics.stopWithError(LoginStage.AUTHENTICATE, start, error.getCode());
+                    fail(current, error);
+                }
+            }
+        });
+        return true;
+    }
+
+    /**
+     * The screen has shown the verified session or the error, go back to READY
+     */
+    public synchronized void onResultShown() {
+        LoginState.Step step = state.getStep();
+        if (step == LoginState.Step.VERIFIED || step == LoginState.Step.FAILED) {
+            setState(LoginState.READY);
+        }
+    }
+
+    /**
+     * Drop the login in flight and any result still to come, when the screen is gone for good
+     */
+    public void clear() {
+        LoginPipeline.Task task;
+        synchronized (this) {
+            cleared = true;
+            attempt++;
+            task = verification;
+            verification = null;
+        }
+        if (task != null) {
+            task.cancel();
+        }
+    }
+
+    private void exchange(int current, XmBindIdResponse response) {
+        long start = metrics.start();
+        synchronized (this) {
+            if (!isCurrent(current)) {
+                return;
+            }
+            setState(LoginState.EXCHANGING);
+        }
+
+        steps.exchangeToken(response).addListener(
+                new ObservableFuture.Listener<XmBindIdExchangeTokenResponse, XmBindIdError>() {
+            @Override
+            public void onComplete(XmBindIdExchangeTokenResponse tokenResponse) {
+                if (isCurrent(current)) {
+                    metrics.stop(LoginStage.EXCHANGE_TOKEN, start);
+                    verify(current, tokenResponse);
+                }
+            }
+
+            @Override
+            public void onReject(XmBindIdError error) {
+                if (isCurrent(current)) {
+                    metrics.stopWithError(LoginStage.EXCHANGE_TOKEN, start, error.getCode());
+                    fail(current, error);
+                }
+            }
+        });
+    }
+
+    private void verify(int current, XmBindIdExchangeTokenResponse tokenResponse) {
+        synchronized (this) {
+            if (!isCurrent(current)) {
+                return;
+            }
+            setState(LoginState.VERIFYING);
+        }
+
+        long start = metrics.start();
+        LoginPipeline.Task task = steps.verify(tokenResponse.getIdToken(), new LoginPipeline.Callback() {
+            @Override
+            public void onVerified(TokenClaims claims, Map<LoginPipeline.Stage, Long> stageNanos) {
+                if (!isCurrent(current)) {
+                    return;
+                }
+                metrics.record(LoginStage.VERIFY,
+                        stageNanos.get(LoginPipeline.Stage.PARSE) + stageNanos.get(LoginPipeline.Stage.VERIFY));
+                Timber.d("Token verified: %s", stageNanos);
+                Session session = new Session(claims, tokenResponse.getIdToken(), tokenResponse.getAccessToken());
+                if (sessionStore != null) {
+                    sessionStore.put(session);
+                }
+                settle(current, LoginState.verified(session, false));
+            }
+
+            @Override
+            public void onFailure(String error) {
+                if (!isCurrent(current)) {
+                    return;
+                }
+                // The key set could not be fetched and there is no last known good one
+                XmBindIdErrorCode code = steps.isOffline() ?
+                        XmBindIdErrorCode.InternetConnection : XmBindIdErrorCode.InvalidResponse;
+                metrics.stopWithError(LoginStage.VERIFY, start, code);
+                fail(current, new XmBindIdErrorImpl(code, error));
+            }
+        });
+
+        synchronized (this) {
+            if (isCurrent(current)) {
+                verification = task;
+                return;
+            }
+        }
+        // Already settled, or cleared while the verification was being started
+        task.cancel();
+    }
+
+    /**
+     * When BindID cannot be reached fall back to the last verified session, as long as it has not
+     * expired, otherwise fail with the error
+     */
+    private void fail(int current, XmBindIdError error) {
+        metrics.flush();
+        XmBindIdErrorCode code = error.getCode();
+        if (sessionStore != null
+                && (code == XmBindIdErrorCode.InternetConnection || code == XmBindIdErrorCode.ServerError)) {
+            Session cached = sessionStore.get();
+            if (cached != null) {
+                Timber.w("Showing the last verified session: %s", error.getMessage());
+                settle(current, LoginState.verified(cached, true));
+                return;
+            }
+        }
+        settle(current, LoginState.failed(error));
+    }
+
+    private synchronized void settle(int current, LoginState result) {
+        if (!isCurrent(current)) {
+            return;
+        }
+        verification = null;
+        // The login is over, whatever still answers for it is dropped
+        attempt++;
+        setState(result);
+    }
+
+    private synchronized boolean isCurrent(int current) {
+        return !cleared && attempt == current;
+    }
+
+    private void setState(LoginState state) {
+        Timber.d("Login %s -> %s", this.state, state);
+        this.state = state;
+        listener.onStateChanged(state);
+    }
+
+    public static class Builder {
+        private final Steps steps;
+        private final Listener listener;
+        private SessionStore sessionStore;
+        private LoginMetrics metrics;
+
+        /**
+         * @param listener told of every state change, for example to post it to the screen
+         */
+        public Builder(@NonNull Steps steps, @NonNull Listener listener) {
+            this.steps = steps;
+            this.listener = listener;
+        }
+
+        /**
+         * @param sessionStore keeps the verified session, and is the fallback while BindID cannot be reached
+         */
+        public Builder sessionStore(@Nullable SessionStore sessionStore) {
+            this.sessionStore = sessionStore;
+            return this;
+        }
+
+        /**
+         * @param metrics records the time of each step
+         */
+        public Builder metrics(@Nullable LoginMetrics metrics) {
+            this.metrics = metrics;
+            return this;
+        }
+
+        public LoginStateMachine build() {
+            return new LoginStateMachine(this);
+        }
+    }
+}
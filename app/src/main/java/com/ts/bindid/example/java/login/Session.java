@@ -0,0 +1,54 @@
+package com.ts.bindid.example.java.login;
+
+import androidx.annotation.NonNull;
+
+import com.ts.bindid.example.java.ui.main.token.TokenClaims;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Session is the token set of a verified login: the ID and access tokens with the verified ID
+ * token claims.
+ */
+public final class Session {
+
+    private final TokenClaims claims;
+    private final String idToken;
+    private final String accessToken;
+
+    public Session(@NonNull TokenClaims claims, @NonNull String idToken, @NonNull String accessToken) {
+        this.claims = claims;
+        this.idToken = idToken;
+        this.accessToken = accessToken;
+    }
+
+    @NonNull
+    public TokenClaims getClaims() {
+        return claims;
+    }
+
+    @NonNull
+    public String getIdToken() {
+        return idToken;
+    }
+
+    @NonNull
+    public String getAccessToken() {
+        return accessToken;
+    }
+
+    /**
+     * @return when the ID token expires, from its exp claim, or -1 when it has none
+     */
+    public long getExpiresAtMillis() {
+        String exp = claims.get("exp");
+        if (exp == null) {
+            return -1;
+        }
+        try {
+            return TimeUnit.SECONDS.toMillis(Long.parseLong(exp));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package com.ts.bindid.example.java.login;
+
+import androidx.annotation.NonNull;
+
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+
+/**
+ * SessionCipher encrypts the stored session. The app uses {@link AesGcmSessionCipher} with a key
+ * held by the Android keystore, the unit tests the same cipher with an in-memory key.
+ *
+ * Implementations must authenticate what they decrypt, so a modified session fails to decrypt
+ * instead of being restored.
+ */
+public interface SessionCipher {
+
+    @NonNull
+    byte[] encrypt(@NonNull byte[] plaintext) throws GeneralSecurityException;
+
+    /**
+     * @param ciphertext read from its position to its limit, possibly a memory-mapped file
+     * @return the plaintext, from position 0 to its limit
+     */
+    @NonNull
+    ByteBuffer decrypt(@NonNull ByteBuffer ciphertext) throws GeneralSecurityException;
+}
@@ -0,0 +1,284 @@
+package com.ts.bindid.example.java.login;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
+
+import com.ts.bindid.example.java.ui.main.token.TokenClaims;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+import okio.Buffer;
+import okio.BufferedSink;
+import okio.ByteString;
+import okio.Okio;
+import timber.log.Timber;
+
+/**
+ * SessionStore keeps the token set of the last verified login, so a returning user is shown their
+ * passport without a network call, and so is a user while BindID cannot be reached.
+ *
+ * The session is served until the ID token expires plus a configurable grace period, and never
+ * after. On disk it is a compact binary record encrypted by a {@link SessionCipher}, which is
+ * restored by mapping the file and decrypting it in place. A session that fails to decrypt is
+ * dropped instead of being shown.
+ */
+public class SessionStore {
+
+    private static final long DEFAULT_GRACE_MILLIS = TimeUnit.MINUTES.toMillis(15);
+
+    // "BID1", the format of the encrypted record that follows
+    private static final int MAGIC = 0x42494431;
+
+    @Nullable private final File file;
+    @Nullable private final SessionCipher cipher;
+    private final long graceMillis;
+    private final LongSupplier clock;
+    private final Executor writeExecutor;
+
+    private boolean loaded;
+    @Nullable private Session session;
+
+    private SessionStore(Builder builder) {
+        if (builder.file != null && builder.cipher == null) {
+            throw new IllegalStateException("A cipher is required to store tokens on disk");
+        }
+        this.file = builder.file;
+        this.cipher = builder.cipher;
+        this.graceMillis = builder.graceMillis;
+        this.clock = builder.clock;
+        this.writeExecutor = builder.writeExecutor;
+    }
+
+    /**
+     * Keep the token set of a login that was just verified, replacing the previous session
+     * @param session the verified session, sessions without an exp claim are not kept
+     */
+    public synchronized void put(@NonNull Session session) {
+        if (session.getExpiresAtMillis() < 0) {
+            Timber.w("Not storing a session without an expiry");
+            return;
+        }
+        loaded = true;
+        this.session = session;
+        writeExecutor.execute(() -> save(session));
+    }
+
+    /**
+     * @return the last verified session, or null when there is none or it expired more than the
+     * grace period ago. The first call reads the stored session.
+     */
+    @Nullable
+    @WorkerThread
+    public synchronized Session get() {
+        loadOnce();
+        if (session == null) {
+            return null;
+        }
+        if (isExpired(session)) {
+            clear();
+            return null;
+        }
+        return session;
+    }
+
+    /**
+     * @return whether the session expired more than the grace period ago, without reading the
+     * stored session, so a session already delivered can be checked again on the main thread
+     */
+    public boolean isExpired(@NonNull Session session) {
+        return clock.getAsLong() >= session.getExpiresAtMillis() + graceMillis;
+    }
+
+    /**
+     * Forget the session, for example when the user logs out
+     */
+    public synchronized void clear() {
+        loaded = true;
+        session = null;
+        if (file != null && file.exists() && !file.delete()) {
+            Timber.w("Failed to delete %s", file);
+        }
+    }
+
+    private void loadOnce() {
+        if (loaded) {
+            return;
+        }
+        loaded = true;
+        if (file == null || !file.exists()) {
+            return;
+        }
+        try (FileInputStream input = new FileInputStream(file);
+             FileChannel channel = input.getChannel()) {
+            ByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (mapped.remaining() < 4 || mapped.getInt() != MAGIC) {
+                throw new IOException("Not a session file");
+            }
+            session = read(Objects.requireNonNull(cipher).decrypt(mapped));
+        } catch (IOException | GeneralSecurityException | RuntimeException e) {
+            Timber.w(e, "Ignoring unreadable session");
+            clear();
+        }
+    }
+
+    /**
+     * Read the record written by {@link #write(Session, Buffer)}
+     */
+    private static Session read(ByteBuffer record) throws IOException {
+        String idToken = readString(record);
+        String accessToken = readString(record);
+        int count = record.getInt();
+        if (count < 0 || count > record.remaining() / 8) {
+            throw new IOException("Invalid claim count " + count);
+        }
+        Map<String, String> claims = new HashMap<>(count * 2);
+        for (int i = 0; i < count; i++) {
+            claims.put(readString(record), readString(record));
+        }
+        return new Session(TokenClaims.of(claims), idToken, accessToken);
+    }
+
+    /**
+     * Write the session as length prefixed UTF-8 strings: the ID token, the access token, the
+     * claim count and then each claim name and value
+     */
+    private static void write(Session session, Buffer record) {
+        writeString(record, session.getIdToken());
+        writeString(record, session.getAccessToken());
+        Map<String, String> claims = session.getClaims().asMap();
+        record.writeInt(claims.size());
+        for (Map.Entry<String, String> claim : claims.entrySet()) {
+            writeString(record, claim.getKey());
+            writeString(record, claim.getValue());
+        }
+    }
+
+    private static String readString(ByteBuffer record) throws IOException {
+        int length = record.getInt();
+        if (length < 0 || length > record.remaining()) {
+            throw new IOException("Invalid string length " + length);
+        }
+        if (!record.hasArray()) {
+            byte[] bytes = new byte[length];
+            record.get(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+        String value = new String(record.array(), record.arrayOffset() + record.position(), length,
+                StandardCharsets.UTF_8);
+        record.position(record.position() + length);
+        return value;
+    }
+
+    private static void writeString(Buffer record, String value) {
+        ByteString bytes = ByteString.encodeUtf8(value);
+        record.writeInt(bytes.size()).write(bytes);
+    }
+
+    private void save(Session saved) {
+        if (file == null || cipher == null || isOvertaken(saved)) {
+            return;
+        }
+        // Encrypted without holding the store, keystore operations are slow and get() must not
+        // wait for them
+        byte[] encrypted;
+        try {
+            Buffer record = new Buffer();
+            write(saved, record);
+            encrypted = cipher.encrypt(record.readByteArray());
+        } catch (GeneralSecurityException e) {
+            Timber.w(e, "Failed to store the session");
+            return;
+        }
+        synchronized (this) {
+            if (session != saved) {
+                return;
+            }
+            // Write to a temporary file first so a crash never leaves a truncated session behind
+            File tmp = new File(file.getPath() + ".tmp");
+            try {
+                try (BufferedSink sink = Okio.buffer(Okio.sink(tmp))) {
+                    sink.writeInt(MAGIC).write(encrypted);
+                }
+                if (!tmp.renameTo(file)) {
+                    throw new IOException("Failed to rename " + tmp);
+                }
+            } catch (IOException e) {
+                Timber.w(e, "Failed to store the session");
+            }
+        }
+    }
+
+    /**
+     * @return whether a newer session or a clear has overtaken the write of this session
+     */
+    private synchronized boolean isOvertaken(Session saved) {
+        return session != saved;
+    }
+
+    public static class Builder {
+        private File file;
+        private SessionCipher cipher;
+        private long graceMillis = DEFAULT_GRACE_MILLIS;
+        private LongSupplier clock = System::currentTimeMillis;
+        private Executor writeExecutor = Runnable::run;
+
+        /**
+         * @param file where the session is kept across process restarts, or null to keep it in
+         *             memory only
+         */
+        public Builder file(@Nullable File file) {
+            this.file = file;
+            return this;
+        }
+
+        /**
+         * @param cipher encrypts the stored session, required with a file
+         */
+        public Builder cipher(@Nullable SessionCipher cipher) {
+            this.cipher = cipher;
+            return this;
+        }
+
+        /**
+         * @param grace how long after the ID token expired its session is still served
+         */
+        public Builder grace(long grace, TimeUnit unit) {
+            this.graceMillis = unit.toMillis(grace);
+            return this;
+        }
+
+        /**
+         * @param clock wall clock in milliseconds, compared with the token exp claim
+         */
+        public Builder clock(LongSupplier clock) {
+            this.clock = clock;
+            return this;
+        }
+
+        /**
+         * @param writeExecutor where the session is encrypted and written, the calling thread
+         *                      by default
+         */
+        public Builder writeExecutor(Executor writeExecutor) {
+            this.writeExecutor = writeExecutor;
+            return this;
+        }
+
+        public SessionStore build() {
+            return new SessionStore(this);
+        }
+    }
+}
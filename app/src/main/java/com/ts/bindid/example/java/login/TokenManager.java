@@ -0,0 +1,306 @@
+package com.ts.bindid.example.java.login;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.ts.bindid.XmBindIdError;
+import com.ts.bindid.XmBindIdErrorCode;
+import com.ts.bindid.impl.XmBindIdErrorImpl;
+import com.ts.bindid.util.ObservableFuture;
+import com.ts.bindid.util.PromiseFuture;
+
+import java.util.Objects;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.DoubleSupplier;
+import java.util.function.LongSupplier;
+
+import timber.log.Timber;
+
+/**
+ * TokenManager hands out a session whose tokens are still valid, and refreshes the session ahead
+ * of the ID token expiry so callers rarely have to wait for it.
+ *
+ * The refresh is scheduled a skew before exp, minus a random jitter so that many clients do not
+ * refresh at the same instant. However many callers ask at the same time, at most one refresh is
+ * in flight: they all get the same {@link ObservableFuture} and are completed together.
+ * A refresh that failed on the network or the server is retried later while the current session
+ * is still valid, any other failure waits for the next call.
+ *
+ * The app does not create one yet: the BindID token exchange returns no refresh token, and
+ * logging in again on a timer would show the BindID UI to a user who did not ask for it. Create
+ * it with a refresher that redeems a refresh token with your backend.
+ */
+public class TokenManager {
+
+    /**
+     * Gets a new session without the user, for example through your backend. Refreshes run on a
+     * schedule, so the refresher must never show UI.
+     */
+    public interface Refresher {
+        /**
+         * @param current the session being refreshed, or null when there is none
+         */
+        @NonNull
+        ObservableFuture<Session, XmBindIdError> refresh(@Nullable Session current);
+    }
+
+    private static final long DEFAULT_SKEW_MILLIS = TimeUnit.MINUTES.toMillis(2);
+    private static final long DEFAULT_JITTER_MILLIS = TimeUnit.SECONDS.toMillis(30);
+    private static final long DEFAULT_RETRY_DELAY_MILLIS = TimeUnit.SECONDS.toMillis(30);
+
+    private final Refresher refresher;
+    private final ScheduledExecutorService scheduler;
+    private final LongSupplier clock;
+    private final DoubleSupplier random;
+    private final long skewMillis;
+    private final long jitterMillis;
+    private final long retryDelayMillis;
+    @Nullable private final SessionStore sessionStore;
+
+    @Nullable private Session session;
+    @Nullable private PromiseFuture<Session, XmBindIdError> inFlight;
+    @Nullable private ScheduledFuture<?> scheduledRefresh;
+    private int refreshCount;
+
+    private TokenManager(Builder builder) {
+        this.refresher = builder.refresher;
+        this.scheduler = builder.scheduler != null ? builder.scheduler
+                : Executors.newSingleThreadScheduledExecutor(runnable -> new Thread(runnable, "token-refresh"));
+        this.clock = builder.clock;
+        this.random = builder.random;
+        this.skewMillis = builder.skewMillis;
+        this.jitterMillis = builder.jitterMillis;
+        this.retryDelayMillis = builder.retryDelayMillis;
+        this.sessionStore = builder.sessionStore;
+    }
+
+    /**
+     * Use the session of a login that was just verified, and schedule its refresh
+     */
+    public synchronized void setSession(@NonNull Session session) {
+        this.session = session;
+        scheduleRefresh(session);
+    }
+
+    /**
+     * @return the current session, which may be about to expire
+     */
+    @Nullable
+    public synchronized Session getSession() {
+        return session;
+    }
+
+    /**
+     * @return the number of refreshes started so far
+     */
+    public synchronized int getRefreshCount() {
+        return refreshCount;
+    }
+
+    /**
+     * Get a session that is valid for at least the skew, refreshing it first when it is not.
+     * Never blocks: the future is already completed when the current session is good.
+     */
+    @NonNull
+    public ObservableFuture<Session, XmBindIdError> getValidSession() {
+        synchronized (this) {
+            if (session != null && clock.getAsLong() < session.getExpiresAtMillis() - skewMillis) {
+                PromiseFuture<Session, XmBindIdError> valid = new PromiseFuture<>();
+                valid.complete(session);
+                return valid;
+            }
+        }
+        return refresh();
+    }
+
+    /**
+     * Refresh the session now, or join the refresh in flight
+     */
+    @NonNull
+    public ObservableFuture<Session, XmBindIdError> refresh() {
+        PromiseFuture<Session, XmBindIdError> result;
+        Session current;
+        synchronized (this) {
+            if (inFlight != null) {
+                return inFlight;
+            }
+            result = new PromiseFuture<>();
+            inFlight = result;
+            current = session;
+            refreshCount++;
+            if (scheduledRefresh != null) {
+                scheduledRefresh.cancel(false);
+                scheduledRefresh = null;
+            }
+        }
+
+        // Outside the lock, the refresher may complete on this thread
+        ObservableFuture<Session, XmBindIdError> refreshed;
+        try {
+            refreshed = Objects.requireNonNull(refresher.refresh(current));
+        } catch (RuntimeException e) {
+            onRefreshFailed(result, new XmBindIdErrorImpl(XmBindIdErrorCode.PlatformError, String.valueOf(e.getMessage())));
+            return result;
+        }
+        refreshed.addListener(new ObservableFuture.Listener<Session, XmBindIdError>() {
+            @Override
+            public void onComplete(Session newSession) {
+                onRefreshed(result, newSession);
+            }
+
+            @Override
+            public void onReject(XmBindIdError error) {
+                onRefreshFailed(result, error);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Stop the scheduled refreshes
+     */
+    public synchronized void shutdown() {
+        if (scheduledRefresh != null) {
+            scheduledRefresh.cancel(false);
+            scheduledRefresh = null;
+        }
+        scheduler.shutdown();
+    }
+
+    private void onRefreshed(PromiseFuture<Session, XmBindIdError> result, Session newSession) {
+        synchronized (this) {
+            session = newSession;
+            inFlight = null;
+            scheduleRefresh(newSession);
+        }
+        if (sessionStore != null) {
+            sessionStore.put(newSession);
+        }
+        result.complete(newSession);
+    }
+
+    private void onRefreshFailed(PromiseFuture<Session, XmBindIdError> result, XmBindIdError error) {
+        synchronized (this) {
+            inFlight = null;
+            // Try again later while the current tokens still work
+            if (session != null && isTransient(error)) {
+                long now = clock.getAsLong();
+                long retryAt = Math.min(now + retryDelayMillis, session.getExpiresAtMillis());
+                if (retryAt > now) {
+                    schedule(retryAt - now);
+                }
+            }
+        }
+        Timber.w("Session refresh failed: %s %s", error.getCode(), error.getMessage());
+        result.reject(error);
+    }
+
+    /**
+     * @return whether the same refresh may succeed later, as after a network or server failure
+     */
+    private static boolean isTransient(XmBindIdError error) {
+        return error.getCode() == XmBindIdErrorCode.InternetConnection
+                || error.getCode() == XmBindIdErrorCode.ServerError;
+    }
+
+    private void scheduleRefresh(Session scheduled) {
+        if (scheduled.getExpiresAtMillis() < 0) {
+            // Without an exp claim there is nothing to refresh ahead of
+            return;
+        }
+        long jitter = (long) (jitterMillis * random.getAsDouble());
+        long refreshAt = scheduled.getExpiresAtMillis() - skewMillis - jitter;
+        schedule(Math.max(0, refreshAt - clock.getAsLong()));
+    }
+
+    private void schedule(long delayMillis) {
+        if (scheduledRefresh != null) {
+            scheduledRefresh.cancel(false);
+        }
+        scheduledRefresh = scheduler.schedule(() -> {
+            synchronized (this) {
+                scheduledRefresh = null;
+            }
+            refresh();
+        }, delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public static class Builder {
+        private final Refresher refresher;
+        private ScheduledExecutorService scheduler;
+        private LongSupplier clock = System::currentTimeMillis;
+        private DoubleSupplier random = () -> ThreadLocalRandom.current().nextDouble();
+        private long skewMillis = DEFAULT_SKEW_MILLIS;
+        private long jitterMillis = DEFAULT_JITTER_MILLIS;
+        private long retryDelayMillis = DEFAULT_RETRY_DELAY_MILLIS;
+        private SessionStore sessionStore;
+
+        public Builder(@NonNull Refresher refresher) {
+            this.refresher = refresher;
+        }
+
+        /**
+         * @param scheduler runs the scheduled refreshes, a single background thread by default
+         */
+        public Builder scheduler(ScheduledExecutorService scheduler) {
+            this.scheduler = scheduler;
+            return this;
+        }
+
+        /**
+         * @param clock wall clock in milliseconds, compared with the token exp claim
+         */
+        public Builder clock(LongSupplier clock) {
+            this.clock = clock;
+            return this;
+        }
+
+        /**
+         * @param random source of the jitter, between 0 and 1
+         */
+        public Builder random(DoubleSupplier random) {
+            this.random = random;
+            return this;
+        }
+
+        /**
+         * @param skew how long before exp a session is refreshed, and no longer handed out as valid
+         */
+        public Builder skew(long skew, TimeUnit unit) {
+            this.skewMillis = unit.toMillis(skew);
+            return this;
+        }
+
+        /**
+         * @param jitter the most a scheduled refresh is moved earlier, at random
+         */
+        public Builder jitter(long jitter, TimeUnit unit) {
+            this.jitterMillis = unit.toMillis(jitter);
+            return this;
+        }
+
+        /**
+         * @param delay how long after a failed refresh it is tried again
+         */
+        public Builder retryDelay(long delay, TimeUnit unit) {
+            this.retryDelayMillis = unit.toMillis(delay);
+            return this;
+        }
+
+        /**
+         * @param sessionStore where refreshed sessions are kept
+         */
+        public Builder sessionStore(SessionStore sessionStore) {
+            this.sessionStore = sessionStore;
+            return this;
+        }
+
+        public TokenManager build() {
+            return new TokenManager(this);
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package com.ts.bindid.example.java.metrics;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * InMemoryReporter keeps the last reported snapshot, for tests and debug screens.
+ */
+public class InMemoryReporter implements MetricsReporter {
+
+    private volatile MetricsSnapshot last;
+
+    @Override
+    public void report(@NonNull MetricsSnapshot snapshot) {
+        last = snapshot;
+    }
+
+    @Nullable
+    public MetricsSnapshot getLast() {
+        return last;
+    }
+}
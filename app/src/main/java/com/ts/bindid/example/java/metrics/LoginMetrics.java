@@ -0,0 +1,117 @@
+package com.ts.bindid.example.java.metrics;
+
+import androidx.annotation.NonNull;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * LoginMetrics times each stage of the BindID login and counts its errors by error code.
+ *
+ * Stages are timed with a monotonic clock:
+ * <pre>
+ *     long start = metrics.start();
+ *     ...
+ *     metrics.stop(LoginStage.AUTHENTICATE, start);
+ * </pre>
+ * Histograms are allocated up front, so timing a stage does not allocate.
+ * Snapshots are built and handed to the reporters only when {@link #flush()} is called.
+ */
+public class LoginMetrics {
+
+    private final LongSupplier nanoClock;
+    private final Map<LoginStage, LatencyHistogram> histograms = new EnumMap<>(LoginStage.class);
+    private final Map<LoginStage, ConcurrentHashMap<String, LongAdder>> errors = new EnumMap<>(LoginStage.class);
+    private final CopyOnWriteArrayList<MetricsReporter> reporters = new CopyOnWriteArrayList<>();
+
+    public LoginMetrics() {
+        this(System::nanoTime);
+    }
+
+    /**
+     * @param nanoClock a monotonic clock in nanoseconds
+     */
+    public LoginMetrics(@NonNull LongSupplier nanoClock) {
+        this.nanoClock = nanoClock;
+        for (LoginStage stage : LoginStage.values()) {
+            histograms.put(stage, new LatencyHistogram());
+            errors.put(stage, new ConcurrentHashMap<>());
+        }
+    }
+
+    public void addReporter(@NonNull MetricsReporter reporter) {
+        reporters.add(reporter);
+    }
+
+    /**
+     * @return the start time of a stage, to pass to {@link #stop(LoginStage, long)}
+     */
+    public long start() {
+        return nanoClock.getAsLong();
+    }
+
+    /**
+     * Record a successful stage that started at the given time
+     */
+    public void stop(@NonNull LoginStage stage, long startNanos) {
+        record(stage, nanoClock.getAsLong() - startNanos);
+    }
+
+    public void record(@NonNull LoginStage stage, long nanos) {
+        histograms.get(stage).record(nanos);
+    }
+
+    /**
+     * Record a failed stage that started at the given time
+     * @param errorCode the error code, such as an XmBindIdErrorCode
+     */
+    public void stopWithError(@NonNull LoginStage stage, long startNanos, @NonNull Enum<?> errorCode) {
+        stopWithError(stage, startNanos, errorCode.name());
+    }
+
+    public void stopWithError(@NonNull LoginStage stage, long startNanos, @NonNull String errorCode) {
+        record(stage, nanoClock.getAsLong() - startNanos);
+        LongAdder count = errors.get(stage).get(errorCode);
+        if (count == null) {
+            count = errors.get(stage).computeIfAbsent(errorCode, code -> new LongAdder());
+        }
+        count.increment();
+    }
+
+    @NonNull
+    public MetricsSnapshot snapshot() {
+        Map<LoginStage, MetricsSnapshot.StageSnapshot> stages = new EnumMap<>(LoginStage.class);
+        for (LoginStage stage : LoginStage.values()) {
+            LatencyHistogram histogram = histograms.get(stage);
+            Map<String, Long> stageErrors = new TreeMap<>();
+            for (Map.Entry<String, LongAdder> error : errors.get(stage).entrySet()) {
+                stageErrors.put(error.getKey(), error.getValue().sum());
+            }
+            stages.put(stage, new MetricsSnapshot.StageSnapshot(
+                    histogram.getCount(),
+                    histogram.getPercentileMicros(50),
+                    histogram.getPercentileMicros(95),
+                    histogram.getPercentileMicros(99),
+                    stageErrors));
+        }
+        return new MetricsSnapshot(stages);
+    }
+
+    /**
+     * Hand a snapshot to every reporter, typically once a login completed or failed
+     */
+    public void flush() {
+        if (reporters.isEmpty()) {
+            return;
+        }
+        MetricsSnapshot snapshot = snapshot();
+        for (MetricsReporter reporter : reporters) {
+            reporter.report(snapshot);
+        }
+    }
+}
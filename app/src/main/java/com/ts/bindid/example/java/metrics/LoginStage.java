@@ -0,0 +1,14 @@
+package com.ts.bindid.example.java.metrics;
+
+/**
+ * The timed stages of a BindID login, in the order they happen.
+ */
+public enum LoginStage {
+    SDK_INITIALIZE,
+    AUTHENTICATE,
+    EXCHANGE_TOKEN,
+    JWKS_FETCH,
+    VERIFY,
+    TOKEN_SCREEN,
+    TOKEN_UPLOAD
+}
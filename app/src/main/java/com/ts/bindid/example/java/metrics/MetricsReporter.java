@@ -0,0 +1,10 @@
+package com.ts.bindid.example.java.metrics;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Receives snapshots of the login metrics, see {@link LoginMetrics#addReporter(MetricsReporter)}.
+ */
+public interface MetricsReporter {
+    void report(@NonNull MetricsSnapshot snapshot);
+}
@@ -0,0 +1,70 @@
+package com.ts.bindid.example.java.metrics;
+
+import androidx.annotation.NonNull;
+
+import com.nimbusds.jose.util.JSONObjectUtils;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * An immutable copy of the login metrics, exportable as JSON.
+ */
+public class MetricsSnapshot {
+
+    public static class StageSnapshot {
+        public final long count;
+        public final long p50Micros;
+        public final long p95Micros;
+        public final long p99Micros;
+        public final Map<String, Long> errors;
+
+        StageSnapshot(long count, long p50Micros, long p95Micros, long p99Micros, Map<String, Long> errors) {
+            this.count = count;
+            this.p50Micros = p50Micros;
+            this.p95Micros = p95Micros;
+            this.p99Micros = p99Micros;
+            this.errors = Collections.unmodifiableMap(errors);
+        }
+
+        Map<String, Object> toMap() {
+            Map<String, Object> map = new LinkedHashMap<>();
+            map.put("count", count);
+            map.put("p50_us", p50Micros);
+            map.put("p95_us", p95Micros);
+            map.put("p99_us", p99Micros);
+            map.put("errors", errors);
+            return map;
+        }
+    }
+
+    private final Map<LoginStage, StageSnapshot> stages;
+
+    MetricsSnapshot(Map<LoginStage, StageSnapshot> stages) {
+        this.stages = Collections.unmodifiableMap(stages);
+    }
+
+    @NonNull
+    public StageSnapshot get(@NonNull LoginStage stage) {
+        return stages.get(stage);
+    }
+
+    /**
+     * @return the snapshot as a JSON object with one entry per stage, such as
+     * {"AUTHENTICATE":{"count":3,"p50_us":1279,"p95_us":1535,"p99_us":1535,"errors":{}}}
+     */
+    @NonNull
+    public String toJson() {
+        Map<String, Object> json = new LinkedHashMap<>();
+        for (Map.Entry<LoginStage, StageSnapshot> stage : stages.entrySet()) {
+            json.put(stage.getKey().name(), stage.getValue().toMap());
+        }
+        return JSONObjectUtils.toJSONString(json);
+    }
+
+    @Override
+    public String toString() {
+        return toJson();
+    }
+}
@@ -0,0 +1,16 @@
+package com.ts.bindid.example.java.metrics;
+
+import androidx.annotation.NonNull;
+
+import timber.log.Timber;
+
+/**
+ * TimberReporter logs every snapshot as JSON.
+ */
+public class TimberReporter implements MetricsReporter {
+
+    @Override
+    public void report(@NonNull MetricsSnapshot snapshot) {
+        Timber.tag("LoginMetrics").i("%s", snapshot.toJson());
+    }
+}
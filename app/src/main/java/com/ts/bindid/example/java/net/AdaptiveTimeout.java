@@ -0,0 +1,120 @@
+package com.ts.bindid.example.java.net;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * AdaptiveTimeout derives the timeout of an endpoint from its recent latency: a percentile of the
+ * last calls times a margin, within bounds. A healthy endpoint gets a short timeout, so a call that
+ * hangs is given up early, and a slow but working one is given the time it needs.
+ *
+ * Until enough calls were seen the maximum is used. A call that timed out is counted at the
+ * timeout, so an endpoint that slows down raises its own timeout instead of timing out forever.
+ */
+public class AdaptiveTimeout {
+
+    private static final int DEFAULT_WINDOW = 64;
+    private static final int DEFAULT_MIN_SAMPLES = 16;
+    private static final double DEFAULT_PERCENTILE = 99;
+    private static final double DEFAULT_MULTIPLIER = 2;
+    private static final long DEFAULT_MIN_MILLIS = TimeUnit.SECONDS.toMillis(2);
+    private static final long DEFAULT_MAX_MILLIS = TimeUnit.SECONDS.toMillis(20);
+
+    private final long[] samples;
+    private final int minSamples;
+    private final double percentile;
+    private final double multiplier;
+    private final long minMillis;
+    private final long maxMillis;
+
+    private int next;
+    private int count;
+
+    private AdaptiveTimeout(Builder builder) {
+        this.samples = new long[builder.window];
+        this.minSamples = Math.min(builder.minSamples, builder.window);
+        this.percentile = builder.percentile;
+        this.multiplier = builder.multiplier;
+        this.minMillis = builder.minMillis;
+        this.maxMillis = builder.maxMillis;
+    }
+
+    /**
+     * Count the latency of a call that got an answer, successful or not
+     */
+    public synchronized void record(long millis) {
+        samples[next] = millis;
+        next = (next + 1) % samples.length;
+        count = Math.min(count + 1, samples.length);
+    }
+
+    /**
+     * Count a call that timed out after the given timeout
+     */
+    public void recordTimeout(long timeoutMillis) {
+        record(timeoutMillis);
+    }
+
+    /**
+     * @return the longest timeout this can give a call
+     */
+    public long getMaxMillis() {
+        return maxMillis;
+    }
+
+    /**
+     * @return the timeout of the next call
+     */
+    public long getTimeoutMillis() {
+        long[] window;
+        synchronized (this) {
+            if (count < minSamples) {
+                return maxMillis;
+            }
+            window = Arrays.copyOf(samples, count);
+        }
+        Arrays.sort(window);
+        int rank = (int) Math.ceil(percentile / 100.0 * window.length) - 1;
+        long observed = window[Math.max(0, Math.min(rank, window.length - 1))];
+        return Math.max(minMillis, Math.min(maxMillis, (long) (observed * multiplier)));
+    }
+
+    public static class Builder {
+        private int window = DEFAULT_WINDOW;
+        private int minSamples = DEFAULT_MIN_SAMPLES;
+        private double percentile = DEFAULT_PERCENTILE;
+        private double multiplier = DEFAULT_MULTIPLIER;
+        private long minMillis = DEFAULT_MIN_MILLIS;
+        private long maxMillis = DEFAULT_MAX_MILLIS;
+
+        /**
+         * @param window how many of the last calls are considered
+         * @param minSamples calls needed before the timeout adapts
+         */
+        public Builder window(int window, int minSamples) {
+            this.window = window;
+            this.minSamples = minSamples;
+            return this;
+        }
+
+        /**
+         * @param percentile of the latency, between 0 and 100
+         * @param multiplier margin over that percentile
+         */
+        public Builder percentile(double percentile, double multiplier) {
+            this.percentile = percentile;
+            this.multiplier = multiplier;
+            return this;
+        }
+
+        public Builder bounds(long min, long max, TimeUnit unit) {
+            this.minMillis = unit.toMillis(min);
+            this.maxMillis = unit.toMillis(max);
+            return this;
+        }
+
+        public AdaptiveTimeout build() {
+            return new AdaptiveTimeout(this);
+        }
+    }
+}
@@ -0,0 +1,146 @@
+package com.ts.bindid.example.java.net;
+
+import androidx.annotation.NonNull;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+import timber.log.Timber;
+
+/**
+ * CircuitBreaker stops calls to an endpoint that keeps failing, so a degraded BindID endpoint is
+ * not hammered by every user retrying at once and the user is answered without waiting.
+ *
+ * After a number of consecutive failures the circuit opens and calls fail fast. Once the open
+ * period has passed the circuit is half open: a single probe call goes through, and its outcome
+ * closes the circuit or opens it again.
+ */
+public class CircuitBreaker {
+
+    public enum State {
+        CLOSED,
+        OPEN,
+        HALF_OPEN
+    }
+
+    private static final int DEFAULT_FAILURE_THRESHOLD = 5;
+    private static final long DEFAULT_OPEN_NANOS = TimeUnit.SECONDS.toNanos(30);
+
+    private final String name;
+    private final int failureThreshold;
+    private final long openNanos;
+    private final LongSupplier nanoClock;
+
+    private State state = State.CLOSED;
+    private int consecutiveFailures;
+    private long openedAtNanos;
+    private boolean probeInFlight;
+
+    private CircuitBreaker(Builder builder) {
+        this.name = builder.name;
+        this.failureThreshold = builder.failureThreshold;
+        this.openNanos = builder.openNanos;
+        this.nanoClock = builder.nanoClock;
+    }
+
+    /**
+     * Ask to make a call, which must then be followed by {@link #onSuccess()} or {@link #onFailure()}
+     * @return false when the call must fail fast
+     */
+    public synchronized boolean tryAcquire() {
+        switch (state) {
+            case CLOSED:
+                return true;
+            case OPEN:
+                if (nanoClock.getAsLong() - openedAtNanos < openNanos) {
+                    return false;
+                }
+                state = State.HALF_OPEN;
+                Timber.i("Circuit %s half open, probing", name);
+                // Fall through to let this call be the probe
+            case HALF_OPEN:
+            default:
+                if (probeInFlight) {
+                    return false;
+                }
+                probeInFlight = true;
+                return true;
+        }
+    }
+
+    public synchronized void onSuccess() {
+        consecutiveFailures = 0;
+        probeInFlight = false;
+        if (state != State.CLOSED) {
+            Timber.i("Circuit %s closed", name);
+            state = State.CLOSED;
+        }
+    }
+
+    public synchronized void onFailure() {
+        consecutiveFailures++;
+        boolean probeFailed = state == State.HALF_OPEN && probeInFlight;
+        probeInFlight = false;
+        if (probeFailed || (state == State.CLOSED && consecutiveFailures >= failureThreshold)) {
+            Timber.w("Circuit %s open after %d failures", name, consecutiveFailures);
+            state = State.OPEN;
+            openedAtNanos = nanoClock.getAsLong();
+        }
+    }
+
+    /**
+     * A call was let through but did not reach the endpoint, for example it was cancelled
+     */
+    public synchronized void onIgnored() {
+        probeInFlight = false;
+    }
+
+    @NonNull
+    public synchronized State getState() {
+        return state;
+    }
+
+    @NonNull
+    public String getName() {
+        return name;
+    }
+
+    public static class Builder {
+        private final String name;
+        private int failureThreshold = DEFAULT_FAILURE_THRESHOLD;
+        private long openNanos = DEFAULT_OPEN_NANOS;
+        private LongSupplier nanoClock = System::nanoTime;
+
+        /**
+         * @param name of the endpoint, for the logs
+         */
+        public Builder(@NonNull String name) {
+            this.name = name;
+        }
+
+        /**
+         * @param failures consecutive failures that open the circuit
+         */
+        public Builder failureThreshold(int failures) {
+            this.failureThreshold = failures;
+            return this;
+        }
+
+        /**
+         * @param duration how long calls fail fast before a probe is let through
+         */
+        public Builder openDuration(long duration, TimeUnit unit) {
+            this.openNanos = unit.toNanos(duration);
+            return this;
+        }
+
+        public Builder nanoClock(LongSupplier nanoClock) {
+            this.nanoClock = nanoClock;
+            return this;
+        }
+
+        public CircuitBreaker build() {
+            return new CircuitBreaker(this);
+        }
+    }
+}
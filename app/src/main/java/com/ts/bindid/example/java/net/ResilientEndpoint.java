@@ -0,0 +1,403 @@
+package com.ts.bindid.example.java.net;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.ts.bindid.XmBindIdError;
+import com.ts.bindid.XmBindIdErrorCode;
+import com.ts.bindid.impl.XmBindIdErrorImpl;
+import com.ts.bindid.util.ObservableFuture;
+import com.ts.bindid.util.PromiseFuture;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.SocketTimeoutException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.DoubleSupplier;
+import java.util.function.LongSupplier;
+
+import okhttp3.Interceptor;
+import okhttp3.Request;
+import okhttp3.Response;
+import timber.log.Timber;
+
+/**
+ * ResilientEndpoint guards the calls to one BindID endpoint with an {@link AdaptiveTimeout}, a
+ * {@link CircuitBreaker} and, for idempotent HTTP calls, retries bounded by a {@link RetryBudget}.
+ *
+ * SDK calls go through {@link #call(Attempt)} and are never retried: the authentication involves
+ * the user and its code can only be exchanged once. HTTP calls go through {@link #interceptor()},
+ * which retries GET and HEAD requests that failed to connect, timed out or got a 5xx.
+ *
+ * Failures are reported with the error codes the login screen already handles: a timeout is an
+ * {@link XmBindIdErrorCode#InternetConnection} and an open circuit a {@link XmBindIdErrorCode#ServerError},
+ * both of which fall back to the last verified session.
+ */
+public class ResilientEndpoint {
+
+    /**
+     * Starts one SDK call
+     */
+    public interface Attempt<V> {
+        @NonNull
+        ObservableFuture<V, XmBindIdError> start();
+    }
+
+    /**
+     * Thrown by {@link #interceptor()} instead of calling an endpoint whose circuit is open
+     */
+    public static class CircuitOpenException extends IOException {
+
+        private static final long serialVersionUID = 1L;
+
+        CircuitOpenException(String name) {
+            super(name + " is unavailable, try again later");
+        }
+    }
+
+    private static final int DEFAULT_MAX_ATTEMPTS = 3;
+    private static final long DEFAULT_BACKOFF_MILLIS = 200;
+
+    private static volatile ScheduledExecutorService defaultScheduler;
+
+    private final String name;
+    private final CircuitBreaker breaker;
+    @Nullable private final AdaptiveTimeout timeout;
+    private final RetryBudget retryBudget;
+    private final int maxAttempts;
+    private final long backoffMillis;
+    private final ScheduledExecutorService scheduler;
+    private final LongSupplier nanoClock;
+    private final DoubleSupplier random;
+
+    private ResilientEndpoint(Builder builder) {
+        this.name = builder.name;
+        this.breaker = builder.breaker != null ? builder.breaker
+                : new CircuitBreaker.Builder(builder.name).nanoClock(builder.nanoClock).build();
+        this.timeout = builder.timeout;
+        this.retryBudget = builder.retryBudget != null ? builder.retryBudget : new RetryBudget();
+        this.maxAttempts = builder.maxAttempts;
+        this.backoffMillis = builder.backoffMillis;
+        this.scheduler = builder.scheduler != null ? builder.scheduler : getDefaultScheduler();
+        this.nanoClock = builder.nanoClock;
+        this.random = builder.random;
+    }
+
+    @NonNull
+    public String getName() {
+        return name;
+    }
+
+    @NonNull
+    public CircuitBreaker getCircuitBreaker() {
+        return breaker;
+    }
+
+    @Nullable
+    public AdaptiveTimeout getTimeout() {
+        return timeout;
+    }
+
+    /**
+     * @return the longest an HTTP call through {@link #interceptor()} takes when every attempt
+     * times out at the maximum timeout, backoffs included, or 0 without a timeout. A call timeout
+     * of the client shorter than this cancels the call before the endpoint gives up on it.
+     */
+    public long getMaxCallMillis() {
+        if (timeout == null) {
+            return 0;
+        }
+        long backoffs = backoffMillis * ((1L << (maxAttempts - 1)) - 1);
+        return maxAttempts * timeout.getMaxMillis() + backoffs;
+    }
+
+    /**
+     * Make an SDK call, unless the circuit is open, and give up on it once it takes longer than
+     * the timeout. The SDK future cannot be cancelled, so a late result is dropped.
+     */
+    @NonNull
+    public <V> ObservableFuture<V, XmBindIdError> call(@NonNull Attempt<V> attempt) {
+        PromiseFuture<V, XmBindIdError> result = new PromiseFuture<>();
+        if (!breaker.tryAcquire()) {
+            result.reject(new XmBindIdErrorImpl(XmBindIdErrorCode.ServerError, new CircuitOpenException(name).getMessage()));
+            return result;
+        }
+
+        AtomicBoolean settled = new AtomicBoolean();
+        ScheduledFuture<?> timer = null;
+        if (timeout != null) {
+            long timeoutMillis = timeout.getTimeoutMillis();
+            timer = scheduler.schedule(() -> {
+                if (settled.compareAndSet(false, true)) {
+                    Timber.w("%s timed out after %dms", name, timeoutMillis);
+                    timeout.recordTimeout(timeoutMillis);
+                    breaker.onFailure();
+                    result.reject(new XmBindIdErrorImpl(XmBindIdErrorCode.InternetConnection,
+                            name + " timed out after " + timeoutMillis + "ms"));
+                }
+            }, timeoutMillis, TimeUnit.MILLISECONDS);
+        }
+        ScheduledFuture<?> pendingTimer = timer;
+
+        long start = nanoClock.getAsLong();
+        ObservableFuture<V, XmBindIdError> future;
+        try {
+            future = attempt.start();
+        } catch (RuntimeException e) {
+            if (settle(settled, pendingTimer)) {
+                breaker.onIgnored();
+                result.reject(new XmBindIdErrorImpl(XmBindIdErrorCode.PlatformError, String.valueOf(e.getMessage())));
+            }
+            return result;
+        }
+        future.addListener(new ObservableFuture.Listener<V, XmBindIdError>() {
+            @Override
+            public void onComplete(V value) {
+                if (settle(settled, pendingTimer)) {
+                    recordLatency(start);
+                    breaker.onSuccess();
+                    result.complete(value);
+                }
+            }
+
+            @Override
+            public void onReject(XmBindIdError error) {
+                if (settle(settled, pendingTimer)) {
+                    onError(error.getCode(), start);
+                    result.reject(error);
+                }
+            }
+        });
+        return result;
+    }
+
+    /**
+     * @return an application interceptor applying the timeout, circuit breaker and retries of
+     * this endpoint to the calls of an OkHttpClient
+     */
+    @NonNull
+    public Interceptor interceptor() {
+        return this::intercept;
+    }
+
+    private Response intercept(Interceptor.Chain chain) throws IOException {
+        Request request = chain.request();
+        boolean idempotent = "GET".equals(request.method()) || "HEAD".equals(request.method());
+        retryBudget.onCall();
+        long callStart = nanoClock.getAsLong();
+        for (int attempt = 1; ; attempt++) {
+            if (!breaker.tryAcquire()) {
+                throw new CircuitOpenException(name);
+            }
+            Interceptor.Chain timed = chain;
+            long timeoutMillis = 0;
+            if (timeout != null) {
+                timeoutMillis = timeout.getTimeoutMillis();
+                timed = chain.withConnectTimeout((int) timeoutMillis, TimeUnit.MILLISECONDS)
+                        .withReadTimeout((int) timeoutMillis, TimeUnit.MILLISECONDS);
+            }
+
+            long start = nanoClock.getAsLong();
+            Response response;
+            try {
+                response = timed.proceed(request);
+            } catch (IOException e) {
+                if (chain.call().isCanceled()) {
+                    if (callTimedOut(chain, callStart)) {
+                        // Cancelled by the call timeout of the client, the endpoint took too long
+                        breaker.onFailure();
+                    } else {
+                        breaker.onIgnored();
+                    }
+                    throw e;
+                }
+                if (timeout != null && e instanceof SocketTimeoutException) {
+                    timeout.recordTimeout(timeoutMillis);
+                }
+                breaker.onFailure();
+                if (!shouldRetry(idempotent, attempt)) {
+                    throw e;
+                }
+                Timber.d("Retrying %s after %s", name, e.getMessage());
+                backOff(attempt);
+                continue;
+            }
+
+            recordLatency(start);
+            if (response.code() < 500) {
+                breaker.onSuccess();
+                return response;
+            }
+            breaker.onFailure();
+            if (!shouldRetry(idempotent, attempt)) {
+                return response;
+            }
+            Timber.d("Retrying %s after HTTP %d", name, response.code());
+            response.close();
+            backOff(attempt);
+        }
+    }
+
+    private boolean callTimedOut(Interceptor.Chain chain, long callStart) {
+        long callTimeoutNanos = chain.call().timeout().timeoutNanos();
+        return callTimeoutNanos > 0 && nanoClock.getAsLong() - callStart >= callTimeoutNanos;
+    }
+
+    private boolean shouldRetry(boolean idempotent, int attempt) {
+        return idempotent && attempt < maxAttempts && retryBudget.tryRetry();
+    }
+
+    /**
+     * Wait an exponential delay with full jitter, so clients that failed together do not retry
+     * together
+     */
+    private void backOff(int attempt) throws InterruptedIOException {
+        long delayMillis = (long) (random.getAsDouble() * (backoffMillis << (attempt - 1)));
+        try {
+            Thread.sleep(delayMillis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while retrying " + name);
+        }
+    }
+
+    private void onError(XmBindIdErrorCode code, long start) {
+        switch (code) {
+            case InternetConnection:
+            case ServerError:
+                breaker.onFailure();
+                break;
+            case UserCanceled:
+            case SdkNotInitialized:
+            case InvalidConfig:
+            case PlatformError:
+                // Says nothing about the endpoint
+                breaker.onIgnored();
+                break;
+            default:
+                // The endpoint answered
+                recordLatency(start);
+                breaker.onSuccess();
+                break;
+        }
+    }
+
+    private void recordLatency(long start) {
+        if (timeout != null) {
+            timeout.record(TimeUnit.NANOSECONDS.toMillis(nanoClock.getAsLong() - start));
+        }
+    }
+
+    private static boolean settle(AtomicBoolean settled, @Nullable ScheduledFuture<?> timer) {
+        if (!settled.compareAndSet(false, true)) {
+            return false;
+        }
+        if (timer != null) {
+            timer.cancel(false);
+        }
+        return true;
+    }
+
+    private static ScheduledExecutorService getDefaultScheduler() {
+        ScheduledExecutorService scheduler = defaultScheduler;
+        if (scheduler == null) {
+            synchronized (ResilientEndpoint.class) {
+                scheduler = defaultScheduler;
+                if (scheduler == null) {
+                    scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                        Thread thread = new Thread(runnable, "endpoint-timeout");
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+                    defaultScheduler = scheduler;
+                }
+            }
+        }
+        return scheduler;
+    }
+
+    public static class Builder {
+        private final String name;
+        private CircuitBreaker breaker;
+        private AdaptiveTimeout timeout;
+        private RetryBudget retryBudget;
+        private int maxAttempts = DEFAULT_MAX_ATTEMPTS;
+        private long backoffMillis = DEFAULT_BACKOFF_MILLIS;
+        private ScheduledExecutorService scheduler;
+        private LongSupplier nanoClock = System::nanoTime;
+        private DoubleSupplier random = Math::random;
+
+        /**
+         * @param name of the endpoint, for the logs and errors
+         */
+        public Builder(@NonNull String name) {
+            this.name = name;
+        }
+
+        /**
+         * @param breaker opens after 5 consecutive failures for 30 seconds by default
+         */
+        public Builder circuitBreaker(@NonNull CircuitBreaker breaker) {
+            this.breaker = breaker;
+            return this;
+        }
+
+        /**
+         * @param timeout of every attempt, none by default, for calls that wait on the user
+         */
+        public Builder timeout(@Nullable AdaptiveTimeout timeout) {
+            this.timeout = timeout;
+            return this;
+        }
+
+        public Builder retryBudget(@NonNull RetryBudget retryBudget) {
+            this.retryBudget = retryBudget;
+            return this;
+        }
+
+        /**
+         * @param maxAttempts of an idempotent HTTP call, the first one included
+         */
+        public Builder maxAttempts(int maxAttempts) {
+            this.maxAttempts = maxAttempts;
+            return this;
+        }
+
+        /**
+         * @param backoff delay before the first retry at most, doubled for each further retry
+         */
+        public Builder backoff(long backoff, TimeUnit unit) {
+            this.backoffMillis = unit.toMillis(backoff);
+            return this;
+        }
+
+        /**
+         * @param scheduler runs the timeouts of SDK calls, a shared daemon thread by default
+         */
+        public Builder scheduler(@NonNull ScheduledExecutorService scheduler) {
+            this.scheduler = scheduler;
+            return this;
+        }
+
+        public Builder nanoClock(@NonNull LongSupplier nanoClock) {
+            this.nanoClock = nanoClock;
+            return this;
+        }
+
+        /**
+         * @param random between 0 and 1, picks the backoff jitter
+         */
+        public Builder random(@NonNull DoubleSupplier random) {
+            this.random = random;
+            return this;
+        }
+
+        public ResilientEndpoint build() {
+            return new ResilientEndpoint(this);
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package com.ts.bindid.example.java.net;
+
+/**
+ * RetryBudget bounds retries to a share of the calls made, so retries cannot multiply the load on
+ * an endpoint that is already failing. Every call adds a fraction of a retry to the budget, up to
+ * a cap, and every retry spends a whole one.
+ */
+public class RetryBudget {
+
+    private static final double DEFAULT_RATIO = 0.2;
+    private static final double DEFAULT_MAX_RETRIES = 10;
+
+    private final double ratio;
+    private final double maxRetries;
+    private double balance;
+
+    public RetryBudget() {
+        this(DEFAULT_RATIO, DEFAULT_MAX_RETRIES);
+    }
+
+    /**
+     * @param ratio retries earned per call, 0.2 for at most one retry per five calls
+     * @param maxRetries retries that can be saved up, and the budget at start
+     */
+    public RetryBudget(double ratio, double maxRetries) {
+        this.ratio = ratio;
+        this.maxRetries = maxRetries;
+        this.balance = maxRetries;
+    }
+
+    public synchronized void onCall() {
+        balance = Math.min(maxRetries, balance + ratio);
+    }
+
+    /**
+     * @return whether a retry may be made, in which case it is spent
+     */
+    public synchronized boolean tryRetry() {
+        if (balance < 1) {
+            return false;
+        }
+        balance -= 1;
+        return true;
+    }
+}
@@ -0,0 +1,150 @@
+package com.ts.bindid.example.java.net;
+
+import android.content.Context;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.ts.bindid.example.java.BuildConfig;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.Cache;
+import okhttp3.ConnectionPool;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import okhttp3.logging.HttpLoggingInterceptor;
+import timber.log.Timber;
+
+/**
+ * SharedHttpClient holds the one OkHttpClient used by every network call in the app.
+ *
+ * Sharing the client shares its dispatcher and connection pool, so consecutive calls to the
+ * BindID host reuse the open connection (multiplexed over HTTP/2 when the server supports it)
+ * instead of paying for a new TLS handshake each time.
+ */
+public final class SharedHttpClient {
+
+    private static final long DEFAULT_CACHE_SIZE = 5 * 1024 * 1024;
+    private static final long DEFAULT_TIMEOUT_MILLIS = TimeUnit.SECONDS.toMillis(15);
+    private static final long DEFAULT_CALL_TIMEOUT_MILLIS = TimeUnit.SECONDS.toMillis(30);
+    private static final int DEFAULT_MAX_IDLE_CONNECTIONS = 5;
+    private static final long DEFAULT_KEEP_ALIVE_MILLIS = TimeUnit.MINUTES.toMillis(5);
+
+    private static volatile OkHttpClient instance;
+
+    private SharedHttpClient() {
+    }
+
+    /**
+     * Get the application wide client, with its disk cache in the app cache directory and
+     * request logging enabled in debug builds only
+     * @param context
+     */
+    public static OkHttpClient getInstance(@NonNull Context context) {
+        OkHttpClient client = instance;
+        if (client == null) {
+            synchronized (SharedHttpClient.class) {
+                client = instance;
+                if (client == null) {
+                    client = new Builder()
+                            .cacheDirectory(new File(context.getApplicationContext().getCacheDir(), "http"))
+                            .logging(BuildConfig.DEBUG)
+                            .build();
+                    instance = client;
+                }
+            }
+        }
+        return client;
+    }
+
+    public static class Builder {
+        private File cacheDirectory;
+        private long cacheSize = DEFAULT_CACHE_SIZE;
+        private long connectTimeoutMillis = DEFAULT_TIMEOUT_MILLIS;
+        private long readTimeoutMillis = DEFAULT_TIMEOUT_MILLIS;
+        private long writeTimeoutMillis = DEFAULT_TIMEOUT_MILLIS;
+        private long callTimeoutMillis = DEFAULT_CALL_TIMEOUT_MILLIS;
+        private int maxIdleConnections = DEFAULT_MAX_IDLE_CONNECTIONS;
+        private long keepAliveMillis = DEFAULT_KEEP_ALIVE_MILLIS;
+        private boolean logging;
+
+        /**
+         * @param cacheDirectory where HTTP responses are cached, or null to disable the cache
+         */
+        public Builder cacheDirectory(@Nullable File cacheDirectory) {
+            this.cacheDirectory = cacheDirectory;
+            return this;
+        }
+
+        public Builder cacheSize(long bytes) {
+            this.cacheSize = bytes;
+            return this;
+        }
+
+        public Builder connectTimeout(long timeout, TimeUnit unit) {
+            this.connectTimeoutMillis = unit.toMillis(timeout);
+            return this;
+        }
+
+        public Builder readTimeout(long timeout, TimeUnit unit) {
+            this.readTimeoutMillis = unit.toMillis(timeout);
+            return this;
+        }
+
+        public Builder writeTimeout(long timeout, TimeUnit unit) {
+            this.writeTimeoutMillis = unit.toMillis(timeout);
+            return this;
+        }
+
+        /**
+         * @param timeout hard limit on a whole call, so a server that answers slowly but steadily
+         *                cannot keep it open past the read timeout
+         */
+        public Builder callTimeout(long timeout, TimeUnit unit) {
+            this.callTimeoutMillis = unit.toMillis(timeout);
+            return this;
+        }
+
+        public Builder connectionPool(int maxIdleConnections, long keepAlive, TimeUnit unit) {
+            this.maxIdleConnections = maxIdleConnections;
+            this.keepAliveMillis = unit.toMillis(keepAlive);
+            return this;
+        }
+
+        /**
+         * @param logging whether requests are logged through Timber, never enable in release builds
+         */
+        public Builder logging(boolean logging) {
+            this.logging = logging;
+            return this;
+        }
+
+        public OkHttpClient build() {
+            OkHttpClient.Builder builder = new OkHttpClient.Builder()
+                    .protocols(Arrays.asList(Protocol.HTTP_2, Protocol.HTTP_1_1))
+                    .connectionPool(new ConnectionPool(maxIdleConnections, keepAliveMillis, TimeUnit.MILLISECONDS))
+                    .connectTimeout(connectTimeoutMillis, TimeUnit.MILLISECONDS)
+                    .readTimeout(readTimeoutMillis, TimeUnit.MILLISECONDS)
+                    .writeTimeout(writeTimeoutMillis, TimeUnit.MILLISECONDS)
+                    .callTimeout(callTimeoutMillis, TimeUnit.MILLISECONDS);
+
+            if (cacheDirectory != null) {
+                builder.cache(new Cache(cacheDirectory, cacheSize));
+            }
+
+            if (logging) {
+                HttpLoggingInterceptor interceptor = new HttpLoggingInterceptor(message -> Timber.tag("OkHttp").d(message));
+                // Headers only, the bodies carry the ID and access tokens
+                interceptor.setLevel(HttpLoggingInterceptor.Level.HEADERS);
+                interceptor.redactHeader("Authorization");
+                interceptor.redactHeader("Cookie");
+                builder.addInterceptor(interceptor);
+            }
+
+            return builder.build();
+        }
+    }
+}
@@ -0,0 +1,176 @@
+package com.ts.bindid.example.java.startup;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.function.LongSupplier;
+
+/**
+ * StartupOrchestrator runs the process start tasks in parallel, each one as soon as the tasks it
+ * depends on have finished.
+ *
+ * Dependencies only order the tasks: a task still runs when one of its dependencies failed.
+ */
+public class StartupOrchestrator {
+
+    /**
+     * A startup task, which must call {@link Completion#onComplete()} or
+     * {@link Completion#onFailure(String)} exactly once, possibly from another thread
+     */
+    public interface Task {
+        void run(@NonNull Completion completion);
+    }
+
+    public interface Completion {
+        void onComplete();
+        void onFailure(String error);
+    }
+
+    public interface Listener {
+        /**
+         * @param error null when the task completed, otherwise why it failed
+         */
+        void onTaskFinished(@NonNull String name, @Nullable String error, long nanos);
+        void onAllFinished();
+    }
+
+    private static class Node {
+        final String name;
+        final Task task;
+        final List<String> dependsOn;
+        final List<Node> dependents = new ArrayList<>();
+        int pendingDependencies;
+
+        Node(String name, Task task, List<String> dependsOn) {
+            this.name = name;
+            this.task = task;
+            this.dependsOn = dependsOn;
+        }
+    }
+
+    private final Executor executor;
+    private final LongSupplier nanoClock;
+    private final Map<String, Node> nodes = new LinkedHashMap<>();
+    private Listener listener;
+    private int pendingTasks;
+    private boolean started;
+
+    public StartupOrchestrator(@NonNull Executor executor, @NonNull LongSupplier nanoClock) {
+        this.executor = executor;
+        this.nanoClock = nanoClock;
+    }
+
+    /**
+     * Add a task
+     * @param name unique name of the task
+     * @param dependsOn names of tasks, added before this one, that must finish before it starts
+     */
+    public synchronized StartupOrchestrator add(@NonNull String name, @NonNull Task task, String... dependsOn) {
+        if (started) {
+            throw new IllegalStateException("Startup already started");
+        }
+        if (nodes.containsKey(name)) {
+            throw new IllegalArgumentException("Duplicate startup task " + name);
+        }
+        for (String dependency : dependsOn) {
+            if (!nodes.containsKey(dependency)) {
+                throw new IllegalArgumentException("Unknown dependency " + dependency + " of " + name);
+            }
+        }
+        nodes.put(name, new Node(name, task, Collections.unmodifiableList(Arrays.asList(dependsOn))));
+        return this;
+    }
+
+    /**
+     * Start every task that has no dependencies
+     * @param listener told about every finished task, from the thread that finished it
+     */
+    public void start(@NonNull Listener listener) {
+        List<Node> ready = new ArrayList<>();
+        synchronized (this) {
+            if (started) {
+                throw new IllegalStateException("Startup already started");
+            }
+            started = true;
+            this.listener = listener;
+            pendingTasks = nodes.size();
+            for (Node node : nodes.values()) {
+                node.pendingDependencies = node.dependsOn.size();
+                for (String dependency : node.dependsOn) {
+                    nodes.get(dependency).dependents.add(node);
+                }
+                if (node.pendingDependencies == 0) {
+                    ready.add(node);
+                }
+            }
+        }
+        if (ready.isEmpty()) {
+            listener.onAllFinished();
+            return;
+        }
+        for (Node node : ready) {
+            submit(node);
+        }
+    }
+
+    private void submit(Node node) {
+        executor.execute(() -> {
+            long start = nanoClock.getAsLong();
+            Completion completion = new Completion() {
+                private boolean finished;
+
+                @Override
+                public void onComplete() {
+                    finish(null);
+                }
+
+                @Override
+                public void onFailure(String error) {
+                    finish(error != null ? error : "Failed");
+                }
+
+                private void finish(@Nullable String error) {
+                    synchronized (this) {
+                        if (finished) {
+                            return;
+                        }
+                        finished = true;
+                    }
+                    onNodeFinished(node, error, nanoClock.getAsLong() - start);
+                }
+            };
+            try {
+                node.task.run(completion);
+            } catch (RuntimeException e) {
+                completion.onFailure(e.getMessage());
+            }
+        });
+    }
+
+    private void onNodeFinished(Node node, @Nullable String error, long nanos) {
+        List<Node> ready = new ArrayList<>();
+        boolean allFinished;
+        synchronized (this) {
+            for (Node dependent : node.dependents) {
+                if (--dependent.pendingDependencies == 0) {
+                    ready.add(dependent);
+                }
+            }
+            allFinished = --pendingTasks == 0;
+        }
+        listener.onTaskFinished(node.name, error, nanos);
+        for (Node dependent : ready) {
+            submit(dependent);
+        }
+        if (allFinished) {
+            listener.onAllFinished();
+        }
+    }
+}
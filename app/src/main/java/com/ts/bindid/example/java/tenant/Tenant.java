@@ -0,0 +1,106 @@
+package com.ts.bindid.example.java.tenant;
+
+import androidx.annotation.NonNull;
+
+import com.ts.bindid.example.java.jwks.JwksKeyStore;
+import com.ts.bindid.example.java.login.LoginPipeline;
+import com.ts.bindid.example.java.metrics.LoginMetrics;
+import com.ts.bindid.example.java.net.ResilientEndpoint;
+
+import okhttp3.OkHttpClient;
+
+/**
+ * Tenant holds the login components of one {@link TenantProfile}. Nothing is shared with the
+ * other tenants but the HTTP dispatcher: each has its own connection pool, key set cache,
+ * validator, metrics and circuit breakers.
+ */
+public final class Tenant {
+
+    private final TenantProfile profile;
+    private final OkHttpClient client;
+    private final JwksKeyStore keyStore;
+    private final LoginPipeline loginPipeline;
+    private final LoginMetrics metrics;
+    private final ResilientEndpoint authenticateEndpoint;
+    private final ResilientEndpoint exchangeEndpoint;
+    private final ResilientEndpoint jwksEndpoint;
+
+    Tenant(TenantProfile profile, OkHttpClient client, JwksKeyStore keyStore, LoginPipeline loginPipeline,
+           LoginMetrics metrics, ResilientEndpoint authenticateEndpoint, ResilientEndpoint exchangeEndpoint,
+           ResilientEndpoint jwksEndpoint) {
+        this.profile = profile;
+        this.client = client;
+        this.keyStore = keyStore;
+        this.loginPipeline = loginPipeline;
+        this.metrics = metrics;
+        this.authenticateEndpoint = authenticateEndpoint;
+        this.exchangeEndpoint = exchangeEndpoint;
+        this.jwksEndpoint = jwksEndpoint;
+    }
+
+    @NonNull
+    public TenantProfile getProfile() {
+        return profile;
+    }
+
+    @NonNull
+    public String getId() {
+        return profile.getId();
+    }
+
+    /**
+     * @return the HTTP client of the tenant, whose pool only holds connections to its host
+     */
+    @NonNull
+    public OkHttpClient getClient() {
+        return client;
+    }
+
+    @NonNull
+    public JwksKeyStore getKeyStore() {
+        return keyStore;
+    }
+
+    /**
+     * @return verifies ID tokens against the tenant host and client ID
+     */
+    @NonNull
+    public LoginPipeline getLoginPipeline() {
+        return loginPipeline;
+    }
+
+    @NonNull
+    public LoginMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * @return guards the SDK authentication, with a circuit breaker but no timeout as it waits on the user
+     */
+    @NonNull
+    public ResilientEndpoint getAuthenticateEndpoint() {
+        return authenticateEndpoint;
+    }
+
+    /**
+     * @return guards the SDK token exchange
+     */
+    @NonNull
+    public ResilientEndpoint getExchangeEndpoint() {
+        return exchangeEndpoint;
+    }
+
+    /**
+     * @return guards the key set fetches of {@link #getKeyStore()}, which are retried
+     */
+    @NonNull
+    public ResilientEndpoint getJwksEndpoint() {
+        return jwksEndpoint;
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return profile.toString();
+    }
+}
@@ -0,0 +1,157 @@
+package com.ts.bindid.example.java.tenant;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.ts.bindid.XmBindIdServerEnvironment;
+import com.ts.bindid.XmBindIdServerEnvironmentMode;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * TenantProfile is the BindID setup of one tenant of a white-label app: the environment, host,
+ * client ID and redirect URI, and the connection pool of its HTTP client.
+ */
+public final class TenantProfile {
+
+    private static final int DEFAULT_MAX_IDLE_CONNECTIONS = 2;
+    private static final long DEFAULT_KEEP_ALIVE_MILLIS = TimeUnit.MINUTES.toMillis(5);
+
+    private final String id;
+    private final String host;
+    private final String clientId;
+    private final String redirectUri;
+    private final XmBindIdServerEnvironmentMode environmentMode;
+    @Nullable private final String environmentUrl;
+    private final String jwksUrl;
+    private final int maxIdleConnections;
+    private final long keepAliveMillis;
+
+    private TenantProfile(Builder builder) {
+        this.id = builder.id;
+        this.host = builder.host;
+        this.clientId = builder.clientId;
+        this.redirectUri = builder.redirectUri;
+        this.environmentMode = builder.environmentMode;
+        this.environmentUrl = builder.environmentUrl;
+        this.jwksUrl = builder.jwksUrl != null ? builder.jwksUrl : builder.host + "/jwks";
+        this.maxIdleConnections = builder.maxIdleConnections;
+        this.keepAliveMillis = builder.keepAliveMillis;
+    }
+
+    @NonNull
+    public String getId() {
+        return id;
+    }
+
+    /**
+     * @return the BindID host, which is also the issuer of the ID tokens
+     */
+    @NonNull
+    public String getHost() {
+        return host;
+    }
+
+    /**
+     * @return the client ID, which is also the audience of the ID tokens
+     */
+    @NonNull
+    public String getClientId() {
+        return clientId;
+    }
+
+    @NonNull
+    public String getRedirectUri() {
+        return redirectUri;
+    }
+
+    @NonNull
+    public String getJwksUrl() {
+        return jwksUrl;
+    }
+
+    public int getMaxIdleConnections() {
+        return maxIdleConnections;
+    }
+
+    public long getKeepAliveMillis() {
+        return keepAliveMillis;
+    }
+
+    /**
+     * @return the server environment the SDK is initialized with for this tenant
+     */
+    @NonNull
+    public XmBindIdServerEnvironment createServerEnvironment() {
+        return environmentUrl != null ? XmBindIdServerEnvironment.createWithUrl(environmentUrl)
+                : XmBindIdServerEnvironment.createWithMode(environmentMode);
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return id + " (" + host + ")";
+    }
+
+    public static class Builder {
+        private final String id;
+        private final String host;
+        private final String clientId;
+        private final String redirectUri;
+        private XmBindIdServerEnvironmentMode environmentMode = XmBindIdServerEnvironmentMode.Sandbox;
+        private String environmentUrl;
+        private String jwksUrl;
+        private int maxIdleConnections = DEFAULT_MAX_IDLE_CONNECTIONS;
+        private long keepAliveMillis = DEFAULT_KEEP_ALIVE_MILLIS;
+
+        /**
+         * @param id unique name of the tenant, used in file names
+         * @param host the BindID host, for example https://signin.bindid-sandbox.io
+         */
+        public Builder(@NonNull String id, @NonNull String host, @NonNull String clientId, @NonNull String redirectUri) {
+            this.id = id;
+            this.host = host;
+            this.clientId = clientId;
+            this.redirectUri = redirectUri;
+        }
+
+        /**
+         * @param mode Sandbox by default
+         */
+        public Builder environment(@NonNull XmBindIdServerEnvironmentMode mode) {
+            this.environmentMode = mode;
+            this.environmentUrl = null;
+            return this;
+        }
+
+        /**
+         * @param url of a BindID environment that is neither Sandbox nor Production
+         */
+        public Builder environmentUrl(@NonNull String url) {
+            this.environmentMode = XmBindIdServerEnvironmentMode.Other;
+            this.environmentUrl = url;
+            return this;
+        }
+
+        /**
+         * @param jwksUrl where the signing keys are published, host/jwks by default
+         */
+        public Builder jwksUrl(@NonNull String jwksUrl) {
+            this.jwksUrl = jwksUrl;
+            return this;
+        }
+
+        /**
+         * @param maxIdleConnections connections kept open to the tenant host between calls
+         */
+        public Builder connectionPool(int maxIdleConnections, long keepAlive, TimeUnit unit) {
+            this.maxIdleConnections = maxIdleConnections;
+            this.keepAliveMillis = unit.toMillis(keepAlive);
+            return this;
+        }
+
+        public TenantProfile build() {
+            return new TenantProfile(this);
+        }
+    }
+}
@@ -0,0 +1,312 @@
+package com.ts.bindid.example.java.tenant;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.nimbusds.jose.jwk.RSAKey;
+import com.ts.bindid.XmBindIdError;
+import com.ts.bindid.XmBindIdErrorCode;
+import com.ts.bindid.example.java.jwks.JwksKeyStore;
+import com.ts.bindid.example.java.login.LoginPipeline;
+import com.ts.bindid.example.java.metrics.LoginMetrics;
+import com.ts.bindid.example.java.net.AdaptiveTimeout;
+import com.ts.bindid.example.java.net.ResilientEndpoint;
+import com.ts.bindid.example.java.startup.StartupOrchestrator;
+import com.ts.bindid.impl.XmBindIdErrorImpl;
+import com.ts.bindid.util.ObservableFuture;
+import com.ts.bindid.util.PromiseFuture;
+import com.ts.bindid.validation.IdTokenValidator;
+import com.ts.bindid.validation.ValidationCache;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.ConnectionPool;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import timber.log.Timber;
+
+/**
+ * TenantRegistry holds the {@link Tenant}s of a white-label app, one per {@link TenantProfile},
+ * and which of them the user logs in to.
+ *
+ * The BindID SDK holds a single configuration per process, so only the active tenant is
+ * initialized in the SDK, and switching initializes the SDK again. The key set cache, HTTP pool
+ * and metrics of every tenant stay as they are, so switching back finds them warm.
+ */
+public class TenantRegistry {
+
+    /**
+     * Initializes the BindID SDK with the configuration of a tenant
+     */
+    public interface SdkInitializer {
+        @NonNull
+        ObservableFuture<Boolean, XmBindIdError> initialize(@NonNull TenantProfile profile);
+    }
+
+    // Past the longest the key set endpoint takes to give up, so it gives up first
+    private static final long CALL_TIMEOUT_MARGIN_MILLIS = TimeUnit.SECONDS.toMillis(1);
+
+    private final Map<String, Tenant> tenants;
+    @Nullable private final SdkInitializer sdkInitializer;
+
+    private Tenant active;
+    // The tenant the SDK was last initialized with, and the switch in flight
+    @Nullable private String sdkTenant;
+    @Nullable private String switchingTo;
+    @Nullable private PromiseFuture<Boolean, XmBindIdError> switching;
+
+    private TenantRegistry(Builder builder) {
+        if (builder.profiles.isEmpty()) {
+            throw new IllegalStateException("At least one tenant is required");
+        }
+        Map<String, Tenant> tenants = new LinkedHashMap<>();
+        for (TenantProfile profile : builder.profiles) {
+            if (tenants.containsKey(profile.getId())) {
+                throw new IllegalArgumentException("Duplicate tenant " + profile.getId());
+            }
+            tenants.put(profile.getId(), createTenant(profile, builder));
+        }
+        this.tenants = Collections.unmodifiableMap(tenants);
+        this.sdkInitializer = builder.sdkInitializer;
+        this.active = builder.activeId != null ? get(builder.activeId) : tenants.values().iterator().next();
+    }
+
+    private static Tenant createTenant(TenantProfile profile, Builder builder) {
+        // Shares the dispatcher and cache of the base client, with a pool of its own
+        OkHttpClient client = builder.baseClient.newBuilder()
+                .connectionPool(new ConnectionPool(profile.getMaxIdleConnections(),
+                        profile.getKeepAliveMillis(), TimeUnit.MILLISECONDS))
+                .build();
+        LoginMetrics metrics = new LoginMetrics();
+        ResilientEndpoint authenticate = new ResilientEndpoint.Builder(profile.getId() + " authenticate").build();
+        ResilientEndpoint exchange = new ResilientEndpoint.Builder(profile.getId() + " token exchange")
+                .timeout(new AdaptiveTimeout.Builder().build())
+                .build();
+        ResilientEndpoint jwks = new ResilientEndpoint.Builder(profile.getId() + " jwks")
+                .timeout(new AdaptiveTimeout.Builder().build())
+                .build();
+        // The endpoint times out and retries each attempt, the call timeout only bounds them all
+        JwksKeyStore.Builder keyStore = new JwksKeyStore.Builder(profile.getJwksUrl())
+                .client(client.newBuilder().addInterceptor(jwks.interceptor()).build())
+                .callTimeout(jwks.getMaxCallMillis() + CALL_TIMEOUT_MARGIN_MILLIS, TimeUnit.MILLISECONDS)
+                .metrics(metrics);
+        if (builder.snapshotDirectory != null) {
+            keyStore.snapshotFile(new File(builder.snapshotDirectory, "bindid_jwks_" + profile.getId()));
+        }
+        // Keys come from the key store, so the validator needs no key source of its own. A token
+        // verified again, after a refresh or a retry, is served from the cache.
+        IdTokenValidator validator = new IdTokenValidator.Builder(null)
+                .issuer(profile.getHost())
+                .audience(profile.getClientId())
+                .cache(new ValidationCache.Builder().build())
+                .build();
+        return new Tenant(profile, client, keyStore.build(),
+                LoginPipeline.create(builder.mainExecutor, validator), metrics, authenticate, exchange, jwks);
+    }
+
+    /**
+     * @return the tenant with the given ID
+     * @throws IllegalArgumentException when there is none
+     */
+    @NonNull
+    public Tenant get(@NonNull String id) {
+        Tenant tenant = tenants.get(id);
+        if (tenant == null) {
+            throw new IllegalArgumentException("Unknown tenant " + id);
+        }
+        return tenant;
+    }
+
+    /**
+     * @return every tenant, in the order they were added
+     */
+    @NonNull
+    public List<Tenant> getTenants() {
+        return new ArrayList<>(tenants.values());
+    }
+
+    /**
+     * @return the tenant the user logs in to
+     */
+    @NonNull
+    public synchronized Tenant getActive() {
+        return active;
+    }
+
+    /**
+     * Initialize the SDK with a tenant, unless it already is, and make it the active one once it
+     * is. Until then, and if the initialization fails, the previous tenant stays active. The
+     * other tenants are left as they are.
+     * @return completes once the SDK is initialized for the tenant
+     */
+    @NonNull
+    public ObservableFuture<Boolean, XmBindIdError> switchTo(@NonNull String id) {
+        Tenant tenant = get(id);
+        PromiseFuture<Boolean, XmBindIdError> result;
+        synchronized (this) {
+            if (sdkInitializer == null || (switching == null && id.equals(sdkTenant))) {
+                active = tenant;
+                PromiseFuture<Boolean, XmBindIdError> done = new PromiseFuture<>();
+                done.complete(true);
+                return done;
+            }
+            if (switching != null && id.equals(switchingTo)) {
+                return switching;
+            }
+            result = new PromiseFuture<>();
+            switching = result;
+            switchingTo = id;
+        }
+
+        Timber.i("Initializing the SDK for tenant %s", tenant);
+        ObservableFuture<Boolean, XmBindIdError> initialization;
+        try {
+            initialization = sdkInitializer.initialize(tenant.getProfile());
+        } catch (RuntimeException e) {
+            onSwitched(id, result, new XmBindIdErrorImpl(XmBindIdErrorCode.PlatformError, String.valueOf(e.getMessage())));
+            return result;
+        }
+        initialization.addListener(new ObservableFuture.Listener<Boolean, XmBindIdError>() {
+            @Override
+            public void onComplete(Boolean initialized) {
+                onSwitched(id, result, null);
+            }
+
+            @Override
+            public void onReject(XmBindIdError error) {
+                onSwitched(id, result, error);
+            }
+        });
+        return result;
+    }
+
+    private void onSwitched(String id, PromiseFuture<Boolean, XmBindIdError> result, @Nullable XmBindIdError error) {
+        synchronized (this) {
+            // Only the last switch decides which tenant the SDK is initialized with
+            if (switching == result) {
+                switching = null;
+                switchingTo = null;
+                sdkTenant = error == null ? id : null;
+                if (error == null) {
+                    active = get(id);
+                }
+            }
+        }
+        if (error == null) {
+            result.complete(true);
+        } else {
+            result.reject(error);
+        }
+    }
+
+    /**
+     * Add the warm-up of every tenant to the startup tasks: a connection to its host, then its
+     * key set fetched over that connection. The tasks of different tenants run in parallel.
+     */
+    public void addWarmUpTasks(@NonNull StartupOrchestrator orchestrator) {
+        for (Tenant tenant : tenants.values()) {
+            String preconnect = "preconnect:" + tenant.getId();
+            orchestrator
+                    .add(preconnect, completion -> preconnect(tenant, completion))
+                    .add("jwks:" + tenant.getId(), completion -> tenant.getKeyStore().getSigningKey(null,
+                            new JwksKeyStore.Listener() {
+                                @Override
+                                public void onKey(RSAKey key) {
+                                    completion.onComplete();
+                                }
+
+                                @Override
+                                public void onFailure(String error) {
+                                    completion.onFailure(error);
+                                }
+                            }), preconnect);
+        }
+    }
+
+    /**
+     * Open the connection to the tenant host, resolving DNS and completing the TLS handshake, so
+     * its first login request reuses it. Asynchronous, so tenants do not wait for each other.
+     */
+    private static void preconnect(Tenant tenant, StartupOrchestrator.Completion completion) {
+        Request request = new Request.Builder()
+                .url(tenant.getProfile().getHost())
+                .head()
+                .build();
+        tenant.getClient().newCall(request).enqueue(new Callback() {
+            @Override
+            public void onFailure(@NonNull Call call, @NonNull IOException e) {
+                completion.onFailure(e.getMessage());
+            }
+
+            @Override
+            public void onResponse(@NonNull Call call, @NonNull Response response) {
+                // Any response means the connection is open
+                response.close();
+                completion.onComplete();
+            }
+        });
+    }
+
+    public static class Builder {
+        private final OkHttpClient baseClient;
+        private final Executor mainExecutor;
+        private final List<TenantProfile> profiles = new ArrayList<>();
+        private String activeId;
+        private File snapshotDirectory;
+        private SdkInitializer sdkInitializer;
+
+        /**
+         * @param baseClient whose settings every tenant client starts from
+         * @param mainExecutor where login results are delivered, usually the main thread
+         */
+        public Builder(@NonNull OkHttpClient baseClient, @NonNull Executor mainExecutor) {
+            this.baseClient = baseClient;
+            this.mainExecutor = mainExecutor;
+        }
+
+        public Builder add(@NonNull TenantProfile profile) {
+            profiles.add(profile);
+            return this;
+        }
+
+        /**
+         * @param id the tenant active at start, the first one added by default
+         */
+        public Builder active(@NonNull String id) {
+            this.activeId = id;
+            return this;
+        }
+
+        /**
+         * @param directory where each tenant keeps the snapshot of its key set, none by default
+         */
+        public Builder snapshotDirectory(@Nullable File directory) {
+            this.snapshotDirectory = directory;
+            return this;
+        }
+
+        /**
+         * @param sdkInitializer initializes the SDK on {@link TenantRegistry#switchTo(String)}, which otherwise
+         *                       only changes the active tenant
+         */
+        public Builder sdkInitializer(@Nullable SdkInitializer sdkInitializer) {
+            this.sdkInitializer = sdkInitializer;
+            return this;
+        }
+
+        public TenantRegistry build() {
+            return new TenantRegistry(this);
+        }
+    }
+}
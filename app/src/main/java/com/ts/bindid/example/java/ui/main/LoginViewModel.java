@@ -0,0 +1,184 @@
+package com.ts.bindid.example.java.ui.main;
+
+import android.app.Application;
+import android.util.Base64;
+
+import androidx.annotation.NonNull;
+import androidx.core.content.ContextCompat;
+import androidx.lifecycle.AndroidViewModel;
+import androidx.lifecycle.LiveData;
+import androidx.lifecycle.MutableLiveData;
+import androidx.lifecycle.Observer;
+
+import com.ts.bindid.XmBindIdAuthenticationRequest;
+import com.ts.bindid.XmBindIdError;
+import com.ts.bindid.XmBindIdExchangeTokenRequest;
+import com.ts.bindid.XmBindIdExchangeTokenResponse;
+import com.ts.bindid.XmBindIdResponse;
+import com.ts.bindid.XmBindIdScopeType;
+import com.ts.bindid.XmBindIdSdk;
+import com.ts.bindid.example.java.BindIdApplication;
+import com.ts.bindid.example.java.login.LoginPipeline;
+import com.ts.bindid.example.java.login.LoginState;
+import com.ts.bindid.example.java.login.LoginStateMachine;
+import com.ts.bindid.example.java.login.Session;
+import com.ts.bindid.example.java.tenant.Tenant;
+import com.ts.bindid.example.java.upload.TokenUploadQueue;
+import com.ts.bindid.util.ObservableFuture;
+
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.concurrent.Executor;
+
+import timber.log.Timber;
+
+/**
+ * LoginViewModel hosts the {@link LoginStateMachine} of the login screen, so a login in flight
+ * survives a configuration change, and exposes its state as LiveData. The SDK and pipeline
+ * callbacks hold this ViewModel, never the fragment, and are dropped once it is cleared.
+ */
+public class LoginViewModel extends AndroidViewModel {
+
+    private final MutableLiveData<LoginState> state = new MutableLiveData<>();
+    private final Executor mainExecutor;
+    private final LoginStateMachine machine;
+    private final Observer<BindIdApplication.StartupState> startupObserver;
+
+    public LoginViewModel(@NonNull Application application) {
+        super(application);
+        BindIdApplication bindIdApplication = (BindIdApplication) application;
+        mainExecutor = ContextCompat.getMainExecutor(application);
+        machine = new LoginStateMachine.Builder(new SdkSteps(bindIdApplication), this::onStateChanged)
+                .sessionStore(bindIdApplication.getSessionStore())
+                .metrics(bindIdApplication.getMetrics())
+                .build();
+        state.setValue(machine.getState());
+
+        // The BindID SDK is configured and initialised when the process starts, the login is
+        // ready once it is
+        startupObserver = startupState -> {
+            if (startupState == BindIdApplication.StartupState.READY) {
+                Timber.i("Login enabled %dms after process start", bindIdApplication.getTimeToLoginEnabledMillis());
+                machine.onSdkReady();
+            }
+        };
+        bindIdApplication.getStartupState().observeForever(startupObserver);
+    }
+
+    @NonNull
+    public LiveData<LoginState> getState() {
+        return state;
+    }
+
+    /**
+     * Authenticate the user, unless a login is already in flight
+     */
+    public void login() {
+        machine.login();
+    }
+
+    /**
+     * The screen has shown the verified session or the error
+     */
+    public void onResultShown() {
+        machine.onResultShown();
+    }
+
+    @Override
+    protected void onCleared() {
+        BindIdApplication.get(getApplication()).getStartupState().removeObserver(startupObserver);
+        machine.clear();
+        super.onCleared();
+    }
+
+    private void onStateChanged(LoginState loginState) {
+        Session session = loginState.getSession();
+        if (loginState.getStep() == LoginState.Step.VERIFIED && !loginState.isOffline() && session != null) {
+            BindIdApplication application = getApplication();
+            // Compared with the next login, a session shown again is not recorded twice
+            application.getPassportHistory().record(session.getClaims());
+
+            // When connected to your company's backend, send the ID and access tokens to be processed
+            sendTokenToServer(session.getAccessToken(), session.getIdToken(), session.getClaims().get("sub"));
+        }
+        // Steps complete on the main thread, but the exchange endpoint's timeout does not. Every
+        // state is delivered in order, postValue would keep only the last one posted before the
+        // main thread runs and skip VERIFYING, which starts the passport preload
+        mainExecutor.execute(() -> state.setValue(loginState));
+    }
+
+    // sendTokenToServer should send the ID and access tokens received upon successful authentication
+    // to your backend server, where it will be processed
+    private void sendTokenToServer(String one, String two, String subject) {
+        // The upload queue sends the tokens in the background and retries until they are delivered
+        TokenUploadQueue uploadQueue = BindIdApplication.get(getApplication()).getUploadQueue();
+        if (uploadQueue == null) {
+            return;
+        }
+        uploadQueue.enqueue(subject, one, two);
+    }
+
+    /**
+     * The login steps backed by the BindID SDK and the app's login pipeline
+     */
+    private static class SdkSteps implements LoginStateMachine.Steps {
+        private final BindIdApplication application;
+        private final SecureRandom random = new SecureRandom();
+        // Sent with the authentication in flight, the ID token must echo it back
+        private volatile String nonce;
+        // The tenant of the login in flight, a switch during the login does not change it
+        private volatile Tenant tenant;
+
+        SdkSteps(BindIdApplication application) {
+            this.application = application;
+        }
+
+        @NonNull
+        @Override
+        public ObservableFuture<XmBindIdResponse, XmBindIdError> authenticate() {
+            Tenant tenant = application.getTenants().getActive();
+            this.tenant = tenant;
+            XmBindIdAuthenticationRequest request = XmBindIdAuthenticationRequest.create(
+                    tenant.getProfile().getRedirectUri());
+            request.setUsePkce(true);
+            nonce = newNonce();
+            request.setNonce(nonce);
+            request.setScope(Arrays.asList(XmBindIdScopeType.OpenId, XmBindIdScopeType.Email, XmBindIdScopeType.NetworkInfo));
+            // Fails fast while the tenant's BindID host is down
+            return tenant.getAuthenticateEndpoint().call(() -> XmBindIdSdk.getInstance().authenticate(request));
+        }
+
+        /**
+         * Exchange the authentication response for the ID and access token using a PKCE token exchange
+         */
+        @NonNull
+        @Override
+        public ObservableFuture<XmBindIdExchangeTokenResponse, XmBindIdError> exchangeToken(@NonNull XmBindIdResponse response) {
+            // Given up after the adaptive timeout, but never retried: the code is only valid once
+            return tenant.getExchangeEndpoint().call(() ->
+                    XmBindIdSdk.getInstance().exchangeToken(XmBindIdExchangeTokenRequest.create(response)));
+        }
+
+        /**
+         * Validate the ID token off the main thread, with the verifier for the public key from
+         * the BindID server or from the cached key set
+         */
+        @NonNull
+        @Override
+        public LoginPipeline.Task verify(@NonNull String idToken, @NonNull LoginPipeline.Callback callback) {
+            Tenant tenant = this.tenant;
+            return tenant.getLoginPipeline().verify(idToken, nonce, tenant.getKeyStore(), callback);
+        }
+
+        private String newNonce() {
+            byte[] bytes = new byte[16];
+            random.nextBytes(bytes);
+            return Base64.encodeToString(bytes, Base64.URL_SAFE | Base64.NO_PADDING | Base64.NO_WRAP);
+        }
+
+        @Override
+        public boolean isOffline() {
+            return tenant.getKeyStore().isOffline();
+        }
+    }
+}
@@ -0,0 +1,229 @@
+package com.ts.bindid.example.java.ui.main.token;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.StringRes;
+
+import com.ts.bindid.example.java.format.TimestampFormatter;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * ClaimSchema is the table that maps ID token claims to passport rows: each entry has the claim
+ * path, the row label, how the value is formatted and the value shown when the claim is missing.
+ *
+ * Rows are built on demand in a single pass over the claims, and only the claims that are shown
+ * are formatted. Claims the table does not know are shown as generic rows after the table rows,
+ * labelled with their path, unless they are listed as ignored.
+ */
+public final class ClaimSchema {
+
+    public interface ValueFormatter {
+        @NonNull
+        String format(@NonNull String value, @NonNull TimestampFormatter timestamps);
+    }
+
+    public static final ValueFormatter TEXT = (value, timestamps) -> value;
+
+    /**
+     * Epoch seconds, rendered as a date. Values that are not a number are shown as they are.
+     */
+    public static final ValueFormatter TIMESTAMP = (value, timestamps) -> {
+        try {
+            return timestamps.format(Long.parseLong(value));
+        } catch (NumberFormatException e) {
+            return value;
+        }
+    };
+
+    private static final class Entry {
+        final String path;
+        @StringRes final int label;
+        final ValueFormatter formatter;
+        @Nullable final String defaultValue;
+        @Nullable final String defaultScope;
+
+        Entry(String path, int label, ValueFormatter formatter, @Nullable String defaultValue,
+              @Nullable String defaultScope) {
+            this.path = path;
+            this.label = label;
+            this.formatter = formatter;
+            this.defaultValue = defaultValue;
+            this.defaultScope = defaultScope;
+        }
+    }
+
+    private final Entry[] entries;
+    private final Map<String, Integer> indexByPath;
+    private final Set<String> ignored;
+    private final int[] labels;
+    private final String[] scopes;
+    private final int[] scopeIndexes;
+
+    private ClaimSchema(List<Entry> entries, Set<String> ignored) {
+        this.entries = entries.toArray(new Entry[0]);
+        this.indexByPath = new HashMap<>(entries.size() * 2);
+        this.labels = new int[entries.size()];
+        List<String> scopes = new ArrayList<>();
+        for (int i = 0; i < this.entries.length; i++) {
+            Entry entry = this.entries[i];
+            indexByPath.put(entry.path, i);
+            labels[i] = entry.label;
+            if (entry.defaultScope != null && !scopes.contains(entry.defaultScope)) {
+                scopes.add(entry.defaultScope);
+            }
+        }
+        this.ignored = Collections.unmodifiableSet(ignored);
+        this.scopes = scopes.toArray(new String[0]);
+        this.scopeIndexes = new int[this.entries.length];
+        for (int i = 0; i < this.entries.length; i++) {
+            scopeIndexes[i] = this.entries[i].defaultScope != null
+                    ? indexOf(this.scopes, this.entries[i].defaultScope) : -1;
+        }
+    }
+
+    /**
+     * @return the labels of the table rows, in display order
+     */
+    @NonNull
+    int[] getLabels() {
+        return labels.clone();
+    }
+
+    /**
+     * @return the label of the row of a claim, or 0 when the table has no row for it
+     */
+    @StringRes
+    int label(@NonNull String path) {
+        Integer index = indexByPath.get(path);
+        return index != null ? entries[index].label : 0;
+    }
+
+    /**
+     * @return the value formatted as the row of the claim shows it
+     */
+    @NonNull
+    String format(@NonNull String path, @NonNull String value, @NonNull TimestampFormatter timestamps) {
+        Integer index = indexByPath.get(path);
+        return index != null ? entries[index].formatter.format(value, timestamps) : value;
+    }
+
+    /**
+     * Build the passport rows of the claims
+     * @param claims the verified claims
+     * @param labels the row labels for the current configuration
+     * @param timestamps renders the timestamp claims
+     */
+    @NonNull
+    public List<TokenItem> rows(@NonNull TokenClaims claims, @NonNull PassportLabels labels,
+                                @NonNull TimestampFormatter timestamps) {
+        String[] values = new String[entries.length];
+        boolean[] scopePresent = new boolean[scopes.length];
+        List<String> unknown = null;
+
+        // One pass over the claims, routing each one to its table entry
+        for (Map.Entry<String, String> claim : claims.asMap().entrySet()) {
+            String path = claim.getKey();
+            for (int i = 0; i < scopes.length; i++) {
+                if (!scopePresent[i] && isInScope(path, scopes[i])) {
+                    scopePresent[i] = true;
+                }
+            }
+            Integer index = indexByPath.get(path);
+            if (index != null) {
+                values[index] = claim.getValue();
+            } else if (!ignored.contains(path)) {
+                if (unknown == null) {
+                    unknown = new ArrayList<>();
+                }
+                unknown.add(path);
+            }
+        }
+
+        List<TokenItem> rows = new ArrayList<>(entries.length + (unknown != null ? unknown.size() : 0));
+        for (int i = 0; i < entries.length; i++) {
+            Entry entry = entries[i];
+            String value = values[i];
+            if (value != null) {
+                value = entry.formatter.format(value, timestamps);
+            } else if (scopeIndexes[i] < 0 || scopePresent[scopeIndexes[i]]) {
+                value = entry.defaultValue;
+            }
+            if (value != null) {
+                rows.add(new TokenItem(entry.path, labels.get(entry.label), value));
+            }
+        }
+
+        if (unknown != null) {
+            Collections.sort(unknown);
+            for (String path : unknown) {
+                rows.add(new TokenItem(path, path, claims.get(path)));
+            }
+        }
+        return rows;
+    }
+
+    private static boolean isInScope(String path, String scope) {
+        return path.length() > scope.length() && path.charAt(scope.length()) == '.' && path.startsWith(scope);
+    }
+
+    private static int indexOf(String[] array, String value) {
+        for (int i = 0; i < array.length; i++) {
+            if (array[i].equals(value)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    public static class Builder {
+        private final List<Entry> entries = new ArrayList<>();
+        private final Set<String> ignored = new HashSet<>();
+
+        /**
+         * Add a row shown only when the token has the claim
+         * @param path the claim name, or "parent.child" for a claim nested in an object
+         */
+        public Builder row(@NonNull String path, @StringRes int label, @NonNull ValueFormatter formatter) {
+            return row(path, label, formatter, null, null);
+        }
+
+        /**
+         * Add a row shown with a default value when the token does not have the claim
+         */
+        public Builder row(@NonNull String path, @StringRes int label, @NonNull ValueFormatter formatter,
+                           @NonNull String defaultValue) {
+            return row(path, label, formatter, defaultValue, null);
+        }
+
+        /**
+         * Add a row shown with a default value when the token does not have the claim but has
+         * the object the claim belongs to
+         * @param defaultScope the object the claim belongs to, such as bindid_network_info
+         */
+        public Builder row(@NonNull String path, @StringRes int label, @NonNull ValueFormatter formatter,
+                           @Nullable String defaultValue, @Nullable String defaultScope) {
+            entries.add(new Entry(path, label, formatter, defaultValue, defaultScope));
+            return this;
+        }
+
+        /**
+         * @param paths claims that are never shown, such as iss or exp
+         */
+        public Builder ignore(@NonNull String... paths) {
+            ignored.addAll(Arrays.asList(paths));
+            return this;
+        }
+
+        public ClaimSchema build() {
+            return new ClaimSchema(entries, ignored);
+        }
+    }
+}
@@ -5,18 +5,38 @@ import android.view.View;
 import android.view.ViewGroup;
 import android.widget.TextView;
 
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+import androidx.recyclerview.widget.AsyncDifferConfig;
+import androidx.recyclerview.widget.DiffUtil;
+import androidx.recyclerview.widget.ListAdapter;
 import androidx.recyclerview.widget.RecyclerView;
 
 import com.ts.bindid.example.java.R;
 
-import java.util.ArrayList;
-
 /**
  * Created by Ran Stone on 21/06/2021.
+ *
+ * PassportAdapter displays the passport rows. Rows are identified by their claim, so submitting
+ * refreshed claims only rebinds the rows whose label or value changed.
  */
-public class PassportAdapter extends RecyclerView.Adapter<PassportAdapter.ViewHolder> {
+public class PassportAdapter extends ListAdapter<TokenItem, PassportAdapter.ViewHolder> {
+
+    // Every row has the same layout
+    static final int ROW_TYPE = 0;
 
-    private ArrayList<TokenItem> localDataSet;
+    static final DiffUtil.ItemCallback<TokenItem> DIFF_CALLBACK = new DiffUtil.ItemCallback<TokenItem>() {
+        @Override
+        public boolean areItemsTheSame(@NonNull TokenItem oldItem, @NonNull TokenItem newItem) {
+            return oldItem.claim.equals(newItem.claim);
+        }
+
+        @Override
+        public boolean areContentsTheSame(@NonNull TokenItem oldItem, @NonNull TokenItem newItem) {
+            return oldItem.equals(newItem);
+        }
+    };
 
     /**
      * Provide a reference to the type of views that you are using
@@ -44,40 +64,61 @@ public class PassportAdapter extends RecyclerView.Adapter<PassportAdapter.ViewHo
         }
     }
 
+    // Set while a row inflated ahead of time is wrapped in a view holder
+    @Nullable private View preinflatedRow;
+
+    public PassportAdapter() {
+        super(DIFF_CALLBACK);
+        setHasStableIds(true);
+    }
+
     /**
-     * Initialize the dataset of the Adapter.
-     *
-     * @param dataSet String[] containing the data to populate views to be used
-     * by RecyclerView.
+     * @param config lets tests compute the diffs on the calling thread
      */
-    public PassportAdapter(ArrayList<TokenItem> dataSet) {
-        localDataSet = dataSet;
+    @VisibleForTesting
+    PassportAdapter(@NonNull AsyncDifferConfig<TokenItem> config) {
+        super(config);
+        setHasStableIds(true);
     }
 
     // Create new views (invoked by the layout manager)
+    @NonNull
     @Override
-    public ViewHolder onCreateViewHolder(ViewGroup viewGroup, int viewType) {
+    public ViewHolder onCreateViewHolder(@NonNull ViewGroup viewGroup, int viewType) {
         // Create a new view, which defines the UI of the list item
-        View view = LayoutInflater.from(viewGroup.getContext())
+        View view = preinflatedRow != null ? preinflatedRow : LayoutInflater.from(viewGroup.getContext())
                 .inflate(R.layout.item_passport, viewGroup, false);
 
         return new ViewHolder(view);
     }
 
+    /**
+     * Wrap a row inflated ahead of time in a view holder, ready to be put in a RecycledViewPool.
+     * Created through the adapter, so the holder has the view type the pool sorts it by.
+     */
+    @NonNull
+    ViewHolder wrapRow(@NonNull ViewGroup parent, @NonNull View row) {
+        preinflatedRow = row;
+        try {
+            return createViewHolder(parent, ROW_TYPE);
+        } finally {
+            preinflatedRow = null;
+        }
+    }
+
     // Replace the contents of a view (invoked by the layout manager)
     @Override
-    public void onBindViewHolder(ViewHolder viewHolder, final int position) {
+    public void onBindViewHolder(@NonNull ViewHolder viewHolder, final int position) {
 
         // Get element from your dataset at this position and replace the
         // contents of the view with that element
-        viewHolder.getName().setText(localDataSet.get(position).name);
-        viewHolder.getValue().setText(localDataSet.get(position).value);
+        TokenItem item = getItem(position);
+        viewHolder.getName().setText(item.name);
+        viewHolder.getValue().setText(item.value);
     }
 
-    // Return the size of your dataset (invoked by the layout manager)
     @Override
-    public int getItemCount() {
-        return localDataSet.size();
+    public long getItemId(int position) {
+        return getItem(position).id;
     }
 }
-
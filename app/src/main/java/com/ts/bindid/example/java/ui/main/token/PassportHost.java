@@ -0,0 +1,35 @@
+package com.ts.bindid.example.java.ui.main.token;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.ts.bindid.example.java.history.PassportChange;
+
+import java.util.List;
+
+/**
+ * Implemented by the activity hosting {@link TokenFragment}, which outlives the login screen
+ * that prepares the passport and the token screen that shows it.
+ */
+public interface PassportHost {
+
+    /**
+     * @return prepares the token screen while the login is in flight
+     */
+    @NonNull
+    PassportPreloader getPassportPreloader();
+
+    /**
+     * The first frame of the passport was drawn
+     * @param verifiedAtNanos when the token was verified, as passed to {@link TokenFragment#newInstance(TokenClaims, long)}
+     */
+    void onPassportDrawn(long verifiedAtNanos);
+
+    /**
+     * @param subject the user shown the passport
+     * @return the claims that changed since the user's previous login on this device, or null
+     * when there is none to compare with
+     */
+    @Nullable
+    List<PassportChange> getChangesSinceLastLogin(@NonNull String subject);
+}
@@ -0,0 +1,79 @@
+package com.ts.bindid.example.java.ui.main.token;
+
+import android.content.Context;
+import android.content.res.Resources;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.PluralsRes;
+import androidx.annotation.StringRes;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.IntFunction;
+
+/**
+ * PassportLabels holds the passport row labels resolved for one locale, so they are looked up
+ * once per configuration instead of once per row. The labels only vary with the locale, so a
+ * configuration change that keeps the locale keeps the cached labels. Counts are resolved when
+ * they are shown, with the plural rules of the locale.
+ */
+public final class PassportLabels {
+
+    /**
+     * Resolves the quantity string of a count, formatted with the count
+     */
+    interface QuantityResolver {
+        @NonNull
+        String apply(@PluralsRes int id, int quantity);
+    }
+
+    private static PassportLabels cached;
+
+    private final String locales;
+    private final Map<Integer, String> labels = new HashMap<>();
+    private final QuantityResolver quantities;
+
+    PassportLabels(@NonNull String locales, @NonNull IntFunction<String> resolver) {
+        this(locales, resolver, (id, quantity) -> quantity + " " + resolver.apply(id));
+    }
+
+    PassportLabels(@NonNull String locales, @NonNull IntFunction<String> resolver,
+                   @NonNull QuantityResolver quantities) {
+        this.locales = locales;
+        this.quantities = quantities;
+        for (int id : TokenData.LABELS) {
+            labels.put(id, resolver.apply(id));
+        }
+    }
+
+    /**
+     * @param context a context with the configuration the labels are displayed in
+     * @return the labels for the context locale, resolved on the first call for that locale
+     */
+    @NonNull
+    public static synchronized PassportLabels get(@NonNull Context context) {
+        String locales = context.getResources().getConfiguration().getLocales().toLanguageTags();
+        PassportLabels current = cached;
+        if (current == null || !current.locales.equals(locales)) {
+            Resources resources = context.getResources();
+            current = new PassportLabels(locales, context::getString,
+                    (id, quantity) -> resources.getQuantityString(id, quantity, quantity));
+            cached = current;
+        }
+        return current;
+    }
+
+    @NonNull
+    String get(@StringRes int id) {
+        String label = labels.get(id);
+        if (label == null) {
+            throw new IllegalArgumentException("Not a passport label " + id);
+        }
+        return label;
+    }
+
+    @NonNull
+    String getQuantity(@PluralsRes int id, int quantity) {
+        return quantities.apply(id, quantity);
+    }
+}
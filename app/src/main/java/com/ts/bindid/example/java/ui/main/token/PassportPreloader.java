@@ -0,0 +1,114 @@
+package com.ts.bindid.example.java.ui.main.token;
+
+import android.content.Context;
+import android.view.View;
+import android.view.ViewGroup;
+
+import androidx.annotation.MainThread;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.asynclayoutinflater.view.AsyncLayoutInflater;
+import androidx.recyclerview.widget.RecyclerView;
+
+import com.ts.bindid.example.java.R;
+
+import timber.log.Timber;
+
+/**
+ * PassportPreloader inflates the token screen and its passport rows off the main thread while
+ * the token is verified, so showing the passport only binds the rows. The rows wait in the
+ * RecycledViewPool of the screen's RecyclerView, which the layout takes them from instead of
+ * inflating new ones.
+ *
+ * The rows are inflated one after the other, as AsyncLayoutInflater blocks the main thread once
+ * ten requests are queued. They are plain TextViews, AsyncLayoutInflater does not go through the
+ * AppCompat view factory, which makes no visible difference for these rows.
+ */
+public class PassportPreloader {
+
+    private final AsyncLayoutInflater inflater;
+    // Only wraps the pre-inflated rows in view holders of the passport type
+    private final PassportAdapter rowFactory = new PassportAdapter();
+    private final int rows;
+
+    private boolean inflating;
+    @Nullable private View view;
+    // The pool of the view above, and how many of its rows are still to be inflated
+    @Nullable private RecyclerView.RecycledViewPool pool;
+    private int pendingRows;
+
+    /**
+     * @param context the activity, whose theme the views are inflated with
+     */
+    public PassportPreloader(@NonNull Context context) {
+        this(context, TokenData.MAX_ROWS);
+    }
+
+    /**
+     * @param rows to prepare, every row of the passport by default
+     */
+    public PassportPreloader(@NonNull Context context, int rows) {
+        this.inflater = new AsyncLayoutInflater(context);
+        this.rows = rows;
+    }
+
+    /**
+     * Start preparing the token screen, unless it is already being prepared or waiting to be shown
+     * @param container the token screen will be added to
+     */
+    @MainThread
+    public void preload(@NonNull ViewGroup container) {
+        if (inflating || view != null) {
+            return;
+        }
+        inflating = true;
+        inflater.inflate(R.layout.token_fragment, container, (root, resid, parent) -> {
+            RecyclerView recyclerView = root.findViewById(R.id.token_values_rv);
+            RecyclerView.RecycledViewPool pool = new RecyclerView.RecycledViewPool();
+            // Five rows per type by default, the passport shows more at once
+            pool.setMaxRecycledViews(PassportAdapter.ROW_TYPE, rows);
+            recyclerView.setRecycledViewPool(pool);
+            recyclerView.setHasFixedSize(true);
+
+            inflating = false;
+            view = root;
+            this.pool = pool;
+            pendingRows = rows;
+            inflateRow(recyclerView, pool, rows);
+        });
+    }
+
+    private void inflateRow(RecyclerView recyclerView, RecyclerView.RecycledViewPool pool, int remaining) {
+        if (remaining == 0) {
+            Timber.d("Token screen prepared with %d rows", rows);
+            return;
+        }
+        inflater.inflate(R.layout.item_passport, recyclerView, (row, resid, parent) -> {
+            pool.putRecycledView(rowFactory.wrapRow(recyclerView, row));
+            if (pool == this.pool) {
+                pendingRows = remaining - 1;
+            }
+            inflateRow(recyclerView, pool, remaining - 1);
+        });
+    }
+
+    /**
+     * @return whether the token screen and all of its rows are prepared
+     */
+    @MainThread
+    public boolean isReady() {
+        return view != null && pendingRows == 0;
+    }
+
+    /**
+     * @return the prepared token screen, once, or null when it is not ready yet. Rows still being
+     * inflated are added to its pool when they are.
+     */
+    @MainThread
+    @Nullable
+    public View takeView() {
+        View prepared = view;
+        view = null;
+        return prepared;
+    }
+}
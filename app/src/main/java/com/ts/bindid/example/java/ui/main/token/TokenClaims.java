@@ -0,0 +1,113 @@
+package com.ts.bindid.example.java.ui.main.token;
+
+import android.os.Parcel;
+import android.os.Parcelable;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.nimbusds.jwt.JWTClaimsSet;
+
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * TokenClaims is an immutable, flat copy of the verified ID token claims, handed from the login
+ * flow to the token screen so the token is decoded and parsed only once.
+ *
+ * Claims nested in an object, such as bindid_network_info, are stored under
+ * "parent.child" names. Values are kept in their string form.
+ */
+public final class TokenClaims implements Parcelable {
+
+    private final Map<String, String> claims;
+
+    private TokenClaims(Map<String, String> claims) {
+        this.claims = Collections.unmodifiableMap(claims);
+    }
+
+    /**
+     * Build the claims from a verified claims set
+     * @param claimsSet
+     */
+    @NonNull
+    public static TokenClaims from(@NonNull JWTClaimsSet claimsSet) {
+        Map<String, String> claims = new HashMap<>();
+        for (Map.Entry<String, Object> claim : claimsSet.getClaims().entrySet()) {
+            Object value = claim.getValue();
+            if (value instanceof Map) {
+                for (Map.Entry<?, ?> child : ((Map<?, ?>) value).entrySet()) {
+                    if (child.getValue() != null) {
+                        claims.put(claim.getKey() + "." + child.getKey(), String.valueOf(child.getValue()));
+                    }
+                }
+            } else if (value instanceof Date) {
+                // Registered date claims are parsed into dates, keep them in epoch seconds
+                claims.put(claim.getKey(), String.valueOf(((Date) value).getTime() / 1000));
+            } else if (value != null) {
+                claims.put(claim.getKey(), String.valueOf(value));
+            }
+        }
+        return new TokenClaims(claims);
+    }
+
+    /**
+     * Restore claims that were stored through {@link #asMap()}
+     * @param claims flat claims, as returned by asMap
+     */
+    @NonNull
+    public static TokenClaims of(@NonNull Map<String, String> claims) {
+        return new TokenClaims(new HashMap<>(claims));
+    }
+
+    /**
+     * @param name the claim name, or "parent.child" for a claim nested in an object
+     * @return the claim value, or null when the token does not have it
+     */
+    @Nullable
+    public String get(@NonNull String name) {
+        return claims.get(name);
+    }
+
+    public boolean has(@NonNull String name) {
+        return claims.containsKey(name);
+    }
+
+    @NonNull
+    public Map<String, String> asMap() {
+        return claims;
+    }
+
+    @Override
+    public int describeContents() {
+        return 0;
+    }
+
+    @Override
+    public void writeToParcel(Parcel dest, int flags) {
+        dest.writeInt(claims.size());
+        for (Map.Entry<String, String> claim : claims.entrySet()) {
+            dest.writeString(claim.getKey());
+            dest.writeString(claim.getValue());
+        }
+    }
+
+    public static final Creator<TokenClaims> CREATOR = new Creator<TokenClaims>() {
+        @Override
+        public TokenClaims createFromParcel(Parcel in) {
+            int size = in.readInt();
+            Map<String, String> claims = new HashMap<>(size * 2);
+            for (int i = 0; i < size; i++) {
+                claims.put(in.readString(), in.readString());
+            }
+            return new TokenClaims(claims);
+        }
+
+        @Override
+        public TokenClaims[] newArray(int size) {
+            return new TokenClaims[size];
+        }
+    };
+}
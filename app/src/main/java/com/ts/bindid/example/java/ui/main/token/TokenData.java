@@ -2,159 +2,140 @@ package com.ts.bindid.example.java.ui.main.token;
 
 import android.content.Context;
 
-import com.ts.bindid.example.java.R;
+import androidx.annotation.Nullable;
 
-import org.json.JSONException;
-import org.json.JSONObject;
+import com.ts.bindid.example.java.R;
+import com.ts.bindid.example.java.format.TimestampFormatter;
+import com.ts.bindid.example.java.history.PassportChange;
+import com.ts.bindid.example.java.history.PassportHistory;
 
-import java.text.DateFormat;
-import java.text.SimpleDateFormat;
 import java.util.ArrayList;
-import java.util.Calendar;
-import java.util.Date;
-import java.util.Locale;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 
-import timber.log.Timber;
+import static com.ts.bindid.example.java.ui.main.token.ClaimSchema.TEXT;
+import static com.ts.bindid.example.java.ui.main.token.ClaimSchema.TIMESTAMP;
 
 /**
  * Created by Ran Stone on 21/06/2021.
  *
- * TokenData parses the JWT json data into a readable format
+ * TokenData maps the verified token claims into a readable format
  */
 public class TokenData {
 
-    private JSONObject json;
-
-    private String userID;
-    private String userAlias;
-    private String phoneNumber;
-    private String emailAddress;
-    private String userRegisteredOn;
-    private String userFirstSeen;
-    private String userFirstConfirmed;
-    private String userLastSeen;
-    private String userLastSeenByNetwork;
-    private String totalProvidersThatConfirmedUser;
-    private String authenticatingDeviceRegistered;
-    private String authenticatingDeviceFirstSeen;
-    private String authenticatingDeviceConfirmed;
-    private String authenticatingDeviceLastSeen;
-    private String authenticatingDeviceLastSeenByNetwork;
-    private String totalKnownDevices;
-
-    public TokenData(String token){
-        try {
-            json = new JSONObject(token);
-
-            userID = json.has("sub")? json.getString("sub") : null;
-            userAlias = json.has("bindid_alias")? json.getString("bindid_alias") : "Not Set";
-            phoneNumber = json.has("phone_number")? json.getString("phone_number") : null;
-            emailAddress = json.has("email")? json.getString("email") : "Not Set";
-            authenticatingDeviceConfirmed = json.has("acr.ts.bindid.app_bound_cred")?
-                    json.getString("acr.ts.bindid.app_bound_cred") : "No";
-
-            // Network info
-            if(json.has("bindid_network_info")){
-                JSONObject info = json.getJSONObject("bindid_network_info");
-                userRegisteredOn = info.has("user_registration_time")?
-                        info.getString("user_registration_time") : null;
-                userLastSeenByNetwork = info.has("user_last_seen")?
-                        info.getString("user_last_seen") : null;
-                totalKnownDevices = info.has("device_count")?
-                        info.getString("device_count") : "0";
-                authenticatingDeviceLastSeenByNetwork =
-                        info.has("authenticating_device_last_seen")?
-                                info.getString("authenticating_device_last_seen").equals("null")?
-                                    null : info.getString("authenticating_device_last_seen")
-                                : null;
-                totalProvidersThatConfirmedUser = info.has("confirmed_capp_count")?
-                        info.getString("confirmed_capp_count") : "0";
-                authenticatingDeviceRegistered =
-                        info.has("authenticating_device_registration_time")?
-                            info.getString("authenticating_device_registration_time") : null;
-
-            }
-
-            // BindID Info
-            if(json.has("bindid_info")) {
-                JSONObject info = json.getJSONObject("bindid_info");
-                userFirstSeen = info.has("capp_first_login")?
-                        toDateString(info.getString("capp_first_login")) : null;
-                userFirstConfirmed = info.has("capp_first_confirmed_login")?
-                        toDateString(info.getString("capp_first_confirmed_login")) : null;
-                userLastSeen = info.has("capp_last_login")?
-                        toDateString(info.getString("capp_last_login")) : null;
-                authenticatingDeviceFirstSeen = info.has("capp_first_login_from_authenticating_device")?
-                        toDateString(info.getString("capp_first_login_from_authenticating_device")) : null;
-                authenticatingDeviceLastSeen = info.has("capp_last_login_from_authenticating_device")?
-                        toDateString(info.getString("capp_last_login_from_authenticating_device")) : null;
-            }
-            
-        } catch (JSONException e) {
-            Timber.e(e);
-        }
+    private static final String NETWORK_INFO = "bindid_network_info";
+    private static final String HISTORY = "history";
+
+    /**
+     * The passport rows, in display order. To show another claim add a row here.
+     */
+    static final ClaimSchema SCHEMA = new ClaimSchema.Builder()
+            .row("sub", R.string.ts_bindid_passport_user_id, TEXT)
+            .row("bindid_alias", R.string.ts_bindid_passport_user_alias, TEXT, "Not Set")
+            .row("phone_number", R.string.ts_bindid_passport_phone_number, TEXT)
+            .row("email", R.string.ts_bindid_passport_email_address, TEXT, "Not Set")
+            .row("bindid_network_info.user_registration_time",
+                    R.string.ts_bindid_passport_user_registered_on, TEXT)
+            .row("bindid_info.capp_first_login", R.string.ts_bindid_passport_user_first_seen, TIMESTAMP)
+            .row("bindid_info.capp_first_confirmed_login",
+                    R.string.ts_bindid_passport_user_first_confirmed, TIMESTAMP)
+            .row("bindid_info.capp_last_login", R.string.ts_bindid_passport_user_last_seen, TIMESTAMP)
+            .row("bindid_network_info.user_last_seen",
+                    R.string.ts_bindid_passport_user_last_seen_by_network, TEXT)
+            .row("bindid_network_info.confirmed_capp_count",
+                    R.string.ts_bindid_passport_total_providers_that_confirmed_user, TEXT, "0", NETWORK_INFO)
+            .row("bindid_network_info.authenticating_device_registration_time",
+                    R.string.ts_bindid_passport_authenticating_device_registered, TEXT)
+            .row("bindid_info.capp_first_login_from_authenticating_device",
+                    R.string.ts_bindid_passport_authenticating_device_first_seen, TIMESTAMP)
+            .row("acr.ts.bindid.app_bound_cred",
+                    R.string.ts_bindid_passport_authenticating_device_confirmed, TEXT, "No")
+            .row("bindid_info.capp_last_login_from_authenticating_device",
+                    R.string.ts_bindid_passport_authenticating_device_last_seen, TIMESTAMP)
+            .row("bindid_network_info.authenticating_device_last_seen",
+                    R.string.ts_bindid_passport_authenticating_device_last_seen_by_network, TEXT)
+            .row("bindid_network_info.device_count",
+                    R.string.ts_bindid_passport_total_known_devices, TEXT, "0", NETWORK_INFO)
+            // Standard OpenID Connect claims that say nothing about the user
+            .ignore("iss", "aud", "exp", "iat", "nbf", "jti", "nonce", "auth_time", "at_hash",
+                    "c_hash", "azp", "sid", "acr", "amr")
+            .build();
+
+    /**
+     * The labels of the passport rows, in display order, followed by the since last login section
+     */
+    static final int[] LABELS = withLabels(SCHEMA.getLabels(), R.string.ts_bindid_passport_since_last_login,
+            R.string.ts_bindid_passport_first_login, R.string.ts_bindid_passport_no_changes);
+
+    /**
+     * The most rows of a passport: a row per schema row, then the since last login title and a
+     * row per claim the history keeps
+     */
+    static final int MAX_ROWS = SCHEMA.getLabels().length + 1 + PassportHistory.DEFAULT_FIELDS.length;
+
+    private final TokenClaims claims;
+    private final TimestampFormatter formatter;
+
+    public TokenData(TokenClaims claims){
+        this(claims, TimestampFormatter.getDefault());
     }
 
-    public ArrayList<TokenItem> getTokens(Context context){
-        ArrayList<TokenItem> list = new ArrayList<>();
+    /**
+     * @param claims the verified claims
+     * @param formatter renders the login times
+     */
+    public TokenData(TokenClaims claims, TimestampFormatter formatter){
+        this.claims = claims;
+        this.formatter = formatter;
+    }
 
-        if (userID != null) {
-            list.add(new TokenItem(context, R.string.ts_bindid_passport_user_id, userID));
-        }
-        if(userAlias != null) {
-            list.add(new TokenItem(context, R.string.ts_bindid_passport_user_alias, userAlias));
-        }
-        if(phoneNumber != null) {
-            list.add( new TokenItem(context, R.string.ts_bindid_passport_phone_number, phoneNumber));
-        }
-        if(emailAddress != null) {
-            list.add(new TokenItem(context, R.string.ts_bindid_passport_email_address, emailAddress));
-        }
-        if(userRegisteredOn != null){
-            list.add(new TokenItem(context, R.string.ts_bindid_passport_user_registered_on, userRegisteredOn));
-        }
-        if(userFirstSeen != null) {
-            list.add(new TokenItem(context, R.string.ts_bindid_passport_user_first_seen, userFirstSeen));
-        }
-        if(userFirstConfirmed != null) {
-            list.add(new TokenItem(context, R.string.ts_bindid_passport_user_first_confirmed, userFirstConfirmed));
-        }
-        if(userLastSeen != null) {
-            list.add(new TokenItem(context, R.string.ts_bindid_passport_user_last_seen, userLastSeen));
-        }
-        if(userLastSeenByNetwork != null) {
-            list.add(new TokenItem(context, R.string.ts_bindid_passport_user_last_seen_by_network, userLastSeenByNetwork));
-        }
-        if(totalProvidersThatConfirmedUser != null) {
-            list.add(new TokenItem(context, R.string.ts_bindid_passport_total_providers_that_confirmed_user, totalProvidersThatConfirmedUser));
-        }
-        if(authenticatingDeviceRegistered != null) {
-            list.add(new TokenItem(context, R.string.ts_bindid_passport_authenticating_device_registered, authenticatingDeviceRegistered));
-        }
-        if(authenticatingDeviceFirstSeen !=null) {
-            list.add(new TokenItem(context, R.string.ts_bindid_passport_authenticating_device_first_seen, authenticatingDeviceFirstSeen));
-        }
-        if(authenticatingDeviceConfirmed != null) {
-            list.add(new TokenItem(context, R.string.ts_bindid_passport_authenticating_device_confirmed, authenticatingDeviceConfirmed));
-        }
-        if(authenticatingDeviceLastSeen != null) {
-            list.add(new TokenItem(context, R.string.ts_bindid_passport_authenticating_device_last_seen, authenticatingDeviceLastSeen));
-        }
-        if(authenticatingDeviceLastSeenByNetwork != null) {
-            list.add(new TokenItem(context, R.string.ts_bindid_passport_authenticating_device_last_seen_by_network, authenticatingDeviceLastSeenByNetwork));
-        }
-        if(totalKnownDevices != null) {
-            list.add(new TokenItem(context, R.string.ts_bindid_passport_total_known_devices, totalKnownDevices));
-        }
+    public List<TokenItem> getTokens(Context context){
+        return getTokens(PassportLabels.get(context));
+    }
+
+    /**
+     * @param labels the row labels for the current configuration
+     * @return the passport rows, each one identified by the claim it displays
+     */
+    public List<TokenItem> getTokens(PassportLabels labels){
+        return SCHEMA.rows(claims, labels, formatter);
+    }
+
+    /**
+     * @param changes the claims that changed since the user's previous login on this device, or
+     *                null when this is their first one
+     * @return the since last login section: a row with the number of changes, then a row per
+     * change labelled as the row of its claim
+     */
+    public List<TokenItem> getChanges(@Nullable List<PassportChange> changes, PassportLabels labels){
+        String title = labels.get(R.string.ts_bindid_passport_since_last_login);
+        if (changes == null) {
+            return Collections.singletonList(new TokenItem(HISTORY, title,
+                    labels.get(R.string.ts_bindid_passport_first_login)));
+        }
+        List<TokenItem> rows = new ArrayList<>(changes.size() + 1);
+        rows.add(new TokenItem(HISTORY, title, changes.isEmpty()
+                ? labels.get(R.string.ts_bindid_passport_no_changes)
+                : labels.getQuantity(R.plurals.ts_bindid_passport_changes, changes.size())));
+        for (PassportChange change : changes) {
+            int label = SCHEMA.label(change.getPath());
+            String value = format(change.getPath(), change.getPrevious()) + " \u2192 "
+                    + format(change.getPath(), change.getCurrent());
+            rows.add(new TokenItem(HISTORY + "." + change.getPath(),
+                    label != 0 ? labels.get(label) : change.getPath(), value));
+        }
+        return rows;
+    }
 
-        return list;
+    private String format(String path, @Nullable String value) {
+        return value != null ? SCHEMA.format(path, value, formatter) : "Not Set";
     }
 
-    private String toDateString(String date) {
-        DateFormat format = new SimpleDateFormat("MMM d, yyyy HH:mm a");
-        Calendar cal = Calendar.getInstance(Locale.ENGLISH);
-        cal.setTimeInMillis(Long.parseLong(date) * 1000);
-        return format.format(cal.getTime());
+    private static int[] withLabels(int[] labels, int... more) {
+        int[] all = Arrays.copyOf(labels, labels.length + more.length);
+        System.arraycopy(more, 0, all, labels.length, more.length);
+        return all;
     }
 
 }
@@ -4,38 +4,50 @@ import android.os.Bundle;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
+import android.view.ViewTreeObserver;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import androidx.fragment.app.Fragment;
-import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
 
-import com.nimbusds.jwt.SignedJWT;
 import com.ts.bindid.example.java.R;
 
-import java.text.ParseException;
+import java.util.List;
 
 public class TokenFragment extends Fragment {
 
-    private static final String RESPONSE_ID_TOKEN = "id_token";
+    private static final String RESPONSE_ID_TOKEN_CLAIMS = "id_token_claims";
+    private static final String VERIFIED_AT_NANOS = "verified_at_nanos";
 
-    private String mIdToken;
+    private TokenClaims mClaims;
     private RecyclerView tokenRecyclerView;
+    // Kept across view re-creations, so returning to the screen does not rebuild the rows
+    private final PassportAdapter adapter = new PassportAdapter();
 
-    public static TokenFragment newInstance(String param) {
+    public static TokenFragment newInstance(TokenClaims param) {
         TokenFragment fragment =  new TokenFragment();
         Bundle args = new Bundle();
-        args.putString(RESPONSE_ID_TOKEN, param);
+        args.putParcelable(RESPONSE_ID_TOKEN_CLAIMS, param);
         fragment.setArguments(args);
         return fragment;
     }
 
+    /**
+     * @param verifiedAtNanos when the token was verified, reported to the {@link PassportHost}
+     *                        once the passport is drawn
+     */
+    public static TokenFragment newInstance(TokenClaims param, long verifiedAtNanos) {
+        TokenFragment fragment = newInstance(param);
+        fragment.requireArguments().putLong(VERIFIED_AT_NANOS, verifiedAtNanos);
+        return fragment;
+    }
+
     @Override
     public void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         if (getArguments() != null) {
-            mIdToken = getArguments().getString(RESPONSE_ID_TOKEN);
+            mClaims = getArguments().getParcelable(RESPONSE_ID_TOKEN_CLAIMS);
         }
     }
 
@@ -43,24 +55,67 @@ public class TokenFragment extends Fragment {
     @Override
     public View onCreateView(@NonNull LayoutInflater inflater, @Nullable ViewGroup container,
                              @Nullable Bundle savedInstanceState) {
-        View view = inflater.inflate(R.layout.token_fragment, container, false);
+        // Prepared while the token was verified, with its rows waiting in the view pool
+        View view = getActivity() instanceof PassportHost ?
+                ((PassportHost) getActivity()).getPassportPreloader().takeView() : null;
+        if (view == null) {
+            view = inflater.inflate(R.layout.token_fragment, container, false);
+        }
         tokenRecyclerView = view.findViewById(R.id.token_values_rv);
         return view;
     }
 
+    @Override
+    public void onViewCreated(@NonNull View view, @Nullable Bundle savedInstanceState) {
+        super.onViewCreated(view, savedInstanceState);
+        Bundle args = requireArguments();
+        if (args.containsKey(VERIFIED_AT_NANOS) && getActivity() instanceof PassportHost) {
+            long verifiedAtNanos = args.getLong(VERIFIED_AT_NANOS);
+            // Reported once, not again when the view is re-created
+            args.remove(VERIFIED_AT_NANOS);
+            PassportHost host = (PassportHost) getActivity();
+            view.getViewTreeObserver().addOnPreDrawListener(new ViewTreeObserver.OnPreDrawListener() {
+                @Override
+                public boolean onPreDraw() {
+                    view.getViewTreeObserver().removeOnPreDrawListener(this);
+                    // Runs once the frame about to be drawn is
+                    view.post(() -> host.onPassportDrawn(verifiedAtNanos));
+                    return true;
+                }
+            });
+        }
+    }
+
     @Override
     public void onActivityCreated(@Nullable Bundle savedInstanceState) {
         super.onActivityCreated(savedInstanceState);
-        try {
-            // Get the JWT token and display it in a user friendly format
-            SignedJWT jwt = SignedJWT.parse(mIdToken);
-            TokenData tokenData = new TokenData(jwt.getPayload().toString());
-            tokenRecyclerView.setLayoutManager(new LinearLayoutManager(requireContext()));
-            tokenRecyclerView.setAdapter(new PassportAdapter(tokenData.getTokens(requireContext())));
-
-        } catch (ParseException e) {
-            e.printStackTrace();
+        // The layout manager is set by the layout, the rows do not change the list's size
+        tokenRecyclerView.setHasFixedSize(true);
+        // Not setAdapter, which clears the view pool and the rows the PassportPreloader put there
+        tokenRecyclerView.swapAdapter(adapter, false);
+        // Display the verified token claims in a user friendly format
+        adapter.submitList(rows(mClaims));
+    }
+
+    @Override
+    public void onDestroyView() {
+        super.onDestroyView();
+        tokenRecyclerView.setAdapter(null);
+        tokenRecyclerView = null;
+    }
+
+    /**
+     * @return the passport rows, followed by what changed since the user's previous login
+     */
+    private List<TokenItem> rows(TokenClaims claims) {
+        TokenData data = new TokenData(claims);
+        PassportLabels labels = PassportLabels.get(requireContext());
+        List<TokenItem> rows = data.getTokens(labels);
+        String subject = claims.get("sub");
+        if (subject != null && getActivity() instanceof PassportHost) {
+            rows.addAll(data.getChanges(((PassportHost) getActivity()).getChangesSinceLastLogin(subject), labels));
         }
+        return rows;
     }
 
 }
\ No newline at end of file
@@ -1,17 +1,52 @@
 package com.ts.bindid.example.java.ui.main.token;
 
-import android.content.Context;
+import androidx.annotation.NonNull;
 
 /**
  * Created by Ran Stone on 21/06/2021.
+ *
+ * TokenItem is one immutable passport row, identified by the claim it displays
  */
-public class TokenItem {
-    String name;
-    String value;
+public final class TokenItem {
+    final String claim;
+    final String name;
+    final String value;
+    final long id;
 
-    TokenItem(Context context, int id, String value){
-        this.name = context.getString(id);
+    TokenItem(@NonNull String claim, @NonNull String name, @NonNull String value){
+        this.claim = claim;
+        this.name = name;
         this.value = value;
+        this.id = stableId(claim);
     }
 
+    /**
+     * @return a 64 bit FNV-1a hash of the claim name, so a row keeps its RecyclerView ID across
+     * claim refreshes
+     */
+    static long stableId(String claim) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < claim.length(); i++) {
+            hash ^= claim.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof TokenItem)) {
+            return false;
+        }
+        TokenItem other = (TokenItem) o;
+        return claim.equals(other.claim) && name.equals(other.name) && value.equals(other.value);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * (31 * claim.hashCode() + name.hashCode()) + value.hashCode();
+    }
 }
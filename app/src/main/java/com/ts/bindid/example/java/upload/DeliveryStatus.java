@@ -0,0 +1,49 @@
+package com.ts.bindid.example.java.upload;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * An immutable view of the token upload queue, published every time it changes.
+ */
+public class DeliveryStatus {
+
+    public enum State {
+        /** Nothing left to send */
+        IDLE,
+        /** Tokens are queued and the next batch is about to be sent */
+        PENDING,
+        /** A batch is being sent */
+        SENDING,
+        /** The last batch failed and will be sent again at {@link #nextAttemptAtMillis} */
+        RETRY_SCHEDULED,
+        /** The last batch was dropped, after a permanent error or too many attempts */
+        FAILED
+    }
+
+    public final State state;
+    public final int pending;
+    public final long delivered;
+    public final long dropped;
+    public final int attempt;
+    public final long nextAttemptAtMillis;
+    @Nullable public final String lastError;
+
+    DeliveryStatus(@NonNull State state, int pending, long delivered, long dropped, int attempt,
+                   long nextAttemptAtMillis, @Nullable String lastError) {
+        this.state = state;
+        this.pending = pending;
+        this.delivered = delivered;
+        this.dropped = dropped;
+        this.attempt = attempt;
+        this.nextAttemptAtMillis = nextAttemptAtMillis;
+        this.lastError = lastError;
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return state + " pending=" + pending + " delivered=" + delivered + " dropped=" + dropped
+                + " attempt=" + attempt + (lastError != null ? " lastError=" + lastError : "");
+    }
+}
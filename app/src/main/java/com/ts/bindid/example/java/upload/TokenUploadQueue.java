@@ -0,0 +1,498 @@
+package com.ts.bindid.example.java.upload;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.nimbusds.jose.util.JSONObjectUtils;
+import com.ts.bindid.example.java.login.SessionCipher;
+import com.ts.bindid.example.java.metrics.LoginMetrics;
+import com.ts.bindid.example.java.metrics.LoginStage;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.DoubleSupplier;
+import java.util.function.LongSupplier;
+
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okio.BufferedSink;
+import okio.BufferedSource;
+import okio.Okio;
+import timber.log.Timber;
+
+/**
+ * TokenUploadQueue delivers the ID and access tokens of each login to your backend without
+ * blocking the login flow.
+ *
+ * Tokens are queued in a file so pending uploads survive process death, encrypted by the
+ * {@link SessionCipher} of the stored session, and newer tokens for a user replace the ones still
+ * waiting for that user. Queued tokens are sent in batches, as
+ * {"tokens":[{"sub":"...","access_token":"...","id_token":"..."}]}, and a batch that fails with a
+ * network error, a 408, a 429 or a 5xx is sent again after an exponential backoff with jitter.
+ * Any other error, or too many attempts, drops the batch.
+ *
+ * All the queue state is owned by a single upload thread.
+ */
+public class TokenUploadQueue {
+
+    public interface StatusListener {
+        /**
+         * Called on the upload thread
+         */
+        void onStatus(@NonNull DeliveryStatus status);
+    }
+
+    private static final MediaType JSON = MediaType.get("application/json; charset=utf-8");
+
+    private static final long DEFAULT_BATCH_DELAY_MILLIS = 500;
+    private static final int DEFAULT_MAX_BATCH_SIZE = 20;
+    private static final long DEFAULT_INITIAL_BACKOFF_MILLIS = TimeUnit.SECONDS.toMillis(1);
+    private static final long DEFAULT_MAX_BACKOFF_MILLIS = TimeUnit.MINUTES.toMillis(5);
+    private static final int DEFAULT_MAX_ATTEMPTS = 10;
+
+    // "BUQ1", the format of the encrypted queue that follows
+    private static final int MAGIC = 0x42555131;
+
+    private final OkHttpClient client;
+    private final String url;
+    @Nullable private final File queueFile;
+    @Nullable private final SessionCipher cipher;
+    private final ScheduledExecutorService executor;
+    private final long batchDelayMillis;
+    private final int maxBatchSize;
+    private final long initialBackoffMillis;
+    private final long maxBackoffMillis;
+    private final int maxAttempts;
+    private final LongSupplier clock;
+    private final DoubleSupplier random;
+    @Nullable private final LoginMetrics metrics;
+    private final List<StatusListener> listeners = new CopyOnWriteArrayList<>();
+
+    // Owned by the upload thread
+    private final LinkedHashMap<String, Entry> pending = new LinkedHashMap<>();
+    private ScheduledFuture<?> scheduledFlush;
+    private int attempt;
+    private long delivered;
+    private long dropped;
+
+    private volatile DeliveryStatus status = new DeliveryStatus(DeliveryStatus.State.IDLE, 0, 0, 0, 0, 0, null);
+
+    private TokenUploadQueue(Builder builder) {
+        if (builder.queueFile != null && builder.cipher == null) {
+            throw new IllegalStateException("A cipher is required to store tokens on disk");
+        }
+        this.client = builder.client != null ? builder.client : new OkHttpClient();
+        this.url = builder.url;
+        this.queueFile = builder.queueFile;
+        this.cipher = builder.cipher;
+        this.executor = builder.executor != null ? builder.executor
+                : Executors.newSingleThreadScheduledExecutor(runnable -> new Thread(runnable, "token-upload"));
+        this.batchDelayMillis = builder.batchDelayMillis;
+        this.maxBatchSize = builder.maxBatchSize;
+        this.initialBackoffMillis = builder.initialBackoffMillis;
+        this.maxBackoffMillis = builder.maxBackoffMillis;
+        this.maxAttempts = builder.maxAttempts;
+        this.clock = builder.clock;
+        this.random = builder.random;
+        this.metrics = builder.metrics;
+
+        // Resume the uploads left pending by a previous process
+        executor.execute(this::restore);
+    }
+
+    /**
+     * Queue the tokens of a login
+     * @param subject the sub claim of the ID token, newer tokens replace the pending ones for it
+     * @param accessToken
+     * @param idToken
+     */
+    public void enqueue(@NonNull String subject, @NonNull String accessToken, @NonNull String idToken) {
+        Entry entry = new Entry(subject, accessToken, idToken, clock.getAsLong());
+        executor.execute(() -> {
+            // Remove first so the entry moves to the back of the queue
+            pending.remove(subject);
+            pending.put(subject, entry);
+            persist();
+            schedule(batchDelayMillis);
+        });
+    }
+
+    @NonNull
+    public DeliveryStatus getStatus() {
+        return status;
+    }
+
+    /**
+     * @param listener told about every status change, starting with the current status
+     */
+    public void addStatusListener(@NonNull StatusListener listener) {
+        listeners.add(listener);
+        executor.execute(() -> listener.onStatus(status));
+    }
+
+    public void removeStatusListener(@NonNull StatusListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Stop the upload thread, the pending tokens stay in the queue file
+     */
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Send the next batch after the given delay, unless a send is already scheduled
+     */
+    private void schedule(long delayMillis) {
+        if (scheduledFlush != null && !scheduledFlush.isDone()) {
+            publish(status.state, status.nextAttemptAtMillis, status.lastError);
+            return;
+        }
+        scheduledFlush = executor.schedule(this::flush, delayMillis, TimeUnit.MILLISECONDS);
+        if (attempt == 0) {
+            publish(DeliveryStatus.State.PENDING, clock.getAsLong() + delayMillis, null);
+        }
+    }
+
+    private void flush() {
+        scheduledFlush = null;
+        if (pending.isEmpty()) {
+            publish(DeliveryStatus.State.IDLE, 0, null);
+            return;
+        }
+        List<Entry> batch = new ArrayList<>(Math.min(pending.size(), maxBatchSize));
+        for (Entry entry : pending.values()) {
+            if (batch.size() == maxBatchSize) {
+                break;
+            }
+            batch.add(entry);
+        }
+        publish(DeliveryStatus.State.SENDING, 0, status.lastError);
+
+        long start = metrics != null ? metrics.start() : 0;
+        String error;
+        boolean retryable;
+        try (Response response = client.newCall(request(batch)).execute()) {
+            if (response.isSuccessful()) {
+                if (metrics != null) {
+                    metrics.stop(LoginStage.TOKEN_UPLOAD, start);
+                }
+                onDelivered(batch);
+                return;
+            }
+            int code = response.code();
+            error = "HTTP_" + code;
+            retryable = code == 408 || code == 429 || code >= 500;
+        } catch (IOException e) {
+            error = e.getClass().getSimpleName();
+            retryable = true;
+        }
+        if (metrics != null) {
+            metrics.stopWithError(LoginStage.TOKEN_UPLOAD, start, error);
+        }
+        onFailed(batch, error, retryable);
+    }
+
+    private void onDelivered(List<Entry> batch) {
+        for (Entry entry : batch) {
+            // Keep newer tokens for the same user that arrived during the upload
+            pending.remove(entry.subject, entry);
+        }
+        delivered += batch.size();
+        attempt = 0;
+        persist();
+        Timber.i("Delivered %d token uploads", batch.size());
+        if (pending.isEmpty()) {
+            publish(DeliveryStatus.State.IDLE, 0, null);
+        } else {
+            schedule(0);
+        }
+    }
+
+    private void onFailed(List<Entry> batch, String error, boolean retryable) {
+        attempt++;
+        if (retryable && attempt < maxAttempts) {
+            long delay = backoff(attempt);
+            Timber.w("Token upload failed with %s, attempt %d, retrying in %dms", error, attempt, delay);
+            scheduledFlush = executor.schedule(this::flush, delay, TimeUnit.MILLISECONDS);
+            publish(DeliveryStatus.State.RETRY_SCHEDULED, clock.getAsLong() + delay, error);
+            return;
+        }
+
+        Timber.e("Dropping %d token uploads after %d attempts: %s", batch.size(), attempt, error);
+        for (Entry entry : batch) {
+            pending.remove(entry.subject, entry);
+        }
+        dropped += batch.size();
+        attempt = 0;
+        persist();
+        publish(DeliveryStatus.State.FAILED, 0, error);
+        if (!pending.isEmpty()) {
+            schedule(0);
+        }
+    }
+
+    /**
+     * Exponential backoff with jitter: a random delay between half and all of
+     * initialBackoff * 2^(attempt - 1), capped at maxBackoff
+     */
+    private long backoff(int attempt) {
+        long cap = initialBackoffMillis << Math.min(attempt - 1, 30);
+        if (cap <= 0 || cap > maxBackoffMillis) {
+            cap = maxBackoffMillis;
+        }
+        return cap / 2 + (long) (cap / 2 * random.getAsDouble());
+    }
+
+    private Request request(List<Entry> batch) {
+        List<Object> tokens = new ArrayList<>(batch.size());
+        for (Entry entry : batch) {
+            Map<String, Object> token = new LinkedHashMap<>();
+            token.put("sub", entry.subject);
+            token.put("access_token", entry.accessToken);
+            token.put("id_token", entry.idToken);
+            tokens.add(token);
+        }
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("tokens", tokens);
+        return new Request.Builder()
+                .url(url)
+                .post(RequestBody.create(JSONObjectUtils.toJSONString(body), JSON))
+                .build();
+    }
+
+    private void publish(DeliveryStatus.State state, long nextAttemptAtMillis, @Nullable String lastError) {
+        DeliveryStatus next = new DeliveryStatus(state, pending.size(), delivered, dropped, attempt,
+                nextAttemptAtMillis, lastError);
+        status = next;
+        for (StatusListener listener : listeners) {
+            listener.onStatus(next);
+        }
+    }
+
+    private void restore() {
+        if (queueFile == null || cipher == null || !queueFile.exists()) {
+            return;
+        }
+        boolean plaintext;
+        try {
+            ByteBuffer bytes;
+            try (BufferedSource source = Okio.buffer(Okio.source(queueFile))) {
+                bytes = ByteBuffer.wrap(source.readByteArray());
+            }
+            // Queues written before they were encrypted are read once, then stored encrypted
+            plaintext = bytes.remaining() < 4 || bytes.getInt(0) != MAGIC;
+            if (!plaintext) {
+                bytes.position(4);
+                bytes = cipher.decrypt(bytes);
+            }
+            String content = StandardCharsets.UTF_8.decode(bytes).toString();
+            for (Object item : JSONObjectUtils.getJSONArray(JSONObjectUtils.parse(content), "entries")) {
+                Entry entry = Entry.fromMap(toMap(item));
+                // Tokens queued by this process before the file was read are newer
+                if (!pending.containsKey(entry.subject)) {
+                    pending.put(entry.subject, entry);
+                }
+            }
+        } catch (IOException | GeneralSecurityException | ParseException | RuntimeException e) {
+            Timber.w(e, "Ignoring unreadable token upload queue");
+            return;
+        }
+        if (plaintext) {
+            persist();
+        }
+        if (!pending.isEmpty()) {
+            Timber.i("Resuming %d token uploads", pending.size());
+            schedule(0);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> toMap(Object item) {
+        return (Map<String, Object>) item;
+    }
+
+    private void persist() {
+        if (queueFile == null || cipher == null) {
+            return;
+        }
+        List<Object> entries = new ArrayList<>(pending.size());
+        for (Entry entry : pending.values()) {
+            entries.add(entry.toMap());
+        }
+        Map<String, Object> json = new LinkedHashMap<>();
+        json.put("entries", entries);
+
+        // Write to a temporary file first so a crash never leaves a truncated queue behind
+        File tmp = new File(queueFile.getPath() + ".tmp");
+        try {
+            byte[] encrypted = cipher.encrypt(
+                    JSONObjectUtils.toJSONString(json).getBytes(StandardCharsets.UTF_8));
+            try (BufferedSink sink = Okio.buffer(Okio.sink(tmp))) {
+                sink.writeInt(MAGIC).write(encrypted);
+            }
+            if (!tmp.renameTo(queueFile)) {
+                throw new IOException("Failed to rename " + tmp);
+            }
+        } catch (IOException | GeneralSecurityException e) {
+            Timber.w(e, "Failed to store token upload queue");
+        }
+    }
+
+    private static class Entry {
+        final String subject;
+        final String accessToken;
+        final String idToken;
+        final long enqueuedAtMillis;
+
+        Entry(String subject, String accessToken, String idToken, long enqueuedAtMillis) {
+            this.subject = subject;
+            this.accessToken = accessToken;
+            this.idToken = idToken;
+            this.enqueuedAtMillis = enqueuedAtMillis;
+        }
+
+        Map<String, Object> toMap() {
+            Map<String, Object> map = new LinkedHashMap<>();
+            map.put("sub", subject);
+            map.put("access_token", accessToken);
+            map.put("id_token", idToken);
+            map.put("enqueued_at", enqueuedAtMillis);
+            return map;
+        }
+
+        static Entry fromMap(Map<String, Object> map) throws ParseException {
+            return new Entry(
+                    JSONObjectUtils.getString(map, "sub"),
+                    JSONObjectUtils.getString(map, "access_token"),
+                    JSONObjectUtils.getString(map, "id_token"),
+                    JSONObjectUtils.getLong(map, "enqueued_at"));
+        }
+    }
+
+    public static class Builder {
+        private final String url;
+        private OkHttpClient client;
+        private File queueFile;
+        private SessionCipher cipher;
+        private ScheduledExecutorService executor;
+        private long batchDelayMillis = DEFAULT_BATCH_DELAY_MILLIS;
+        private int maxBatchSize = DEFAULT_MAX_BATCH_SIZE;
+        private long initialBackoffMillis = DEFAULT_INITIAL_BACKOFF_MILLIS;
+        private long maxBackoffMillis = DEFAULT_MAX_BACKOFF_MILLIS;
+        private int maxAttempts = DEFAULT_MAX_ATTEMPTS;
+        private LongSupplier clock = System::currentTimeMillis;
+        private DoubleSupplier random = () -> ThreadLocalRandom.current().nextDouble();
+        private LoginMetrics metrics;
+
+        /**
+         * @param url the backend endpoint that receives the tokens
+         */
+        public Builder(@NonNull String url) {
+            this.url = url;
+        }
+
+        /**
+         * @param client the client to send with, normally the shared client
+         */
+        public Builder client(OkHttpClient client) {
+            this.client = client;
+            return this;
+        }
+
+        /**
+         * @param queueFile where pending uploads are kept, or null to keep them in memory only
+         */
+        public Builder queueFile(@Nullable File queueFile) {
+            this.queueFile = queueFile;
+            return this;
+        }
+
+        /**
+         * @param cipher encrypts the queue file, required with a file. The app passes the cipher
+         *               of its {@link com.ts.bindid.example.java.login.SessionStore}.
+         */
+        public Builder cipher(@Nullable SessionCipher cipher) {
+            this.cipher = cipher;
+            return this;
+        }
+
+        /**
+         * @param executor a single threaded executor that owns the queue
+         */
+        public Builder executor(ScheduledExecutorService executor) {
+            this.executor = executor;
+            return this;
+        }
+
+        /**
+         * @param delay how long to wait for more tokens before sending a batch
+         */
+        public Builder batchDelay(long delay, TimeUnit unit) {
+            this.batchDelayMillis = unit.toMillis(delay);
+            return this;
+        }
+
+        public Builder maxBatchSize(int maxBatchSize) {
+            this.maxBatchSize = maxBatchSize;
+            return this;
+        }
+
+        public Builder backoff(long initial, long max, TimeUnit unit) {
+            this.initialBackoffMillis = unit.toMillis(initial);
+            this.maxBackoffMillis = unit.toMillis(max);
+            return this;
+        }
+
+        /**
+         * @param maxAttempts attempts per batch before it is dropped
+         */
+        public Builder maxAttempts(int maxAttempts) {
+            this.maxAttempts = maxAttempts;
+            return this;
+        }
+
+        /**
+         * @param clock wall clock in milliseconds
+         */
+        public Builder clock(LongSupplier clock) {
+            this.clock = clock;
+            return this;
+        }
+
+        /**
+         * @param random uniform values in [0, 1) for the backoff jitter
+         */
+        public Builder random(DoubleSupplier random) {
+            this.random = random;
+            return this;
+        }
+
+        public Builder metrics(LoginMetrics metrics) {
+            this.metrics = metrics;
+            return this;
+        }
+
+        public TokenUploadQueue build() {
+            return new TokenUploadQueue(this);
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package com.ts.bindid.example.java;
+
+import com.nimbusds.jose.JOSEException;
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.JWSHeader;
+import com.nimbusds.jose.crypto.RSASSASigner;
+import com.nimbusds.jose.jwk.KeyUse;
+import com.nimbusds.jose.jwk.RSAKey;
+import com.nimbusds.jose.jwk.gen.RSAKeyGenerator;
+import com.nimbusds.jwt.JWTClaimsSet;
+import com.nimbusds.jwt.SignedJWT;
+
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Realistic BindID ID tokens for the local unit tests.
+ */
+public final class TestTokens {
+
+    public static final String ISSUER = "https://signin.bindid-sandbox.io";
+    public static final String CLIENT_ID = "bindid_example_client";
+
+    private TestTokens() {
+    }
+
+    public static RSAKey generateKey(String kid) throws JOSEException {
+        return new RSAKeyGenerator(2048)
+                .keyID(kid)
+                .keyUse(KeyUse.SIGNATURE)
+                .generate();
+    }
+
+    /**
+     * @return the claims of a BindID ID token for the given user, with bindid_network_info and
+     * bindid_info, issued now and valid for an hour
+     */
+    public static JWTClaimsSet claims(String subject) {
+        long now = System.currentTimeMillis() / 1000;
+
+        Map<String, Object> networkInfo = new LinkedHashMap<>();
+        networkInfo.put("user_registration_time", "2021-06-01T10:15:30.000Z");
+        networkInfo.put("user_last_seen", "2021-06-20T08:00:00.000Z");
+        networkInfo.put("device_count", 2L);
+        networkInfo.put("authenticating_device_last_seen", "2021-06-20T08:00:00.000Z");
+        networkInfo.put("confirmed_capp_count", 1L);
+        networkInfo.put("authenticating_device_registration_time", "2021-06-01T10:15:30.000Z");
+
+        Map<String, Object> bindIdInfo = new LinkedHashMap<>();
+        bindIdInfo.put("capp_first_login", 1622542530L);
+        bindIdInfo.put("capp_first_confirmed_login", 1622542530L);
+        bindIdInfo.put("capp_last_login", 1624176000L);
+        bindIdInfo.put("capp_first_login_from_authenticating_device", 1622542530L);
+        bindIdInfo.put("capp_last_login_from_authenticating_device", 1624176000L);
+
+        return new JWTClaimsSet.Builder()
+                .issuer(ISSUER)
+                .subject(subject)
+                .audience(CLIENT_ID)
+                .issueTime(new Date(TimeUnit.SECONDS.toMillis(now)))
+                .expirationTime(new Date(TimeUnit.SECONDS.toMillis(now + 3600)))
+                .claim("nonce", "nonce-" + subject)
+                .claim("email", subject + "@example.com")
+                .claim("bindid_alias", "alias-" + subject)
+                .claim("acr.ts.bindid.app_bound_cred", "Yes")
+                .claim("bindid_network_info", networkInfo)
+                .claim("bindid_info", bindIdInfo)
+                .build();
+    }
+
+    public static String sign(RSAKey key, JWTClaimsSet claims) throws JOSEException {
+        SignedJWT jwt = new SignedJWT(
+                new JWSHeader.Builder(JWSAlgorithm.RS256).keyID(key.getKeyID()).build(),
+                claims);
+        jwt.sign(new RSASSASigner(key));
+        return jwt.serialize();
+    }
+}
@@ -0,0 +1,106 @@
+package com.ts.bindid.example.java.format;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.text.DateFormat;
+import java.text.SimpleDateFormat;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.TimeZone;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks the memoized formatter against the previous toDateString, which built a SimpleDateFormat
+ * and a Calendar for every timestamp. Its speed is measured by the benchmarks module.
+ */
+public class TimestampFormatterTest {
+
+    private static final int VALUES = 10_000;
+    private static final long NOW_MILLIS = 1_624_176_000_000L;
+    private static final ZoneId UTC = ZoneId.of("UTC");
+
+    private static long[] epochSeconds;
+
+    @BeforeClass
+    public static void setUpClass() {
+        // Login times spread over the last five years
+        Random random = new Random(42);
+        epochSeconds = new long[VALUES];
+        for (int i = 0; i < VALUES; i++) {
+            epochSeconds[i] = NOW_MILLIS / 1000 - (long) (random.nextDouble() * TimeUnit.DAYS.toSeconds(5 * 365));
+        }
+    }
+
+    @Test
+    public void matchesPreviousFormat() {
+        TimestampFormatter formatter = TimestampFormatter.of(Locale.US, UTC);
+        for (int i = 0; i < 1_000; i++) {
+            assertEquals(previous(epochSeconds[i], Locale.US), formatter.format(epochSeconds[i]));
+        }
+        assertEquals("Jun 20, 2021 08:00 AM", formatter.format(1_624_176_000L));
+    }
+
+    @Test
+    public void memoizesPerLocaleAndZone() {
+        TimestampFormatter us = TimestampFormatter.of(Locale.US, UTC);
+        assertSame(us, TimestampFormatter.of(Locale.US, UTC));
+        assertNotSame(us, TimestampFormatter.of(Locale.FRANCE, UTC));
+        assertSame(us, TimestampFormatter.of(Locale.US, UTC));
+        assertNotSame(us, TimestampFormatter.of(Locale.US, ZoneId.of("Asia/Jerusalem")));
+    }
+
+    @Test
+    public void rendersRelativeTimes() {
+        long now = NOW_MILLIS / 1000;
+        assertEquals("just now", TimestampFormatter.formatRelative(now - 30, NOW_MILLIS));
+        assertEquals("1 minute ago", TimestampFormatter.formatRelative(now - 60, NOW_MILLIS));
+        assertEquals("5 hours ago", TimestampFormatter.formatRelative(now - 5 * 3600, NOW_MILLIS));
+        assertEquals("3 days ago", TimestampFormatter.formatRelative(now - 3 * 86400 - 10, NOW_MILLIS));
+        assertEquals("2 months ago", TimestampFormatter.formatRelative(now - 65 * 86400, NOW_MILLIS));
+        assertEquals("1 year ago", TimestampFormatter.formatRelative(now - 400 * 86400, NOW_MILLIS));
+        assertEquals("in 2 hours", TimestampFormatter.formatRelative(now + 2 * 3600, NOW_MILLIS));
+    }
+
+    @Test
+    public void formatsConcurrently() throws Exception {
+        TimestampFormatter formatter = TimestampFormatter.of(Locale.US, UTC);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<?>> results = new ArrayList<>();
+            for (int t = 0; t < 8; t++) {
+                int offset = t;
+                results.add(executor.submit(() -> {
+                    for (int i = offset; i < 10_000; i += 8) {
+                        assertEquals(previous(epochSeconds[i], Locale.US), formatter.format(epochSeconds[i]));
+                    }
+                }));
+            }
+            for (Future<?> result : results) {
+                result.get(30, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * The previous TokenData.toDateString, with the locale and zone made explicit
+     */
+    private static String previous(long seconds, Locale locale) {
+        DateFormat format = new SimpleDateFormat(TimestampFormatter.PATTERN, locale);
+        format.setTimeZone(TimeZone.getTimeZone("UTC"));
+        Calendar cal = Calendar.getInstance(Locale.ENGLISH);
+        cal.setTimeInMillis(seconds * 1000);
+        return format.format(cal.getTime());
+    }
+}
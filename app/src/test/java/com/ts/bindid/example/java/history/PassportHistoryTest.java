@@ -0,0 +1,222 @@
+package com.ts.bindid.example.java.history;
+
+import com.ts.bindid.example.java.ui.main.token.TokenClaims;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks the changes between logins, read back from the history file across restarts, after a
+ * compaction and after a crash in the middle of a write.
+ */
+public class PassportHistoryTest {
+
+    private static final long LOGIN = 1_624_176_000L;
+    private static final String DEVICE_COUNT = "bindid_network_info.device_count";
+    private static final String USER_LAST_SEEN = "bindid_network_info.user_last_seen";
+    private static final String CAPP_LAST_LOGIN = "bindid_info.capp_last_login";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void showsTheChangesSinceTheLastLogin() {
+        PassportHistory history = new PassportHistory.Builder().build();
+        assertTrue(history.record(login("user", 0, 2)));
+        assertNull(history.getChangesSinceLastLogin("user"));
+
+        assertTrue(history.record(login("user", 1, 3)));
+        // In the order the claims are kept
+        assertEquals(Arrays.asList(
+                new PassportChange(DEVICE_COUNT, "2", "3"),
+                new PassportChange(USER_LAST_SEEN, "2021-06-20T08:00:00.000Z", "2021-06-20T09:00:00.000Z"),
+                new PassportChange(CAPP_LAST_LOGIN, "1624176000", "1624179600")),
+                history.getChangesSinceLastLogin("user"));
+    }
+
+    @Test
+    public void recordsALoginOnce() {
+        PassportHistory history = new PassportHistory.Builder().build();
+        history.record(login("user", 0, 2));
+        history.record(login("user", 1, 3));
+        // The same session shown again
+        assertFalse(history.record(login("user", 1, 3)));
+        assertEquals(3, history.getChangesSinceLastLogin("user").size());
+
+        // Logged in again without a change
+        TokenClaims again = login("user", 1, 3);
+        Map<String, String> claims = new HashMap<>(again.asMap());
+        claims.put("iat", String.valueOf(LOGIN + 7200));
+        assertTrue(history.record(TokenClaims.of(claims)));
+        assertEquals(Collections.emptyList(), history.getChangesSinceLastLogin("user"));
+    }
+
+    @Test
+    public void comparesTheLoginsOfOneUser() {
+        PassportHistory history = new PassportHistory.Builder().build();
+        history.record(login("user", 0, 2));
+        history.record(login("other", 1, 2));
+
+        assertNull(history.getChangesSinceLastLogin("other"));
+        assertNull(history.getChangesSinceLastLogin("user"));
+    }
+
+    @Test
+    public void survivesRestart() {
+        File file = new File(folder.getRoot(), "history");
+        PassportHistory history = newHistory(file);
+        for (int i = 0; i < 3; i++) {
+            history.record(login("user", i, 2 + i));
+        }
+
+        PassportHistory restored = newHistory(file);
+        assertEquals(history.getChangesSinceLastLogin("user"), restored.getChangesSinceLastLogin("user"));
+        List<PassportSnapshot> snapshots = restored.readAll();
+        assertEquals(3, snapshots.size());
+        for (int i = 0; i < 3; i++) {
+            assertEquals((LOGIN + i * 3600) * 1000, snapshots.get(i).getLoginMillis());
+            assertEquals(String.valueOf(2 + i), snapshots.get(i).get(DEVICE_COUNT));
+        }
+
+        restored.record(login("user", 3, 5));
+        assertEquals(4, newHistory(file).readAll().size());
+    }
+
+    @Test
+    public void writesOnlyTheChangedClaims() {
+        File file = new File(folder.getRoot(), "history");
+        PassportHistory history = newHistory(file);
+        history.record(login("user", 0, 2));
+        long first = file.length();
+        history.record(login("user", 1, 3));
+
+        // Length, type, login time, mask, three small differences and the checksum
+        assertTrue("Delta of " + (file.length() - first) + " bytes", file.length() - first <= 24);
+    }
+
+    @Test
+    public void keepsValuesAsTheyWere() {
+        PassportHistory history = new PassportHistory.Builder().file(new File(folder.getRoot(), "history")).build();
+        Map<String, String> claims = new HashMap<>(login("user", 0, 2).asMap());
+        // Not written as numbers and instants, they would not read back the same
+        claims.put(DEVICE_COUNT, "007");
+        claims.put(USER_LAST_SEEN, "2021-06-20T08:00:00Z");
+        claims.put("bindid_network_info.confirmed_capp_count", "-1");
+        claims.remove(CAPP_LAST_LOGIN);
+        history.record(TokenClaims.of(claims));
+
+        PassportSnapshot snapshot = new PassportHistory.Builder().file(new File(folder.getRoot(), "history"))
+                .build()
+                .getLast();
+        assertEquals("007", snapshot.get(DEVICE_COUNT));
+        assertEquals("2021-06-20T08:00:00Z", snapshot.get(USER_LAST_SEEN));
+        assertEquals("-1", snapshot.get("bindid_network_info.confirmed_capp_count"));
+        assertNull(snapshot.get(CAPP_LAST_LOGIN));
+        assertEquals("user", snapshot.get("sub"));
+    }
+
+    @Test
+    public void compactsToTheLastLogins() {
+        File file = new File(folder.getRoot(), "history");
+        PassportHistory history = new PassportHistory.Builder()
+                .file(file)
+                .maxEntries(10)
+                .compactEvery(5)
+                .build();
+        for (int i = 0; i < 14; i++) {
+            history.record(login("user", i, i));
+        }
+        assertEquals(14, history.readAll().size());
+
+        history.record(login("user", 14, 14));
+        List<PassportSnapshot> snapshots = history.readAll();
+        assertEquals(10, snapshots.size());
+        assertEquals("5", snapshots.get(0).get(DEVICE_COUNT));
+        assertEquals("14", snapshots.get(9).get(DEVICE_COUNT));
+
+        // Appended to the compacted file, and compared with the last login before it
+        history.record(login("user", 15, 15));
+        PassportHistory restored = newHistory(file);
+        assertEquals(11, restored.readAll().size());
+        assertEquals(new PassportChange(DEVICE_COUNT, "14", "15"),
+                restored.getChangesSinceLastLogin("user").get(0));
+    }
+
+    @Test
+    public void dropsARecordCutShort() throws Exception {
+        File file = new File(folder.getRoot(), "history");
+        PassportHistory history = newHistory(file);
+        for (int i = 0; i < 3; i++) {
+            history.record(login("user", i, 2 + i));
+        }
+        try (RandomAccessFile torn = new RandomAccessFile(file, "rw")) {
+            torn.setLength(torn.length() - 3);
+        }
+
+        PassportHistory restored = newHistory(file);
+        assertEquals("3", restored.getLast().get(DEVICE_COUNT));
+        restored.record(login("user", 3, 7));
+        List<PassportSnapshot> snapshots = newHistory(file).readAll();
+        assertEquals(3, snapshots.size());
+        assertEquals("7", snapshots.get(2).get(DEVICE_COUNT));
+        assertEquals(new PassportChange(DEVICE_COUNT, "3", "7"),
+                restored.getChangesSinceLastLogin("user").get(0));
+    }
+
+    @Test
+    public void startsOverWhenTheClaimsChange() {
+        File file = new File(folder.getRoot(), "history");
+        newHistory(file).record(login("user", 0, 2));
+
+        PassportHistory history = new PassportHistory.Builder().file(file).fields(DEVICE_COUNT).build();
+        assertNull(history.getLast());
+        history.record(login("user", 1, 3));
+        assertEquals(1, history.readAll().size());
+    }
+
+    @Test
+    public void forgetsEveryLogin() {
+        File file = new File(folder.getRoot(), "history");
+        PassportHistory history = newHistory(file);
+        history.record(login("user", 0, 2));
+        history.record(login("user", 1, 3));
+        history.clear();
+
+        assertNull(history.getLast());
+        assertFalse(file.exists());
+        history.record(login("user", 2, 4));
+        assertNull(newHistory(file).getChangesSinceLastLogin("user"));
+    }
+
+    private static PassportHistory newHistory(File file) {
+        return new PassportHistory.Builder().file(file).build();
+    }
+
+    /**
+     * @param hour hours after the first login
+     */
+    private static TokenClaims login(String subject, int hour, int deviceCount) {
+        long iat = LOGIN + hour * 3600L;
+        Map<String, String> claims = new HashMap<>();
+        claims.put("sub", subject);
+        claims.put("iat", String.valueOf(iat));
+        claims.put(DEVICE_COUNT, String.valueOf(deviceCount));
+        claims.put("bindid_network_info.confirmed_capp_count", "1");
+        claims.put(USER_LAST_SEEN, String.format("2021-06-20T%02d:00:00.000Z", 8 + hour % 16));
+        claims.put("bindid_network_info.authenticating_device_last_seen", "2021-06-20T08:00:00.000Z");
+        claims.put(CAPP_LAST_LOGIN, String.valueOf(iat));
+        claims.put("bindid_info.capp_last_login_from_authenticating_device", String.valueOf(LOGIN));
+        return TokenClaims.of(claims);
+    }
+}
@@ -0,0 +1,360 @@
+package com.ts.bindid.example.java.jwks;
+
+import com.nimbusds.jose.JOSEException;
+import com.nimbusds.jose.jwk.JWKSet;
+import com.nimbusds.jose.jwk.KeyUse;
+import com.nimbusds.jose.jwk.RSAKey;
+import com.nimbusds.jose.jwk.gen.RSAKeyGenerator;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import okhttp3.Cache;
+import okhttp3.OkHttpClient;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import okhttp3.mockwebserver.SocketPolicy;
+
+import static org.junit.Assert.*;
+
+/**
+ * Runs the key store against a local stand-in for the BindID jwks endpoint and counts fetches.
+ * The stand-in can drop the network, answer slowly or serve rotated keys.
+ */
+public class JwksKeyStoreTest {
+
+    private static final int LOGINS = 20;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private MockWebServer server;
+    private final JwksEndpoint endpoint = new JwksEndpoint();
+    private final AtomicLong now = new AtomicLong(1_000_000L);
+    private RSAKey key1;
+    private RSAKey key2;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new MockWebServer();
+        server.setDispatcher(endpoint);
+        server.start();
+        key1 = generateKey("k1");
+        key2 = generateKey("k2");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        server.shutdown();
+    }
+
+    @Test
+    public void fetchesOnceAcrossLogins() throws Exception {
+        enqueueKeys(null, key1);
+        JwksKeyStore store = newStore(null);
+
+        for (int i = 0; i < LOGINS; i++) {
+            assertEquals(key1.getModulus(), awaitKey(store, "k1").getModulus());
+        }
+        assertEquals(1, server.getRequestCount());
+    }
+
+    @Test
+    public void honoursMaxAge() throws Exception {
+        enqueueKeys("max-age=60", key1);
+        enqueueKeys("max-age=60", key1);
+        JwksKeyStore store = newStore(null);
+
+        awaitKey(store, "k1");
+        now.addAndGet(TimeUnit.SECONDS.toMillis(30));
+        awaitKey(store, "k1");
+        assertEquals(1, server.getRequestCount());
+
+        now.addAndGet(TimeUnit.SECONDS.toMillis(31));
+        awaitKey(store, "k1");
+        assertEquals(2, server.getRequestCount());
+    }
+
+    @Test
+    public void subtractsTheAgeOfCachedResponses() throws Exception {
+        // Spent 50 of its 60 seconds in a cache on the way
+        endpoint.enqueue(keysResponse("max-age=60", key1).setHeader("Age", "50"));
+        enqueueKeys("max-age=60", key1);
+        JwksKeyStore store = newStore(null);
+
+        awaitKey(store, "k1");
+        now.addAndGet(TimeUnit.SECONDS.toMillis(11));
+        awaitKey(store, "k1");
+        assertEquals(2, server.getRequestCount());
+    }
+
+    @Test
+    public void refetchesRotatedKeysPastTheHttpCache() throws Exception {
+        // The shared client caches responses, the key set must not be answered from there
+        OkHttpClient client = new OkHttpClient.Builder()
+                .cache(new Cache(folder.newFolder("http"), 1024 * 1024))
+                .build();
+        enqueueKeys("max-age=3600", key1);
+        enqueueKeys("max-age=3600", key1, key2);
+        JwksKeyStore store = new JwksKeyStore.Builder(server.url("/jwks").toString())
+                .client(client)
+                .minRefetchInterval(1, TimeUnit.MINUTES)
+                .callTimeout(1, TimeUnit.SECONDS)
+                .clock(now::get)
+                .build();
+
+        awaitKey(store, "k1");
+        now.addAndGet(TimeUnit.MINUTES.toMillis(2));
+        assertNotNull(awaitKey(store, "k2"));
+        assertEquals(2, server.getRequestCount());
+        assertEquals(0, client.cache().hitCount());
+    }
+
+    @Test
+    public void refreshesAheadOfExpiry() throws Exception {
+        enqueueKeys("max-age=600", key1);
+        enqueueKeys("max-age=600", key1);
+        JwksKeyStore store = newStore(null);
+
+        awaitKey(store, "k1");
+        now.addAndGet(TimeUnit.SECONDS.toMillis(590));
+        // Served from memory while the refresh runs in the background
+        awaitKey(store, "k1");
+        server.takeRequest(5, TimeUnit.SECONDS);
+        server.takeRequest(5, TimeUnit.SECONDS);
+        assertEquals(2, store.getFetchCount());
+    }
+
+    @Test
+    public void refetchesOnUnknownKeyIdAtMostOncePerInterval() throws Exception {
+        enqueueKeys(null, key1);
+        enqueueKeys(null, key1, key2);
+        JwksKeyStore store = newStore(null);
+
+        awaitKey(store, "k1");
+        now.addAndGet(TimeUnit.MINUTES.toMillis(2));
+        assertNotNull(awaitKey(store, "k2"));
+        assertEquals(2, server.getRequestCount());
+
+        for (int i = 0; i < LOGINS; i++) {
+            assertNull(awaitKey(store, "unknown"));
+        }
+        assertEquals(2, server.getRequestCount());
+    }
+
+    @Test
+    public void survivesRestartThroughSnapshot() throws Exception {
+        File snapshot = new File(folder.getRoot(), "jwks");
+        enqueueKeys(null, key1);
+        awaitKey(newStore(snapshot), "k1");
+        assertEquals(1, server.getRequestCount());
+
+        JwksKeyStore restarted = newStore(snapshot);
+        for (int i = 0; i < LOGINS; i++) {
+            assertNotNull(awaitKey(restarted, "k1"));
+        }
+        assertEquals(1, server.getRequestCount());
+        assertEquals(0, restarted.getFetchCount());
+    }
+
+    @Test
+    public void usesLastKnownKeysWhileOffline() throws Exception {
+        enqueueKeys("max-age=60", key1);
+        JwksKeyStore store = newStore(null);
+        awaitKey(store, "k1");
+
+        endpoint.offline = true;
+        now.addAndGet(TimeUnit.MINUTES.toMillis(10));
+        for (int i = 0; i < LOGINS; i++) {
+            assertNotNull(awaitKey(store, "k1"));
+        }
+        assertTrue(store.isOffline());
+        // Logins within the refetch interval do not wait for the unreachable endpoint again
+        assertEquals(2, store.getFetchCount());
+
+        endpoint.offline = false;
+        enqueueKeys("max-age=60", key1);
+        now.addAndGet(TimeUnit.MINUTES.toMillis(2));
+        assertNotNull(awaitKey(store, "k1"));
+        assertFalse(store.isOffline());
+        assertEquals(3, store.getFetchCount());
+    }
+
+    @Test
+    public void stopsUsingLastKnownKeysAfterGrace() throws Exception {
+        enqueueKeys("max-age=60", key1);
+        JwksKeyStore store = newStore(null);
+        awaitKey(store, "k1");
+
+        endpoint.offline = true;
+        now.addAndGet(TimeUnit.HOURS.toMillis(2));
+        assertNull(awaitKey(store, "k1"));
+    }
+
+    @Test
+    public void usesLastKnownKeysWhenServerErrors() throws Exception {
+        enqueueKeys("max-age=60", key1);
+        endpoint.enqueue(new MockResponse().setResponseCode(503));
+        JwksKeyStore store = newStore(null);
+        awaitKey(store, "k1");
+
+        now.addAndGet(TimeUnit.MINUTES.toMillis(10));
+        assertNotNull(awaitKey(store, "k1"));
+        assertTrue(store.isOffline());
+    }
+
+    @Test
+    public void timesOutSlowResponses() throws Exception {
+        enqueueKeys("max-age=60", key1);
+        endpoint.enqueue(keysResponse(null, key1).setHeadersDelay(3, TimeUnit.SECONDS));
+        JwksKeyStore store = newStore(null);
+        awaitKey(store, "k1");
+
+        now.addAndGet(TimeUnit.MINUTES.toMillis(10));
+        long start = System.nanoTime();
+        // Answered from the last known key set once the call timeout fires
+        assertNotNull(awaitKey(store, "k1"));
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(2));
+        assertTrue(store.isOffline());
+    }
+
+    @Test
+    public void findsRotatedKeyOnceBackOnline() throws Exception {
+        enqueueKeys("max-age=60", key1);
+        JwksKeyStore store = newStore(null);
+        awaitKey(store, "k1");
+
+        // The key set was rotated while the endpoint is unreachable
+        endpoint.offline = true;
+        now.addAndGet(TimeUnit.MINUTES.toMillis(10));
+        assertNull(awaitKey(store, "k2"));
+        assertNotNull(awaitKey(store, "k1"));
+
+        endpoint.offline = false;
+        enqueueKeys("max-age=60", key2);
+        now.addAndGet(TimeUnit.MINUTES.toMillis(2));
+        assertNotNull(awaitKey(store, "k2"));
+        assertNull(awaitKey(store, "k1"));
+    }
+
+    @Test
+    public void ignoresCorruptedSnapshot() throws Exception {
+        File snapshot = new File(folder.getRoot(), "jwks");
+        enqueueKeys(null, key1);
+        awaitKey(newStore(snapshot), "k1");
+
+        // Flip the last byte of the key set
+        try (RandomAccessFile file = new RandomAccessFile(snapshot, "rw")) {
+            file.seek(file.length() - 3);
+            int last = file.read();
+            file.seek(file.length() - 3);
+            file.write(last ^ 1);
+        }
+
+        enqueueKeys(null, key1);
+        JwksKeyStore restarted = newStore(snapshot);
+        assertNotNull(awaitKey(restarted, "k1"));
+        assertEquals(1, restarted.getFetchCount());
+        assertEquals(2, server.getRequestCount());
+    }
+
+    private JwksKeyStore newStore(File snapshot) {
+        return new JwksKeyStore.Builder(server.url("/jwks").toString())
+                .snapshotFile(snapshot)
+                .ttl(1, TimeUnit.HOURS)
+                .refreshAhead(30, TimeUnit.SECONDS)
+                .minRefetchInterval(1, TimeUnit.MINUTES)
+                .staleGrace(1, TimeUnit.HOURS)
+                .callTimeout(1, TimeUnit.SECONDS)
+                .clock(now::get)
+                .build();
+    }
+
+    private void enqueueKeys(String cacheControl, RSAKey... keys) {
+        endpoint.enqueue(keysResponse(cacheControl, keys));
+    }
+
+    private static MockResponse keysResponse(String cacheControl, RSAKey... keys) {
+        RSAKey[] publicKeys = new RSAKey[keys.length];
+        for (int i = 0; i < keys.length; i++) {
+            publicKeys[i] = keys[i].toPublicJWK();
+        }
+        MockResponse response = new MockResponse()
+                .setBody(new JWKSet(Arrays.asList(publicKeys)).toString());
+        if (cacheControl != null) {
+            response.setHeader("Cache-Control", cacheControl);
+        }
+        return response;
+    }
+
+    private static RSAKey awaitKey(JwksKeyStore store, String kid) throws InterruptedException {
+        CountDownLatch latch = new CountDownLatch(1);
+        AtomicReference<RSAKey> result = new AtomicReference<>();
+        store.getSigningKey(kid, new JwksKeyStore.Listener() {
+            @Override
+            public void onKey(RSAKey key) {
+                result.set(key);
+                latch.countDown();
+            }
+
+            @Override
+            public void onFailure(String error) {
+                latch.countDown();
+            }
+        });
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        return result.get();
+    }
+
+    /**
+     * Serves the queued responses in order, or drops every connection while offline
+     */
+    private static class JwksEndpoint extends Dispatcher {
+        private final BlockingQueue<MockResponse> responses = new LinkedBlockingQueue<>();
+        volatile boolean offline;
+
+        void enqueue(MockResponse response) {
+            responses.add(response);
+        }
+
+        @Override
+        public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+            if (offline) {
+                // A connection opened before the network was lost
+                return new MockResponse().setSocketPolicy(SocketPolicy.DISCONNECT_AFTER_REQUEST);
+            }
+            MockResponse response = responses.poll(5, TimeUnit.SECONDS);
+            return response != null ? response : new MockResponse().setResponseCode(404);
+        }
+
+        @Override
+        public MockResponse peek() {
+            if (offline) {
+                return new MockResponse().setSocketPolicy(SocketPolicy.DISCONNECT_AT_START);
+            }
+            return super.peek();
+        }
+    }
+
+    private static RSAKey generateKey(String kid) throws JOSEException {
+        return new RSAKeyGenerator(2048)
+                .keyID(kid)
+                .keyUse(KeyUse.SIGNATURE)
+                .generate();
+    }
+}
@@ -0,0 +1,118 @@
+package com.ts.bindid.example.java.jwks;
+
+import com.nimbusds.jose.jwk.JWK;
+import com.nimbusds.jose.jwk.JWKSet;
+import com.nimbusds.jose.jwk.KeyUse;
+import com.nimbusds.jose.jwk.RSAKey;
+import com.nimbusds.jose.jwk.gen.RSAKeyGenerator;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.List;
+
+import okio.Buffer;
+import okio.BufferedSource;
+
+import static org.junit.Assert.*;
+
+/**
+ * Reads synthetic key sets with the streaming parser and checks them against the previous
+ * JWKSet.parse over the response text. Both are measured by the benchmarks module.
+ */
+public class JwksParserTest {
+
+    private static String n;
+    private static String e;
+
+    @BeforeClass
+    public static void setUpClass() throws Exception {
+        RSAKey key = new RSAKeyGenerator(2048).generate();
+        n = key.getModulus().toString();
+        e = key.getPublicExponent().toString();
+    }
+
+    @Test
+    public void readsSameKeysAsJwkSet() throws Exception {
+        byte[] document = document(50);
+        List<RSAKey> expected = previous(source(document));
+        List<RSAKey> actual = JwksParser.readSigningKeys(source(document));
+
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).toJSONObject(), actual.get(i).toJSONObject());
+        }
+    }
+
+    @Test
+    public void skipsKeysThatCannotVerifyTokens() throws Exception {
+        String json = "{\"keys\":["
+                + "{\"kty\":\"EC\",\"use\":\"sig\",\"kid\":\"ec\",\"crv\":\"P-256\",\"x\":\"AA\",\"y\":\"AA\"},"
+                + "{\"kty\":\"RSA\",\"use\":\"enc\",\"kid\":\"enc\",\"n\":\"" + n + "\",\"e\":\"" + e + "\"},"
+                + "{\"kty\":\"RSA\",\"kid\":\"no-use\",\"n\":\"" + n + "\",\"e\":\"" + e + "\"},"
+                + "{\"kty\":\"RSA\",\"use\":\"sig\",\"kid\":\"sig\",\"x5t\":null,\"ext\":{\"a\":[1,2]},"
+                + "\"n\":\"" + n + "\",\"e\":\"" + e + "\"}"
+                + "],\"other\":{\"keys\":1}}";
+
+        List<RSAKey> keys = JwksParser.readSigningKeys(source(json.getBytes(StandardCharsets.UTF_8)));
+        assertEquals(1, keys.size());
+        assertEquals("sig", keys.get(0).getKeyID());
+        assertEquals(KeyUse.SIGNATURE, keys.get(0).getKeyUse());
+    }
+
+    @Test
+    public void stopsAtFirstMatchingKey() throws Exception {
+        // Everything after the matching key is truncated, so reading it would fail
+        String json = "{\"keys\":["
+                + "{\"kty\":\"RSA\",\"use\":\"sig\",\"kid\":\"k0\",\"n\":\"" + n + "\",\"e\":\"" + e + "\"},"
+                + "{\"kty\":\"RSA\",\"use\":\"sig\",\"kid\":\"k1\",\"n\":\"" + n + "\",\"e\":\"" + e + "\"},"
+                + "{\"kty\":";
+        byte[] document = json.getBytes(StandardCharsets.UTF_8);
+
+        assertEquals("k1", JwksParser.findSigningKey(source(document), "k1").getKeyID());
+        assertEquals("k0", JwksParser.findSigningKey(source(document), null).getKeyID());
+        assertNull(JwksParser.findSigningKey(source(document(10)), "missing"));
+    }
+
+    @Test(expected = ParseException.class)
+    public void rejectsKeysThatAreNotAnArray() throws Exception {
+        JwksParser.readSigningKeys(source("{\"keys\":{}}".getBytes(StandardCharsets.UTF_8)));
+    }
+
+    /**
+     * A key set as BindID would serve it, with every tenth key meant for encryption
+     */
+    private static byte[] document(int keys) {
+        StringBuilder json = new StringBuilder("{\"keys\":[");
+        for (int i = 0; i < keys; i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append("{\"kty\":\"RSA\",\"e\":\"").append(e)
+                    .append("\",\"use\":\"").append(i % 10 == 9 ? "enc" : "sig")
+                    .append("\",\"kid\":\"k").append(i)
+                    .append("\",\"alg\":\"RS256\",\"n\":\"").append(n).append("\"}");
+        }
+        return json.append("]}").toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static Buffer source(byte[] document) {
+        return new Buffer().write(document);
+    }
+
+    /**
+     * The previous JwksKeyStore parsing: the response as text, a JWKSet, then a filter
+     */
+    private static List<RSAKey> previous(BufferedSource source) throws Exception {
+        List<RSAKey> keys = new ArrayList<>();
+        for (JWK jwk : JWKSet.parse(source.readUtf8()).getKeys()) {
+            if (jwk instanceof RSAKey && KeyUse.SIGNATURE.equals(jwk.getKeyUse())) {
+                keys.add((RSAKey) jwk);
+            }
+        }
+        return keys;
+    }
+}
@@ -0,0 +1,82 @@
+package com.ts.bindid.example.java.jwks;
+
+import com.nimbusds.jose.JOSEException;
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.JWSHeader;
+import com.nimbusds.jose.JWSVerifier;
+import com.nimbusds.jose.crypto.RSASSASigner;
+import com.nimbusds.jose.jwk.KeyUse;
+import com.nimbusds.jose.jwk.RSAKey;
+import com.nimbusds.jose.jwk.gen.RSAKeyGenerator;
+import com.nimbusds.jwt.JWTClaimsSet;
+import com.nimbusds.jwt.SignedJWT;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that the verifier cache reuses the verifier of a key and drops it once the key is
+ * rotated. VerifierCacheBenchmark in the benchmarks module measures parse + verify throughput.
+ */
+public class VerifierCacheTest {
+
+    private static RSAKey signingKey;
+    private static String publicKeyJson;
+    private static String idToken;
+
+    @BeforeClass
+    public static void setUpClass() throws Exception {
+        signingKey = generateKey("k1");
+        publicKeyJson = signingKey.toPublicJWK().toJSONString();
+        idToken = sign(signingKey);
+    }
+
+    @Test
+    public void reusesVerifierForSameKey() throws Exception {
+        VerifierCache cache = new VerifierCache();
+        RSAKey publicKey = RSAKey.parse(publicKeyJson);
+        String cacheKey = VerifierCache.cacheKey(publicKey);
+
+        assertSame(cache.get(cacheKey, publicKey), cache.get(cacheKey, publicKey));
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void dropsVerifierWhenKeyIsRotated() throws Exception {
+        VerifierCache cache = new VerifierCache();
+        RSAKey oldKey = signingKey.toPublicJWK();
+        // Same key ID, different key material
+        RSAKey newKey = generateKey("k1").toPublicJWK();
+        String oldCacheKey = VerifierCache.cacheKey(oldKey);
+        String newCacheKey = VerifierCache.cacheKey(newKey);
+        assertNotEquals(oldCacheKey, newCacheKey);
+
+        JWSVerifier oldVerifier = cache.get(oldCacheKey, oldKey);
+        cache.retain(Collections.singleton(newCacheKey));
+        assertEquals(0, cache.size());
+        assertNotSame(oldVerifier, cache.get(newCacheKey, newKey));
+        assertFalse(SignedJWT.parse(idToken).verify(cache.get(newCacheKey, newKey)));
+    }
+
+    private static String sign(RSAKey key) throws JOSEException {
+        SignedJWT jwt = new SignedJWT(
+                new JWSHeader.Builder(JWSAlgorithm.RS256).keyID(key.getKeyID()).build(),
+                new JWTClaimsSet.Builder()
+                        .subject("user")
+                        .issuer("https://signin.bindid-sandbox.io")
+                        .build());
+        jwt.sign(new RSASSASigner(key));
+        return jwt.serialize();
+    }
+
+    private static RSAKey generateKey(String kid) throws JOSEException {
+        return new RSAKeyGenerator(2048)
+                .keyID(kid)
+                .keyUse(KeyUse.SIGNATURE)
+                .generate();
+    }
+}
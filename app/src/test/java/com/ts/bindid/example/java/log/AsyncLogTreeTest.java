@@ -0,0 +1,235 @@
+package com.ts.bindid.example.java.log;
+
+import android.util.Log;
+
+import com.nimbusds.jose.jwk.RSAKey;
+import com.ts.bindid.example.java.TestTokens;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import timber.log.Timber;
+
+import static org.junit.Assert.*;
+
+public class AsyncLogTreeTest {
+
+    private static final String VERIFIER = "dBjftJeZ4CVP-mB92K27uhbUJU1p1r_wW1gFWFOEjXk";
+
+    private final List<String> written = Collections.synchronizedList(new ArrayList<>());
+    private final Set<String> writerThreads = new CopyOnWriteArraySet<>();
+    private AsyncLogTree tree;
+
+    @After
+    public void tearDown() {
+        if (tree != null) {
+            Timber.uproot(tree);
+            tree.close();
+        }
+    }
+
+    @Test
+    public void formatsOnTheDrainThread() {
+        tree = builder().build();
+        List<String> formattedOn = new CopyOnWriteArrayList<>();
+        Object argument = new Object() {
+            @Override
+            public String toString() {
+                formattedOn.add(Thread.currentThread().getName());
+                return "argument";
+            }
+        };
+
+        tree.i("Logged %s and %d", argument, 42);
+        // Nothing formatted by the caller
+        assertTrue(formattedOn.isEmpty());
+        assertTrue(tree.flush(5, TimeUnit.SECONDS));
+
+        assertEquals(listOf("4/BindID: Logged argument and 42"), written);
+        assertEquals(listOf("log-drain"), formattedOn);
+        assertEquals(Collections.singleton("log-drain"), writerThreads);
+    }
+
+    @Test
+    public void appendsStackTraces() {
+        tree = builder().build();
+        tree.e(new IllegalStateException("boom"), "Failed after %dms", 12);
+        tree.w("100% sure");
+        assertTrue(tree.flush(5, TimeUnit.SECONDS));
+
+        assertTrue(written.get(0), written.get(0).startsWith("6/BindID: Failed after 12ms\njava.lang.IllegalStateException: boom"));
+        assertEquals("5/BindID: 100% sure", written.get(1));
+    }
+
+    @Test
+    public void redactsTokens() throws Exception {
+        tree = builder().build();
+        RSAKey key = TestTokens.generateKey("kid");
+        String idToken = TestTokens.sign(key, TestTokens.claims("user"));
+
+        tree.d("Exchanged: %s", idToken);
+        tree.d("Authorization: Bearer %s", "opaque.access-token/value");
+        tree.d("POST /token code=%s&code_verifier=%s&redirect_uri=%s", "SplxlOBeZQQYbYS6WxSbIA", VERIFIER, "bindid://login");
+        tree.d("{\"id_token\":\"%s\",\"token_type\":\"Bearer\"}", idToken);
+        tree.d("Verifier %s", VERIFIER);
+        tree.d("Key %s, expires in %ds", "kid", 300);
+        assertTrue(tree.flush(5, TimeUnit.SECONDS));
+
+        assertEquals(listOf(
+                "3/BindID: Exchanged: [redacted]",
+                "3/BindID: Authorization: Bearer [redacted]",
+                "3/BindID: POST /token code=[redacted]&code_verifier=[redacted]&redirect_uri=bindid://login",
+                "3/BindID: {\"id_token\":\"[redacted]\",\"token_type\":\"Bearer\"}",
+                "3/BindID: Verifier [redacted]",
+                "3/BindID: Key kid, expires in 300s"), written);
+        for (String message : written) {
+            assertFalse(message.contains(idToken.substring(0, 20)));
+        }
+    }
+
+    @Test
+    public void keepsStackTraces() throws Exception {
+        tree = builder().build();
+        String frame = "at com.ts.bindid.example.java.login.LoginStateMachine.fail(LoginStateMachine.java:123)";
+        IllegalStateException error = new IllegalStateException("Verification failed");
+
+        tree.d("Failed %s", frame);
+        tree.w(error, "Login failed");
+        assertTrue(tree.flush(5, TimeUnit.SECONDS));
+
+        assertEquals("3/BindID: Failed " + frame, written.get(0));
+        assertTrue(written.get(1), written.get(1).contains(
+                "at com.ts.bindid.example.java.log.AsyncLogTreeTest.keepsStackTraces(AsyncLogTreeTest.java:"));
+        assertFalse(written.get(1), written.get(1).contains(LogRedactor.REDACTED));
+    }
+
+    @Test
+    public void filtersAndSamplesBeforeFormatting() {
+        tree = builder()
+                .minPriority(Log.DEBUG)
+                .sample("OkHttp", 3)
+                .build();
+        Timber.plant(tree);
+
+        Timber.v("Not logged %s", new Object() {
+            @Override
+            public String toString() {
+                throw new AssertionError("Formatted below the minimum priority");
+            }
+        });
+        for (int i = 0; i < 7; i++) {
+            Timber.tag("OkHttp").d("line %d", i);
+        }
+        // Warnings are never sampled out
+        Timber.tag("OkHttp").w("HTTP %d", 503);
+        assertTrue(tree.flush(5, TimeUnit.SECONDS));
+
+        assertEquals(listOf("3/OkHttp: line 0", "3/OkHttp: line 3", "3/OkHttp: line 6", "5/OkHttp: HTTP 503"), written);
+    }
+
+    @Test
+    public void dropsWhenFullAndReportsIt() throws InterruptedException {
+        CountDownLatch writing = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        tree = new AsyncLogTree.Builder()
+                .capacity(4)
+                .sink((priority, tag, message) -> {
+                    writing.countDown();
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    written.add(message);
+                })
+                .build();
+
+        // The drain thread blocks on the first message, the next four fill the buffer
+        tree.w("message %d", 0);
+        assertTrue(writing.await(5, TimeUnit.SECONDS));
+        for (int i = 1; i <= 7; i++) {
+            tree.i("message %d", i);
+        }
+        assertEquals(3, tree.getDroppedCount());
+
+        release.countDown();
+        assertTrue(tree.flush(5, TimeUnit.SECONDS));
+        tree.close();
+        assertEquals(listOf("message 0", "message 1", "message 2", "message 3", "message 4",
+                "3 log messages dropped, the buffer was full"), written);
+    }
+
+    @Test
+    public void boundsMessageLength() {
+        tree = builder().maxMessageLength(10).build();
+        tree.i("%s", "0123456789abcdef");
+        assertTrue(tree.flush(5, TimeUnit.SECONDS));
+
+        assertEquals(listOf("4/BindID: 0123456789…"), written);
+    }
+
+    @Test
+    public void survivesBadFormats() {
+        tree = builder().build();
+        tree.i("Count %d", "not a number");
+        tree.i("After");
+        assertTrue(tree.flush(5, TimeUnit.SECONDS));
+
+        assertEquals(listOf("4/BindID: Count %d [not a number]", "4/BindID: After"), written);
+    }
+
+    @Test
+    public void keepsEveryMessageFromConcurrentThreads() throws InterruptedException {
+        tree = builder().capacity(64 * 1024).build();
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            int thread = t;
+            threads[t] = new Thread(() -> {
+                for (int i = 0; i < 5_000; i++) {
+                    tree.d("thread %d message %d", thread, i);
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertTrue(tree.flush(10, TimeUnit.SECONDS));
+
+        assertEquals(0, tree.getDroppedCount());
+        assertEquals(20_000, written.size());
+        // Each thread's messages stay in order
+        int[] next = new int[threads.length];
+        for (String message : written) {
+            String[] parts = message.split(" ");
+            int thread = Integer.parseInt(parts[2]);
+            assertEquals(next[thread]++, Integer.parseInt(parts[4]));
+        }
+    }
+
+    private AsyncLogTree.Builder builder() {
+        return new AsyncLogTree.Builder()
+                .drainInterval(5, TimeUnit.MILLISECONDS)
+                .sink((priority, tag, message) -> {
+                    writerThreads.add(Thread.currentThread().getName());
+                    written.add(priority + "/" + tag + ": " + message);
+                });
+    }
+
+    private static List<String> listOf(String... values) {
+        List<String> list = new ArrayList<>();
+        for (String value : values) {
+            list.add(value);
+        }
+        return list;
+    }
+}
@@ -0,0 +1,212 @@
+package com.ts.bindid.example.java.login;
+
+import com.nimbusds.jose.jwk.JWKSet;
+import com.nimbusds.jose.jwk.RSAKey;
+import com.nimbusds.jwt.JWTClaimsSet;
+import com.ts.bindid.example.java.TestTokens;
+import com.ts.bindid.example.java.jwks.JwksKeyStore;
+import com.ts.bindid.example.java.ui.main.token.TokenClaims;
+import com.ts.bindid.validation.IdTokenValidator;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+
+import static org.junit.Assert.*;
+
+/**
+ * Drives the login pipeline with deterministic executors and a fake clock.
+ */
+public class LoginPipelineTest {
+
+    private MockWebServer server;
+    private JwksKeyStore keyStore;
+    private RSAKey signingKey;
+    private final QueueExecutor compute = new QueueExecutor(2);
+    private final QueueExecutor main = new QueueExecutor(Integer.MAX_VALUE);
+    private final AtomicLong nanos = new AtomicLong();
+    private LoginPipeline pipeline;
+    private final RecordingCallback callback = new RecordingCallback();
+
+    @Before
+    public void setUp() throws Exception {
+        signingKey = TestTokens.generateKey("k1");
+        server = new MockWebServer();
+        server.enqueue(new MockResponse().setBody(new JWKSet(signingKey.toPublicJWK()).toString()));
+        server.start();
+        keyStore = new JwksKeyStore.Builder(server.url("/jwks").toString()).build();
+        warmUp(keyStore);
+
+        IdTokenValidator validator = new IdTokenValidator.Builder(null)
+                .issuer(TestTokens.ISSUER)
+                .audience(TestTokens.CLIENT_ID)
+                .build();
+        // Every clock read advances the clock by one microsecond
+        pipeline = new LoginPipeline(compute, main, () -> nanos.addAndGet(1_000), validator);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        server.shutdown();
+    }
+
+    @Test
+    public void verifiesOnComputeAndDeliversOnMain() throws Exception {
+        pipeline.verify(TestTokens.sign(signingKey, TestTokens.claims("user")), keyStore, callback);
+
+        assertEquals(1, compute.size());
+        assertEquals(0, main.size());
+        compute.runAll();
+        assertTrue(callback.claims.isEmpty());
+
+        main.runAll();
+        assertEquals(1, callback.claims.size());
+        assertEquals("user", callback.claims.get(0).get("sub"));
+        Map<LoginPipeline.Stage, Long> timings = callback.timings.get(0);
+        assertEquals(LoginPipeline.Stage.values().length, timings.size());
+        for (Long stageNanos : timings.values()) {
+            assertTrue(stageNanos > 0);
+        }
+    }
+
+    @Test
+    public void rejectsForgedSignature() throws Exception {
+        RSAKey forger = TestTokens.generateKey("k1");
+        pipeline.verify(TestTokens.sign(forger, TestTokens.claims("user")), keyStore, callback);
+        compute.runAll();
+        main.runAll();
+
+        assertTrue(callback.claims.isEmpty());
+        assertEquals("Invalid JWT signature", callback.errors.get(0));
+    }
+
+    @Test
+    public void rejectsTokenForAnotherClient() throws Exception {
+        JWTClaimsSet claims = new JWTClaimsSet.Builder(TestTokens.claims("user"))
+                .audience("another_client")
+                .build();
+        pipeline.verify(TestTokens.sign(signingKey, claims), keyStore, callback);
+        compute.runAll();
+        main.runAll();
+
+        assertTrue(callback.claims.isEmpty());
+        assertTrue(callback.errors.get(0).startsWith("Unexpected audience"));
+    }
+
+    @Test
+    public void checksTheNonceOfTheRequest() throws Exception {
+        String idToken = TestTokens.sign(signingKey, TestTokens.claims("user"));
+        pipeline.verify(idToken, "nonce-user", keyStore, callback);
+        pipeline.verify(idToken, "nonce-of-another-request", keyStore, callback);
+        compute.runAll();
+        main.runAll();
+
+        assertEquals(1, callback.claims.size());
+        assertEquals(Collections.singletonList("Unexpected nonce"), callback.errors);
+    }
+
+    @Test
+    public void cancelledVerificationDeliversNothing() throws Exception {
+        LoginPipeline.Task task = pipeline.verify(
+                TestTokens.sign(signingKey, TestTokens.claims("user")), keyStore, callback);
+        task.cancel();
+        compute.runAll();
+        main.runAll();
+
+        assertTrue(callback.claims.isEmpty());
+        assertTrue(callback.errors.isEmpty());
+    }
+
+    @Test
+    public void failsFastWhenComputePoolIsSaturated() throws Exception {
+        String idToken = TestTokens.sign(signingKey, TestTokens.claims("user"));
+        for (int i = 0; i < 3; i++) {
+            pipeline.verify(idToken, keyStore, callback);
+        }
+        main.runAll();
+        assertEquals(1, callback.errors.size());
+        assertTrue(callback.errors.get(0).startsWith("Too many logins"));
+
+        compute.runAll();
+        main.runAll();
+        assertEquals(2, callback.claims.size());
+    }
+
+    private static void warmUp(JwksKeyStore keyStore) throws InterruptedException {
+        CountDownLatch latch = new CountDownLatch(1);
+        keyStore.getSigningKey("k1", new JwksKeyStore.Listener() {
+            @Override
+            public void onKey(RSAKey key) {
+                latch.countDown();
+            }
+
+            @Override
+            public void onFailure(String error) {
+                fail(error);
+            }
+        });
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+    }
+
+    /**
+     * Queues tasks until the test runs them, and rejects tasks beyond its capacity
+     */
+    private static class QueueExecutor implements Executor {
+        private final ArrayDeque<Runnable> tasks = new ArrayDeque<>();
+        private final int capacity;
+
+        QueueExecutor(int capacity) {
+            this.capacity = capacity;
+        }
+
+        @Override
+        public void execute(Runnable task) {
+            if (tasks.size() >= capacity) {
+                throw new RejectedExecutionException();
+            }
+            tasks.add(task);
+        }
+
+        int size() {
+            return tasks.size();
+        }
+
+        void runAll() {
+            Runnable task;
+            while ((task = tasks.poll()) != null) {
+                task.run();
+            }
+        }
+    }
+
+    private static class RecordingCallback implements LoginPipeline.Callback {
+        final List<TokenClaims> claims = new ArrayList<>();
+        final List<Map<LoginPipeline.Stage, Long>> timings = new ArrayList<>();
+        final List<String> errors = new ArrayList<>();
+
+        @Override
+        public void onVerified(TokenClaims verified, Map<LoginPipeline.Stage, Long> stageNanos) {
+            claims.add(verified);
+            timings.add(stageNanos);
+        }
+
+        @Override
+        public void onFailure(String error) {
+            errors.add(error);
+        }
+    }
+}
@@ -0,0 +1,297 @@
+package com.ts.bindid.example.java.login;
+
+import com.ts.bindid.XmBindIdError;
+import com.ts.bindid.XmBindIdErrorCode;
+import com.ts.bindid.XmBindIdExchangeTokenResponse;
+import com.ts.bindid.XmBindIdResponse;
+import com.ts.bindid.XmBindIdTokenType;
+import com.ts.bindid.example.java.ui.main.token.TokenClaims;
+import com.ts.bindid.impl.XmBindIdErrorImpl;
+import com.ts.bindid.util.ObservableFuture;
+import com.ts.bindid.util.PromiseFuture;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Runs the login steps against fake SDK calls. A rotation keeps the machine, as the ViewModel is
+ * kept, and the recreated screen renders its current state and may ask for a login again.
+ */
+public class LoginStateMachineTest {
+
+    private static final long START = TimeUnit.DAYS.toMillis(20000);
+
+    private final ManualScheduler scheduler = new ManualScheduler(START);
+    private final FakeSteps steps = new FakeSteps();
+    private final List<LoginState.Step> states = new ArrayList<>();
+    private final SessionStore sessionStore = new SessionStore.Builder()
+            .clock(scheduler::now)
+            .writeExecutor(Runnable::run)
+            .build();
+    private final LoginStateMachine machine = new LoginStateMachine.Builder(steps, state -> states.add(state.getStep()))
+            .sessionStore(sessionStore)
+            .build();
+
+    @Test
+    public void logsInThroughEachStep() {
+        machine.onSdkReady();
+        assertTrue(machine.login());
+        steps.authentications.get(0).complete(response());
+        steps.exchanges.get(0).complete(tokens("user"));
+        steps.verifications.get(0).verified("user");
+
+        assertEquals(listOf(LoginState.Step.READY, LoginState.Step.AUTHENTICATING, LoginState.Step.EXCHANGING,
+                LoginState.Step.VERIFYING, LoginState.Step.VERIFIED), states);
+        LoginState state = machine.getState();
+        assertFalse(state.isOffline());
+        assertEquals("id-token-user", state.getSession().getIdToken());
+        assertSame(state.getSession(), sessionStore.get());
+    }
+
+    @Test
+    public void doesNotLoginBeforeSdkIsReady() {
+        assertFalse(machine.login());
+        assertEquals(0, steps.authentications.size());
+        assertEquals(LoginState.Step.STARTING, machine.getState().getStep());
+    }
+
+    @Test
+    public void rotationDuringLoginMakesNoDuplicateCalls() {
+        machine.onSdkReady();
+        machine.login();
+
+        // The recreated screen finds the login in flight and asks again, as a restored click would
+        assertTrue(machine.getState().isInProgress());
+        assertFalse(machine.login());
+        steps.authentications.get(0).complete(response());
+
+        assertEquals(LoginState.Step.EXCHANGING, machine.getState().getStep());
+        assertFalse(machine.login());
+        steps.exchanges.get(0).complete(tokens("user"));
+
+        assertEquals(LoginState.Step.VERIFYING, machine.getState().getStep());
+        assertFalse(machine.login());
+        steps.verifications.get(0).verified("user");
+
+        assertEquals(1, steps.authentications.size());
+        assertEquals(1, steps.exchanges.size());
+        assertEquals(1, steps.verifications.size());
+        // The result waits for the screen that is there once the login ends
+        assertEquals(LoginState.Step.VERIFIED, machine.getState().getStep());
+    }
+
+    @Test
+    public void dropsResultsOnceCleared() {
+        machine.onSdkReady();
+        machine.login();
+        machine.clear();
+        states.clear();
+
+        // The screen is gone for good, the SDK answers late
+        steps.authentications.get(0).complete(response());
+
+        assertEquals(0, steps.exchanges.size());
+        assertTrue(states.isEmpty());
+        assertFalse(machine.login());
+    }
+
+    @Test
+    public void cancelsVerificationWhenCleared() {
+        machine.onSdkReady();
+        machine.login();
+        steps.authentications.get(0).complete(response());
+        steps.exchanges.get(0).complete(tokens("user"));
+        machine.clear();
+
+        FakeVerification verification = steps.verifications.get(0);
+        assertTrue(verification.isCancelled());
+        verification.verified("user");
+        assertEquals(LoginState.Step.VERIFYING, machine.getState().getStep());
+        assertNull(sessionStore.get());
+    }
+
+    @Test
+    public void failsWhenTheExchangeTimesOut() {
+        machine.onSdkReady();
+        machine.login();
+        steps.authentications.get(0).complete(response());
+
+        // As the exchange endpoint rejects a call past its adaptive timeout
+        steps.exchanges.get(0).reject(new XmBindIdErrorImpl(XmBindIdErrorCode.InternetConnection,
+                "token exchange timed out after 20000ms"));
+        LoginState state = machine.getState();
+        assertEquals(LoginState.Step.FAILED, state.getStep());
+        assertEquals(XmBindIdErrorCode.InternetConnection, state.getError().getCode());
+        assertEquals(0, steps.verifications.size());
+    }
+
+    @Test
+    public void fallsBackToStoredSessionWhenOffline() {
+        Session stored = session("stored", START + TimeUnit.MINUTES.toMillis(10));
+        sessionStore.put(stored);
+        machine.onSdkReady();
+        machine.login();
+        steps.authentications.get(0).complete(response());
+        steps.exchanges.get(0).reject(new XmBindIdErrorImpl(XmBindIdErrorCode.InternetConnection, "offline"));
+
+        LoginState state = machine.getState();
+        assertEquals(LoginState.Step.VERIFIED, state.getStep());
+        assertTrue(state.isOffline());
+        assertSame(stored, state.getSession());
+    }
+
+    @Test
+    public void failsVerificationAsConnectionErrorWhenKeysAreOffline() {
+        steps.offline = true;
+        machine.onSdkReady();
+        machine.login();
+        steps.authentications.get(0).complete(response());
+        steps.exchanges.get(0).complete(tokens("user"));
+        steps.verifications.get(0).callback.onFailure("Unable to fetch the key set");
+
+        assertEquals(XmBindIdErrorCode.InternetConnection, machine.getState().getError().getCode());
+    }
+
+    @Test
+    public void retriesAfterFailure() {
+        machine.onSdkReady();
+        machine.login();
+        steps.authentications.get(0).reject(new XmBindIdErrorImpl(XmBindIdErrorCode.UserCanceled, ""));
+        assertEquals(LoginState.Step.FAILED, machine.getState().getStep());
+
+        machine.onResultShown();
+        assertEquals(LoginState.Step.READY, machine.getState().getStep());
+        assertTrue(machine.login());
+        assertEquals(2, steps.authentications.size());
+    }
+
+    private static List<LoginState.Step> listOf(LoginState.Step... steps) {
+        List<LoginState.Step> list = new ArrayList<>();
+        for (LoginState.Step step : steps) {
+            list.add(step);
+        }
+        return list;
+    }
+
+    private static Session session(String subject, long expiresAtMillis) {
+        Map<String, String> claims = new HashMap<>();
+        claims.put("sub", subject);
+        claims.put("exp", Long.toString(TimeUnit.MILLISECONDS.toSeconds(expiresAtMillis)));
+        return new Session(TokenClaims.of(claims), "id-token-" + subject, "access-token-" + subject);
+    }
+
+    private static XmBindIdResponse response() {
+        return new XmBindIdResponse() {
+            @Override
+            public String getCode() {
+                return "code";
+            }
+
+            @Override
+            public String getState() {
+                return "state";
+            }
+
+            @Override
+            public String getCodeVerifier() {
+                return "verifier";
+            }
+
+            @Override
+            public String getRedirectUri() {
+                return "bindidexample://login";
+            }
+        };
+    }
+
+    private static XmBindIdExchangeTokenResponse tokens(String subject) {
+        return new XmBindIdExchangeTokenResponse() {
+            @Override
+            public String getAccessToken() {
+                return "access-token-" + subject;
+            }
+
+            @Override
+            public String getIdToken() {
+                return "id-token-" + subject;
+            }
+
+            @Override
+            public XmBindIdTokenType getTokenType() {
+                return null;
+            }
+
+            @Override
+            public Integer getExpiresIn() {
+                return 3600;
+            }
+        };
+    }
+
+    private class FakeVerification implements LoginPipeline.Task {
+        final LoginPipeline.Callback callback;
+        boolean cancelled;
+
+        FakeVerification(LoginPipeline.Callback callback) {
+            this.callback = callback;
+        }
+
+        void verified(String subject) {
+            Map<LoginPipeline.Stage, Long> stageNanos = new EnumMap<>(LoginPipeline.Stage.class);
+            stageNanos.put(LoginPipeline.Stage.PARSE, 1L);
+            stageNanos.put(LoginPipeline.Stage.VERIFY, 1L);
+            callback.onVerified(session(subject, scheduler.now() + TimeUnit.HOURS.toMillis(1)).getClaims(), stageNanos);
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return cancelled;
+        }
+    }
+
+    private class FakeSteps implements LoginStateMachine.Steps {
+        final List<PromiseFuture<XmBindIdResponse, XmBindIdError>> authentications = new ArrayList<>();
+        final List<PromiseFuture<XmBindIdExchangeTokenResponse, XmBindIdError>> exchanges = new ArrayList<>();
+        final List<FakeVerification> verifications = new ArrayList<>();
+        boolean offline;
+
+        @Override
+        public ObservableFuture<XmBindIdResponse, XmBindIdError> authenticate() {
+            PromiseFuture<XmBindIdResponse, XmBindIdError> future = new PromiseFuture<>();
+            authentications.add(future);
+            return future;
+        }
+
+        @Override
+        public ObservableFuture<XmBindIdExchangeTokenResponse, XmBindIdError> exchangeToken(XmBindIdResponse response) {
+            PromiseFuture<XmBindIdExchangeTokenResponse, XmBindIdError> future = new PromiseFuture<>();
+            exchanges.add(future);
+            return future;
+        }
+
+        @Override
+        public LoginPipeline.Task verify(String idToken, LoginPipeline.Callback callback) {
+            FakeVerification verification = new FakeVerification(callback);
+            verifications.add(verification);
+            return verification;
+        }
+
+        @Override
+        public boolean isOffline() {
+            return offline;
+        }
+    }
+}
@@ -0,0 +1,203 @@
+package com.ts.bindid.example.java.login;
+
+import com.nimbusds.jwt.JWTClaimsSet;
+import com.ts.bindid.example.java.TestTokens;
+import com.ts.bindid.example.java.ui.main.token.TokenClaims;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.crypto.KeyGenerator;
+import javax.crypto.SecretKey;
+
+import okio.Okio;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that the last verified session is served until its token expires plus the grace period,
+ * across restarts, encrypted on disk, and never from a corrupted file.
+ */
+public class SessionStoreTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final AtomicLong now = new AtomicLong(System.currentTimeMillis());
+    private final SessionCipher cipher = new AesGcmSessionCipher(newKey());
+
+    @Test
+    public void servesSessionUntilExpiryAndGrace() {
+        SessionStore store = newStore(null, cipher);
+        Session session = session("user");
+        store.put(session);
+
+        assertSame(session, store.get());
+        // Tokens are valid for an hour, and the session for five minutes more
+        now.addAndGet(TimeUnit.MINUTES.toMillis(64));
+        assertSame(session, store.get());
+        now.addAndGet(TimeUnit.MINUTES.toMillis(2));
+        assertNull(store.get());
+    }
+
+    @Test
+    public void checksExpiryWithoutReadingTheStore() {
+        SessionStore store = newStore(null, cipher);
+        Session session = session("user");
+
+        assertFalse(store.isExpired(session));
+        now.addAndGet(TimeUnit.MINUTES.toMillis(66));
+        assertTrue(store.isExpired(session));
+    }
+
+    @Test(timeout = 10_000)
+    public void servesSessionWhileItIsEncrypted() throws Exception {
+        CountDownLatch encrypting = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        SessionCipher slowCipher = new SessionCipher() {
+            @Override
+            public byte[] encrypt(byte[] plaintext) throws GeneralSecurityException {
+                encrypting.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return cipher.encrypt(plaintext);
+            }
+
+            @Override
+            public ByteBuffer decrypt(ByteBuffer ciphertext) throws GeneralSecurityException {
+                return cipher.decrypt(ciphertext);
+            }
+        };
+        File file = new File(folder.getRoot(), "session");
+        ExecutorService writer = Executors.newSingleThreadExecutor();
+        SessionStore store = new SessionStore.Builder()
+                .file(file)
+                .cipher(slowCipher)
+                .clock(now::get)
+                .writeExecutor(writer)
+                .build();
+        Session first = session("first");
+        store.put(first);
+        assertTrue(encrypting.await(5, TimeUnit.SECONDS));
+
+        // Neither waits for the encryption in flight
+        assertSame(first, store.get());
+        Session second = session("second");
+        store.put(second);
+        release.countDown();
+        writer.shutdown();
+        assertTrue(writer.awaitTermination(5, TimeUnit.SECONDS));
+
+        // The overtaken write was skipped, the newer one kept
+        assertEquals("id-token-second", newStore(file, cipher).get().getIdToken());
+    }
+
+    @Test
+    public void skipsSessionWithoutExpiry() {
+        SessionStore store = newStore(null, cipher);
+        store.put(new Session(TokenClaims.from(new JWTClaimsSet.Builder().subject("user").build()),
+                "id", "access"));
+        assertNull(store.get());
+    }
+
+    @Test
+    public void survivesRestart() {
+        File file = new File(folder.getRoot(), "session");
+        Session session = session("user");
+        newStore(file, cipher).put(session);
+
+        Session restored = newStore(file, cipher).get();
+        assertNotNull(restored);
+        assertEquals(session.getIdToken(), restored.getIdToken());
+        assertEquals(session.getAccessToken(), restored.getAccessToken());
+        assertEquals(session.getClaims().asMap(), restored.getClaims().asMap());
+    }
+
+    @Test
+    public void encryptsTokensAndClaims() throws Exception {
+        File file = new File(folder.getRoot(), "session");
+        newStore(file, cipher).put(session("user"));
+
+        String stored = Okio.buffer(Okio.source(file)).readString(StandardCharsets.ISO_8859_1);
+        assertFalse(stored.contains("access-token-user"));
+        assertFalse(stored.contains("user@example.com"));
+    }
+
+    @Test
+    public void dropsExpiredSessionFromDisk() {
+        File file = new File(folder.getRoot(), "session");
+        newStore(file, cipher).put(session("user"));
+
+        now.addAndGet(TimeUnit.HOURS.toMillis(2));
+        assertNull(newStore(file, cipher).get());
+        assertFalse(file.exists());
+    }
+
+    @Test
+    public void ignoresCorruptedSession() throws Exception {
+        File file = new File(folder.getRoot(), "session");
+        newStore(file, cipher).put(session("user"));
+
+        try (RandomAccessFile stored = new RandomAccessFile(file, "rw")) {
+            stored.seek(stored.length() / 2);
+            int value = stored.read();
+            stored.seek(stored.length() / 2);
+            stored.write(value ^ 1);
+        }
+        assertNull(newStore(file, cipher).get());
+        assertFalse(file.exists());
+    }
+
+    @Test
+    public void ignoresSessionOfAnotherKey() {
+        File file = new File(folder.getRoot(), "session");
+        newStore(file, cipher).put(session("user"));
+
+        // For example after the keystore key was invalidated
+        assertNull(newStore(file, new AesGcmSessionCipher(newKey())).get());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void requiresCipherToStoreOnDisk() {
+        newStore(new File(folder.getRoot(), "session"), null);
+    }
+
+    private SessionStore newStore(File file, SessionCipher cipher) {
+        return new SessionStore.Builder()
+                .file(file)
+                .cipher(cipher)
+                .grace(5, TimeUnit.MINUTES)
+                .clock(now::get)
+                .build();
+    }
+
+    static Session session(String subject) {
+        return new Session(TokenClaims.from(TestTokens.claims(subject)),
+                "id-token-" + subject, "access-token-" + subject);
+    }
+
+    static SecretKey newKey() {
+        try {
+            KeyGenerator generator = KeyGenerator.getInstance("AES");
+            generator.init(256);
+            return generator.generateKey();
+        } catch (Exception e) {
+            throw new AssertionError(e);
+        }
+    }
+}
@@ -0,0 +1,270 @@
+package com.ts.bindid.example.java.login;
+
+import com.ts.bindid.XmBindIdError;
+import com.ts.bindid.XmBindIdErrorCode;
+import com.ts.bindid.example.java.ui.main.token.TokenClaims;
+import com.ts.bindid.impl.XmBindIdErrorImpl;
+import com.ts.bindid.util.ObservableFuture;
+import com.ts.bindid.util.PromiseFuture;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks the refresh timing on a virtual clock, and that concurrent callers share one refresh.
+ */
+public class TokenManagerTest {
+
+    private static final long START = TimeUnit.DAYS.toMillis(20000);
+    private static final long SKEW = TimeUnit.SECONDS.toMillis(60);
+    private static final long JITTER = TimeUnit.SECONDS.toMillis(30);
+    private static final long RETRY_DELAY = TimeUnit.SECONDS.toMillis(10);
+
+    private final ManualScheduler scheduler = new ManualScheduler(START);
+    private final FakeRefresher refresher = new FakeRefresher();
+    private final TokenManager manager = new TokenManager.Builder(refresher)
+            .scheduler(scheduler)
+            .clock(scheduler::now)
+            .random(() -> 0.5)
+            .skew(SKEW, TimeUnit.MILLISECONDS)
+            .jitter(JITTER, TimeUnit.MILLISECONDS)
+            .retryDelay(RETRY_DELAY, TimeUnit.MILLISECONDS)
+            .build();
+
+    @Test
+    public void servesValidSessionWithoutRefreshing() {
+        Session session = session("user", START + TimeUnit.MINUTES.toMillis(10));
+        manager.setSession(session);
+
+        ObservableFuture<Session, XmBindIdError> valid = manager.getValidSession();
+        assertTrue(valid.isDone());
+        assertSame(session, result(valid).get());
+        assertEquals(0, refresher.calls.size());
+    }
+
+    @Test
+    public void refreshesAheadOfExpiryWithJitter() {
+        long exp = START + TimeUnit.MINUTES.toMillis(10);
+        manager.setSession(session("user", exp));
+        // Half of the jitter, as the random source returns 0.5
+        long refreshAt = exp - SKEW - JITTER / 2;
+        assertEquals(refreshAt, scheduler.nextRunAt());
+
+        scheduler.advanceBy(refreshAt - START - 1);
+        assertEquals(0, refresher.calls.size());
+        scheduler.advanceBy(1);
+        assertEquals(1, refresher.calls.size());
+
+        // The refreshed session is scheduled in turn
+        long nextExp = scheduler.now() + TimeUnit.MINUTES.toMillis(10);
+        Session refreshed = session("user", nextExp);
+        refresher.complete(0, refreshed);
+        assertSame(refreshed, manager.getSession());
+        assertEquals(nextExp - SKEW - JITTER / 2, scheduler.nextRunAt());
+    }
+
+    @Test
+    public void collapsesConcurrentRefreshes() throws Exception {
+        // Within the skew, so every caller needs a refresh
+        manager.setSession(session("user", START + SKEW / 2));
+
+        int callers = 16;
+        ExecutorService executor = Executors.newFixedThreadPool(callers);
+        CountDownLatch ready = new CountDownLatch(callers);
+        CountDownLatch go = new CountDownLatch(1);
+        List<Future<ObservableFuture<Session, XmBindIdError>>> futures = new ArrayList<>();
+        for (int i = 0; i < callers; i++) {
+            futures.add(executor.submit(() -> {
+                ready.countDown();
+                go.await();
+                return manager.getValidSession();
+            }));
+        }
+        ready.await();
+        go.countDown();
+
+        List<Session> results = new CopyOnWriteArrayList<>();
+        for (Future<ObservableFuture<Session, XmBindIdError>> future : futures) {
+            ObservableFuture<Session, XmBindIdError> session = future.get(5, TimeUnit.SECONDS);
+            // Nobody waits for the refresh to finish
+            assertFalse(session.isDone());
+            session.addListener(new ObservableFuture.Listener<Session, XmBindIdError>() {
+                @Override
+                public void onComplete(Session value) {
+                    results.add(value);
+                }
+
+                @Override
+                public void onReject(XmBindIdError error) {
+                    fail(error.getMessage());
+                }
+            });
+        }
+        executor.shutdown();
+        assertEquals(1, refresher.calls.size());
+        assertEquals(1, manager.getRefreshCount());
+
+        Session refreshed = session("user", START + TimeUnit.MINUTES.toMillis(10));
+        refresher.complete(0, refreshed);
+        assertEquals(callers, results.size());
+        assertEquals(Collections.singleton(refreshed), new HashSet<>(results));
+    }
+
+    @Test
+    public void joinsScheduledRefreshInFlight() {
+        long exp = START + TimeUnit.MINUTES.toMillis(10);
+        manager.setSession(session("user", exp));
+        scheduler.advanceBy(exp - SKEW - JITTER / 2 - START);
+        assertEquals(1, refresher.calls.size());
+
+        // The session is now within the skew, the caller joins the refresh started by the schedule
+        scheduler.advanceBy(JITTER);
+        ObservableFuture<Session, XmBindIdError> valid = manager.getValidSession();
+        assertFalse(valid.isDone());
+        assertEquals(1, refresher.calls.size());
+
+        Session refreshed = session("user", exp + TimeUnit.MINUTES.toMillis(10));
+        refresher.complete(0, refreshed);
+        assertSame(refreshed, result(valid).get());
+    }
+
+    @Test
+    public void startsNewRefreshAfterCompletion() {
+        manager.refresh();
+        refresher.complete(0, session("user", START + TimeUnit.MINUTES.toMillis(10)));
+
+        manager.refresh();
+        assertEquals(2, refresher.calls.size());
+    }
+
+    @Test
+    public void retriesFailedRefreshWhileSessionIsValid() {
+        long exp = START + TimeUnit.MINUTES.toMillis(10);
+        manager.setSession(session("user", exp));
+        ObservableFuture<Session, XmBindIdError> refresh = manager.refresh();
+        AtomicReference<XmBindIdError> error = new AtomicReference<>();
+        refresh.addListener(new ObservableFuture.Listener<Session, XmBindIdError>() {
+            @Override
+            public void onComplete(Session value) {
+                fail();
+            }
+
+            @Override
+            public void onReject(XmBindIdError rejected) {
+                error.set(rejected);
+            }
+        });
+
+        refresher.reject(0, XmBindIdErrorCode.InternetConnection);
+        assertEquals(XmBindIdErrorCode.InternetConnection, error.get().getCode());
+        assertEquals(START + RETRY_DELAY, scheduler.nextRunAt());
+
+        scheduler.advanceBy(RETRY_DELAY);
+        assertEquals(2, refresher.calls.size());
+    }
+
+    @Test
+    public void doesNotRetryExpiredSession() {
+        manager.setSession(session("user", START - 1));
+        // Past exp, the schedule refreshes straight away
+        scheduler.advanceBy(0);
+        assertEquals(1, refresher.calls.size());
+
+        refresher.reject(0, XmBindIdErrorCode.ServerError);
+        assertEquals(-1, scheduler.nextRunAt());
+    }
+
+    @Test
+    public void doesNotRetryWhatFailsAgain() {
+        manager.setSession(session("user", START + TimeUnit.MINUTES.toMillis(10)));
+        manager.refresh();
+
+        refresher.reject(0, XmBindIdErrorCode.UserCanceled);
+        assertEquals(-1, scheduler.nextRunAt());
+        manager.refresh();
+        refresher.reject(1, XmBindIdErrorCode.AccessDenied);
+        assertEquals(-1, scheduler.nextRunAt());
+    }
+
+    @Test
+    public void rejectsWhenRefresherThrows() {
+        TokenManager throwing = new TokenManager.Builder(current -> {
+            throw new IllegalStateException("No activity");
+        })
+                .scheduler(scheduler)
+                .clock(scheduler::now)
+                .build();
+
+        XmBindIdError error = result(throwing.refresh()).error;
+        assertEquals(XmBindIdErrorCode.PlatformError, error.getCode());
+        // The failed refresh does not block the next one
+        assertNotNull(result(throwing.refresh()).error);
+    }
+
+    private static Session session(String subject, long expiresAtMillis) {
+        Map<String, String> claims = new HashMap<>();
+        claims.put("sub", subject);
+        claims.put("exp", String.valueOf(TimeUnit.MILLISECONDS.toSeconds(expiresAtMillis)));
+        return new Session(TokenClaims.of(claims), "id-token-" + subject, "access-token-" + subject);
+    }
+
+    private static Result result(ObservableFuture<Session, XmBindIdError> future) {
+        Result result = new Result();
+        future.addListener(new ObservableFuture.Listener<Session, XmBindIdError>() {
+            @Override
+            public void onComplete(Session value) {
+                result.session = value;
+            }
+
+            @Override
+            public void onReject(XmBindIdError error) {
+                result.error = error;
+            }
+        });
+        return result;
+    }
+
+    private static class Result {
+        Session session;
+        XmBindIdError error;
+
+        Session get() {
+            assertNull(error);
+            return session;
+        }
+    }
+
+    private static class FakeRefresher implements TokenManager.Refresher {
+        final List<PromiseFuture<Session, XmBindIdError>> calls = new CopyOnWriteArrayList<>();
+
+        @Override
+        public ObservableFuture<Session, XmBindIdError> refresh(Session current) {
+            PromiseFuture<Session, XmBindIdError> future = new PromiseFuture<>();
+            calls.add(future);
+            return future;
+        }
+
+        void complete(int call, Session session) {
+            calls.get(call).complete(session);
+        }
+
+        void reject(int call, XmBindIdErrorCode code) {
+            calls.get(call).reject(new XmBindIdErrorImpl(code, code.name()));
+        }
+    }
+}
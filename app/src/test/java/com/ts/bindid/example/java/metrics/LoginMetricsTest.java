@@ -0,0 +1,87 @@
+package com.ts.bindid.example.java.metrics;
+
+import com.nimbusds.jose.util.JSONObjectUtils;
+
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+public class LoginMetricsTest {
+
+    private final AtomicLong nanos = new AtomicLong();
+    private final LoginMetrics metrics = new LoginMetrics(nanos::get);
+
+    @Test
+    public void reportsPercentilesWithinBucketPrecision() {
+        // 1ms to 100ms, one of each
+        for (int millis = 1; millis <= 100; millis++) {
+            long start = metrics.start();
+            nanos.addAndGet(TimeUnit.MILLISECONDS.toNanos(millis));
+            metrics.stop(LoginStage.AUTHENTICATE, start);
+        }
+
+        MetricsSnapshot.StageSnapshot stage = metrics.snapshot().get(LoginStage.AUTHENTICATE);
+        assertEquals(100, stage.count);
+        assertWithin(50_000, stage.p50Micros);
+        assertWithin(95_000, stage.p95Micros);
+        assertWithin(99_000, stage.p99Micros);
+        assertEquals(0, metrics.snapshot().get(LoginStage.EXCHANGE_TOKEN).count);
+    }
+
+    @Test
+    public void countsErrorsByCode() {
+        metrics.stopWithError(LoginStage.EXCHANGE_TOKEN, metrics.start(), "InvalidResponse");
+        metrics.stopWithError(LoginStage.EXCHANGE_TOKEN, metrics.start(), "InvalidResponse");
+        metrics.stopWithError(LoginStage.JWKS_FETCH, metrics.start(), TimeUnit.SECONDS);
+
+        MetricsSnapshot snapshot = metrics.snapshot();
+        assertEquals(Long.valueOf(2), snapshot.get(LoginStage.EXCHANGE_TOKEN).errors.get("InvalidResponse"));
+        assertEquals(Long.valueOf(1), snapshot.get(LoginStage.JWKS_FETCH).errors.get("SECONDS"));
+    }
+
+    @Test
+    public void exportsJsonSnapshotToReporters() throws Exception {
+        InMemoryReporter reporter = new InMemoryReporter();
+        metrics.addReporter(reporter);
+        long start = metrics.start();
+        nanos.addAndGet(TimeUnit.MILLISECONDS.toNanos(3));
+        metrics.stop(LoginStage.VERIFY, start);
+        metrics.flush();
+
+        Map<String, Object> json = JSONObjectUtils.parse(reporter.getLast().toJson());
+        Map<String, Object> verify = JSONObjectUtils.getJSONObject(json, "VERIFY");
+        assertEquals(1, JSONObjectUtils.getInt(verify, "count"));
+        assertWithin(3_000, JSONObjectUtils.getLong(verify, "p50_us"));
+        assertEquals(LoginStage.values().length, json.size());
+    }
+
+    @Test
+    public void timingDoesNotAllocate() {
+        LoginMetrics systemClockMetrics = new LoginMetrics();
+        for (int i = 0; i < 10_000; i++) {
+            systemClockMetrics.stop(LoginStage.TOKEN_SCREEN, systemClockMetrics.start());
+        }
+        long before = allocatedBytes();
+        for (int i = 0; i < 10_000; i++) {
+            systemClockMetrics.stop(LoginStage.TOKEN_SCREEN, systemClockMetrics.start());
+        }
+        long allocated = allocatedBytes() - before;
+        // Leave room for the allocation counter itself
+        assertTrue("allocated " + allocated + " bytes", allocated < 1024);
+    }
+
+    private static void assertWithin(long expectedMicros, long actualMicros) {
+        assertTrue("expected ~" + expectedMicros + " but was " + actualMicros,
+                actualMicros >= expectedMicros && actualMicros <= expectedMicros * 1.25);
+    }
+
+    private static long allocatedBytes() {
+        return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean())
+                .getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+}
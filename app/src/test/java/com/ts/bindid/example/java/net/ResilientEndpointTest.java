@@ -0,0 +1,354 @@
+package com.ts.bindid.example.java.net;
+
+import com.ts.bindid.XmBindIdError;
+import com.ts.bindid.XmBindIdErrorCode;
+import com.ts.bindid.impl.XmBindIdErrorImpl;
+import com.ts.bindid.util.ObservableFuture;
+import com.ts.bindid.util.PromiseFuture;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import okhttp3.Call;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import okhttp3.mockwebserver.SocketPolicy;
+
+import static org.junit.Assert.*;
+
+/**
+ * Drives a {@link ResilientEndpoint} against a local stand-in server that answers slowly or fails
+ * on demand, and against SDK calls that never answer.
+ */
+public class ResilientEndpointTest {
+
+    private static final long OPEN_SECONDS = 30;
+
+    private final FaultyEndpoint faults = new FaultyEndpoint();
+    private final AtomicLong breakerNanos = new AtomicLong();
+    private MockWebServer server;
+
+    @Before
+    public void setUp() throws IOException {
+        server = new MockWebServer();
+        server.setDispatcher(faults);
+        server.start();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        server.shutdown();
+    }
+
+    @Test
+    public void retriesIdempotentCallsUntilTheyGoThrough() throws IOException {
+        OkHttpClient client = client(endpoint(10).build());
+        faults.next.add(new MockResponse().setResponseCode(503));
+        faults.next.add(new MockResponse().setSocketPolicy(SocketPolicy.DISCONNECT_AFTER_REQUEST));
+
+        try (Response response = get(client)) {
+            assertEquals(200, response.code());
+        }
+        assertEquals(3, server.getRequestCount());
+    }
+
+    @Test
+    public void doesNotRetryPosts() throws IOException {
+        OkHttpClient client = client(endpoint(10).build());
+        faults.status = 503;
+
+        Request post = new Request.Builder().url(server.url("/token")).post(RequestBody.create(new byte[0])).build();
+        try (Response response = client.newCall(post).execute()) {
+            assertEquals(503, response.code());
+        }
+        assertEquals(1, server.getRequestCount());
+    }
+
+    @Test
+    public void retriesStayWithinBudget() throws IOException {
+        // Two retries saved up, then one more for every ten calls
+        OkHttpClient client = client(endpoint(100).retryBudget(new RetryBudget(0.1, 2)).build());
+        faults.status = 503;
+
+        for (int i = 0; i < 10; i++) {
+            get(client).close();
+        }
+        // The first call spends both retries, the next nine earn less than one
+        assertEquals(12, server.getRequestCount());
+    }
+
+    @Test
+    public void openCircuitFailsFastUntilProbeSucceeds() throws IOException {
+        ResilientEndpoint endpoint = endpoint(3).maxAttempts(1).build();
+        OkHttpClient client = client(endpoint);
+        faults.status = 500;
+        for (int i = 0; i < 3; i++) {
+            get(client).close();
+        }
+        assertEquals(CircuitBreaker.State.OPEN, endpoint.getCircuitBreaker().getState());
+
+        assertCircuitOpen(client);
+        assertEquals(3, server.getRequestCount());
+
+        // Once the open period is over a single probe reaches the recovered server
+        faults.status = 200;
+        breakerNanos.addAndGet(TimeUnit.SECONDS.toNanos(OPEN_SECONDS));
+        get(client).close();
+        assertEquals(CircuitBreaker.State.CLOSED, endpoint.getCircuitBreaker().getState());
+        get(client).close();
+        assertEquals(5, server.getRequestCount());
+    }
+
+    @Test
+    public void failedProbeOpensCircuitAgain() throws IOException {
+        ResilientEndpoint endpoint = endpoint(1).maxAttempts(1).build();
+        OkHttpClient client = client(endpoint);
+        faults.next.add(new MockResponse().setSocketPolicy(SocketPolicy.DISCONNECT_AFTER_REQUEST));
+        try {
+            get(client).close();
+            fail("Disconnected");
+        } catch (IOException expected) {
+            // Counted as a failure
+        }
+
+        breakerNanos.addAndGet(TimeUnit.SECONDS.toNanos(OPEN_SECONDS));
+        faults.status = 502;
+        get(client).close();
+        assertEquals(CircuitBreaker.State.OPEN, endpoint.getCircuitBreaker().getState());
+        assertCircuitOpen(client);
+        assertEquals(2, server.getRequestCount());
+    }
+
+    @Test
+    public void timeoutFollowsObservedLatency() throws IOException {
+        AdaptiveTimeout timeout = new AdaptiveTimeout.Builder()
+                .window(8, 4)
+                .bounds(150, 5_000, TimeUnit.MILLISECONDS)
+                .build();
+        OkHttpClient client = client(endpoint(10).timeout(timeout).maxAttempts(1).build());
+        assertEquals(5_000, timeout.getTimeoutMillis());
+
+        faults.delayMillis = 20;
+        for (int i = 0; i < 8; i++) {
+            get(client).close();
+        }
+        // Twice the slowest of ~20ms calls, raised to the minimum
+        assertEquals(150, timeout.getTimeoutMillis());
+
+        // A call that hangs is given up long before the 5 seconds a cold endpoint gets
+        faults.delayMillis = 3_000;
+        long start = System.nanoTime();
+        try {
+            get(client).close();
+            fail("Timed out");
+        } catch (SocketTimeoutException expected) {
+            long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            assertTrue(elapsedMillis + "ms", elapsedMillis < 1_500);
+        }
+    }
+
+    @Test
+    public void callTimeoutOfTheClientCountsAsFailure() {
+        ResilientEndpoint endpoint = endpoint(1).maxAttempts(1).build();
+        OkHttpClient client = client(endpoint).newBuilder()
+                .callTimeout(200, TimeUnit.MILLISECONDS)
+                .build();
+        faults.delayMillis = 3_000;
+        try {
+            get(client).close();
+            fail("Timed out");
+        } catch (IOException expected) {
+            // Cancelled by the call timeout
+        }
+        assertEquals(CircuitBreaker.State.OPEN, endpoint.getCircuitBreaker().getState());
+    }
+
+    @Test
+    public void cancelledCallIsIgnored() throws InterruptedException {
+        ResilientEndpoint endpoint = endpoint(1).maxAttempts(1).build();
+        OkHttpClient client = client(endpoint);
+        faults.delayMillis = 3_000;
+        Call call = client.newCall(new Request.Builder().url(server.url("/jwks")).build());
+        Thread canceller = new Thread(() -> {
+            try {
+                Thread.sleep(200);
+            } catch (InterruptedException e) {
+                return;
+            }
+            call.cancel();
+        });
+        canceller.start();
+        try {
+            call.execute().close();
+            fail("Cancelled");
+        } catch (IOException expected) {
+            // Says nothing about the endpoint
+        }
+        canceller.join();
+        assertEquals(CircuitBreaker.State.CLOSED, endpoint.getCircuitBreaker().getState());
+    }
+
+    @Test
+    public void maxCallCoversEveryAttempt() {
+        ResilientEndpoint endpoint = new ResilientEndpoint.Builder("test")
+                .timeout(new AdaptiveTimeout.Builder().bounds(100, 1_000, TimeUnit.MILLISECONDS).build())
+                .maxAttempts(3)
+                .backoff(200, TimeUnit.MILLISECONDS)
+                .build();
+        // Three attempts at the maximum timeout, with backoffs of up to 200 and 400ms between them
+        assertEquals(3_600, endpoint.getMaxCallMillis());
+        assertEquals(0, new ResilientEndpoint.Builder("sdk").build().getMaxCallMillis());
+    }
+
+    @Test
+    public void timeoutRisesWithSlowerEndpoint() {
+        AdaptiveTimeout timeout = new AdaptiveTimeout.Builder()
+                .window(10, 5)
+                .percentile(90, 2)
+                .bounds(100, 1_500, TimeUnit.MILLISECONDS)
+                .build();
+        for (int i = 0; i < 5; i++) {
+            timeout.record(100);
+        }
+        assertEquals(200, timeout.getTimeoutMillis());
+
+        // Timed out calls count at their timeout, older samples leave the window
+        for (int i = 0; i < 10; i++) {
+            timeout.recordTimeout(timeout.getTimeoutMillis());
+        }
+        assertEquals(1_500, timeout.getTimeoutMillis());
+    }
+
+    @Test
+    public void sdkCallTimesOutAndDropsLateResult() throws InterruptedException {
+        AdaptiveTimeout timeout = new AdaptiveTimeout.Builder()
+                .bounds(50, 50, TimeUnit.MILLISECONDS)
+                .build();
+        ResilientEndpoint endpoint = endpoint(10).timeout(timeout).build();
+        PromiseFuture<String, XmBindIdError> pending = new PromiseFuture<>();
+        BlockingQueue<Object> results = new LinkedBlockingQueue<>();
+
+        listen(endpoint.call(() -> pending), results);
+        Object result = results.poll(5, TimeUnit.SECONDS);
+        assertTrue(String.valueOf(result), result instanceof XmBindIdError);
+        assertEquals(XmBindIdErrorCode.InternetConnection, ((XmBindIdError) result).getCode());
+
+        pending.complete("late");
+        assertNull(results.poll(100, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void sdkCallFailsFastWhileCircuitIsOpen() {
+        ResilientEndpoint endpoint = endpoint(2).build();
+        AtomicInteger attempts = new AtomicInteger();
+        List<Object> results = new CopyOnWriteArrayList<>();
+
+        // The user cancelling says nothing about the server
+        for (int i = 0; i < 3; i++) {
+            listen(endpoint.call(() -> rejected(attempts, XmBindIdErrorCode.UserCanceled)), results);
+        }
+        assertEquals(CircuitBreaker.State.CLOSED, endpoint.getCircuitBreaker().getState());
+
+        for (int i = 0; i < 2; i++) {
+            listen(endpoint.call(() -> rejected(attempts, XmBindIdErrorCode.ServerError)), results);
+        }
+        // Not even started
+        listen(endpoint.call(() -> rejected(attempts, XmBindIdErrorCode.ServerError)), results);
+
+        assertEquals(5, attempts.get());
+        assertEquals(6, results.size());
+        XmBindIdError failedFast = (XmBindIdError) results.get(5);
+        assertEquals(XmBindIdErrorCode.ServerError, failedFast.getCode());
+        assertTrue(failedFast.getMessage(), failedFast.getMessage().contains("unavailable"));
+    }
+
+    private ResilientEndpoint.Builder endpoint(int failureThreshold) {
+        return new ResilientEndpoint.Builder("test")
+                .circuitBreaker(new CircuitBreaker.Builder("test")
+                        .failureThreshold(failureThreshold)
+                        .openDuration(OPEN_SECONDS, TimeUnit.SECONDS)
+                        .nanoClock(breakerNanos::get)
+                        .build())
+                .backoff(1, TimeUnit.MILLISECONDS);
+    }
+
+    private static OkHttpClient client(ResilientEndpoint endpoint) {
+        // Retries are left to the endpoint alone
+        return new OkHttpClient.Builder()
+                .retryOnConnectionFailure(false)
+                .addInterceptor(endpoint.interceptor())
+                .build();
+    }
+
+    private Response get(OkHttpClient client) throws IOException {
+        return client.newCall(new Request.Builder().url(server.url("/jwks")).build()).execute();
+    }
+
+    private void assertCircuitOpen(OkHttpClient client) throws IOException {
+        try {
+            get(client).close();
+            fail("Circuit open");
+        } catch (ResilientEndpoint.CircuitOpenException expected) {
+            // Failed without a request
+        }
+    }
+
+    private static ObservableFuture<String, XmBindIdError> rejected(AtomicInteger attempts, XmBindIdErrorCode code) {
+        attempts.incrementAndGet();
+        PromiseFuture<String, XmBindIdError> future = new PromiseFuture<>();
+        future.reject(new XmBindIdErrorImpl(code, code.name()));
+        return future;
+    }
+
+    private static void listen(ObservableFuture<String, XmBindIdError> future, Collection<Object> results) {
+        future.addListener(new ObservableFuture.Listener<String, XmBindIdError>() {
+            @Override
+            public void onComplete(String value) {
+                results.add(value);
+            }
+
+            @Override
+            public void onReject(XmBindIdError error) {
+                results.add(error);
+            }
+        });
+    }
+
+    /**
+     * Answers with the queued faults first, then with the current status after the current delay
+     */
+    private static class FaultyEndpoint extends Dispatcher {
+        final BlockingQueue<MockResponse> next = new LinkedBlockingQueue<>();
+        volatile int status = 200;
+        volatile long delayMillis;
+
+        @Override
+        public MockResponse dispatch(RecordedRequest request) {
+            MockResponse fault = next.poll();
+            if (fault != null) {
+                return fault;
+            }
+            return new MockResponse()
+                    .setResponseCode(status)
+                    .setHeadersDelay(delayMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package com.ts.bindid.example.java.net;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+
+import static org.junit.Assert.*;
+
+/**
+ * Counts the connections opened by a new OkHttpClient per call and by the shared client against
+ * a local stand-in server. SharedHttpClientBenchmark in the benchmarks module measures the calls.
+ *
+ * A recorded request with sequence number 0 is the first one on its connection, so the number of
+ * such requests is the number of connections that were opened after the warm-up call.
+ */
+public class SharedHttpClientTest {
+
+    private static final int CALLS = 20;
+
+    private MockWebServer server;
+
+    @Before
+    public void setUp() throws IOException {
+        server = new MockWebServer();
+        server.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) {
+                return new MockResponse();
+            }
+        });
+        server.start();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        server.shutdown();
+    }
+
+    @Test
+    public void sharedClientReusesConnection() throws Exception {
+        assertEquals(CALLS, newConnections(OkHttpClient::new));
+        OkHttpClient shared = new SharedHttpClient.Builder().build();
+        assertEquals(0, newConnections(() -> shared));
+    }
+
+    private int newConnections(Supplier<OkHttpClient> clients) throws Exception {
+        call(clients.get());
+        drainRecordedRequests();
+
+        for (int i = 0; i < CALLS; i++) {
+            call(clients.get());
+        }
+
+        int newConnections = 0;
+        for (int i = 0; i < CALLS; i++) {
+            RecordedRequest request = server.takeRequest(5, TimeUnit.SECONDS);
+            assertNotNull(request);
+            if (request.getSequenceNumber() == 0) {
+                newConnections++;
+            }
+        }
+        return newConnections;
+    }
+
+    private void call(OkHttpClient client) throws IOException {
+        Request request = new Request.Builder().url(server.url("/jwks")).build();
+        try (Response response = client.newCall(request).execute()) {
+            assertTrue(response.isSuccessful());
+            response.body().string();
+        }
+    }
+
+    private void drainRecordedRequests() throws InterruptedException {
+        while (server.takeRequest(100, TimeUnit.MILLISECONDS) != null) {
+            // Discard the warm-up request
+        }
+    }
+}
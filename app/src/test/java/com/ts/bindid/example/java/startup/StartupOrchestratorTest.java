@@ -0,0 +1,151 @@
+package com.ts.bindid.example.java.startup;
+
+import org.junit.Test;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+public class StartupOrchestratorTest {
+
+    private final ArrayDeque<Runnable> queue = new ArrayDeque<>();
+    private final AtomicLong nanos = new AtomicLong();
+    private final RecordingListener listener = new RecordingListener();
+
+    @Test
+    public void startsIndependentTasksTogether() {
+        List<String> started = new ArrayList<>();
+        new StartupOrchestrator(queue::add, nanos::get)
+                .add("sdk", completion -> started.add("sdk"))
+                .add("crypto", completion -> started.add("crypto"))
+                .add("preconnect", completion -> started.add("preconnect"))
+                .start(listener);
+
+        assertEquals(3, queue.size());
+        runQueued();
+        assertEquals(3, started.size());
+        // None of them completed yet
+        assertTrue(listener.finished.isEmpty());
+    }
+
+    @Test
+    public void runsDependentAfterItsDependencies() {
+        List<String> started = new ArrayList<>();
+        List<StartupOrchestrator.Completion> preconnect = new ArrayList<>();
+        new StartupOrchestrator(queue::add, nanos::get)
+                .add("preconnect", completion -> {
+                    started.add("preconnect");
+                    preconnect.add(completion);
+                })
+                .add("jwks", completion -> {
+                    started.add("jwks");
+                    completion.onComplete();
+                }, "preconnect")
+                .start(listener);
+
+        runQueued();
+        assertEquals(1, started.size());
+
+        nanos.addAndGet(5_000_000);
+        preconnect.get(0).onFailure("offline");
+        runQueued();
+
+        // A failed dependency still lets the dependent run
+        assertEquals(2, started.size());
+        assertEquals("jwks", started.get(1));
+        assertEquals("preconnect:offline", listener.finished.get(0));
+        assertEquals("jwks:ok", listener.finished.get(1));
+        assertEquals(Long.valueOf(5_000_000), listener.nanos.get(0));
+        assertTrue(listener.allFinished);
+    }
+
+    @Test
+    public void completesEachTaskOnce() {
+        new StartupOrchestrator(queue::add, nanos::get)
+                .add("crypto", completion -> {
+                    completion.onComplete();
+                    completion.onComplete();
+                    throw new IllegalStateException("after completing");
+                })
+                .start(listener);
+        runQueued();
+
+        assertEquals(1, listener.finished.size());
+        assertEquals("crypto:ok", listener.finished.get(0));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsUnknownDependency() {
+        new StartupOrchestrator(queue::add, nanos::get)
+                .add("jwks", StartupOrchestratorTest::complete, "preconnect");
+    }
+
+    @Test
+    public void runsInParallelOnThreadPool() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        CountDownLatch allStarted = new CountDownLatch(3);
+        CountDownLatch done = new CountDownLatch(1);
+        StartupOrchestrator.Task task = completion -> {
+            allStarted.countDown();
+            try {
+                // Every task waits for the other two, which only works if they run in parallel
+                assertTrue(allStarted.await(5, TimeUnit.SECONDS));
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+            completion.onComplete();
+        };
+        new StartupOrchestrator(executor, System::nanoTime)
+                .add("a", task)
+                .add("b", task)
+                .add("c", task)
+                .start(new StartupOrchestrator.Listener() {
+                    @Override
+                    public void onTaskFinished(String name, String error, long taskNanos) {
+                        assertNull(error);
+                    }
+
+                    @Override
+                    public void onAllFinished() {
+                        done.countDown();
+                    }
+                });
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        executor.shutdown();
+    }
+
+    private static void complete(StartupOrchestrator.Completion completion) {
+        completion.onComplete();
+    }
+
+    private void runQueued() {
+        Runnable task;
+        while ((task = queue.poll()) != null) {
+            task.run();
+        }
+    }
+
+    private static class RecordingListener implements StartupOrchestrator.Listener {
+        final List<String> finished = new ArrayList<>();
+        final List<Long> nanos = new ArrayList<>();
+        boolean allFinished;
+
+        @Override
+        public void onTaskFinished(String name, String error, long taskNanos) {
+            finished.add(name + ":" + (error == null ? "ok" : error));
+            nanos.add(taskNanos);
+        }
+
+        @Override
+        public void onAllFinished() {
+            allFinished = true;
+        }
+    }
+}
@@ -0,0 +1,306 @@
+package com.ts.bindid.example.java.tenant;
+
+import com.nimbusds.jose.jwk.JWKSet;
+import com.nimbusds.jose.jwk.RSAKey;
+import com.nimbusds.jwt.JWTClaimsSet;
+import com.ts.bindid.XmBindIdError;
+import com.ts.bindid.XmBindIdErrorCode;
+import com.ts.bindid.example.java.TestTokens;
+import com.ts.bindid.example.java.jwks.JwksKeyStore;
+import com.ts.bindid.example.java.login.LoginPipeline;
+import com.ts.bindid.example.java.metrics.LoginStage;
+import com.ts.bindid.example.java.startup.StartupOrchestrator;
+import com.ts.bindid.example.java.ui.main.token.TokenClaims;
+import com.ts.bindid.impl.XmBindIdErrorImpl;
+import com.ts.bindid.util.ObservableFuture;
+import com.ts.bindid.util.PromiseFuture;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import okhttp3.OkHttpClient;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+
+import static org.junit.Assert.*;
+
+/**
+ * Runs three tenants against their own local stand-in for BindID, each signing with its own key,
+ * and checks that nothing leaks between them.
+ */
+public class TenantRegistryTest {
+
+    private static final String[] TENANTS = {"acme", "globex", "initech"};
+    private static final long WARM_UP_DELAY_MILLIS = 300;
+
+    private final List<MockWebServer> servers = new ArrayList<>();
+    private final List<TenantEndpoint> endpoints = new ArrayList<>();
+    private final List<String> initialized = new CopyOnWriteArrayList<>();
+    private final List<PromiseFuture<Boolean, XmBindIdError>> initializations = new CopyOnWriteArrayList<>();
+    private TenantRegistry registry;
+
+    @Before
+    public void setUp() throws Exception {
+        TenantRegistry.Builder builder = new TenantRegistry.Builder(new OkHttpClient(), Runnable::run)
+                .sdkInitializer(profile -> {
+                    initialized.add(profile.getId());
+                    PromiseFuture<Boolean, XmBindIdError> initialization = new PromiseFuture<>();
+                    initializations.add(initialization);
+                    return initialization;
+                });
+        for (String id : TENANTS) {
+            TenantEndpoint endpoint = new TenantEndpoint(TestTokens.generateKey(id + "-key"));
+            MockWebServer server = new MockWebServer();
+            server.setDispatcher(endpoint);
+            server.start();
+            servers.add(server);
+            endpoints.add(endpoint);
+            builder.add(new TenantProfile.Builder(id, host(server), id + "_client", id + "://login").build());
+        }
+        registry = builder.build();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        for (MockWebServer server : servers) {
+            server.shutdown();
+        }
+    }
+
+    @Test
+    public void firstTenantIsActive() {
+        assertEquals("acme", registry.getActive().getId());
+        assertEquals(3, registry.getTenants().size());
+        assertEquals(servers.get(1).url("/jwks").toString(), registry.get("globex").getProfile().getJwksUrl());
+    }
+
+    @Test
+    public void keepsKeySetsApart() throws Exception {
+        for (int i = 0; i < TENANTS.length; i++) {
+            Tenant tenant = registry.get(TENANTS[i]);
+            assertEquals(endpoints.get(i).key.getKeyID(), signingKey(tenant).getKeyID());
+        }
+        for (int i = 0; i < TENANTS.length; i++) {
+            assertEquals(1, endpoints.get(i).jwksRequests.get());
+            assertEquals(1, registry.get(TENANTS[i]).getKeyStore().getFetchCount());
+        }
+        assertNotSame(registry.get("acme").getClient().connectionPool(),
+                registry.get("globex").getClient().connectionPool());
+    }
+
+    @Test
+    public void verifiesTokensOnlyForTheirTenant() throws Exception {
+        Tenant acme = registry.get("acme");
+        Tenant globex = registry.get("globex");
+        String acmeToken = TestTokens.sign(endpoints.get(0).key, claims(acme, "user"));
+
+        assertTrue(verify(acme, acmeToken).startsWith("verified:user"));
+        // Unknown key for globex, and the wrong issuer and audience besides
+        assertFalse(verify(globex, acmeToken).startsWith("verified"));
+
+        String globexToken = TestTokens.sign(endpoints.get(1).key, claims(globex, "user"));
+        assertTrue(verify(globex, globexToken).startsWith("verified:user"));
+    }
+
+    @Test
+    public void switchingInitializesOnlyTheNewTenant() throws Exception {
+        signingKey(registry.get("acme"));
+        registry.switchTo("acme");
+        initializations.get(0).complete(true);
+
+        ObservableFuture<Boolean, XmBindIdError> switched = registry.switchTo("globex");
+        // Asked again while the SDK initializes, the same switch is returned
+        assertSame(switched, registry.switchTo("globex"));
+        assertFalse(switched.isDone());
+        // A login started now still goes to the tenant the SDK is initialized with
+        assertEquals("acme", registry.getActive().getId());
+        initializations.get(1).complete(true);
+        assertTrue(switched.isDone());
+        assertEquals("globex", registry.getActive().getId());
+
+        assertEquals(listOf("acme", "globex"), initialized);
+        // Switching back finds the key set of acme cached
+        registry.switchTo("acme");
+        initializations.get(2).complete(true);
+        signingKey(registry.get("acme"));
+        assertEquals(1, endpoints.get(0).jwksRequests.get());
+        assertEquals(0, endpoints.get(1).jwksRequests.get());
+
+        // Already initialized, nothing to do
+        assertTrue(registry.switchTo("acme").isDone());
+        assertEquals(3, initialized.size());
+    }
+
+    @Test
+    public void failedSwitchIsRetried() {
+        registry.switchTo("globex");
+        initializations.get(0).reject(new XmBindIdErrorImpl(XmBindIdErrorCode.InvalidConfig, "bad client"));
+        assertEquals("acme", registry.getActive().getId());
+
+        registry.switchTo("globex");
+        assertEquals(listOf("globex", "globex"), initialized);
+    }
+
+    @Test
+    public void onlyTheLastSwitchBecomesActive() {
+        ObservableFuture<Boolean, XmBindIdError> toGlobex = registry.switchTo("globex");
+        ObservableFuture<Boolean, XmBindIdError> toInitech = registry.switchTo("initech");
+
+        initializations.get(0).complete(true);
+        assertTrue(toGlobex.isDone());
+        assertEquals("acme", registry.getActive().getId());
+
+        initializations.get(1).complete(true);
+        assertTrue(toInitech.isDone());
+        assertEquals("initech", registry.getActive().getId());
+    }
+
+    @Test
+    public void keepsMetricsPerTenant() {
+        Tenant acme = registry.get("acme");
+        acme.getMetrics().record(LoginStage.AUTHENTICATE, 5_000_000);
+
+        assertEquals(1, acme.getMetrics().snapshot().get(LoginStage.AUTHENTICATE).count);
+        assertEquals(0, registry.get("globex").getMetrics().snapshot().get(LoginStage.AUTHENTICATE).count);
+    }
+
+    @Test
+    public void warmsUpAllTenantsInParallel() throws Exception {
+        for (TenantEndpoint endpoint : endpoints) {
+            endpoint.delayMillis = WARM_UP_DELAY_MILLIS;
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        StartupOrchestrator orchestrator = new StartupOrchestrator(executor, System::nanoTime);
+        registry.addWarmUpTasks(orchestrator);
+        List<String> finished = new CopyOnWriteArrayList<>();
+        List<String> errors = new CopyOnWriteArrayList<>();
+        CountDownLatch done = new CountDownLatch(1);
+
+        long start = System.nanoTime();
+        orchestrator.start(new StartupOrchestrator.Listener() {
+            @Override
+            public void onTaskFinished(String name, String error, long nanos) {
+                finished.add(name);
+                if (error != null) {
+                    errors.add(name + ": " + error);
+                }
+            }
+
+            @Override
+            public void onAllFinished() {
+                done.countDown();
+            }
+        });
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        executor.shutdown();
+
+        assertEquals(6, finished.size());
+        assertTrue(errors.toString(), errors.isEmpty());
+        for (int i = 0; i < TENANTS.length; i++) {
+            assertEquals(1, endpoints.get(i).headRequests.get());
+            assertEquals(1, endpoints.get(i).jwksRequests.get());
+        }
+        // A pre-connect then a key set fetch per tenant, one after the other, 6 delays in a row
+        assertTrue(elapsedMillis + "ms", elapsedMillis < 4 * WARM_UP_DELAY_MILLIS);
+    }
+
+    private static String host(MockWebServer server) {
+        String url = server.url("/").toString();
+        return url.substring(0, url.length() - 1);
+    }
+
+    private static JWTClaimsSet claims(Tenant tenant, String subject) {
+        return new JWTClaimsSet.Builder(TestTokens.claims(subject))
+                .issuer(tenant.getProfile().getHost())
+                .audience(tenant.getProfile().getClientId())
+                .build();
+    }
+
+    private static RSAKey signingKey(Tenant tenant) throws InterruptedException {
+        BlockingQueue<Object> result = new LinkedBlockingQueue<>();
+        tenant.getKeyStore().getSigningKey(null, new JwksKeyStore.Listener() {
+            @Override
+            public void onKey(RSAKey key) {
+                result.add(key);
+            }
+
+            @Override
+            public void onFailure(String error) {
+                result.add(error);
+            }
+        });
+        Object key = result.poll(5, TimeUnit.SECONDS);
+        assertTrue(String.valueOf(key), key instanceof RSAKey);
+        return (RSAKey) key;
+    }
+
+    private static String verify(Tenant tenant, String idToken) throws InterruptedException {
+        BlockingQueue<String> result = new LinkedBlockingQueue<>();
+        tenant.getLoginPipeline().verify(idToken, tenant.getKeyStore(), new LoginPipeline.Callback() {
+            @Override
+            public void onVerified(TokenClaims claims, Map<LoginPipeline.Stage, Long> stageNanos) {
+                result.add("verified:" + claims.get("sub"));
+            }
+
+            @Override
+            public void onFailure(String error) {
+                result.add("failed:" + error);
+            }
+        });
+        String outcome = result.poll(5, TimeUnit.SECONDS);
+        assertNotNull(outcome);
+        return outcome;
+    }
+
+    private static List<String> listOf(String... values) {
+        List<String> list = new ArrayList<>();
+        for (String value : values) {
+            list.add(value);
+        }
+        return list;
+    }
+
+    /**
+     * The jwks endpoint of one tenant, which also answers the pre-connect
+     */
+    private static class TenantEndpoint extends Dispatcher {
+        final RSAKey key;
+        final AtomicInteger jwksRequests = new AtomicInteger();
+        final AtomicInteger headRequests = new AtomicInteger();
+        volatile long delayMillis;
+
+        TenantEndpoint(RSAKey key) {
+            this.key = key;
+        }
+
+        @Override
+        public MockResponse dispatch(RecordedRequest request) {
+            MockResponse response = new MockResponse().setHeadersDelay(delayMillis, TimeUnit.MILLISECONDS);
+            if ("HEAD".equals(request.getMethod())) {
+                headRequests.incrementAndGet();
+                return response;
+            }
+            if ("/jwks".equals(request.getPath())) {
+                jwksRequests.incrementAndGet();
+                return response.setBody(new JWKSet(key.toPublicJWK()).toString());
+            }
+            return response.setResponseCode(404);
+        }
+    }
+}
@@ -0,0 +1,236 @@
+package com.ts.bindid.example.java.ui.main.token;
+
+import com.nimbusds.jwt.JWTClaimsSet;
+import com.ts.bindid.example.java.R;
+import com.ts.bindid.example.java.TestTokens;
+import com.ts.bindid.example.java.format.TimestampFormatter;
+
+import org.junit.Test;
+
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Compares the rows of the claim schema with the previous field by field TokenData over a corpus
+ * of sample tokens. TokenDataBenchmark in the benchmarks module measures the row generation.
+ */
+public class ClaimSchemaTest {
+
+    private final PassportLabels labels = new PassportLabels("en-US", id -> "label-" + id);
+    private final TimestampFormatter timestamps = TimestampFormatter.of(Locale.US, ZoneId.of("UTC"));
+
+    @Test
+    public void matchesPreviousRowsForSampleTokens() {
+        for (Map.Entry<String, TokenClaims> sample : corpus().entrySet()) {
+            List<TokenItem> expected = new LegacyTokenData(sample.getValue(), timestamps).getTokens(labels);
+            List<TokenItem> actual = new TokenData(sample.getValue(), timestamps).getTokens(labels);
+            assertEquals(sample.getKey(), expected, actual);
+        }
+    }
+
+    @Test
+    public void rendersUnknownClaimsGenerically() {
+        TokenClaims claims = TokenClaims.from(new JWTClaimsSet.Builder(TestTokens.claims("user"))
+                .claim("email_verified", true)
+                .claim("bindid_network_info", object("device_count", 3L, "new_field", "x"))
+                .build());
+
+        List<TokenItem> rows = new TokenData(claims, timestamps).getTokens(labels);
+        // Unknown claims follow the table rows, sorted by path
+        TokenItem beforeLast = rows.get(rows.size() - 2);
+        TokenItem last = rows.get(rows.size() - 1);
+        assertEquals("bindid_network_info.new_field", beforeLast.claim);
+        assertEquals("x", beforeLast.value);
+        assertEquals("email_verified", last.name);
+        assertEquals("true", last.value);
+        for (TokenItem row : rows) {
+            assertNotEquals("iss", row.claim);
+            assertNotEquals("nonce", row.claim);
+        }
+    }
+
+    @Test
+    public void formatsOnlyWhenRowsAreBuilt() {
+        AtomicInteger formatted = new AtomicInteger();
+        ClaimSchema schema = new ClaimSchema.Builder()
+                .row("sub", R.string.ts_bindid_passport_user_id, (value, timestamps) -> {
+                    formatted.incrementAndGet();
+                    return value;
+                })
+                .row("phone_number", R.string.ts_bindid_passport_phone_number, (value, timestamps) -> {
+                    formatted.incrementAndGet();
+                    return value;
+                })
+                .build();
+        TokenClaims claims = TokenClaims.from(TestTokens.claims("user"));
+
+        new TokenData(claims, timestamps);
+        assertEquals(0, formatted.get());
+
+        schema.rows(claims, labels, timestamps);
+        // The token has no phone number, so only the user ID is formatted
+        assertEquals(1, formatted.get());
+    }
+
+    /**
+     * Sample tokens covering the present, missing and defaulted claims
+     */
+    private static Map<String, TokenClaims> corpus() {
+        Map<String, TokenClaims> corpus = new LinkedHashMap<>();
+        JWTClaimsSet full = TestTokens.claims("user");
+        corpus.put("full", TokenClaims.from(full));
+        corpus.put("with phone number", TokenClaims.from(new JWTClaimsSet.Builder(full)
+                .claim("phone_number", "+15551234567")
+                .build()));
+        corpus.put("minimal", TokenClaims.from(new JWTClaimsSet.Builder()
+                .issuer(TestTokens.ISSUER)
+                .subject("minimal")
+                .build()));
+        corpus.put("no network info", TokenClaims.from(new JWTClaimsSet.Builder(full)
+                .claim("bindid_network_info", null)
+                .build()));
+        corpus.put("network info without counts", TokenClaims.from(new JWTClaimsSet.Builder(full)
+                .claim("bindid_network_info", object("user_last_seen", "2021-06-20T08:00:00.000Z"))
+                .build()));
+        corpus.put("no bindid info", TokenClaims.from(new JWTClaimsSet.Builder(full)
+                .claim("bindid_info", null)
+                .build()));
+        corpus.put("partial bindid info", TokenClaims.from(new JWTClaimsSet.Builder(full)
+                .claim("bindid_info", object("capp_last_login", 1624176000L))
+                .build()));
+        corpus.put("no alias, email or app bound credential", TokenClaims.from(new JWTClaimsSet.Builder(full)
+                .claim("bindid_alias", null)
+                .claim("email", null)
+                .claim("acr.ts.bindid.app_bound_cred", null)
+                .build()));
+        for (int i = 0; i < 8; i++) {
+            corpus.put("user " + i, TokenClaims.from(TestTokens.claims("user-" + i)));
+        }
+        return corpus;
+    }
+
+    private static Map<String, Object> object(Object... keyValues) {
+        Map<String, Object> object = new LinkedHashMap<>();
+        for (int i = 0; i < keyValues.length; i += 2) {
+            object.put((String) keyValues[i], keyValues[i + 1]);
+        }
+        return object;
+    }
+
+    /**
+     * TokenData as it was before the claim schema, with a field and a branch per row
+     */
+    private static class LegacyTokenData {
+        private String userID;
+        private String userAlias;
+        private String phoneNumber;
+        private String emailAddress;
+        private String userRegisteredOn;
+        private String userFirstSeen;
+        private String userFirstConfirmed;
+        private String userLastSeen;
+        private String userLastSeenByNetwork;
+        private String totalProvidersThatConfirmedUser;
+        private String authenticatingDeviceRegistered;
+        private String authenticatingDeviceFirstSeen;
+        private String authenticatingDeviceConfirmed;
+        private String authenticatingDeviceLastSeen;
+        private String authenticatingDeviceLastSeenByNetwork;
+        private String totalKnownDevices;
+        private final TimestampFormatter formatter;
+
+        LegacyTokenData(TokenClaims claims, TimestampFormatter formatter) {
+            this.formatter = formatter;
+            userID = claims.get("sub");
+            userAlias = claims.has("bindid_alias")? claims.get("bindid_alias") : "Not Set";
+            phoneNumber = claims.get("phone_number");
+            emailAddress = claims.has("email")? claims.get("email") : "Not Set";
+            authenticatingDeviceConfirmed = claims.has("acr.ts.bindid.app_bound_cred")?
+                    claims.get("acr.ts.bindid.app_bound_cred") : "No";
+
+            userRegisteredOn = claims.get("bindid_network_info.user_registration_time");
+            userLastSeenByNetwork = claims.get("bindid_network_info.user_last_seen");
+            authenticatingDeviceLastSeenByNetwork =
+                    claims.get("bindid_network_info.authenticating_device_last_seen");
+            authenticatingDeviceRegistered =
+                    claims.get("bindid_network_info.authenticating_device_registration_time");
+            if (hasObject(claims, "bindid_network_info")) {
+                totalKnownDevices = claims.has("bindid_network_info.device_count")?
+                        claims.get("bindid_network_info.device_count") : "0";
+                totalProvidersThatConfirmedUser = claims.has("bindid_network_info.confirmed_capp_count")?
+                        claims.get("bindid_network_info.confirmed_capp_count") : "0";
+            }
+
+            userFirstSeen = toDateString(claims.get("bindid_info.capp_first_login"));
+            userFirstConfirmed = toDateString(claims.get("bindid_info.capp_first_confirmed_login"));
+            userLastSeen = toDateString(claims.get("bindid_info.capp_last_login"));
+            authenticatingDeviceFirstSeen =
+                    toDateString(claims.get("bindid_info.capp_first_login_from_authenticating_device"));
+            authenticatingDeviceLastSeen =
+                    toDateString(claims.get("bindid_info.capp_last_login_from_authenticating_device"));
+        }
+
+        List<TokenItem> getTokens(PassportLabels labels) {
+            List<TokenItem> list = new ArrayList<>();
+            add(list, labels, "sub", R.string.ts_bindid_passport_user_id, userID);
+            add(list, labels, "bindid_alias", R.string.ts_bindid_passport_user_alias, userAlias);
+            add(list, labels, "phone_number", R.string.ts_bindid_passport_phone_number, phoneNumber);
+            add(list, labels, "email", R.string.ts_bindid_passport_email_address, emailAddress);
+            add(list, labels, "bindid_network_info.user_registration_time",
+                    R.string.ts_bindid_passport_user_registered_on, userRegisteredOn);
+            add(list, labels, "bindid_info.capp_first_login",
+                    R.string.ts_bindid_passport_user_first_seen, userFirstSeen);
+            add(list, labels, "bindid_info.capp_first_confirmed_login",
+                    R.string.ts_bindid_passport_user_first_confirmed, userFirstConfirmed);
+            add(list, labels, "bindid_info.capp_last_login",
+                    R.string.ts_bindid_passport_user_last_seen, userLastSeen);
+            add(list, labels, "bindid_network_info.user_last_seen",
+                    R.string.ts_bindid_passport_user_last_seen_by_network, userLastSeenByNetwork);
+            add(list, labels, "bindid_network_info.confirmed_capp_count",
+                    R.string.ts_bindid_passport_total_providers_that_confirmed_user, totalProvidersThatConfirmedUser);
+            add(list, labels, "bindid_network_info.authenticating_device_registration_time",
+                    R.string.ts_bindid_passport_authenticating_device_registered, authenticatingDeviceRegistered);
+            add(list, labels, "bindid_info.capp_first_login_from_authenticating_device",
+                    R.string.ts_bindid_passport_authenticating_device_first_seen, authenticatingDeviceFirstSeen);
+            add(list, labels, "acr.ts.bindid.app_bound_cred",
+                    R.string.ts_bindid_passport_authenticating_device_confirmed, authenticatingDeviceConfirmed);
+            add(list, labels, "bindid_info.capp_last_login_from_authenticating_device",
+                    R.string.ts_bindid_passport_authenticating_device_last_seen, authenticatingDeviceLastSeen);
+            add(list, labels, "bindid_network_info.authenticating_device_last_seen",
+                    R.string.ts_bindid_passport_authenticating_device_last_seen_by_network, authenticatingDeviceLastSeenByNetwork);
+            add(list, labels, "bindid_network_info.device_count",
+                    R.string.ts_bindid_passport_total_known_devices, totalKnownDevices);
+            return list;
+        }
+
+        private static void add(List<TokenItem> list, PassportLabels labels, String claim, int label, String value) {
+            if (value != null) {
+                list.add(new TokenItem(claim, labels.get(label), value));
+            }
+        }
+
+        private static boolean hasObject(TokenClaims claims, String name) {
+            String prefix = name + ".";
+            for (String claim : claims.asMap().keySet()) {
+                if (claim.startsWith(prefix)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private String toDateString(String date) {
+            if (date == null) {
+                return null;
+            }
+            return formatter.format(Long.parseLong(date));
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package com.ts.bindid.example.java.ui.main.token;
+
+import android.content.Context;
+import android.os.Looper;
+import android.view.View;
+
+import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.AsyncDifferConfig;
+import androidx.recyclerview.widget.LinearLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
+import androidx.test.core.app.ApplicationProvider;
+
+import com.nimbusds.jwt.JWTClaimsSet;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+import static org.robolectric.Shadows.shadowOf;
+
+/**
+ * Counts the rows bound by the passport adapter when the claims are refreshed.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class PassportAdapterTest {
+
+    private RecyclerView recyclerView;
+    private CountingAdapter adapter;
+
+    @Before
+    public void setUp() {
+        Context context = ApplicationProvider.getApplicationContext();
+        adapter = new CountingAdapter();
+        recyclerView = new RecyclerView(context);
+        recyclerView.setLayoutManager(new LinearLayoutManager(context));
+        // Without animations the changed rows are rebound in place, once
+        recyclerView.setItemAnimator(null);
+        recyclerView.setAdapter(adapter);
+    }
+
+    @Test
+    public void bindsEveryRowOnFirstDisplay() {
+        submit(rows("2"));
+        assertEquals(4, adapter.binds);
+    }
+
+    @Test
+    public void refreshRebindsOnlyChangedRows() {
+        submit(rows("2"));
+        adapter.binds = 0;
+
+        submit(rows("3"));
+        assertEquals(1, adapter.binds);
+        assertEquals("3", adapter.boundValues.get(adapter.boundValues.size() - 1));
+    }
+
+    @Test
+    public void identicalRefreshRebindsNothing() {
+        submit(rows("2"));
+        adapter.binds = 0;
+
+        submit(rows("2"));
+        assertEquals(0, adapter.binds);
+    }
+
+    @Test
+    public void rowsKeepTheirIdsAcrossRefreshes() {
+        submit(rows("2"));
+        long id = adapter.getItemId(3);
+
+        List<TokenItem> moved = new ArrayList<>(rows("3"));
+        moved.add(0, moved.remove(3));
+        submit(moved);
+        assertEquals(id, adapter.getItemId(0));
+        assertTrue(adapter.hasStableIds());
+    }
+
+    @Test
+    public void resolvesEachLabelOncePerLocale() {
+        int[] lookups = new int[1];
+        PassportLabels labels = new PassportLabels("en-US", id -> {
+            lookups[0]++;
+            return "label-" + id;
+        });
+        TokenClaims claims = TokenClaims.from(new JWTClaimsSet.Builder()
+                .subject("user")
+                .claim("email", "user@example.com")
+                .build());
+
+        new TokenData(claims).getTokens(labels);
+        new TokenData(claims).getTokens(labels);
+        assertEquals(TokenData.LABELS.length, lookups[0]);
+    }
+
+    private void submit(List<TokenItem> items) {
+        adapter.submitList(items);
+        shadowOf(Looper.getMainLooper()).idle();
+        recyclerView.measure(
+                View.MeasureSpec.makeMeasureSpec(1080, View.MeasureSpec.EXACTLY),
+                View.MeasureSpec.makeMeasureSpec(1920, View.MeasureSpec.EXACTLY));
+        recyclerView.layout(0, 0, 1080, 1920);
+    }
+
+    private static List<TokenItem> rows(String deviceCount) {
+        return Arrays.asList(
+                new TokenItem("sub", "User ID", "user"),
+                new TokenItem("bindid_alias", "User Alias", "alias"),
+                new TokenItem("email", "Email Address", "user@example.com"),
+                new TokenItem("bindid_network_info.device_count", "Total Known Devices", deviceCount));
+    }
+
+    private static class CountingAdapter extends PassportAdapter {
+        int binds;
+        final List<String> boundValues = new ArrayList<>();
+
+        CountingAdapter() {
+            // Diff on the calling thread so each submit completes before the layout
+            super(new AsyncDifferConfig.Builder<>(DIFF_CALLBACK)
+                    .setBackgroundThreadExecutor(Runnable::run)
+                    .build());
+        }
+
+        @Override
+        public void onBindViewHolder(@NonNull ViewHolder viewHolder, int position) {
+            super.onBindViewHolder(viewHolder, position);
+            binds++;
+            boundValues.add(viewHolder.getValue().getText().toString());
+        }
+    }
+}
@@ -0,0 +1,238 @@
+package com.ts.bindid.example.java.ui.main.token;
+
+import android.app.Application;
+import android.os.Bundle;
+import android.os.Looper;
+import android.view.View;
+import android.view.ViewGroup;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.appcompat.app.AppCompatActivity;
+import androidx.recyclerview.widget.RecyclerView;
+
+import com.nimbusds.jwt.JWTClaimsSet;
+import com.ts.bindid.example.java.R;
+import com.ts.bindid.example.java.TestTokens;
+import com.ts.bindid.example.java.history.PassportChange;
+import com.ts.bindid.example.java.history.PassportHistory;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+import static org.robolectric.Shadows.shadowOf;
+
+/**
+ * Checks that the token screen shown after a login is the one prepared while the token was
+ * verified, and that none of its rows is inflated once it is shown, the since last login section
+ * included.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28, application = Application.class)
+public class PassportPreloaderTest {
+
+    private HostActivity activity;
+
+    @Before
+    public void setUp() {
+        activity = Robolectric.buildActivity(HostActivity.class).setup().get();
+    }
+
+    @Test
+    public void showsThePreparedScreenAndRows() throws InterruptedException {
+        PassportPreloader preloader = activity.getPassportPreloader();
+        preloader.preload(activity.findViewById(R.id.container));
+        awaitReady(preloader);
+
+        View prepared = preloader.takeView();
+        assertNotNull(prepared);
+        Set<View> preparedRows = rowsInPool(prepared.findViewById(R.id.token_values_rv));
+        assertEquals(TokenData.MAX_ROWS, preparedRows.size());
+        // Handed back for the fragment to take
+        activity.preparedView = prepared;
+
+        TokenFragment fragment = TokenFragment.newInstance(claims(), 42L);
+        activity.getSupportFragmentManager().beginTransaction()
+                .replace(R.id.container, fragment)
+                .commitNow();
+        layout();
+
+        assertSame(prepared, fragment.getView());
+        RecyclerView recyclerView = prepared.findViewById(R.id.token_values_rv);
+        assertTrue(recyclerView.getChildCount() > 0);
+        for (int i = 0; i < recyclerView.getChildCount(); i++) {
+            assertTrue("Row " + i + " inflated after the screen was shown",
+                    preparedRows.contains(recyclerView.getChildAt(i)));
+        }
+        assertEquals(Collections.singletonList(42L), activity.drawn);
+    }
+
+    @Test
+    public void preparesTheRowsOfEveryChange() throws InterruptedException {
+        TokenClaims claims = TokenClaims.from(new JWTClaimsSet.Builder(TestTokens.claims("user"))
+                .claim("phone_number", "+15551234567")
+                .build());
+        activity.changes = everyFieldChanged(claims);
+        assertEquals(PassportHistory.DEFAULT_FIELDS.length, activity.changes.size());
+
+        PassportPreloader preloader = activity.getPassportPreloader();
+        preloader.preload(activity.findViewById(R.id.container));
+        awaitReady(preloader);
+        View prepared = preloader.takeView();
+        assertNotNull(prepared);
+        Set<View> preparedRows = rowsInPool(prepared.findViewById(R.id.token_values_rv));
+        activity.preparedView = prepared;
+
+        TokenFragment fragment = TokenFragment.newInstance(claims, 42L);
+        activity.getSupportFragmentManager().beginTransaction()
+                .replace(R.id.container, fragment)
+                .commitNow();
+        // Tall enough for every row to be laid out at once
+        layout(100_000);
+
+        RecyclerView recyclerView = prepared.findViewById(R.id.token_values_rv);
+        assertEquals(TokenData.MAX_ROWS, recyclerView.getAdapter().getItemCount());
+        assertEquals(TokenData.MAX_ROWS, recyclerView.getChildCount());
+        for (int i = 0; i < recyclerView.getChildCount(); i++) {
+            assertTrue("Row " + i + " inflated after the screen was shown",
+                    preparedRows.contains(recyclerView.getChildAt(i)));
+        }
+    }
+
+    @Test
+    public void preparesOneScreenAtATime() throws InterruptedException {
+        PassportPreloader preloader = activity.getPassportPreloader();
+        ViewGroup container = activity.findViewById(R.id.container);
+        preloader.preload(container);
+        preloader.preload(container);
+        awaitReady(preloader);
+
+        assertNotNull(preloader.takeView());
+        assertNull(preloader.takeView());
+        assertFalse(preloader.isReady());
+    }
+
+    private void awaitReady(PassportPreloader preloader) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (!preloader.isReady()) {
+            assertTrue("Not prepared in time", System.currentTimeMillis() < deadline);
+            // The views are inflated on a background thread and handed over on the main thread
+            Thread.sleep(10);
+            shadowOf(Looper.getMainLooper()).idle();
+        }
+    }
+
+    private void layout() {
+        layout(1920);
+    }
+
+    private void layout(int height) {
+        shadowOf(Looper.getMainLooper()).idle();
+        View root = activity.getWindow().getDecorView();
+        root.measure(
+                View.MeasureSpec.makeMeasureSpec(1080, View.MeasureSpec.EXACTLY),
+                View.MeasureSpec.makeMeasureSpec(height, View.MeasureSpec.EXACTLY));
+        root.layout(0, 0, 1080, height);
+        root.getViewTreeObserver().dispatchOnPreDraw();
+        shadowOf(Looper.getMainLooper()).idle();
+    }
+
+    /**
+     * @return the rows waiting in the pool, which is left as it was
+     */
+    private static Set<View> rowsInPool(RecyclerView recyclerView) {
+        RecyclerView.RecycledViewPool pool = recyclerView.getRecycledViewPool();
+        List<RecyclerView.ViewHolder> holders = new ArrayList<>();
+        RecyclerView.ViewHolder holder;
+        while ((holder = pool.getRecycledView(PassportAdapter.ROW_TYPE)) != null) {
+            holders.add(holder);
+        }
+        Set<View> rows = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (RecyclerView.ViewHolder row : holders) {
+            rows.add(row.itemView);
+            pool.putRecycledView(row);
+        }
+        return rows;
+    }
+
+    private static TokenClaims claims() {
+        return TokenClaims.from(new JWTClaimsSet.Builder()
+                .subject("user")
+                .claim("email", "user@example.com")
+                .build());
+    }
+
+    /**
+     * @return the changes from a previous login where every claim the history keeps was different
+     */
+    private static List<PassportChange> everyFieldChanged(TokenClaims claims) {
+        Map<String, String> previous = new HashMap<>(claims.asMap());
+        previous.put("iat", String.valueOf(Long.parseLong(claims.get("iat")) - 3600));
+        for (String field : PassportHistory.DEFAULT_FIELDS) {
+            previous.put(field, "0");
+        }
+        PassportHistory history = new PassportHistory.Builder().build();
+        history.record(TokenClaims.of(previous));
+        history.record(claims);
+        return history.getChangesSinceLastLogin("user");
+    }
+
+    /**
+     * Hosts the token screen as MainActivity does, without the BindID SDK
+     */
+    public static class HostActivity extends AppCompatActivity implements PassportHost {
+        final List<Long> drawn = new ArrayList<>();
+        View preparedView;
+        List<PassportChange> changes;
+        private PassportPreloader preloader;
+
+        @Override
+        protected void onCreate(Bundle savedInstanceState) {
+            setTheme(R.style.Theme_BindID);
+            super.onCreate(savedInstanceState);
+            setContentView(R.layout.main_activity);
+            preloader = new PassportPreloader(this) {
+                @Override
+                public View takeView() {
+                    // The test takes the view first to look at its rows, then hands it back
+                    if (preparedView != null) {
+                        View view = preparedView;
+                        preparedView = null;
+                        return view;
+                    }
+                    return super.takeView();
+                }
+            };
+        }
+
+        @NonNull
+        @Override
+        public PassportPreloader getPassportPreloader() {
+            return preloader;
+        }
+
+        @Override
+        public void onPassportDrawn(long verifiedAtNanos) {
+            drawn.add(verifiedAtNanos);
+        }
+
+        @Nullable
+        @Override
+        public List<PassportChange> getChangesSinceLastLogin(@NonNull String subject) {
+            return changes;
+        }
+    }
+}
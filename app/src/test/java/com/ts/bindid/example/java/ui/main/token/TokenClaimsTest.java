@@ -0,0 +1,36 @@
+package com.ts.bindid.example.java.ui.main.token;
+
+import com.nimbusds.jose.jwk.RSAKey;
+import com.nimbusds.jwt.SignedJWT;
+import com.ts.bindid.example.java.TestTokens;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks the flattening of the verified claims handed to the token screen. TokenDataBenchmark in
+ * the benchmarks module compares it with parsing the ID token and its payload again.
+ */
+public class TokenClaimsTest {
+
+    private static SignedJWT verifiedJwt;
+
+    @BeforeClass
+    public static void setUpClass() throws Exception {
+        RSAKey key = TestTokens.generateKey("k1");
+        verifiedJwt = SignedJWT.parse(TestTokens.sign(key, TestTokens.claims("user")));
+    }
+
+    @Test
+    public void flattensNestedClaims() throws Exception {
+        TokenClaims claims = TokenClaims.from(verifiedJwt.getJWTClaimsSet());
+
+        assertEquals("user", claims.get("sub"));
+        assertEquals("Yes", claims.get("acr.ts.bindid.app_bound_cred"));
+        assertEquals("2", claims.get("bindid_network_info.device_count"));
+        assertEquals("1624176000", claims.get("bindid_info.capp_last_login"));
+        assertNull(claims.get("phone_number"));
+    }
+}
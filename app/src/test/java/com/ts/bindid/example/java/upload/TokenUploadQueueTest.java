@@ -0,0 +1,244 @@
+package com.ts.bindid.example.java.upload;
+
+import com.nimbusds.jose.util.JSONObjectUtils;
+import com.ts.bindid.example.java.login.AesGcmSessionCipher;
+import com.ts.bindid.example.java.login.SessionCipher;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
+import javax.crypto.KeyGenerator;
+
+import okhttp3.OkHttpClient;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import okhttp3.mockwebserver.SocketPolicy;
+
+import static org.junit.Assert.*;
+
+/**
+ * Delivers tokens to a local server that fails, disconnects and stalls on demand.
+ */
+public class TokenUploadQueueTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private MockWebServer server;
+    private File queueFile;
+    private SessionCipher cipher;
+    private final List<TokenUploadQueue> queues = new ArrayList<>();
+    private final BlockingQueue<DeliveryStatus> statuses = new LinkedBlockingQueue<>();
+
+    @Before
+    public void setUp() throws Exception {
+        server = new MockWebServer();
+        server.start();
+        queueFile = new File(folder.getRoot(), "token_uploads");
+        KeyGenerator generator = KeyGenerator.getInstance("AES");
+        generator.init(256);
+        cipher = new AesGcmSessionCipher(generator.generateKey());
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        for (TokenUploadQueue queue : queues) {
+            queue.shutdown();
+        }
+        server.shutdown();
+    }
+
+    @Test
+    public void batchesQueuedTokens() throws Exception {
+        server.enqueue(new MockResponse());
+        TokenUploadQueue queue = newQueue(new OkHttpClient());
+        queue.enqueue("alice", "access-alice", "id-alice");
+        queue.enqueue("bob", "access-bob", "id-bob");
+        queue.enqueue("carol", "access-carol", "id-carol");
+
+        awaitStatus(status -> status.delivered == 3);
+        assertEquals(1, server.getRequestCount());
+        List<Object> tokens = tokens(server.takeRequest());
+        assertEquals(3, tokens.size());
+        assertEquals("alice", token(tokens, 0).get("sub"));
+        assertEquals("id-carol", token(tokens, 2).get("id_token"));
+    }
+
+    @Test
+    public void coalescesTokensForTheSameSubject() throws Exception {
+        server.enqueue(new MockResponse());
+        TokenUploadQueue queue = newQueue(new OkHttpClient());
+        queue.enqueue("alice", "access-1", "id-1");
+        queue.enqueue("bob", "access-bob", "id-bob");
+        queue.enqueue("alice", "access-2", "id-2");
+
+        awaitStatus(status -> status.delivered == 2);
+        List<Object> tokens = tokens(server.takeRequest());
+        assertEquals(2, tokens.size());
+        assertEquals("bob", token(tokens, 0).get("sub"));
+        assertEquals("access-2", token(tokens, 1).get("access_token"));
+    }
+
+    @Test
+    public void retriesServerErrorsWithExponentialBackoff() throws Exception {
+        server.enqueue(new MockResponse().setResponseCode(503));
+        server.enqueue(new MockResponse().setResponseCode(429));
+        server.enqueue(new MockResponse());
+        TokenUploadQueue queue = newQueue(new OkHttpClient());
+        queue.enqueue("alice", "access", "id");
+
+        // The clock stays at 0 and the jitter at its minimum, so the delays are exact
+        DeliveryStatus first = awaitStatus(status -> status.state == DeliveryStatus.State.RETRY_SCHEDULED);
+        assertEquals(1, first.attempt);
+        assertEquals(10, first.nextAttemptAtMillis);
+        assertEquals("HTTP_503", first.lastError);
+        DeliveryStatus second = awaitStatus(status -> status.state == DeliveryStatus.State.RETRY_SCHEDULED);
+        assertEquals(2, second.attempt);
+        assertEquals(20, second.nextAttemptAtMillis);
+
+        DeliveryStatus done = awaitStatus(status -> status.state == DeliveryStatus.State.IDLE);
+        assertEquals(1, done.delivered);
+        assertEquals(0, done.attempt);
+        assertEquals(3, server.getRequestCount());
+    }
+
+    @Test
+    public void retriesDisconnectsAndSlowResponses() throws Exception {
+        server.enqueue(new MockResponse().setSocketPolicy(SocketPolicy.DISCONNECT_AFTER_REQUEST));
+        server.enqueue(new MockResponse().setHeadersDelay(1, TimeUnit.SECONDS));
+        server.enqueue(new MockResponse().setHeadersDelay(20, TimeUnit.MILLISECONDS));
+        OkHttpClient client = new OkHttpClient.Builder()
+                .readTimeout(200, TimeUnit.MILLISECONDS)
+                .retryOnConnectionFailure(false)
+                .build();
+        TokenUploadQueue queue = newQueue(client);
+        queue.enqueue("alice", "access", "id");
+
+        DeliveryStatus done = awaitStatus(status -> status.delivered == 1);
+        assertEquals(DeliveryStatus.State.IDLE, done.state);
+        assertEquals(3, server.getRequestCount());
+    }
+
+    @Test
+    public void dropsBatchOnClientError() throws Exception {
+        server.enqueue(new MockResponse().setResponseCode(400));
+        TokenUploadQueue queue = newQueue(new OkHttpClient());
+        queue.enqueue("alice", "access", "id");
+
+        DeliveryStatus failed = awaitStatus(status -> status.state == DeliveryStatus.State.FAILED);
+        assertEquals(1, failed.dropped);
+        assertEquals(0, failed.pending);
+        assertEquals("HTTP_400", failed.lastError);
+        assertEquals(1, server.getRequestCount());
+    }
+
+    @Test
+    public void keepsNewerTokensQueuedDuringAnUpload() throws Exception {
+        server.enqueue(new MockResponse().setHeadersDelay(200, TimeUnit.MILLISECONDS));
+        server.enqueue(new MockResponse());
+        TokenUploadQueue queue = newQueue(new OkHttpClient());
+        queue.enqueue("alice", "access-1", "id-1");
+        awaitStatus(status -> status.state == DeliveryStatus.State.SENDING);
+        queue.enqueue("alice", "access-2", "id-2");
+
+        awaitStatus(status -> status.delivered == 2);
+        server.takeRequest();
+        assertEquals("access-2", token(tokens(server.takeRequest()), 0).get("access_token"));
+    }
+
+    @Test
+    public void resumesPendingUploadsAfterProcessDeath() throws Exception {
+        server.enqueue(new MockResponse().setResponseCode(500));
+        TokenUploadQueue dying = new TokenUploadQueue.Builder(server.url("/tokens").toString())
+                .queueFile(queueFile)
+                .cipher(cipher)
+                .batchDelay(0, TimeUnit.MILLISECONDS)
+                .backoff(1, 1, TimeUnit.HOURS)
+                .build();
+        queues.add(dying);
+        dying.addStatusListener(statuses::add);
+        dying.enqueue("alice", "access", "id");
+        awaitStatus(status -> status.state == DeliveryStatus.State.RETRY_SCHEDULED);
+        dying.shutdown();
+        String stored = new String(Files.readAllBytes(queueFile.toPath()), StandardCharsets.ISO_8859_1);
+        assertFalse(stored.contains("access"));
+
+        server.enqueue(new MockResponse());
+        statuses.clear();
+        newQueue(new OkHttpClient());
+
+        awaitStatus(status -> status.delivered == 1);
+        server.takeRequest();
+        assertEquals("alice", token(tokens(server.takeRequest()), 0).get("sub"));
+    }
+
+    @Test
+    public void encryptsAQueueStoredInPlaintext() throws Exception {
+        Files.write(queueFile.toPath(), ("{\"entries\":[{\"sub\":\"alice\",\"access_token\":\"access\","
+                + "\"id_token\":\"id\",\"enqueued_at\":0}]}").getBytes(StandardCharsets.UTF_8));
+        server.enqueue(new MockResponse().setResponseCode(500));
+        TokenUploadQueue queue = newQueue(new OkHttpClient());
+
+        awaitStatus(status -> status.state == DeliveryStatus.State.RETRY_SCHEDULED);
+        queue.shutdown();
+        String stored = new String(Files.readAllBytes(queueFile.toPath()), StandardCharsets.ISO_8859_1);
+        assertFalse(stored.contains("access"));
+        assertEquals("alice", token(tokens(server.takeRequest()), 0).get("sub"));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void requiresACipherToStoreTokens() {
+        new TokenUploadQueue.Builder(server.url("/tokens").toString()).queueFile(queueFile).build();
+    }
+
+    private TokenUploadQueue newQueue(OkHttpClient client) {
+        TokenUploadQueue queue = new TokenUploadQueue.Builder(server.url("/tokens").toString())
+                .client(client)
+                .queueFile(queueFile)
+                .cipher(cipher)
+                .batchDelay(50, TimeUnit.MILLISECONDS)
+                .backoff(20, 1_000, TimeUnit.MILLISECONDS)
+                .clock(() -> 0)
+                .random(() -> 0)
+                .build();
+        queue.addStatusListener(statuses::add);
+        queues.add(queue);
+        return queue;
+    }
+
+    private DeliveryStatus awaitStatus(Predicate<DeliveryStatus> condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (System.nanoTime() < deadline) {
+            DeliveryStatus status = statuses.poll(100, TimeUnit.MILLISECONDS);
+            if (status != null && condition.test(status)) {
+                return status;
+            }
+        }
+        throw new AssertionError("Status not reached, last was " + statuses.peek());
+    }
+
+    private static List<Object> tokens(RecordedRequest request) throws Exception {
+        assertEquals("application/json; charset=utf-8", request.getHeader("Content-Type"));
+        return JSONObjectUtils.getJSONArray(JSONObjectUtils.parse(request.getBody().readUtf8()), "tokens");
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> token(List<Object> tokens, int index) {
+        return (Map<String, Object>) tokens.get(index);
+    }
+}
@@ -0,0 +1,147 @@
+package com.ts.bindid.benchmarks;
+
+import android.util.Log;
+
+import com.ts.bindid.example.java.log.AsyncLogTree;
+import com.ts.bindid.example.java.log.LogRedactor;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import timber.log.Timber;
+
+/**
+ * How long the log calls of one login hold up the login path, with no tree, with a tree that
+ * formats, redacts and writes on the calling thread, and with {@link AsyncLogTree} at several
+ * minimum priorities.
+ *
+ * The buffer is drained after each login, outside the measurement, as it is while the user looks
+ * at the token screen. The per invocation teardown adds the same timer overhead to every tree,
+ * so compare the trees with each other rather than read the scores as absolute.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class AsyncLogTreeBenchmark {
+
+    private enum Stage { PARSE, VERIFY }
+
+    /**
+     * none, synchronous, or the minimum priority of the asynchronous tree
+     */
+    @Param({"none", "synchronous", "VERBOSE", "DEBUG", "INFO", "WARN"})
+    public String tree;
+
+    private final AtomicLong written = new AtomicLong();
+    private String idToken;
+    private Map<Stage, Long> stageNanos;
+    private Timber.Tree planted;
+    private AsyncLogTree asyncTree;
+    private int attempt;
+
+    @Setup
+    public void setUp() throws Exception {
+        idToken = BindIdFixtures.idToken();
+        stageNanos = new EnumMap<>(Stage.class);
+        stageNanos.put(Stage.PARSE, 180_000L);
+        stageNanos.put(Stage.VERIFY, 950_000L);
+
+        switch (tree) {
+            case "none":
+                return;
+            case "synchronous":
+                planted = new SynchronousTree(written);
+                break;
+            default:
+                asyncTree = new AsyncLogTree.Builder()
+                        .minPriority(priority(tree))
+                        .capacity(256)
+                        .sample("OkHttp", 10)
+                        .sink((priority, tag, message) -> written.addAndGet(message.length()))
+                        .build();
+                planted = asyncTree;
+        }
+        Timber.plant(planted);
+    }
+
+    @TearDown(Level.Invocation)
+    public void drain() {
+        if (asyncTree != null && !asyncTree.flush(5, TimeUnit.SECONDS)) {
+            throw new IllegalStateException("The log buffer did not drain");
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        if (planted != null) {
+            Timber.uproot(planted);
+        }
+        if (asyncTree != null) {
+            asyncTree.close();
+        }
+    }
+
+    /**
+     * The log calls of a login, with the request logging of a debug build and a token logged by
+     * mistake
+     */
+    @Benchmark
+    public void login() {
+        attempt++;
+        Timber.i("Login enabled %dms after process start", 850);
+        for (int i = 0; i < 12; i++) {
+            Timber.tag("OkHttp").d("x-request-id: %d-%d", attempt, i);
+        }
+        Timber.d("Exchanged the code for %s", idToken);
+        Timber.d("Token verified: %s", stageNanos);
+        Timber.tag("LoginMetrics").i("%s", "{\"AUTHENTICATE\":{\"count\":1,\"p50\":1200}}");
+        if (attempt % 100 == 0) {
+            Timber.w("Token exchange timed out after %dms", 4000);
+        }
+    }
+
+    private static int priority(String name) {
+        switch (name) {
+            case "VERBOSE":
+                return Log.VERBOSE;
+            case "DEBUG":
+                return Log.DEBUG;
+            case "INFO":
+                return Log.INFO;
+            case "WARN":
+                return Log.WARN;
+            default:
+                throw new IllegalArgumentException(name);
+        }
+    }
+
+    /**
+     * Formats, redacts and writes every message on the calling thread, as a debug tree with
+     * redaction would
+     */
+    private static class SynchronousTree extends Timber.Tree {
+        private final AtomicLong written;
+
+        SynchronousTree(AtomicLong written) {
+            this.written = written;
+        }
+
+        @Override
+        protected void log(int priority, String tag, String message, Throwable t) {
+            written.addAndGet(LogRedactor.redact(message).length());
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package com.ts.bindid.benchmarks;
+
+import com.nimbusds.jose.JOSEException;
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.JWSHeader;
+import com.nimbusds.jose.crypto.RSASSASigner;
+import com.nimbusds.jose.jwk.KeyUse;
+import com.nimbusds.jose.jwk.RSAKey;
+import com.nimbusds.jose.jwk.gen.RSAKeyGenerator;
+import com.nimbusds.jwt.JWTClaimsSet;
+import com.nimbusds.jwt.SignedJWT;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Realistic BindID fixtures for the benchmarks: an ID token with bindid_network_info and
+ * bindid_info signed with RS256, and key sets shaped like the BindID jwks response.
+ */
+public final class BindIdFixtures {
+
+    public static final String ISSUER = "https://signin.bindid-sandbox.io";
+    public static final String CLIENT_ID = "bindid_example_client";
+    public static final String SIGNING_KID = "bindid-sig";
+
+    private static RSAKey signingKey;
+
+    private BindIdFixtures() {
+    }
+
+    /**
+     * @return the key that signs {@link #idToken()}, generated once per benchmark process
+     */
+    public static synchronized RSAKey signingKey() throws JOSEException {
+        if (signingKey == null) {
+            signingKey = new RSAKeyGenerator(2048)
+                    .keyID(SIGNING_KID)
+                    .keyUse(KeyUse.SIGNATURE)
+                    .generate();
+        }
+        return signingKey;
+    }
+
+    /**
+     * @return the claims of a BindID ID token, issued now and valid for an hour
+     */
+    public static JWTClaimsSet claims() {
+        long now = System.currentTimeMillis() / 1000;
+
+        Map<String, Object> networkInfo = new LinkedHashMap<>();
+        networkInfo.put("user_registration_time", "2021-06-01T10:15:30.000Z");
+        networkInfo.put("user_last_seen", "2021-06-20T08:00:00.000Z");
+        networkInfo.put("device_count", 2L);
+        networkInfo.put("authenticating_device_last_seen", "2021-06-20T08:00:00.000Z");
+        networkInfo.put("confirmed_capp_count", 1L);
+        networkInfo.put("authenticating_device_registration_time", "2021-06-01T10:15:30.000Z");
+
+        Map<String, Object> bindIdInfo = new LinkedHashMap<>();
+        bindIdInfo.put("capp_first_login", 1622542530L);
+        bindIdInfo.put("capp_first_confirmed_login", 1622542530L);
+        bindIdInfo.put("capp_last_login", 1624176000L);
+        bindIdInfo.put("capp_first_login_from_authenticating_device", 1622542530L);
+        bindIdInfo.put("capp_last_login_from_authenticating_device", 1624176000L);
+
+        return new JWTClaimsSet.Builder()
+                .issuer(ISSUER)
+                .subject("5d2b7c2e-8f4a-4b0e-9c1d-2a6f3e8b9d10")
+                .audience(CLIENT_ID)
+                .issueTime(new Date(TimeUnit.SECONDS.toMillis(now)))
+                .expirationTime(new Date(TimeUnit.SECONDS.toMillis(now + 3600)))
+                .claim("auth_time", now)
+                .claim("nonce", "d1c5e0a2b7f94c68")
+                .claim("at_hash", "kX3b2yP4qR8sT1uV6wZ9aA")
+                .claim("amr", new String[]{"ts.bind_id.ama"})
+                .claim("acr", "ts.bindid.iac.email")
+                .claim("email", "user@example.com")
+                .claim("email_verified", true)
+                .claim("bindid_alias", "user-alias")
+                .claim("acr.ts.bindid.app_bound_cred", "Yes")
+                .claim("bindid_network_info", networkInfo)
+                .claim("bindid_info", bindIdInfo)
+                .build();
+    }
+
+    /**
+     * @return a freshly signed BindID ID token in its compact form
+     */
+    public static String idToken() throws JOSEException {
+        SignedJWT jwt = new SignedJWT(
+                new JWSHeader.Builder(JWSAlgorithm.RS256).keyID(SIGNING_KID).build(),
+                claims());
+        jwt.sign(new RSASSASigner(signingKey()));
+        return jwt.serialize();
+    }
+
+    /**
+     * A key set as BindID publishes it: an encryption key first, then signature keys, with the
+     * key of {@link #idToken()} last, as right after a rotation
+     * @param signingKeys how many signature keys, at least 1
+     */
+    public static byte[] jwks(int signingKeys) throws JOSEException {
+        RSAKey key = signingKey();
+        String n = key.getModulus().toString();
+        String e = key.getPublicExponent().toString();
+        StringBuilder json = new StringBuilder("{\"keys\":[");
+        json.append("{\"kty\":\"RSA\",\"use\":\"enc\",\"kid\":\"bindid-enc\",\"alg\":\"RSA-OAEP-256\",")
+                .append("\"n\":\"").append(n).append("\",\"e\":\"").append(e).append("\"}");
+        for (int i = 0; i < signingKeys; i++) {
+            String kid = i == signingKeys - 1 ? SIGNING_KID : "bindid-sig-" + i;
+            json.append(",{\"kty\":\"RSA\",\"use\":\"sig\",\"kid\":\"").append(kid)
+                    .append("\",\"alg\":\"RS256\",\"n\":\"").append(n).append("\",\"e\":\"").append(e).append("\"}");
+        }
+        json.append("]}");
+        return json.toString().getBytes(StandardCharsets.UTF_8);
+    }
+}
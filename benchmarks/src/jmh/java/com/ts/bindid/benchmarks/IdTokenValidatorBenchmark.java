@@ -0,0 +1,97 @@
+package com.ts.bindid.benchmarks;
+
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.JWSHeader;
+import com.nimbusds.jose.crypto.RSASSASigner;
+import com.nimbusds.jose.jwk.JWK;
+import com.nimbusds.jose.jwk.JWKSet;
+import com.nimbusds.jose.jwk.KeyUse;
+import com.nimbusds.jose.jwk.RSAKey;
+import com.nimbusds.jose.jwk.gen.RSAKeyGenerator;
+import com.nimbusds.jwt.JWTClaimsSet;
+import com.nimbusds.jwt.SignedJWT;
+import com.ts.bindid.validation.IdTokenValidator;
+import com.ts.bindid.validation.JwkSetKeySource;
+import com.ts.bindid.validation.TokenValidationException;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Validations per second of a single shared validator at 1, 4 and 16 threads. With lock free
+ * key lookups the throughput should grow with the threads up to the number of cores.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class IdTokenValidatorBenchmark {
+
+    private static final String ISSUER = "https://signin.bindid-sandbox.io";
+    private static final String CLIENT_ID = "bindid_example_client";
+    private static final int KEY_COUNT = 4;
+
+    private IdTokenValidator validator;
+    private String idToken;
+
+    @Setup
+    public void setUp() throws Exception {
+        // A few keys in the set, as during a rotation, with the token signed by the last one
+        List<RSAKey> keys = new ArrayList<>();
+        for (int i = 0; i < KEY_COUNT; i++) {
+            keys.add(new RSAKeyGenerator(2048).keyID("k" + i).keyUse(KeyUse.SIGNATURE).generate());
+        }
+        List<JWK> publicKeys = new ArrayList<>();
+        for (RSAKey key : keys) {
+            publicKeys.add(key.toPublicJWK());
+        }
+
+        validator = new IdTokenValidator.Builder(new JwkSetKeySource(new JWKSet(publicKeys)))
+                .issuer(ISSUER)
+                .audience(CLIENT_ID)
+                .build();
+
+        RSAKey signingKey = keys.get(KEY_COUNT - 1);
+        long now = System.currentTimeMillis();
+        SignedJWT jwt = new SignedJWT(
+                new JWSHeader.Builder(JWSAlgorithm.RS256).keyID(signingKey.getKeyID()).build(),
+                new JWTClaimsSet.Builder()
+                        .issuer(ISSUER)
+                        .subject("user")
+                        .audience(CLIENT_ID)
+                        .issueTime(new Date(now))
+                        .expirationTime(new Date(now + TimeUnit.HOURS.toMillis(1)))
+                        .claim("nonce", "nonce")
+                        .build());
+        jwt.sign(new RSASSASigner(signingKey));
+        idToken = jwt.serialize();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public JWTClaimsSet validate1Thread() throws TokenValidationException {
+        return validator.validate(idToken, "nonce");
+    }
+
+    @Benchmark
+    @Threads(4)
+    public JWTClaimsSet validate4Threads() throws TokenValidationException {
+        return validator.validate(idToken, "nonce");
+    }
+
+    @Benchmark
+    @Threads(16)
+    public JWTClaimsSet validate16Threads() throws TokenValidationException {
+        return validator.validate(idToken, "nonce");
+    }
+}
@@ -0,0 +1,77 @@
+package com.ts.bindid.benchmarks;
+
+import com.nimbusds.jose.JOSEException;
+import com.nimbusds.jose.JWSHeader;
+import com.nimbusds.jose.crypto.RSASSAVerifier;
+import com.nimbusds.jose.util.Base64URL;
+import com.nimbusds.jwt.JWTClaimsSet;
+import com.nimbusds.jwt.SignedJWT;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.security.interfaces.RSAPublicKey;
+import java.text.ParseException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The ID token steps of every login: parsing the compact token, reading its claims and checking
+ * its RS256 signature, with a cached verifier and with one built per login as the app first did.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class JwtBenchmark {
+
+    private String idToken;
+    private JWSHeader header;
+    private byte[] signingInput;
+    private Base64URL signature;
+    private RSAPublicKey publicKey;
+    private RSASSAVerifier verifier;
+
+    @Setup
+    public void setUp() throws Exception {
+        idToken = BindIdFixtures.idToken();
+        SignedJWT jwt = SignedJWT.parse(idToken);
+        header = jwt.getHeader();
+        signingInput = jwt.getSigningInput();
+        signature = jwt.getSignature();
+        publicKey = BindIdFixtures.signingKey().toRSAPublicKey();
+        verifier = new RSASSAVerifier(publicKey);
+        if (!verifier.verify(header, signingInput, signature)) {
+            throw new IllegalStateException("Fixture token does not verify");
+        }
+    }
+
+    @Benchmark
+    public SignedJWT parse() throws ParseException {
+        return SignedJWT.parse(idToken);
+    }
+
+    /**
+     * Parse and read the claims set, which parses the payload JSON
+     */
+    @Benchmark
+    public JWTClaimsSet parseClaims() throws ParseException {
+        return SignedJWT.parse(idToken).getJWTClaimsSet();
+    }
+
+    @Benchmark
+    public boolean verify() throws JOSEException {
+        return verifier.verify(header, signingInput, signature);
+    }
+
+    /**
+     * A verifier built for the login, as before verifiers were cached by kid
+     */
+    @Benchmark
+    public boolean verifyWithNewVerifier() throws JOSEException {
+        return new RSASSAVerifier(publicKey).verify(header, signingInput, signature);
+    }
+}
@@ -0,0 +1,145 @@
+package com.ts.bindid.benchmarks;
+
+import com.ts.bindid.example.java.history.PassportChange;
+import com.ts.bindid.example.java.history.PassportHistory;
+import com.ts.bindid.example.java.history.PassportSnapshot;
+import com.ts.bindid.example.java.ui.main.token.TokenClaims;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.IOException;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The passport history with the default 1000 logins and with 10k, as years of daily use without
+ * compaction would leave: recording a login, a cold load of the last login after a restart, a
+ * lookup of its changes and a full replay of the file.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class PassportHistoryBenchmark {
+
+    private static final long FIRST_LOGIN = 1_624_176_000L;
+
+    @Param({"1000", "10000"})
+    public int logins;
+
+    private TokenClaims[] claims;
+    private File file;
+    private PassportHistory history;
+    private File recordFile;
+    private PassportHistory recording;
+    private int next;
+
+    @Setup
+    public void setUp() throws IOException {
+        claims = logins(logins);
+        file = File.createTempFile("history", null);
+        history = newHistory(file);
+        for (TokenClaims login : claims) {
+            history.record(login);
+        }
+        if (history.getChangesSinceLastLogin("user").isEmpty()) {
+            throw new IllegalStateException("Fixture logins have no changes");
+        }
+        // Compacted as in the app, so the file stays at the default 1000 logins however long it runs
+        recordFile = File.createTempFile("history", null);
+        recording = new PassportHistory.Builder().file(recordFile).build();
+    }
+
+    @TearDown
+    public void tearDown() {
+        delete(file);
+        delete(recordFile);
+    }
+
+    @Benchmark
+    public boolean record() {
+        return recording.record(claims[next++ % claims.length]);
+    }
+
+    /**
+     * A new history, as after a process restart, with the changes the passport shows
+     */
+    @Benchmark
+    public List<PassportChange> coldLoad() {
+        PassportHistory restored = newHistory(file);
+        restored.load();
+        return restored.getChangesSinceLastLogin("user");
+    }
+
+    @Benchmark
+    public List<PassportChange> changes() {
+        return history.getChangesSinceLastLogin("user");
+    }
+
+    @Benchmark
+    public List<PassportSnapshot> readAll() {
+        return history.readAll();
+    }
+
+    private PassportHistory newHistory(File file) {
+        return new PassportHistory.Builder()
+                .file(file)
+                .maxEntries(logins)
+                .build();
+    }
+
+    private static void delete(File file) {
+        if (!file.delete()) {
+            file.deleteOnExit();
+        }
+    }
+
+    /**
+     * Daily logins where the last seen times always change, and the device and provider counts
+     * now and then
+     */
+    private static TokenClaims[] logins(int count) {
+        Random random = new Random(42);
+        TokenClaims[] logins = new TokenClaims[count];
+        long deviceCount = 1;
+        long cappCount = 1;
+        long deviceLastSeen = FIRST_LOGIN;
+        for (int i = 0; i < count; i++) {
+            long iat = FIRST_LOGIN + i * 86_400L + random.nextInt(3600);
+            if (random.nextInt(100) == 0) {
+                deviceCount++;
+            }
+            if (random.nextInt(200) == 0) {
+                cappCount++;
+            }
+            if (random.nextInt(3) == 0) {
+                deviceLastSeen = iat;
+            }
+            Map<String, String> claims = new HashMap<>();
+            claims.put("sub", "user");
+            claims.put("iat", String.valueOf(iat));
+            claims.put("bindid_network_info.device_count", String.valueOf(deviceCount));
+            claims.put("bindid_network_info.confirmed_capp_count", String.valueOf(cappCount));
+            claims.put("bindid_network_info.user_last_seen", Instant.ofEpochSecond(iat - 60).toString()
+                    .replace("Z", ".000Z"));
+            claims.put("bindid_network_info.authenticating_device_last_seen",
+                    Instant.ofEpochSecond(deviceLastSeen).toString().replace("Z", ".000Z"));
+            claims.put("bindid_info.capp_last_login", String.valueOf(iat));
+            claims.put("bindid_info.capp_last_login_from_authenticating_device", String.valueOf(deviceLastSeen));
+            logins[i] = TokenClaims.of(claims);
+        }
+        return logins;
+    }
+}
@@ -0,0 +1,162 @@
+package com.ts.bindid.benchmarks;
+
+import com.nimbusds.jose.crypto.RSASSAVerifier;
+import com.nimbusds.jose.jwk.JWKSet;
+import com.nimbusds.jose.jwk.RSAKey;
+import com.nimbusds.jwt.SignedJWT;
+import com.squareup.moshi.JsonReader;
+import com.ts.bindid.example.java.login.AesGcmSessionCipher;
+import com.ts.bindid.example.java.login.Session;
+import com.ts.bindid.example.java.login.SessionCipher;
+import com.ts.bindid.example.java.login.SessionStore;
+import com.ts.bindid.example.java.ui.main.token.TokenClaims;
+import com.ts.bindid.validation.IdTokenValidator;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import javax.crypto.KeyGenerator;
+
+import okhttp3.FormBody;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+
+/**
+ * A cold start restore of the stored session, and the network round it replaces: a token
+ * exchange, a key set fetch and the ID token verification, against a local stand-in for BindID.
+ *
+ * The stand-in answers over loopback, so the re-authentication is a lower bound, and the
+ * authentication in the browser that comes before the exchange is not counted at all.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SessionStoreBenchmark {
+
+    private MockWebServer server;
+    private OkHttpClient client;
+    private IdTokenValidator validator;
+    private SessionCipher cipher;
+    private File file;
+    private Session session;
+
+    @Setup
+    public void setUp() throws Exception {
+        String tokenBody = "{\"id_token\":\"" + BindIdFixtures.idToken() + "\",\"access_token\":\"access\","
+                + "\"token_type\":\"Bearer\",\"expires_in\":3600}";
+        String jwksBody = new String(BindIdFixtures.jwks(1), StandardCharsets.UTF_8);
+        server = new MockWebServer();
+        server.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) {
+                if ("/token".equals(request.getPath())) {
+                    return new MockResponse().setBody(tokenBody);
+                }
+                return new MockResponse().setBody(jwksBody);
+            }
+        });
+        server.start();
+        client = new OkHttpClient();
+        validator = new IdTokenValidator.Builder(null)
+                .issuer(BindIdFixtures.ISSUER)
+                .audience(BindIdFixtures.CLIENT_ID)
+                .build();
+
+        KeyGenerator generator = KeyGenerator.getInstance("AES");
+        generator.init(256);
+        cipher = new AesGcmSessionCipher(generator.generateKey());
+        file = File.createTempFile("session", null);
+        session = reauthenticate();
+        newStore().put(session);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        server.shutdown();
+        client.dispatcher().executorService().shutdown();
+        client.connectionPool().evictAll();
+        if (!file.delete()) {
+            file.deleteOnExit();
+        }
+    }
+
+    /**
+     * A new store each time, as after a process restart: the file mapped, decrypted and read
+     */
+    @Benchmark
+    public Session restore() {
+        return newStore().get();
+    }
+
+    /**
+     * The session encrypted and written, on the calling thread
+     */
+    @Benchmark
+    public void save() {
+        newStore().put(session);
+    }
+
+    /**
+     * The network round of a login: exchange, key set fetch on a cold key store, verification
+     */
+    @Benchmark
+    public Session reauthenticate() throws Exception {
+        String idToken = null;
+        String accessToken = null;
+        Request exchange = new Request.Builder()
+                .url(server.url("/token"))
+                .post(new FormBody.Builder()
+                        .add("grant_type", "authorization_code")
+                        .add("code", "code")
+                        .add("code_verifier", "verifier")
+                        .build())
+                .build();
+        try (Response response = client.newCall(exchange).execute()) {
+            JsonReader reader = JsonReader.of(response.body().source());
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String name = reader.nextName();
+                if ("id_token".equals(name)) {
+                    idToken = reader.nextString();
+                } else if ("access_token".equals(name)) {
+                    accessToken = reader.nextString();
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+        }
+
+        SignedJWT jwt = SignedJWT.parse(idToken);
+        JWKSet keys;
+        try (Response response = client.newCall(new Request.Builder().url(server.url("/jwks")).build()).execute()) {
+            keys = JWKSet.parse(response.body().string());
+        }
+        RSAKey key = (RSAKey) keys.getKeyByKeyId(jwt.getHeader().getKeyID());
+        TokenClaims claims = TokenClaims.from(validator.validate(jwt, new RSASSAVerifier(key), null));
+        return new Session(claims, idToken, accessToken);
+    }
+
+    private SessionStore newStore() {
+        return new SessionStore.Builder()
+                .file(file)
+                .cipher(cipher)
+                .build();
+    }
+}
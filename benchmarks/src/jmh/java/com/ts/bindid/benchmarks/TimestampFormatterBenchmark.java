@@ -0,0 +1,81 @@
+package com.ts.bindid.benchmarks;
+
+import com.ts.bindid.example.java.format.TimestampFormatter;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.text.DateFormat;
+import java.text.SimpleDateFormat;
+import java.time.ZoneId;
+import java.util.Calendar;
+import java.util.Locale;
+import java.util.Random;
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Rendering the login times of the passport: the memoized formatter, appending to a reused
+ * builder, and the original toDateString, which built a SimpleDateFormat and a Calendar per value.
+ * The relative times of the since last login section are appended without allocating.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class TimestampFormatterBenchmark {
+
+    private static final int VALUES = 1024;
+    private static final long NOW_SECONDS = 1_624_176_000L;
+    private static final ZoneId UTC = ZoneId.of("UTC");
+
+    private final long[] epochSeconds = new long[VALUES];
+    private final StringBuilder out = new StringBuilder(32);
+    private int next;
+
+    @Setup
+    public void setUp() {
+        // Login times spread over the last five years
+        Random random = new Random(42);
+        for (int i = 0; i < VALUES; i++) {
+            epochSeconds[i] = NOW_SECONDS - (long) (random.nextDouble() * TimeUnit.DAYS.toSeconds(5 * 365));
+        }
+    }
+
+    @Benchmark
+    public String format() {
+        return TimestampFormatter.of(Locale.US, UTC).format(nextValue());
+    }
+
+    @Benchmark
+    public StringBuilder formatTo() {
+        out.setLength(0);
+        return TimestampFormatter.of(Locale.US, UTC).formatTo(nextValue(), out);
+    }
+
+    @Benchmark
+    public StringBuilder appendRelative() {
+        out.setLength(0);
+        return TimestampFormatter.appendRelative(nextValue(), TimeUnit.SECONDS.toMillis(NOW_SECONDS), out);
+    }
+
+    @Benchmark
+    public String toDateString() {
+        long seconds = nextValue();
+        DateFormat format = new SimpleDateFormat(TimestampFormatter.PATTERN, Locale.US);
+        format.setTimeZone(TimeZone.getTimeZone("UTC"));
+        Calendar cal = Calendar.getInstance(Locale.ENGLISH);
+        cal.setTimeInMillis(seconds * 1000);
+        return format.format(cal.getTime());
+    }
+
+    private long nextValue() {
+        long value = epochSeconds[next];
+        next = (next + 1) & (VALUES - 1);
+        return value;
+    }
+}
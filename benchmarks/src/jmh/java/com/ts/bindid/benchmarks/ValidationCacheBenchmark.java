@@ -0,0 +1,113 @@
+package com.ts.bindid.benchmarks;
+
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.JWSHeader;
+import com.nimbusds.jose.crypto.RSASSASigner;
+import com.nimbusds.jose.jwk.JWKSet;
+import com.nimbusds.jwt.JWTClaimsSet;
+import com.nimbusds.jwt.SignedJWT;
+import com.ts.bindid.validation.IdTokenValidator;
+import com.ts.bindid.validation.JwkSetKeySource;
+import com.ts.bindid.validation.TokenValidationException;
+import com.ts.bindid.validation.ValidationCache;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The hit path of the validation cache: the latency of validating a token seen before, next to
+ * the full validation it replaces, and hits per second of one shared validator at 1, 4 and 16
+ * threads. As lookups take no lock the throughput should grow with the threads up to the number
+ * of cores.
+ */
+@State(Scope.Benchmark)
+public class ValidationCacheBenchmark {
+
+    // Tokens the threads go through, all of them fit in the cache
+    private static final int TOKENS = 32;
+
+    private IdTokenValidator validator;
+    private IdTokenValidator uncachedValidator;
+    private String[] idTokens;
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        int next;
+
+        String nextToken(String[] idTokens) {
+            String idToken = idTokens[next];
+            next = (next + 1) % idTokens.length;
+            return idToken;
+        }
+    }
+
+    @Setup
+    public void setUp() throws Exception {
+        JwkSetKeySource keySource = new JwkSetKeySource(new JWKSet(BindIdFixtures.signingKey().toPublicJWK()));
+        validator = new IdTokenValidator.Builder(keySource)
+                .issuer(BindIdFixtures.ISSUER)
+                .audience(BindIdFixtures.CLIENT_ID)
+                .cache(new ValidationCache.Builder().maxEntries(2 * TOKENS).build())
+                .build();
+        uncachedValidator = new IdTokenValidator.Builder(keySource)
+                .issuer(BindIdFixtures.ISSUER)
+                .audience(BindIdFixtures.CLIENT_ID)
+                .build();
+
+        idTokens = new String[TOKENS];
+        for (int i = 0; i < TOKENS; i++) {
+            SignedJWT jwt = new SignedJWT(
+                    new JWSHeader.Builder(JWSAlgorithm.RS256).keyID(BindIdFixtures.SIGNING_KID).build(),
+                    new JWTClaimsSet.Builder(BindIdFixtures.claims()).claim("nonce", "nonce-" + i).build());
+            jwt.sign(new RSASSASigner(BindIdFixtures.signingKey()));
+            idTokens[i] = jwt.serialize();
+            validator.validate(idTokens[i], null);
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public JWTClaimsSet hit(Cursor cursor) throws TokenValidationException {
+        return validator.validate(cursor.nextToken(idTokens), null);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public JWTClaimsSet uncached(Cursor cursor) throws TokenValidationException {
+        return uncachedValidator.validate(cursor.nextToken(idTokens), null);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    @Threads(1)
+    public JWTClaimsSet hits1Thread(Cursor cursor) throws TokenValidationException {
+        return validator.validate(cursor.nextToken(idTokens), null);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    @Threads(4)
+    public JWTClaimsSet hits4Threads(Cursor cursor) throws TokenValidationException {
+        return validator.validate(cursor.nextToken(idTokens), null);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    @Threads(16)
+    public JWTClaimsSet hits16Threads(Cursor cursor) throws TokenValidationException {
+        return validator.validate(cursor.nextToken(idTokens), null);
+    }
+}
@@ -0,0 +1,56 @@
+package com.ts.bindid.benchmarks;
+
+import com.nimbusds.jose.JOSEException;
+import com.nimbusds.jose.crypto.RSASSAVerifier;
+import com.nimbusds.jose.jwk.RSAKey;
+import com.nimbusds.jwt.SignedJWT;
+import com.ts.bindid.example.java.jwks.VerifierCache;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.text.ParseException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ID token parse + verify throughput with a new verifier per token, built from the key JSON as
+ * MainFragment used to do, and with the verifier from the cache.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class VerifierCacheBenchmark {
+
+    private String idToken;
+    private String publicKeyJson;
+    private VerifierCache cache;
+    private RSAKey publicKey;
+    private String cacheKey;
+
+    @Setup
+    public void setUp() throws Exception {
+        idToken = BindIdFixtures.idToken();
+        publicKey = BindIdFixtures.signingKey().toPublicJWK();
+        publicKeyJson = publicKey.toJSONString();
+        cache = new VerifierCache();
+        cacheKey = VerifierCache.cacheKey(publicKey);
+        if (!cached()) {
+            throw new IllegalStateException("Fixture token does not verify");
+        }
+    }
+
+    @Benchmark
+    public boolean uncached() throws ParseException, JOSEException {
+        return SignedJWT.parse(idToken).verify(new RSASSAVerifier(RSAKey.parse(publicKeyJson)));
+    }
+
+    @Benchmark
+    public boolean cached() throws ParseException, JOSEException {
+        return SignedJWT.parse(idToken).verify(cache.get(cacheKey, publicKey));
+    }
+}
@@ -0,0 +1,97 @@
+package com.ts.bindid.example.java.jwks;
+
+import com.nimbusds.jose.jwk.JWKSet;
+import com.nimbusds.jose.jwk.RSAKey;
+import com.nimbusds.jose.util.JSONObjectUtils;
+import com.ts.bindid.benchmarks.BindIdFixtures;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import okio.Buffer;
+
+/**
+ * Reading the signing key out of the jwks response. The first search mirrors the original
+ * fetchBindIDPublicKey, a JSON tree over the response text, the key serialized back to text and
+ * parsed again, with the nimbus JSON parser in place of org.json, which only exists on Android.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class JwksParserBenchmark {
+
+    @Param({"1", "50", "500"})
+    public int keys;
+
+    private byte[] document;
+    private String text;
+    private String firstKid;
+
+    @Setup
+    public void setUp() throws Exception {
+        document = BindIdFixtures.jwks(keys);
+        text = new String(document, StandardCharsets.UTF_8);
+        firstKid = keys > 1 ? "bindid-sig-0" : BindIdFixtures.SIGNING_KID;
+        // The fixture keys share their key material, only their IDs differ
+        RSAKey key = JwksParser.findSigningKey(new Buffer().write(document), BindIdFixtures.SIGNING_KID);
+        RSAKey original = originalSearch();
+        if (key == null || original == null || !key.getModulus().equals(original.getModulus())) {
+            throw new IllegalStateException("Parsers disagree on the signing key");
+        }
+    }
+
+    /**
+     * As fetchBindIDPublicKey did: the first key whose use is sig, whatever the token kid
+     */
+    @Benchmark
+    public RSAKey originalSearch() throws Exception {
+        String body = new String(document, StandardCharsets.UTF_8);
+        Map<String, Object> json = JSONObjectUtils.parse(body);
+        List<Object> keySet = JSONObjectUtils.getJSONArray(json, "keys");
+        for (Object member : keySet) {
+            @SuppressWarnings("unchecked")
+            Map<String, Object> key = (Map<String, Object>) member;
+            if ("sig".equals(key.get("use"))) {
+                return RSAKey.parse(JSONObjectUtils.toJSONString(key));
+            }
+        }
+        return null;
+    }
+
+    @Benchmark
+    public JWKSet jwkSetParse() throws Exception {
+        return JWKSet.parse(text);
+    }
+
+    @Benchmark
+    public List<RSAKey> streamingAllKeys() throws Exception {
+        return JwksParser.readSigningKeys(new Buffer().write(document));
+    }
+
+    /**
+     * Stops at the key of the token, which is the last one in the fixture
+     */
+    @Benchmark
+    public RSAKey streamingFindKey() throws Exception {
+        return JwksParser.findSigningKey(new Buffer().write(document), BindIdFixtures.SIGNING_KID);
+    }
+
+    /**
+     * Stops at the first signature key, after the encryption key
+     */
+    @Benchmark
+    public RSAKey streamingFindFirstKey() throws Exception {
+        return JwksParser.findSigningKey(new Buffer().write(document), firstKid);
+    }
+}
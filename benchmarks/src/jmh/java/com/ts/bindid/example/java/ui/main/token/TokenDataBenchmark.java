@@ -0,0 +1,89 @@
+package com.ts.bindid.example.java.ui.main.token;
+
+import com.nimbusds.jose.util.JSONObjectUtils;
+import com.nimbusds.jwt.JWTClaimsSet;
+import com.nimbusds.jwt.SignedJWT;
+import com.ts.bindid.benchmarks.BindIdFixtures;
+import com.ts.bindid.example.java.format.TimestampFormatter;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.text.ParseException;
+import java.time.ZoneId;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The token screen steps: flattening the verified claims, building TokenData and generating the
+ * passport rows, with labels that stand in for the resolved string resources. The flattening is
+ * compared with the previous flow, which parsed the ID token again and its payload once more.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class TokenDataBenchmark {
+
+    private String idToken;
+    private JWTClaimsSet claimsSet;
+    private TokenClaims claims;
+    private TokenData tokenData;
+    private PassportLabels labels;
+    private TimestampFormatter timestamps;
+
+    @Setup
+    public void setUp() throws Exception {
+        idToken = BindIdFixtures.idToken();
+        claimsSet = SignedJWT.parse(idToken).getJWTClaimsSet();
+        claims = TokenClaims.from(claimsSet);
+        timestamps = TimestampFormatter.of(Locale.US, ZoneId.of("UTC"));
+        labels = new PassportLabels("en-US", id -> "label-" + id);
+        tokenData = new TokenData(claims, timestamps);
+        if (tokenData.getTokens(labels).size() < 10) {
+            throw new IllegalStateException("Fixture claims are missing passport rows");
+        }
+    }
+
+    @Benchmark
+    public TokenClaims claimsFrom() {
+        return TokenClaims.from(claimsSet);
+    }
+
+    /**
+     * The previous flow, the ID token parsed again on the token screen and its payload as JSON
+     */
+    @Benchmark
+    public Object reparse() throws ParseException {
+        SignedJWT jwt = SignedJWT.parse(idToken);
+        Map<String, Object> json = JSONObjectUtils.parse(jwt.getPayload().toString());
+        return json.get("bindid_info");
+    }
+
+    /**
+     * TokenData from the verified claims set, as the token screen receives it
+     */
+    @Benchmark
+    public TokenData construct() {
+        return new TokenData(TokenClaims.from(claimsSet), timestamps);
+    }
+
+    @Benchmark
+    public List<TokenItem> getTokens() {
+        return tokenData.getTokens(labels);
+    }
+
+    /**
+     * The rows of a token from its flattened claims, as the claim schema generates them
+     */
+    @Benchmark
+    public List<TokenItem> rows() {
+        return new TokenData(claims, timestamps).getTokens(labels);
+    }
+}
@@ -0,0 +1,263 @@
+package com.ts.bindid.loadtest;
+
+import com.nimbusds.jose.JOSEException;
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.JWSHeader;
+import com.nimbusds.jose.crypto.RSASSASigner;
+import com.nimbusds.jose.jwk.JWK;
+import com.nimbusds.jose.jwk.JWKSet;
+import com.nimbusds.jose.jwk.KeyUse;
+import com.nimbusds.jose.jwk.RSAKey;
+import com.nimbusds.jose.jwk.gen.RSAKeyGenerator;
+import com.nimbusds.jwt.JWTClaimsSet;
+import com.nimbusds.jwt.SignedJWT;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.net.ServerSocketFactory;
+
+import okhttp3.HttpUrl;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+
+/**
+ * FakeBindIdServer stands in for the BindID token and jwks endpoints. The token endpoint returns
+ * real RS256 ID tokens, with bindid_network_info and bindid_info, signed by the current key, and
+ * the jwks endpoint publishes the current key and the one before it.
+ *
+ * Tokens are signed ahead, a pool per key, so that signing does not take CPU time from the
+ * clients being measured in the same process. The keys of the rotations can be generated ahead
+ * too, with {@link #prepareKeys(int)}, so a rotation only switches to the next one.
+ */
+public class FakeBindIdServer implements AutoCloseable {
+
+    public static final String ISSUER = "https://signin.bindid-sandbox.io";
+    public static final String CLIENT_ID = "bindid_example_client";
+
+    private static final int TOKENS_PER_KEY = 64;
+
+    private static final class Keys {
+        final String kid;
+        final List<String> idTokens;
+        final String jwks;
+
+        Keys(String kid, List<String> idTokens, String jwks) {
+            this.kid = kid;
+            this.idTokens = idTokens;
+            this.jwks = jwks;
+        }
+    }
+
+    private final MockWebServer server = new MockWebServer();
+    private final long delayMillis;
+    private final AtomicInteger tokenRequests = new AtomicInteger();
+    private final AtomicInteger jwksRequests = new AtomicInteger();
+    private final Deque<Keys> prepared = new ArrayDeque<>();
+    private volatile Keys keys;
+    // The last key generated, published alongside the next one
+    private RSAKey previousKey;
+    private int generated;
+
+    /**
+     * @param delayMillis added to every response, as the network and BindID would
+     */
+    public FakeBindIdServer(long delayMillis) throws IOException, JOSEException {
+        this.delayMillis = delayMillis;
+        rotateKey();
+        server.setServerSocketFactory(new NoDelayServerSocketFactory());
+        server.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) {
+                return FakeBindIdServer.this.dispatch(request);
+            }
+        });
+        server.start();
+    }
+
+    public HttpUrl tokenUrl() {
+        return server.url("/token");
+    }
+
+    public HttpUrl jwksUrl() {
+        return server.url("/jwks");
+    }
+
+    /**
+     * Generate the keys of the next rotations now, before the load starts
+     */
+    public synchronized void prepareKeys(int count) throws JOSEException {
+        for (int i = 0; i < count; i++) {
+            prepared.add(nextKeys());
+        }
+    }
+
+    /**
+     * Sign with a new key from now on, and publish it alongside the previous one
+     */
+    public synchronized void rotateKey() throws JOSEException {
+        keys = prepared.isEmpty() ? nextKeys() : prepared.poll();
+    }
+
+    private Keys nextKeys() throws JOSEException {
+        RSAKey key = new RSAKeyGenerator(2048)
+                .keyID("k" + generated)
+                .keyUse(KeyUse.SIGNATURE)
+                .generate();
+        List<String> idTokens = new ArrayList<>(TOKENS_PER_KEY);
+        for (int i = 0; i < TOKENS_PER_KEY; i++) {
+            idTokens.add(sign(key, claims("user-" + i)));
+        }
+        List<JWK> published = new ArrayList<>();
+        published.add(key.toPublicJWK());
+        if (previousKey != null) {
+            published.add(previousKey.toPublicJWK());
+        }
+        previousKey = key;
+        generated++;
+        return new Keys(key.getKeyID(), idTokens, new JWKSet(published).toString());
+    }
+
+    /**
+     * @return the ID of the key tokens are signed with
+     */
+    public String currentKeyId() {
+        return keys.kid;
+    }
+
+    public int getTokenRequests() {
+        return tokenRequests.get();
+    }
+
+    public int getJwksRequests() {
+        return jwksRequests.get();
+    }
+
+    @Override
+    public void close() throws IOException {
+        server.shutdown();
+    }
+
+    private MockResponse dispatch(RecordedRequest request) {
+        Keys current = keys;
+        MockResponse response;
+        String path = request.getPath();
+        if ("/token".equals(path) && "POST".equals(request.getMethod())) {
+            tokenRequests.incrementAndGet();
+            String idToken = current.idTokens.get(ThreadLocalRandom.current().nextInt(current.idTokens.size()));
+            response = new MockResponse()
+                    .setHeader("Content-Type", "application/json")
+                    .setBody("{\"access_token\":\"access-" + tokenRequests.get() + "\","
+                            + "\"id_token\":\"" + idToken + "\","
+                            + "\"token_type\":\"Bearer\",\"expires_in\":3600}");
+        } else if ("/jwks".equals(path)) {
+            jwksRequests.incrementAndGet();
+            response = new MockResponse()
+                    .setHeader("Content-Type", "application/json")
+                    .setBody(current.jwks);
+        } else {
+            response = new MockResponse().setResponseCode(404);
+        }
+        return response.setHeadersDelay(delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @return the claims of a BindID ID token, issued now and valid for an hour
+     */
+    static JWTClaimsSet claims(String subject) {
+        long now = System.currentTimeMillis() / 1000;
+
+        Map<String, Object> networkInfo = new LinkedHashMap<>();
+        networkInfo.put("user_registration_time", "2021-06-01T10:15:30.000Z");
+        networkInfo.put("user_last_seen", "2021-06-20T08:00:00.000Z");
+        networkInfo.put("device_count", 2L);
+        networkInfo.put("authenticating_device_last_seen", "2021-06-20T08:00:00.000Z");
+        networkInfo.put("confirmed_capp_count", 1L);
+        networkInfo.put("authenticating_device_registration_time", "2021-06-01T10:15:30.000Z");
+
+        Map<String, Object> bindIdInfo = new LinkedHashMap<>();
+        bindIdInfo.put("capp_first_login", 1622542530L);
+        bindIdInfo.put("capp_first_confirmed_login", 1622542530L);
+        bindIdInfo.put("capp_last_login", 1624176000L);
+        bindIdInfo.put("capp_first_login_from_authenticating_device", 1622542530L);
+        bindIdInfo.put("capp_last_login_from_authenticating_device", 1624176000L);
+
+        return new JWTClaimsSet.Builder()
+                .issuer(ISSUER)
+                .subject(subject)
+                .audience(CLIENT_ID)
+                .issueTime(new Date(TimeUnit.SECONDS.toMillis(now)))
+                .expirationTime(new Date(TimeUnit.SECONDS.toMillis(now + 3600)))
+                .claim("email", subject + "@example.com")
+                .claim("bindid_alias", "alias-" + subject)
+                .claim("acr.ts.bindid.app_bound_cred", "Yes")
+                .claim("bindid_network_info", networkInfo)
+                .claim("bindid_info", bindIdInfo)
+                .build();
+    }
+
+    /**
+     * Sends each response without waiting for the client to acknowledge the previous write. Over
+     * loopback the delayed acknowledgement would otherwise add 40ms to every token exchange,
+     * which says nothing about the login flow.
+     */
+    private static final class NoDelayServerSocketFactory extends ServerSocketFactory {
+
+        @Override
+        public ServerSocket createServerSocket() throws IOException {
+            return new ServerSocket() {
+                @Override
+                public Socket accept() throws IOException {
+                    Socket socket = super.accept();
+                    socket.setTcpNoDelay(true);
+                    return socket;
+                }
+            };
+        }
+
+        @Override
+        public ServerSocket createServerSocket(int port) throws IOException {
+            return createServerSocket(port, 50, null);
+        }
+
+        @Override
+        public ServerSocket createServerSocket(int port, int backlog) throws IOException {
+            return createServerSocket(port, backlog, null);
+        }
+
+        @Override
+        public ServerSocket createServerSocket(int port, int backlog, InetAddress address) throws IOException {
+            ServerSocket socket = createServerSocket();
+            try {
+                socket.bind(new InetSocketAddress(address, port), backlog);
+            } catch (IOException e) {
+                socket.close();
+                throw e;
+            }
+            return socket;
+        }
+    }
+
+    private static String sign(RSAKey key, JWTClaimsSet claims) throws JOSEException {
+        SignedJWT jwt = new SignedJWT(
+                new JWSHeader.Builder(JWSAlgorithm.RS256).keyID(key.getKeyID()).build(),
+                claims);
+        jwt.sign(new RSASSASigner(key));
+        return jwt.serialize();
+    }
+}
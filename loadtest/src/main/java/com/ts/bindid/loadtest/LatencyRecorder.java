@@ -0,0 +1,68 @@
+package com.ts.bindid.loadtest;
+
+import java.util.Arrays;
+
+/**
+ * LatencyRecorder keeps every recorded latency, so the percentiles are exact. Each client records
+ * into its own recorder, without locking, and the recorders are merged once the run is over.
+ */
+public final class LatencyRecorder {
+
+    private long[] nanos = new long[1024];
+    private int count;
+    private boolean sorted;
+
+    public void record(long latencyNanos) {
+        if (count == nanos.length) {
+            nanos = Arrays.copyOf(nanos, count * 2);
+        }
+        nanos[count++] = latencyNanos;
+        sorted = false;
+    }
+
+    public void merge(LatencyRecorder other) {
+        for (int i = 0; i < other.count; i++) {
+            record(other.nanos[i]);
+        }
+    }
+
+    public int count() {
+        return count;
+    }
+
+    /**
+     * @param percentile between 0 and 100
+     * @return the latency in nanoseconds below which the given percentage of the recorded
+     * latencies fall, or 0 when nothing was recorded
+     */
+    public long percentile(double percentile) {
+        if (count == 0) {
+            return 0;
+        }
+        sort();
+        int index = (int) Math.ceil(percentile / 100 * count) - 1;
+        return nanos[Math.max(0, Math.min(count - 1, index))];
+    }
+
+    public long max() {
+        return percentile(100);
+    }
+
+    public double mean() {
+        if (count == 0) {
+            return 0;
+        }
+        double sum = 0;
+        for (int i = 0; i < count; i++) {
+            sum += nanos[i];
+        }
+        return sum / count;
+    }
+
+    private void sort() {
+        if (!sorted) {
+            Arrays.sort(nanos, 0, count);
+            sorted = true;
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package com.ts.bindid.loadtest;
+
+import com.squareup.moshi.JsonWriter;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.TreeMap;
+
+import okio.BufferedSink;
+
+/**
+ * LoadReport is the result of a load test run: throughput, latency percentiles of the whole login
+ * and of each stage, and the errors by stage and cause.
+ *
+ * It is written as JSON with a fixed layout, so the reports of two commits can be compared by a
+ * script or a plain diff.
+ */
+public final class LoadReport {
+
+    final LoadTest.Config config;
+    final long elapsedNanos;
+    final LatencyRecorder total;
+    final Map<LoginFlow.Stage, LatencyRecorder> stages;
+    final Map<String, Integer> errors = new TreeMap<>();
+    int jwksFetches;
+    int keyRotations;
+
+    LoadReport(LoadTest.Config config, long elapsedNanos, LatencyRecorder total,
+               Map<LoginFlow.Stage, LatencyRecorder> stages) {
+        this.config = config;
+        this.elapsedNanos = elapsedNanos;
+        this.total = total;
+        this.stages = stages;
+    }
+
+    public int getLogins() {
+        return total.count();
+    }
+
+    public int getErrors() {
+        int sum = 0;
+        for (int count : errors.values()) {
+            sum += count;
+        }
+        return sum;
+    }
+
+    /**
+     * @return the failed share of the attempted logins, between 0 and 1
+     */
+    public double getErrorRate() {
+        int attempts = getLogins() + getErrors();
+        return attempts == 0 ? 0 : (double) getErrors() / attempts;
+    }
+
+    /**
+     * @return successful logins per second
+     */
+    public double getThroughput() {
+        return elapsedNanos == 0 ? 0 : getLogins() * 1e9 / elapsedNanos;
+    }
+
+    public LatencyRecorder getLatency() {
+        return total;
+    }
+
+    public Map<String, Integer> getErrorsByCause() {
+        return errors;
+    }
+
+    public int getJwksFetches() {
+        return jwksFetches;
+    }
+
+    public int getKeyRotations() {
+        return keyRotations;
+    }
+
+    public void writeJson(BufferedSink sink) throws IOException {
+        JsonWriter writer = JsonWriter.of(sink);
+        writer.setIndent("  ");
+        writer.beginObject();
+
+        writer.name("config").beginObject();
+        writer.name("concurrency").value(config.concurrency);
+        writer.name("rate_per_second").value(config.ratePerSecond);
+        writer.name("duration_seconds").value(config.durationSeconds);
+        writer.name("warmup_seconds").value(config.warmupSeconds);
+        writer.name("rotate_every_seconds").value(config.rotateEverySeconds);
+        writer.name("server_delay_millis").value(config.serverDelayMillis);
+        writer.endObject();
+
+        writer.name("environment").beginObject();
+        writer.name("java_version").value(System.getProperty("java.version"));
+        writer.name("processors").value(Runtime.getRuntime().availableProcessors());
+        writer.endObject();
+
+        writer.name("elapsed_seconds").value(round(elapsedNanos / 1e9));
+        writer.name("logins").value(getLogins());
+        writer.name("errors").value(getErrors());
+        writer.name("error_rate").value(round(getErrorRate()));
+        writer.name("throughput_per_second").value(round(getThroughput()));
+        writer.name("jwks_fetches").value(jwksFetches);
+        writer.name("key_rotations").value(keyRotations);
+
+        writer.name("latency_millis").beginObject();
+        writeLatency(writer.name("login"), total);
+        for (Map.Entry<LoginFlow.Stage, LatencyRecorder> stage : stages.entrySet()) {
+            writeLatency(writer.name(stage.getKey().name().toLowerCase()), stage.getValue());
+        }
+        writer.endObject();
+
+        writer.name("errors_by_cause").beginObject();
+        for (Map.Entry<String, Integer> error : errors.entrySet()) {
+            writer.name(error.getKey()).value(error.getValue());
+        }
+        writer.endObject();
+
+        writer.endObject();
+        writer.flush();
+    }
+
+    private static void writeLatency(JsonWriter writer, LatencyRecorder latency) throws IOException {
+        writer.beginObject();
+        writer.name("mean").value(millis(latency.mean()));
+        writer.name("p50").value(millis(latency.percentile(50)));
+        writer.name("p90").value(millis(latency.percentile(90)));
+        writer.name("p99").value(millis(latency.percentile(99)));
+        writer.name("p999").value(millis(latency.percentile(99.9)));
+        writer.name("max").value(millis(latency.max()));
+        writer.endObject();
+    }
+
+    private static double millis(double nanos) {
+        return round(nanos / 1e6);
+    }
+
+    private static double round(double value) {
+        return Math.round(value * 1000) / 1000.0;
+    }
+}
@@ -0,0 +1,332 @@
+package com.ts.bindid.loadtest;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import okhttp3.ConnectionPool;
+import okhttp3.OkHttpClient;
+import okio.BufferedSink;
+import okio.Okio;
+
+/**
+ * LoadTest runs the login flow from many clients at once against a {@link FakeBindIdServer}, and
+ * reports the throughput, the latency percentiles and the error rate as JSON.
+ *
+ * With a rate, logins start on a fixed schedule whether or not the earlier ones finished, and
+ * each latency is measured from its scheduled start, so time spent waiting for a free client
+ * counts. Without a rate, each client starts its next login as soon as the last one finished.
+ */
+public final class LoadTest {
+
+    public static final class Config {
+        final int concurrency;
+        final double ratePerSecond;
+        final double durationSeconds;
+        final double warmupSeconds;
+        final double rotateEverySeconds;
+        final long serverDelayMillis;
+        final File output;
+
+        private Config(Builder builder) {
+            this.concurrency = builder.concurrency;
+            this.ratePerSecond = builder.ratePerSecond;
+            this.durationSeconds = builder.durationSeconds;
+            this.warmupSeconds = builder.warmupSeconds;
+            this.rotateEverySeconds = builder.rotateEverySeconds;
+            this.serverDelayMillis = builder.serverDelayMillis;
+            this.output = builder.output;
+        }
+
+        /**
+         * @param args --name=value options, as listed by {@link #USAGE}
+         */
+        public static Config parse(String[] args) {
+            Builder builder = new Builder();
+            for (String arg : args) {
+                int equals = arg.indexOf('=');
+                if (!arg.startsWith("--") || equals < 0) {
+                    throw new IllegalArgumentException("Invalid option " + arg + "\n" + USAGE);
+                }
+                String name = arg.substring(2, equals);
+                String value = arg.substring(equals + 1);
+                switch (name) {
+                    case "concurrency":
+                        builder.concurrency(Integer.parseInt(value));
+                        break;
+                    case "rate":
+                        builder.rate(Double.parseDouble(value));
+                        break;
+                    case "duration":
+                        builder.duration(Double.parseDouble(value));
+                        break;
+                    case "warmup":
+                        builder.warmup(Double.parseDouble(value));
+                        break;
+                    case "rotate-every":
+                        builder.rotateEvery(Double.parseDouble(value));
+                        break;
+                    case "server-delay":
+                        builder.serverDelay(Long.parseLong(value));
+                        break;
+                    case "output":
+                        builder.output(new File(value));
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Unknown option " + arg + "\n" + USAGE);
+                }
+            }
+            return builder.build();
+        }
+
+        public static final class Builder {
+            private int concurrency = 8;
+            private double ratePerSecond;
+            private double durationSeconds = 10;
+            private double warmupSeconds = 2;
+            private double rotateEverySeconds;
+            private long serverDelayMillis;
+            private File output;
+
+            /**
+             * @param concurrency how many clients log in at the same time
+             */
+            public Builder concurrency(int concurrency) {
+                if (concurrency < 1) {
+                    throw new IllegalArgumentException("concurrency must be at least 1");
+                }
+                this.concurrency = concurrency;
+                return this;
+            }
+
+            /**
+             * @param ratePerSecond logins started per second, or 0 to start them as fast as the
+             *                      clients finish
+             */
+            public Builder rate(double ratePerSecond) {
+                this.ratePerSecond = ratePerSecond;
+                return this;
+            }
+
+            /**
+             * @param seconds how long logins are measured, after the warm-up
+             */
+            public Builder duration(double seconds) {
+                this.durationSeconds = seconds;
+                return this;
+            }
+
+            /**
+             * @param seconds how long logins run before they are measured
+             */
+            public Builder warmup(double seconds) {
+                this.warmupSeconds = seconds;
+                return this;
+            }
+
+            /**
+             * @param seconds how often the server signs with a new key, or 0 to keep one key
+             */
+            public Builder rotateEvery(double seconds) {
+                this.rotateEverySeconds = seconds;
+                return this;
+            }
+
+            /**
+             * @param millis added to every server response
+             */
+            public Builder serverDelay(long millis) {
+                this.serverDelayMillis = millis;
+                return this;
+            }
+
+            /**
+             * @param output where the JSON report is written, besides the standard output
+             */
+            public Builder output(File output) {
+                this.output = output;
+                return this;
+            }
+
+            public Config build() {
+                return new Config(this);
+            }
+        }
+    }
+
+    static final String USAGE = "Options:\n"
+            + "  --concurrency=N     clients logging in at the same time (8)\n"
+            + "  --rate=N            logins started per second, 0 for as fast as possible (0)\n"
+            + "  --duration=S        seconds measured (10)\n"
+            + "  --warmup=S          seconds run before measuring (2)\n"
+            + "  --rotate-every=S    seconds between signing key rotations, 0 for none (0)\n"
+            + "  --server-delay=MS   milliseconds added to every server response (0)\n"
+            + "  --output=FILE       also write the JSON report to FILE";
+
+    private LoadTest() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        Config config;
+        try {
+            config = Config.parse(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.exit(2);
+            return;
+        }
+        LoadReport report = run(config);
+
+        BufferedSink out = Okio.buffer(Okio.sink(System.out));
+        report.writeJson(out);
+        out.writeUtf8("\n").flush();
+        if (config.output != null) {
+            File parent = config.output.getAbsoluteFile().getParentFile();
+            if (parent != null) {
+                parent.mkdirs();
+            }
+            try (BufferedSink file = Okio.buffer(Okio.sink(config.output))) {
+                report.writeJson(file);
+            }
+            System.err.println("Report written to " + config.output.getAbsolutePath());
+        }
+    }
+
+    public static LoadReport run(Config config) throws Exception {
+        try (FakeBindIdServer server = new FakeBindIdServer(config.serverDelayMillis)) {
+            OkHttpClient client = new OkHttpClient.Builder()
+                    // Keep a connection per client, as each app keeps its own
+                    .connectionPool(new ConnectionPool(config.concurrency, 5, TimeUnit.MINUTES))
+                    .build();
+            LoginFlow flow = new LoginFlow(client, server.tokenUrl(), server.jwksUrl());
+
+            AtomicInteger rotations = new AtomicInteger();
+            ScheduledExecutorService rotator = Executors.newSingleThreadScheduledExecutor(
+                    runnable -> new Thread(runnable, "key-rotation"));
+            if (config.rotateEverySeconds > 0) {
+                // Generated before the clock starts, a rotation then takes no time from the clients
+                server.prepareKeys((int) Math.ceil(
+                        (config.warmupSeconds + config.durationSeconds) / config.rotateEverySeconds));
+                long period = (long) (config.rotateEverySeconds * 1e9);
+                rotator.scheduleAtFixedRate(() -> {
+                    try {
+                        server.rotateKey();
+                        rotations.incrementAndGet();
+                    } catch (Exception e) {
+                        System.err.println("Key rotation failed: " + e);
+                    }
+                }, period, period, TimeUnit.NANOSECONDS);
+            }
+
+            long start = System.nanoTime();
+            long measureFrom = start + (long) (config.warmupSeconds * 1e9);
+            long end = measureFrom + (long) (config.durationSeconds * 1e9);
+            AtomicLong tickets = new AtomicLong();
+            List<Client> clients = new ArrayList<>();
+            for (int i = 0; i < config.concurrency; i++) {
+                Client worker = new Client(config, flow, start, measureFrom, end, tickets);
+                worker.thread = new Thread(worker, "client-" + i);
+                clients.add(worker);
+                worker.thread.start();
+            }
+            for (Client worker : clients) {
+                worker.thread.join();
+            }
+            rotator.shutdownNow();
+
+            LatencyRecorder total = new LatencyRecorder();
+            Map<LoginFlow.Stage, LatencyRecorder> stages = new EnumMap<>(LoginFlow.Stage.class);
+            for (LoginFlow.Stage stage : LoginFlow.Stage.values()) {
+                stages.put(stage, new LatencyRecorder());
+            }
+            LoadReport report = new LoadReport(config, end - measureFrom, total, stages);
+            for (Client worker : clients) {
+                total.merge(worker.total);
+                for (LoginFlow.Stage stage : LoginFlow.Stage.values()) {
+                    stages.get(stage).merge(worker.stages[stage.ordinal()]);
+                }
+                for (Map.Entry<String, Integer> error : worker.errors.entrySet()) {
+                    report.errors.merge(error.getKey(), error.getValue(), Integer::sum);
+                }
+            }
+            report.jwksFetches = flow.getJwksFetches();
+            report.keyRotations = rotations.get();
+            return report;
+        }
+    }
+
+    /**
+     * A client logging in again and again, recording only what it alone touches
+     */
+    private static final class Client implements Runnable {
+        final Config config;
+        final LoginFlow flow;
+        final long start;
+        final long measureFrom;
+        final long end;
+        final AtomicLong tickets;
+        final LatencyRecorder total = new LatencyRecorder();
+        final LatencyRecorder[] stages = new LatencyRecorder[LoginFlow.Stage.values().length];
+        final Map<String, Integer> errors = new HashMap<>();
+        Thread thread;
+
+        Client(Config config, LoginFlow flow, long start, long measureFrom, long end, AtomicLong tickets) {
+            this.config = config;
+            this.flow = flow;
+            this.start = start;
+            this.measureFrom = measureFrom;
+            this.end = end;
+            this.tickets = tickets;
+            for (int i = 0; i < stages.length; i++) {
+                stages[i] = new LatencyRecorder();
+            }
+        }
+
+        @Override
+        public void run() {
+            long[] stageNanos = new long[stages.length];
+            while (true) {
+                long scheduled;
+                if (config.ratePerSecond > 0) {
+                    scheduled = start + (long) (tickets.getAndIncrement() * 1e9 / config.ratePerSecond);
+                    if (scheduled >= end) {
+                        return;
+                    }
+                    long wait = scheduled - System.nanoTime();
+                    if (wait > 0) {
+                        LockSupport.parkNanos(wait);
+                    }
+                } else {
+                    scheduled = System.nanoTime();
+                    if (scheduled >= end) {
+                        return;
+                    }
+                }
+
+                boolean measured = scheduled >= measureFrom;
+                try {
+                    flow.login(stageNanos);
+                    if (measured) {
+                        total.record(System.nanoTime() - scheduled);
+                        for (int i = 0; i < stages.length; i++) {
+                            stages[i].record(stageNanos[i]);
+                        }
+                    }
+                } catch (LoginFlow.LoginException e) {
+                    if (measured) {
+                        errors.merge(e.getStage().name().toLowerCase() + ": " + e.getMessage(), 1, Integer::sum);
+                    }
+                }
+            }
+        }
+    }
+}
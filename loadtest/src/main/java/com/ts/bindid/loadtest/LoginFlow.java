@@ -0,0 +1,204 @@
+package com.ts.bindid.loadtest;
+
+import com.nimbusds.jose.JOSEException;
+import com.nimbusds.jose.JWSVerifier;
+import com.nimbusds.jose.jwk.JWKSet;
+import com.nimbusds.jwt.JWTClaimsSet;
+import com.nimbusds.jwt.SignedJWT;
+import com.squareup.moshi.JsonReader;
+import com.ts.bindid.validation.IdTokenValidator;
+import com.ts.bindid.validation.JwkSetKeySource;
+import com.ts.bindid.validation.TokenValidationException;
+
+import java.io.IOException;
+import java.text.ParseException;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+
+import okhttp3.FormBody;
+import okhttp3.HttpUrl;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+
+/**
+ * LoginFlow replays what the app does once BindID authenticated the user: the token exchange, the
+ * key lookup with a key set fetch when the key is unknown, the ID token verification and the
+ * mapping of its claims for the token screen.
+ *
+ * One flow is shared by all clients, as the app shares its key store, so a key rotation is seen
+ * by every client and the key set is fetched once for it.
+ */
+public class LoginFlow {
+
+    public enum Stage {
+        EXCHANGE,
+        KEY_LOOKUP,
+        VERIFY,
+        MAP
+    }
+
+    public static class LoginException extends Exception {
+
+        private static final long serialVersionUID = 1L;
+
+        private final Stage stage;
+
+        LoginException(Stage stage, String message) {
+            super(message);
+            this.stage = stage;
+        }
+
+        public Stage getStage() {
+            return stage;
+        }
+    }
+
+    private final OkHttpClient client;
+    private final HttpUrl tokenUrl;
+    private final HttpUrl jwksUrl;
+    private final JwkSetKeySource keySource = new JwkSetKeySource();
+    private final IdTokenValidator validator = new IdTokenValidator.Builder(keySource)
+            .issuer(FakeBindIdServer.ISSUER)
+            .audience(FakeBindIdServer.CLIENT_ID)
+            .build();
+    private int jwksFetches;
+
+    public LoginFlow(OkHttpClient client, HttpUrl tokenUrl, HttpUrl jwksUrl) {
+        this.client = client;
+        this.tokenUrl = tokenUrl;
+        this.jwksUrl = jwksUrl;
+    }
+
+    /**
+     * Run the flow once
+     * @param stageNanos filled with the time of each stage, indexed by {@link Stage#ordinal()}
+     * @return the flat claims shown on the token screen
+     */
+    public Map<String, String> login(long[] stageNanos) throws LoginException {
+        long start = System.nanoTime();
+        String idToken = exchange();
+        long exchanged = System.nanoTime();
+        stageNanos[Stage.EXCHANGE.ordinal()] = exchanged - start;
+
+        SignedJWT jwt;
+        try {
+            jwt = SignedJWT.parse(idToken);
+        } catch (ParseException e) {
+            throw new LoginException(Stage.KEY_LOOKUP, "Invalid ID token");
+        }
+        String kid = jwt.getHeader().getKeyID();
+        JWSVerifier verifier = keySource.getVerifier(kid);
+        if (verifier == null) {
+            verifier = fetchKey(kid);
+        }
+        long found = System.nanoTime();
+        stageNanos[Stage.KEY_LOOKUP.ordinal()] = found - exchanged;
+
+        JWTClaimsSet claims;
+        try {
+            claims = validator.validate(jwt, verifier, null);
+        } catch (TokenValidationException e) {
+            throw new LoginException(Stage.VERIFY, e.getMessage());
+        }
+        long verified = System.nanoTime();
+        stageNanos[Stage.VERIFY.ordinal()] = verified - found;
+
+        Map<String, String> mapped = map(claims);
+        stageNanos[Stage.MAP.ordinal()] = System.nanoTime() - verified;
+        return mapped;
+    }
+
+    /**
+     * @return how many times the key set was fetched
+     */
+    public synchronized int getJwksFetches() {
+        return jwksFetches;
+    }
+
+    private String exchange() throws LoginException {
+        Request request = new Request.Builder()
+                .url(tokenUrl)
+                .post(new FormBody.Builder()
+                        .add("grant_type", "authorization_code")
+                        .add("code", "code")
+                        .add("code_verifier", "verifier")
+                        .add("client_id", FakeBindIdServer.CLIENT_ID)
+                        .build())
+                .build();
+        try (Response response = client.newCall(request).execute()) {
+            if (!response.isSuccessful()) {
+                throw new LoginException(Stage.EXCHANGE, "HTTP " + response.code());
+            }
+            JsonReader reader = JsonReader.of(response.body().source());
+            String idToken = null;
+            reader.beginObject();
+            while (reader.hasNext()) {
+                if ("id_token".equals(reader.nextName())) {
+                    idToken = reader.nextString();
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+            if (idToken == null) {
+                throw new LoginException(Stage.EXCHANGE, "No ID token");
+            }
+            return idToken;
+        } catch (IOException e) {
+            throw new LoginException(Stage.EXCHANGE, e.getClass().getSimpleName());
+        }
+    }
+
+    /**
+     * Fetch the key set for a key it does not have yet. Clients that miss the same key wait for
+     * the fetch in progress instead of starting their own.
+     */
+    private synchronized JWSVerifier fetchKey(String kid) throws LoginException {
+        JWSVerifier verifier = keySource.getVerifier(kid);
+        if (verifier != null) {
+            return verifier;
+        }
+        jwksFetches++;
+        Request request = new Request.Builder().url(jwksUrl).build();
+        try (Response response = client.newCall(request).execute()) {
+            if (!response.isSuccessful()) {
+                throw new LoginException(Stage.KEY_LOOKUP, "HTTP " + response.code());
+            }
+            keySource.update(JWKSet.parse(response.body().string()));
+        } catch (IOException e) {
+            throw new LoginException(Stage.KEY_LOOKUP, e.getClass().getSimpleName());
+        } catch (ParseException | JOSEException e) {
+            throw new LoginException(Stage.KEY_LOOKUP, "Invalid key set");
+        }
+        verifier = keySource.getVerifier(kid);
+        if (verifier == null) {
+            throw new LoginException(Stage.KEY_LOOKUP, "Unknown key");
+        }
+        return verifier;
+    }
+
+    /**
+     * Flatten the claims as TokenClaims does in the app: nested claims under "parent.child"
+     * names, dates in epoch seconds and everything else in its string form
+     */
+    private static Map<String, String> map(JWTClaimsSet claimsSet) {
+        Map<String, String> claims = new HashMap<>();
+        for (Map.Entry<String, Object> claim : claimsSet.getClaims().entrySet()) {
+            Object value = claim.getValue();
+            if (value instanceof Map) {
+                for (Map.Entry<?, ?> child : ((Map<?, ?>) value).entrySet()) {
+                    if (child.getValue() != null) {
+                        claims.put(claim.getKey() + "." + child.getKey(), String.valueOf(child.getValue()));
+                    }
+                }
+            } else if (value instanceof Date) {
+                claims.put(claim.getKey(), String.valueOf(((Date) value).getTime() / 1000));
+            } else if (value != null) {
+                claims.put(claim.getKey(), String.valueOf(value));
+            }
+        }
+        return claims;
+    }
+}
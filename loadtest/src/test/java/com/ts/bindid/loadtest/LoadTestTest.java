@@ -0,0 +1,103 @@
+package com.ts.bindid.loadtest;
+
+import com.squareup.moshi.JsonReader;
+
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import okio.Buffer;
+
+import static org.junit.Assert.*;
+
+/**
+ * Runs short load tests, checking that every login succeeds through key rotations and that the
+ * report has the fields scripts compare.
+ */
+public class LoadTestTest {
+
+    @Test
+    public void logsInThroughKeyRotations() throws Exception {
+        LoadReport report = LoadTest.run(new LoadTest.Config.Builder()
+                .concurrency(4)
+                .warmup(0.2)
+                .duration(2)
+                .rotateEvery(0.4)
+                .serverDelay(5)
+                .build());
+
+        assertTrue(report.getLogins() > 0);
+        assertEquals(report.getErrorsByCause().toString(), 0, report.getErrors());
+        assertTrue(String.valueOf(report.getKeyRotations()), report.getKeyRotations() >= 1);
+        // Once for the first key and once per rotation, whatever the number of clients
+        assertTrue(report.getJwksFetches() <= report.getKeyRotations() + 1);
+        assertTrue(report.getLatency().percentile(50) <= report.getLatency().percentile(99));
+    }
+
+    @Test
+    public void pacesLoginsAtRate() throws Exception {
+        LoadReport report = LoadTest.run(new LoadTest.Config.Builder()
+                .concurrency(4)
+                .rate(50)
+                .warmup(0)
+                .duration(1)
+                .build());
+
+        // 50 logins are scheduled, all of them well within the capacity of four clients
+        assertTrue(String.valueOf(report.getLogins()), Math.abs(report.getLogins() - 50) <= 2);
+        assertEquals(0, report.getErrors());
+    }
+
+    @Test
+    public void writesComparableReport() throws Exception {
+        LoadReport report = LoadTest.run(new LoadTest.Config.Builder()
+                .concurrency(2)
+                .warmup(0)
+                .duration(0.3)
+                .build());
+        Buffer json = new Buffer();
+        report.writeJson(json);
+
+        JsonReader reader = JsonReader.of(json);
+        Set<String> names = new HashSet<>();
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            names.add(name);
+            if ("latency_millis".equals(name)) {
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    names.add("latency_millis." + reader.nextName());
+                    reader.skipValue();
+                }
+                reader.endObject();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        for (String expected : new String[]{"config", "logins", "errors", "error_rate",
+                "throughput_per_second", "latency_millis.login", "latency_millis.exchange",
+                "latency_millis.key_lookup", "latency_millis.verify", "latency_millis.map",
+                "errors_by_cause"}) {
+            assertTrue(expected, names.contains(expected));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsUnknownOption() {
+        LoadTest.Config.parse(new String[]{"--threads=4"});
+    }
+
+    @Test
+    public void parsesOptions() {
+        LoadTest.Config config = LoadTest.Config.parse(new String[]{
+                "--concurrency=16", "--rate=200", "--duration=30", "--rotate-every=10"});
+        assertEquals(16, config.concurrency);
+        assertEquals(200, config.ratePerSecond, 0);
+        assertEquals(30, config.durationSeconds, 0);
+        assertEquals(10, config.rotateEverySeconds, 0);
+    }
+}
@@ -0,0 +1,244 @@
+package com.ts.bindid.validation;
+
+import com.nimbusds.jose.JOSEException;
+import com.nimbusds.jose.JWSVerifier;
+import com.nimbusds.jwt.JWTClaimsSet;
+import com.nimbusds.jwt.SignedJWT;
+
+import java.text.ParseException;
+import java.util.Date;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * IdTokenValidator validates BindID ID tokens: the RS256 signature, the issuer, the audience,
+ * the expiration and not-before times with a clock skew allowance, and the nonce.
+ *
+ * A validator holds no mutable state of its own and can be shared by any number of threads.
+ * Key lookups go to the {@link KeySource}, see {@link JwkSetKeySource} for a lock free one.
+ * With a {@link ValidationCache} a token validated before is served from the cache, only its
+ * key and nonce are checked again.
+ *
+ * <pre>
+ *     IdTokenValidator validator = new IdTokenValidator.Builder(keySource)
+ *             .issuer("https://signin.bindid-sandbox.io")
+ *             .audience(clientId)
+ *             .build();
+ *     JWTClaimsSet claims = validator.validate(idToken, expectedNonce);
+ * </pre>
+ */
+public final class IdTokenValidator {
+
+    private static final long DEFAULT_CLOCK_SKEW_MILLIS = TimeUnit.SECONDS.toMillis(60);
+
+    private final KeySource keySource;
+    private final String issuer;
+    private final String audience;
+    private final long clockSkewMillis;
+    private final LongSupplier clock;
+    private final ValidationCache cache;
+
+    private IdTokenValidator(Builder builder) {
+        this.keySource = builder.keySource;
+        this.issuer = builder.issuer;
+        this.audience = builder.audience;
+        this.clockSkewMillis = builder.clockSkewMillis;
+        this.clock = builder.clock;
+        this.cache = builder.cache;
+        if (cache != null) {
+            cache.attach();
+        }
+    }
+
+    /**
+     * Validate a serialized ID token
+     * @param idToken the ID token
+     * @param expectedNonce the nonce sent in the authentication request, or null to skip the check
+     * @return the validated claims
+     */
+    public JWTClaimsSet validate(String idToken, String expectedNonce) throws TokenValidationException {
+        ValidationCache.Key cacheKey = null;
+        if (cache != null && keySource != null) {
+            cacheKey = ValidationCache.Key.of(idToken);
+            ValidationCache.Entry cached = cache.get(cacheKey, clock.getAsLong());
+            // Only while the key that verified the token is still in the key set
+            if (cached != null && cached.verifier == keySource.getVerifier(cached.kid)) {
+                validateNonce(cached.claims, expectedNonce);
+                return cached.claims;
+            }
+        }
+
+        SignedJWT jwt;
+        try {
+            jwt = SignedJWT.parse(idToken);
+        } catch (ParseException e) {
+            throw new TokenValidationException(TokenValidationException.Reason.MALFORMED,
+                    "Malformed ID token: " + e.getMessage(), e);
+        }
+        if (keySource == null) {
+            throw new IllegalStateException("No key source, use validate(SignedJWT, JWSVerifier, String)");
+        }
+        String kid = jwt.getHeader().getKeyID();
+        JWSVerifier verifier = keySource.getVerifier(kid);
+        if (verifier == null) {
+            throw new TokenValidationException(TokenValidationException.Reason.UNKNOWN_KEY,
+                    "Unknown key ID " + kid);
+        }
+        JWTClaimsSet claims = validate(jwt, verifier, cacheKey, idToken);
+        validateNonce(claims, expectedNonce);
+        return claims;
+    }
+
+    /**
+     * Validate a parsed ID token with the verifier of its signing key
+     * @param jwt the parsed ID token
+     * @param verifier the verifier of the key the token header refers to
+     * @param expectedNonce the nonce sent in the authentication request, or null to skip the check
+     * @return the validated claims
+     */
+    public JWTClaimsSet validate(SignedJWT jwt, JWSVerifier verifier, String expectedNonce)
+            throws TokenValidationException {
+        String idToken = jwt.getParsedString();
+        ValidationCache.Key cacheKey = null;
+        if (cache != null && idToken != null) {
+            cacheKey = ValidationCache.Key.of(idToken);
+            ValidationCache.Entry cached = cache.get(cacheKey, clock.getAsLong());
+            if (cached != null && cached.verifier == verifier) {
+                validateNonce(cached.claims, expectedNonce);
+                return cached.claims;
+            }
+        }
+        JWTClaimsSet claims = validate(jwt, verifier, cacheKey, idToken);
+        validateNonce(claims, expectedNonce);
+        return claims;
+    }
+
+    /**
+     * Check the signature and every claim but the nonce, which differs between calls, and cache
+     * the result
+     */
+    private JWTClaimsSet validate(SignedJWT jwt, JWSVerifier verifier, ValidationCache.Key cacheKey,
+                                  String idToken) throws TokenValidationException {
+        try {
+            if (!jwt.verify(verifier)) {
+                throw new TokenValidationException(TokenValidationException.Reason.INVALID_SIGNATURE,
+                        "Invalid JWT signature");
+            }
+        } catch (JOSEException e) {
+            throw new TokenValidationException(TokenValidationException.Reason.INVALID_SIGNATURE,
+                    "Invalid JWT signature: " + e.getMessage(), e);
+        }
+
+        JWTClaimsSet claims;
+        try {
+            claims = jwt.getJWTClaimsSet();
+        } catch (ParseException e) {
+            throw new TokenValidationException(TokenValidationException.Reason.MALFORMED,
+                    "Malformed ID token claims: " + e.getMessage(), e);
+        }
+        long now = clock.getAsLong();
+        validateClaims(claims, now);
+        if (cacheKey != null) {
+            // Accepted until the expiration time plus the clock skew, as checked above
+            long expiresAt = claims.getExpirationTime().getTime() + clockSkewMillis;
+            cache.put(cacheKey, claims, jwt.getHeader().getKeyID(), verifier, expiresAt, idToken.length(), now);
+        }
+        return claims;
+    }
+
+    private void validateClaims(JWTClaimsSet claims, long now) throws TokenValidationException {
+        if (issuer != null && !issuer.equals(claims.getIssuer())) {
+            throw new TokenValidationException(TokenValidationException.Reason.INVALID_ISSUER,
+                    "Unexpected issuer " + claims.getIssuer());
+        }
+
+        if (audience != null) {
+            List<String> audiences = claims.getAudience();
+            if (audiences == null || !audiences.contains(audience)) {
+                throw new TokenValidationException(TokenValidationException.Reason.INVALID_AUDIENCE,
+                        "Unexpected audience " + audiences);
+            }
+        }
+
+        Date expiration = claims.getExpirationTime();
+        if (expiration == null || now - clockSkewMillis >= expiration.getTime()) {
+            throw new TokenValidationException(TokenValidationException.Reason.EXPIRED,
+                    "ID token expired at " + expiration);
+        }
+        Date notBefore = claims.getNotBeforeTime();
+        if (notBefore != null && now + clockSkewMillis < notBefore.getTime()) {
+            throw new TokenValidationException(TokenValidationException.Reason.NOT_YET_VALID,
+                    "ID token not valid before " + notBefore);
+        }
+    }
+
+    private static void validateNonce(JWTClaimsSet claims, String expectedNonce) throws TokenValidationException {
+        if (expectedNonce != null) {
+            Object nonce = claims.getClaim("nonce");
+            if (!expectedNonce.equals(nonce)) {
+                throw new TokenValidationException(TokenValidationException.Reason.INVALID_NONCE,
+                        "Unexpected nonce");
+            }
+        }
+    }
+
+    public static final class Builder {
+        private final KeySource keySource;
+        private String issuer;
+        private String audience;
+        private long clockSkewMillis = DEFAULT_CLOCK_SKEW_MILLIS;
+        private LongSupplier clock = System::currentTimeMillis;
+        private ValidationCache cache;
+
+        /**
+         * @param keySource where signing keys are looked up, or null when the caller always
+         *                  provides the verifier
+         */
+        public Builder(KeySource keySource) {
+            this.keySource = keySource;
+        }
+
+        /**
+         * @param issuer the expected iss claim, such as https://signin.bindid-sandbox.io
+         */
+        public Builder issuer(String issuer) {
+            this.issuer = issuer;
+            return this;
+        }
+
+        /**
+         * @param audience the expected aud claim, your BindID client ID
+         */
+        public Builder audience(String audience) {
+            this.audience = audience;
+            return this;
+        }
+
+        public Builder clockSkew(long skew, TimeUnit unit) {
+            this.clockSkewMillis = unit.toMillis(skew);
+            return this;
+        }
+
+        /**
+         * @param clock wall clock in milliseconds
+         */
+        public Builder clock(LongSupplier clock) {
+            this.clock = Objects.requireNonNull(clock);
+            return this;
+        }
+
+        /**
+         * @param cache keeps the validated tokens, used by this validator only
+         */
+        public Builder cache(ValidationCache cache) {
+            this.cache = cache;
+            return this;
+        }
+
+        public IdTokenValidator build() {
+            return new IdTokenValidator(this);
+        }
+    }
+}
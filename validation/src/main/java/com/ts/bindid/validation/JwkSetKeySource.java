@@ -0,0 +1,76 @@
+package com.ts.bindid.validation;
+
+import com.nimbusds.jose.JOSEException;
+import com.nimbusds.jose.JWSVerifier;
+import com.nimbusds.jose.crypto.RSASSAVerifier;
+import com.nimbusds.jose.jwk.JWK;
+import com.nimbusds.jose.jwk.JWKSet;
+import com.nimbusds.jose.jwk.KeyUse;
+import com.nimbusds.jose.jwk.RSAKey;
+
+import java.text.ParseException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * JwkSetKeySource serves verifiers for the RSA signature keys of a BindID key set.
+ *
+ * The key set is replaced as a whole by {@link #update(JWKSet)}, and lookups read an immutable
+ * snapshot through a volatile field, so they never take a lock.
+ */
+public class JwkSetKeySource implements KeySource {
+
+    private static final class Snapshot {
+        final Map<String, JWSVerifier> verifiersById;
+        final JWSVerifier firstVerifier;
+
+        Snapshot(Map<String, JWSVerifier> verifiersById, JWSVerifier firstVerifier) {
+            this.verifiersById = verifiersById;
+            this.firstVerifier = firstVerifier;
+        }
+    }
+
+    private volatile Snapshot snapshot = new Snapshot(Collections.<String, JWSVerifier>emptyMap(), null);
+
+    public JwkSetKeySource() {
+    }
+
+    public JwkSetKeySource(JWKSet jwkSet) throws JOSEException {
+        update(jwkSet);
+    }
+
+    /**
+     * @param json the key set as returned by the BindID jwks endpoint
+     */
+    public static JwkSetKeySource parse(String json) throws ParseException, JOSEException {
+        return new JwkSetKeySource(JWKSet.parse(json));
+    }
+
+    /**
+     * Replace the key set, building the verifiers of its RSA signature keys
+     */
+    public void update(JWKSet jwkSet) throws JOSEException {
+        Map<String, JWSVerifier> verifiersById = new HashMap<>();
+        JWSVerifier firstVerifier = null;
+        for (JWK jwk : jwkSet.getKeys()) {
+            if (!(jwk instanceof RSAKey) || !KeyUse.SIGNATURE.equals(jwk.getKeyUse())) {
+                continue;
+            }
+            JWSVerifier verifier = new RSASSAVerifier(((RSAKey) jwk).toRSAPublicKey());
+            if (firstVerifier == null) {
+                firstVerifier = verifier;
+            }
+            if (jwk.getKeyID() != null) {
+                verifiersById.put(jwk.getKeyID(), verifier);
+            }
+        }
+        snapshot = new Snapshot(Collections.unmodifiableMap(verifiersById), firstVerifier);
+    }
+
+    @Override
+    public JWSVerifier getVerifier(String kid) {
+        Snapshot current = snapshot;
+        return kid == null ? current.firstVerifier : current.verifiersById.get(kid);
+    }
+}
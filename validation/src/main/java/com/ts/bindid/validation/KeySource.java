@@ -0,0 +1,17 @@
+package com.ts.bindid.validation;
+
+import com.nimbusds.jose.JWSVerifier;
+
+/**
+ * Provides the verifier for the key that signed a token.
+ *
+ * Implementations are called concurrently by {@link IdTokenValidator} and must be thread safe.
+ */
+public interface KeySource {
+
+    /**
+     * @param kid the key ID from the token header, or null when the token has none
+     * @return the verifier of the key, or null when the key is unknown
+     */
+    JWSVerifier getVerifier(String kid);
+}
@@ -0,0 +1,36 @@
+package com.ts.bindid.validation;
+
+/**
+ * Thrown when an ID token is not valid, with the reason it was rejected.
+ */
+public class TokenValidationException extends Exception {
+
+    private static final long serialVersionUID = 1L;
+
+    public enum Reason {
+        MALFORMED,
+        UNKNOWN_KEY,
+        INVALID_SIGNATURE,
+        INVALID_ISSUER,
+        INVALID_AUDIENCE,
+        EXPIRED,
+        NOT_YET_VALID,
+        INVALID_NONCE
+    }
+
+    private final Reason reason;
+
+    public TokenValidationException(Reason reason, String message) {
+        super(message);
+        this.reason = reason;
+    }
+
+    public TokenValidationException(Reason reason, String message, Throwable cause) {
+        super(message, cause);
+        this.reason = reason;
+    }
+
+    public Reason getReason() {
+        return reason;
+    }
+}
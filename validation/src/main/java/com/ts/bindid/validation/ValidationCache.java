@@ -0,0 +1,301 @@
+package com.ts.bindid.validation;
+
+import com.nimbusds.jose.JWSVerifier;
+import com.nimbusds.jwt.JWTClaimsSet;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * ValidationCache keeps the results of ID token validations, so a token seen again is not
+ * parsed and verified again. It is set on one {@link IdTokenValidator} with
+ * {@link IdTokenValidator.Builder#cache(ValidationCache)}.
+ *
+ * Entries are keyed by the SHA-256 hash of the token, the token itself is not kept, and hold the
+ * validated claims, the verifier that checked the signature and the time the validator stops
+ * accepting the token. An entry is only used while the key source still returns that verifier
+ * for the token's key ID, so a key rotation invalidates the tokens of the rotated key, and it
+ * expires with its token.
+ *
+ * The cache is bounded by a number of entries and an estimate of their memory. Lookups read a
+ * concurrent map and never take a lock. Additions and evictions are serialized, they follow a
+ * signature verification that costs far more. The least recently used entry is evicted first,
+ * recency being tracked to the granularity of additions so that a lookup does not write to memory
+ * other threads read.
+ */
+public final class ValidationCache {
+
+    private static final int DEFAULT_MAX_ENTRIES = 64;
+    private static final long DEFAULT_MAX_BYTES = 256 * 1024;
+    // The key, the entry and its map node
+    private static final int ENTRY_OVERHEAD_BYTES = 160;
+
+    private static final ThreadLocal<Hasher> HASHER = new ThreadLocal<Hasher>() {
+        @Override
+        protected Hasher initialValue() {
+            return new Hasher();
+        }
+    };
+
+    private final ConcurrentHashMap<Key, Entry> entries = new ConcurrentHashMap<>();
+    private final int maxEntries;
+    private final long maxBytes;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final AtomicBoolean owned = new AtomicBoolean();
+
+    // Incremented by each addition, entries are stamped with it when they are used. Written under
+    // the lock, like the weight.
+    private volatile long tick;
+    private volatile long weightBytes;
+
+    private ValidationCache(Builder builder) {
+        this.maxEntries = builder.maxEntries;
+        this.maxBytes = builder.maxBytes;
+    }
+
+    /**
+     * Drop every entry, for example when the key set was replaced out of band
+     */
+    public synchronized void invalidateAll() {
+        entries.clear();
+        weightBytes = 0;
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * @return the estimated memory held by the entries
+     */
+    public long getWeightBytes() {
+        return weightBytes;
+    }
+
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    /**
+     * Claim the cache for a validator, a cache shared by validators with different issuers or
+     * audiences would serve tokens one of them rejects
+     */
+    void attach() {
+        if (!owned.compareAndSet(false, true)) {
+            throw new IllegalArgumentException("The cache is already used by another validator");
+        }
+    }
+
+    /**
+     * @return the entry of the token, or null when it is not cached or no longer accepted
+     */
+    Entry get(Key key, long nowMillis) {
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            misses.increment();
+            return null;
+        }
+        if (nowMillis >= entry.expiresAtMillis) {
+            remove(key, entry);
+            misses.increment();
+            return null;
+        }
+        long current = tick;
+        if (entry.usedAt != current) {
+            entry.usedAt = current;
+        }
+        hits.increment();
+        return entry;
+    }
+
+    /**
+     * Add the result of a validation, evicting expired and then least recently used entries
+     * @param tokenLength the length of the token, the claims are weighed by it
+     */
+    void put(Key key, JWTClaimsSet claims, String kid, JWSVerifier verifier, long expiresAtMillis,
+             int tokenLength, long nowMillis) {
+        // Parsed, the claims take about two bytes per character of the token
+        long weight = ENTRY_OVERHEAD_BYTES + 2L * tokenLength;
+        if (weight > maxBytes || maxEntries == 0) {
+            return;
+        }
+        synchronized (this) {
+            // Entries used from now on are stamped after this one
+            long stamp = tick;
+            Entry replaced = entries.put(key, new Entry(claims, kid, verifier, expiresAtMillis, weight, stamp));
+            tick = stamp + 1;
+            weightBytes += weight - (replaced != null ? replaced.weight : 0);
+            if (entries.size() > maxEntries || weightBytes > maxBytes) {
+                evict(key, nowMillis);
+            }
+        }
+    }
+
+    private synchronized void remove(Key key, Entry entry) {
+        if (entries.remove(key, entry)) {
+            weightBytes -= entry.weight;
+        }
+    }
+
+    /**
+     * @param added the entry just added, used as recently as the entries used since the last
+     *              addition but never evicted to make room for itself
+     */
+    private void evict(Key added, long nowMillis) {
+        while (entries.size() > maxEntries || weightBytes > maxBytes) {
+            Key oldestKey = null;
+            Entry oldest = null;
+            for (Iterator<Map.Entry<Key, Entry>> it = entries.entrySet().iterator(); it.hasNext(); ) {
+                Map.Entry<Key, Entry> candidate = it.next();
+                Entry entry = candidate.getValue();
+                if (nowMillis >= entry.expiresAtMillis) {
+                    it.remove();
+                    weightBytes -= entry.weight;
+                } else if (!candidate.getKey().equals(added) && (oldest == null || entry.usedAt < oldest.usedAt)) {
+                    oldestKey = candidate.getKey();
+                    oldest = entry;
+                }
+            }
+            if (entries.size() <= maxEntries && weightBytes <= maxBytes) {
+                return;
+            }
+            if (oldest == null) {
+                return;
+            }
+            entries.remove(oldestKey);
+            weightBytes -= oldest.weight;
+        }
+    }
+
+    /**
+     * The SHA-256 hash of a token
+     */
+    static final class Key {
+        private final long h0;
+        private final long h1;
+        private final long h2;
+        private final long h3;
+
+        private Key(long h0, long h1, long h2, long h3) {
+            this.h0 = h0;
+            this.h1 = h1;
+            this.h2 = h2;
+            this.h3 = h3;
+        }
+
+        static Key of(String token) {
+            ByteBuffer hash = ByteBuffer.wrap(HASHER.get().hash(token));
+            return new Key(hash.getLong(), hash.getLong(), hash.getLong(), hash.getLong());
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) o;
+            return h0 == key.h0 && h1 == key.h1 && h2 == key.h2 && h3 == key.h3;
+        }
+
+        @Override
+        public int hashCode() {
+            return (int) (h0 ^ (h0 >>> 32));
+        }
+    }
+
+    /**
+     * Hashes tokens through a reused buffer rather than a copy of each token, on one thread
+     */
+    private static final class Hasher {
+        private final MessageDigest digest;
+        private final byte[] buffer = new byte[256];
+
+        Hasher() {
+            try {
+                digest = MessageDigest.getInstance("SHA-256");
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        byte[] hash(String token) {
+            int length = token.length();
+            for (int start = 0; start < length; start += buffer.length) {
+                int end = Math.min(length, start + buffer.length);
+                for (int i = start; i < end; i++) {
+                    char c = token.charAt(i);
+                    if (c >= 0x80) {
+                        // Not a compact JWS, hashed as UTF-8 all the same
+                        digest.reset();
+                        return digest.digest(token.getBytes(StandardCharsets.UTF_8));
+                    }
+                    buffer[i - start] = (byte) c;
+                }
+                digest.update(buffer, 0, end - start);
+            }
+            return digest.digest();
+        }
+    }
+
+    /**
+     * A validated token
+     */
+    static final class Entry {
+        final JWTClaimsSet claims;
+        final String kid;
+        final JWSVerifier verifier;
+        final long expiresAtMillis;
+        final long weight;
+        volatile long usedAt;
+
+        Entry(JWTClaimsSet claims, String kid, JWSVerifier verifier, long expiresAtMillis, long weight,
+              long usedAt) {
+            this.claims = claims;
+            this.kid = kid;
+            this.verifier = verifier;
+            this.expiresAtMillis = expiresAtMillis;
+            this.weight = weight;
+            this.usedAt = usedAt;
+        }
+    }
+
+    public static final class Builder {
+        private int maxEntries = DEFAULT_MAX_ENTRIES;
+        private long maxBytes = DEFAULT_MAX_BYTES;
+
+        /**
+         * @param maxEntries tokens kept at most, 64 by default
+         */
+        public Builder maxEntries(int maxEntries) {
+            this.maxEntries = maxEntries;
+            return this;
+        }
+
+        /**
+         * @param maxBytes estimated memory the entries may hold, 256 KB by default
+         */
+        public Builder maxBytes(long maxBytes) {
+            this.maxBytes = maxBytes;
+            return this;
+        }
+
+        public ValidationCache build() {
+            return new ValidationCache(this);
+        }
+    }
+}
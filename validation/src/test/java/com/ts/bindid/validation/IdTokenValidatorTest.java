@@ -0,0 +1,189 @@
+package com.ts.bindid.validation;
+
+import com.nimbusds.jose.JOSEException;
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.JWSHeader;
+import com.nimbusds.jose.crypto.RSASSASigner;
+import com.nimbusds.jose.jwk.JWKSet;
+import com.nimbusds.jose.jwk.KeyUse;
+import com.nimbusds.jose.jwk.RSAKey;
+import com.nimbusds.jose.jwk.gen.RSAKeyGenerator;
+import com.nimbusds.jwt.JWTClaimsSet;
+import com.nimbusds.jwt.SignedJWT;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+/**
+ * Validates signed tokens against a fixed key set and a fake clock.
+ */
+public class IdTokenValidatorTest {
+
+    private static final String ISSUER = "https://signin.bindid-sandbox.io";
+    private static final String CLIENT_ID = "bindid_example_client";
+    private static final long NOW = 1_624_176_000_000L;
+
+    private static RSAKey signingKey;
+    private static JwkSetKeySource keySource;
+
+    private final AtomicLong clock = new AtomicLong(NOW);
+    private final IdTokenValidator validator = new IdTokenValidator.Builder(keySource)
+            .issuer(ISSUER)
+            .audience(CLIENT_ID)
+            .clockSkew(30, TimeUnit.SECONDS)
+            .clock(clock::get)
+            .build();
+
+    @BeforeClass
+    public static void generateKeys() throws Exception {
+        signingKey = generateKey("k1");
+        keySource = new JwkSetKeySource(new JWKSet(signingKey.toPublicJWK()));
+    }
+
+    @Test
+    public void acceptsValidToken() throws Exception {
+        JWTClaimsSet claims = validator.validate(sign(signingKey, claims().build()), "nonce-1");
+        assertEquals("user", claims.getSubject());
+    }
+
+    @Test
+    public void skipsNonceWhenNotExpected() throws Exception {
+        validator.validate(sign(signingKey, claims().claim("nonce", null).build()), null);
+    }
+
+    @Test
+    public void rejectsMalformedToken() {
+        assertReason(TokenValidationException.Reason.MALFORMED, "not.a.jwt", null);
+    }
+
+    @Test
+    public void rejectsUnknownKey() throws Exception {
+        String idToken = sign(generateKey("k2"), claims().build());
+        assertReason(TokenValidationException.Reason.UNKNOWN_KEY, idToken, null);
+    }
+
+    @Test
+    public void rejectsForgedSignature() throws Exception {
+        String idToken = sign(generateKey("k1"), claims().build());
+        assertReason(TokenValidationException.Reason.INVALID_SIGNATURE, idToken, null);
+    }
+
+    @Test
+    public void rejectsWrongIssuerAndAudience() throws Exception {
+        assertReason(TokenValidationException.Reason.INVALID_ISSUER,
+                sign(signingKey, claims().issuer("https://example.com").build()), null);
+        assertReason(TokenValidationException.Reason.INVALID_AUDIENCE,
+                sign(signingKey, claims().audience("another_client").build()), null);
+    }
+
+    @Test
+    public void appliesClockSkewToExpiration() throws Exception {
+        String idToken = sign(signingKey, claims().build());
+
+        clock.set(NOW + TimeUnit.MINUTES.toMillis(10) + TimeUnit.SECONDS.toMillis(29));
+        validator.validate(idToken, null);
+
+        clock.set(NOW + TimeUnit.MINUTES.toMillis(10) + TimeUnit.SECONDS.toMillis(30));
+        assertReason(TokenValidationException.Reason.EXPIRED, idToken, null);
+    }
+
+    @Test
+    public void appliesClockSkewToNotBefore() throws Exception {
+        String idToken = sign(signingKey, claims()
+                .notBeforeTime(new Date(NOW + TimeUnit.SECONDS.toMillis(30)))
+                .build());
+        validator.validate(idToken, null);
+
+        clock.set(NOW - 1);
+        assertReason(TokenValidationException.Reason.NOT_YET_VALID, idToken, null);
+    }
+
+    @Test
+    public void rejectsWrongNonce() throws Exception {
+        assertReason(TokenValidationException.Reason.INVALID_NONCE,
+                sign(signingKey, claims().build()), "nonce-2");
+    }
+
+    @Test
+    public void followsKeyRotation() throws Exception {
+        RSAKey rotated = generateKey("k2");
+        JwkSetKeySource rotatingSource = new JwkSetKeySource(new JWKSet(signingKey.toPublicJWK()));
+        IdTokenValidator rotatingValidator = new IdTokenValidator.Builder(rotatingSource)
+                .clock(clock::get)
+                .build();
+        String idToken = sign(rotated, claims().build());
+
+        try {
+            rotatingValidator.validate(idToken, null);
+            fail("Validated a token signed by an unknown key");
+        } catch (TokenValidationException e) {
+            assertEquals(TokenValidationException.Reason.UNKNOWN_KEY, e.getReason());
+        }
+
+        rotatingSource.update(new JWKSet(rotated.toPublicJWK()));
+        rotatingValidator.validate(idToken, null);
+    }
+
+    @Test
+    public void validatesConcurrently() throws Exception {
+        String idToken = sign(signingKey, claims().build());
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<JWTClaimsSet>> results = new ArrayList<>();
+            for (int i = 0; i < 200; i++) {
+                results.add(executor.submit((Callable<JWTClaimsSet>) () -> validator.validate(idToken, "nonce-1")));
+            }
+            for (Future<JWTClaimsSet> result : results) {
+                assertEquals("user", result.get(10, TimeUnit.SECONDS).getSubject());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private void assertReason(TokenValidationException.Reason reason, String idToken, String nonce) {
+        try {
+            validator.validate(idToken, nonce);
+            fail("Expected " + reason);
+        } catch (TokenValidationException e) {
+            assertEquals(reason, e.getReason());
+        }
+    }
+
+    private static JWTClaimsSet.Builder claims() {
+        return new JWTClaimsSet.Builder()
+                .issuer(ISSUER)
+                .subject("user")
+                .audience(CLIENT_ID)
+                .issueTime(new Date(NOW))
+                .expirationTime(new Date(NOW + TimeUnit.MINUTES.toMillis(10)))
+                .claim("nonce", "nonce-1");
+    }
+
+    private static RSAKey generateKey(String kid) throws JOSEException {
+        return new RSAKeyGenerator(2048)
+                .keyID(kid)
+                .keyUse(KeyUse.SIGNATURE)
+                .generate();
+    }
+
+    private static String sign(RSAKey key, JWTClaimsSet claims) throws JOSEException {
+        SignedJWT jwt = new SignedJWT(
+                new JWSHeader.Builder(JWSAlgorithm.RS256).keyID(key.getKeyID()).build(),
+                claims);
+        jwt.sign(new RSASSASigner(key));
+        return jwt.serialize();
+    }
+}
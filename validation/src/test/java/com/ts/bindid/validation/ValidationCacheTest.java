@@ -0,0 +1,321 @@
+package com.ts.bindid.validation;
+
+import com.nimbusds.jose.JOSEException;
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.JWSHeader;
+import com.nimbusds.jose.JWSVerifier;
+import com.nimbusds.jose.crypto.RSASSASigner;
+import com.nimbusds.jose.crypto.RSASSAVerifier;
+import com.nimbusds.jose.jca.JCAContext;
+import com.nimbusds.jose.jwk.KeyUse;
+import com.nimbusds.jose.jwk.RSAKey;
+import com.nimbusds.jose.jwk.gen.RSAKeyGenerator;
+import com.nimbusds.jose.util.Base64URL;
+import com.nimbusds.jwt.JWTClaimsSet;
+import com.nimbusds.jwt.SignedJWT;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+/**
+ * Counts the signature checks of a validator with a cache, against a fake clock.
+ */
+public class ValidationCacheTest {
+
+    private static final String ISSUER = "https://signin.bindid-sandbox.io";
+    private static final String CLIENT_ID = "bindid_example_client";
+    private static final long NOW = 1_624_176_000_000L;
+
+    private static RSAKey signingKey;
+
+    private final AtomicLong clock = new AtomicLong(NOW);
+    private final CountingKeySource keySource = new CountingKeySource();
+
+    @BeforeClass
+    public static void generateKeys() throws Exception {
+        signingKey = generateKey("k1");
+    }
+
+    @Test
+    public void verifiesATokenOnce() throws Exception {
+        ValidationCache cache = new ValidationCache.Builder().build();
+        IdTokenValidator validator = validator(cache);
+        String idToken = sign(signingKey, claims().build());
+
+        JWTClaimsSet first = validator.validate(idToken, "nonce-1");
+        JWTClaimsSet second = validator.validate(idToken, "nonce-1");
+
+        assertSame(first, second);
+        assertEquals(1, keySource.verifications.get());
+        assertEquals(1, cache.getHitCount());
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void servesParsedTokensWithTheSameVerifier() throws Exception {
+        ValidationCache cache = new ValidationCache.Builder().build();
+        IdTokenValidator validator = validator(cache);
+        String idToken = sign(signingKey, claims().build());
+        JWSVerifier verifier = keySource.getVerifier("k1");
+
+        validator.validate(SignedJWT.parse(idToken), verifier, null);
+        validator.validate(SignedJWT.parse(idToken), verifier, null);
+        assertEquals(1, keySource.verifications.get());
+
+        // Another verifier, as after the key set was fetched again, checks the signature again
+        validator.validate(SignedJWT.parse(idToken), new CountingVerifier(signingKey, keySource.verifications), null);
+        assertEquals(2, keySource.verifications.get());
+    }
+
+    @Test
+    public void checksTheNonceOfCachedTokens() throws Exception {
+        IdTokenValidator validator = validator(new ValidationCache.Builder().build());
+        String idToken = sign(signingKey, claims().build());
+        validator.validate(idToken, "nonce-1");
+
+        try {
+            validator.validate(idToken, "nonce-2");
+            fail("Accepted a cached token with the wrong nonce");
+        } catch (TokenValidationException e) {
+            assertEquals(TokenValidationException.Reason.INVALID_NONCE, e.getReason());
+        }
+        validator.validate(idToken, null);
+        assertEquals(1, keySource.verifications.get());
+    }
+
+    @Test
+    public void expiresWithTheToken() throws Exception {
+        ValidationCache cache = new ValidationCache.Builder().build();
+        IdTokenValidator validator = validator(cache);
+        String idToken = sign(signingKey, claims().build());
+        validator.validate(idToken, null);
+
+        // Still accepted within the clock skew
+        clock.set(NOW + TimeUnit.MINUTES.toMillis(10) + TimeUnit.SECONDS.toMillis(29));
+        validator.validate(idToken, null);
+        assertEquals(1, keySource.verifications.get());
+
+        clock.set(NOW + TimeUnit.MINUTES.toMillis(10) + TimeUnit.SECONDS.toMillis(30));
+        try {
+            validator.validate(idToken, null);
+            fail("Accepted an expired cached token");
+        } catch (TokenValidationException e) {
+            assertEquals(TokenValidationException.Reason.EXPIRED, e.getReason());
+        }
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.getWeightBytes());
+    }
+
+    @Test
+    public void isInvalidatedByKeyRotation() throws Exception {
+        RSAKey rotated = generateKey("k2");
+        ValidationCache cache = new ValidationCache.Builder().build();
+        IdTokenValidator validator = validator(cache);
+        String idToken = sign(signingKey, claims().build());
+        validator.validate(idToken, null);
+
+        keySource.update(rotated);
+        try {
+            validator.validate(idToken, null);
+            fail("Accepted a cached token of a rotated key");
+        } catch (TokenValidationException e) {
+            assertEquals(TokenValidationException.Reason.UNKNOWN_KEY, e.getReason());
+        }
+
+        // The key is back, with a verifier of its own, so the token is verified again
+        keySource.update(signingKey, rotated);
+        validator.validate(idToken, null);
+        assertEquals(2, keySource.verifications.get());
+    }
+
+    @Test
+    public void evictsTheLeastRecentlyUsedToken() throws Exception {
+        ValidationCache cache = new ValidationCache.Builder().maxEntries(2).build();
+        IdTokenValidator validator = validator(cache);
+        String first = sign(signingKey, claims().subject("first").build());
+        String second = sign(signingKey, claims().subject("second").build());
+        String third = sign(signingKey, claims().subject("third").build());
+
+        validator.validate(first, null);
+        validator.validate(second, null);
+        // The first token is used after the second was added, the second one goes
+        validator.validate(first, null);
+        validator.validate(third, null);
+        assertEquals(2, cache.size());
+        assertEquals(3, keySource.verifications.get());
+
+        validator.validate(first, null);
+        validator.validate(third, null);
+        assertEquals(3, keySource.verifications.get());
+        validator.validate(second, null);
+        assertEquals(4, keySource.verifications.get());
+    }
+
+    @Test
+    public void isBoundedByMemory() throws Exception {
+        String idToken = sign(signingKey, claims().build());
+        // Room for two tokens of this size
+        long maxBytes = 2 * (160 + 2L * idToken.length()) + 100;
+        ValidationCache cache = new ValidationCache.Builder().maxBytes(maxBytes).build();
+        IdTokenValidator validator = validator(cache);
+
+        for (int i = 0; i < 5; i++) {
+            validator.validate(sign(signingKey, claims().subject("user-" + i).build()), null);
+            assertTrue(cache.getWeightBytes() <= maxBytes);
+        }
+        assertEquals(2, cache.size());
+
+        // A token larger than the whole cache is not kept
+        String large = sign(signingKey, claims().claim("padding", new String(new char[(int) maxBytes])).build());
+        validator.validate(large, null);
+        validator.validate(large, null);
+        assertEquals(7, keySource.verifications.get());
+    }
+
+    @Test
+    public void isUsedByOneValidator() {
+        ValidationCache cache = new ValidationCache.Builder().build();
+        validator(cache);
+        try {
+            validator(cache);
+            fail("Shared a cache between validators");
+        } catch (IllegalArgumentException expected) {
+            // A cache holds the results of one issuer and audience
+        }
+    }
+
+    @Test
+    public void servesConcurrentThreads() throws Exception {
+        ValidationCache cache = new ValidationCache.Builder().maxEntries(8).build();
+        IdTokenValidator validator = validator(cache);
+        List<String> tokens = new ArrayList<>();
+        for (int i = 0; i < 16; i++) {
+            tokens.add(sign(signingKey, claims().subject("user-" + i).build()));
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<String>> results = new ArrayList<>();
+            for (int i = 0; i < 2_000; i++) {
+                // Mostly the first tokens, the others evict and are evicted
+                int token = i % 5 == 0 ? i % tokens.size() : i % 4;
+                results.add(executor.submit((Callable<String>) () ->
+                        validator.validate(tokens.get(token), "nonce-1").getSubject()));
+            }
+            for (int i = 0; i < results.size(); i++) {
+                int token = i % 5 == 0 ? i % tokens.size() : i % 4;
+                assertEquals("user-" + token, results.get(i).get(10, TimeUnit.SECONDS));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertTrue(cache.size() <= 8);
+        assertTrue(cache.getHitCount() > 1_000);
+    }
+
+    private IdTokenValidator validator(ValidationCache cache) {
+        return new IdTokenValidator.Builder(keySource)
+                .issuer(ISSUER)
+                .audience(CLIENT_ID)
+                .clockSkew(30, TimeUnit.SECONDS)
+                .clock(clock::get)
+                .cache(cache)
+                .build();
+    }
+
+    private static JWTClaimsSet.Builder claims() {
+        return new JWTClaimsSet.Builder()
+                .issuer(ISSUER)
+                .subject("user")
+                .audience(CLIENT_ID)
+                .issueTime(new Date(NOW))
+                .expirationTime(new Date(NOW + TimeUnit.MINUTES.toMillis(10)))
+                .claim("nonce", "nonce-1");
+    }
+
+    private static RSAKey generateKey(String kid) throws JOSEException {
+        return new RSAKeyGenerator(2048)
+                .keyID(kid)
+                .keyUse(KeyUse.SIGNATURE)
+                .generate();
+    }
+
+    private static String sign(RSAKey key, JWTClaimsSet claims) throws JOSEException {
+        SignedJWT jwt = new SignedJWT(
+                new JWSHeader.Builder(JWSAlgorithm.RS256).keyID(key.getKeyID()).build(),
+                claims);
+        jwt.sign(new RSASSASigner(key));
+        return jwt.serialize();
+    }
+
+    /**
+     * A key set whose verifiers count the signatures they check, replaced as a whole with new
+     * verifiers like {@link JwkSetKeySource}
+     */
+    private static class CountingKeySource implements KeySource {
+        final AtomicInteger verifications = new AtomicInteger();
+        private volatile Map<String, JWSVerifier> verifiers = new HashMap<>();
+
+        CountingKeySource() {
+            try {
+                update(signingKey);
+            } catch (JOSEException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        void update(RSAKey... rsaKeys) throws JOSEException {
+            Map<String, JWSVerifier> updated = new HashMap<>();
+            for (RSAKey key : rsaKeys) {
+                updated.put(key.getKeyID(), new CountingVerifier(key, verifications));
+            }
+            verifiers = updated;
+        }
+
+        @Override
+        public JWSVerifier getVerifier(String kid) {
+            return verifiers.get(kid);
+        }
+    }
+
+    private static class CountingVerifier implements JWSVerifier {
+        private final RSASSAVerifier verifier;
+        private final AtomicInteger verifications;
+
+        CountingVerifier(RSAKey key, AtomicInteger verifications) throws JOSEException {
+            this.verifier = new RSASSAVerifier(key.toRSAPublicKey());
+            this.verifications = verifications;
+        }
+
+        @Override
+        public boolean verify(JWSHeader header, byte[] signingInput, Base64URL signature) throws JOSEException {
+            verifications.incrementAndGet();
+            return verifier.verify(header, signingInput, signature);
+        }
+
+        @Override
+        public Set<JWSAlgorithm> supportedJWSAlgorithms() {
+            return verifier.supportedJWSAlgorithms();
+        }
+
+        @Override
+        public JCAContext getJCAContext() {
+            return verifier.getJCAContext();
+        }
+    }
+}